@@ -32,8 +32,10 @@ function initTransactionList(options) {
 /**
  * Load transactions for the specified page
  * @param {number} page Page number to load
+ * @param {string} [cursor] Cursor token from the previous response; when given
+ *   the server pages from it and page is only used for display
  */
-async function loadTransactions(page) {
+async function loadTransactions(page, cursor) {
   const config = window.transactionListConfig;
   if (!config) {
     console.error("Transaction list not initialized");
@@ -52,7 +54,7 @@ async function loadTransactions(page) {
 
   try {
     // Get transaction data (either from API or mock data)
-    const data = await fetchTransactionData(page, config);
+    const data = await fetchTransactionData(page, config, cursor);
 
     // Check if data contains transactions
     if (!data || !data.transactions) {
@@ -96,9 +98,10 @@ async function loadTransactions(page) {
  * Fetch transaction data from API or generate mock data
  * @param {number} page Page number
  * @param {Object} config Configuration options
+ * @param {string} [cursor] Cursor token for keyset paging
  * @returns {Promise<Object>} Transaction data
  */
-async function fetchTransactionData(page, config) {
+async function fetchTransactionData(page, config, cursor) {
   try {
     // If API endpoint is specified in config, try that first
     if (config.apiEndpoint) {
@@ -108,6 +111,9 @@ async function fetchTransactionData(page, config) {
         if (config.userId) {
           url += `&userId=${config.userId}`;
         }
+        if (cursor) {
+          url += `&cursor=${encodeURIComponent(cursor)}`;
+        }
 
         const fetchOptions = config.fetchParams || {};
         const response = await fetch(url, fetchOptions);
@@ -161,6 +167,9 @@ async function fetchTransactionData(page, config) {
         if (config.userId) {
           url += `&userId=${config.userId}`;
         }
+        if (cursor) {
+          url += `&cursor=${encodeURIComponent(cursor)}`;
+        }
 
         // Attempt to fetch from API
         const response = await fetch(url);
@@ -429,10 +438,18 @@ function setupPagination(pagination, config) {
 
   let html = '<div class="pagination-controls">';
 
+  // Prefer the cursors when the API provides them, so deep pages stay fast
+  const prevArgs = pagination.prevCursor
+    ? `${currentPage - 1}, '${pagination.prevCursor}'`
+    : `${currentPage - 1}`;
+  const nextArgs = pagination.nextCursor
+    ? `${currentPage + 1}, '${pagination.nextCursor}'`
+    : `${currentPage + 1}`;
+
   // Previous button
   html += `<button class="action-button secondary" ${
     currentPage === 1 ? "disabled" : ""
-  } onclick="loadTransactions(${currentPage - 1})">Previous</button>`;
+  } onclick="loadTransactions(${prevArgs})">Previous</button>`;
 
   // Page info
   html += `<span class="pagination-info">Page ${currentPage} of ${totalPages}</span>`;
@@ -440,7 +457,7 @@ function setupPagination(pagination, config) {
   // Next button
   html += `<button class="action-button secondary" ${
     currentPage === totalPages ? "disabled" : ""
-  } onclick="loadTransactions(${currentPage + 1})">Next</button>`;
+  } onclick="loadTransactions(${nextArgs})">Next</button>`;
 
   html += "</div>";
 
@@ -25,7 +25,7 @@
         // Fetch user accounts for dropdown
         List<Map<String, Object>> userAccounts = new ArrayList<>();
         try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT id, account_number, type, balance FROM accounts WHERE user_id = ? ORDER BY type";
+            String sql = "SELECT id, account_number, type, balance_cents FROM accounts WHERE user_id = ? ORDER BY type";
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setInt(1, user.getId());
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -34,7 +34,9 @@
                         account.put("id", rs.getInt("id"));
                         account.put("accountNumber", rs.getString("account_number"));
                         account.put("type", rs.getString("type"));
-                        account.put("balance", rs.getDouble("balance"));
+                        // Includes transfers whose postings are still being written
+                        account.put("balance",
+                                DatabaseUtil.currentBalanceCents(rs.getInt("id"), rs.getLong("balance_cents")) / 100.0);
                         userAccounts.add(account);
                     }
                 }
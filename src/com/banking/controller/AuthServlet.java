@@ -1,7 +1,9 @@
 package com.banking.controller;
 
 import com.banking.model.User; // Keep the User record/class import
+import com.banking.util.AuthResult;
 import com.banking.util.DatabaseUtil; // Import your utility class
+import com.banking.util.LoginThrottle;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -31,7 +33,7 @@ public class AuthServlet extends HttpServlet {
         String email = req.getParameter("email");
         String password = req.getParameter("password");
         // Assuming role is passed for routing/authorization check during login
-        // Note: DatabaseUtil.authenticate now also checks the role internally.
+        // Note: DatabaseUtil.login also checks the role internally.
         String role = req.getParameter("role");
 
         // Basic validation for required parameters
@@ -48,27 +50,41 @@ public class AuthServlet extends HttpServlet {
         email = email.trim();
         role = role.trim().toLowerCase(); // Standardize role to lowercase
 
+        // Turn away repeated attempts before they cost a read or a hash
+        LoginThrottle throttle = DatabaseUtil.getLoginThrottle();
+        if (throttle != null) {
+            String clientIp = throttle.clientIp(req.getRemoteAddr(), req.getHeader("X-Forwarded-For"));
+            long retryAfterMs = throttle.tryAcquire(email, clientIp);
+            if (retryAfterMs > 0) {
+                System.err.println("AuthServlet: Too many login attempts for " + email + " from " + clientIp);
+                resp.setHeader("Retry-After", String.valueOf((retryAfterMs + 999) / 1000));
+                resp.sendRedirect(req.getContextPath() + "/login.html?error=too_many_attempts");
+                return;
+            }
+        }
+
         try {
-            // First check if the account is pending approval
-            if (DatabaseUtil.isAccountPendingApproval(email, role)) {
+            // One read of the user's row decides the outcome
+            AuthResult result = DatabaseUtil.login(email, password, role);
+
+            if (result.getStatus() == AuthResult.Status.BUSY) {
+                // Too many logins being checked at once; try again shortly
+                resp.sendRedirect(req.getContextPath() + "/login.html?error=server_busy");
+                return;
+            }
+
+            if (result.getStatus() == AuthResult.Status.PENDING_APPROVAL) {
                 System.err.println("AuthServlet: Account pending approval for email: " + email);
                 resp.sendRedirect(req.getContextPath() + "/login.html?error=account_pending_approval");
                 return;
             }
 
-            // Use DatabaseUtil directly for authentication
-            // It checks email, password, role match, and active status
-            if (DatabaseUtil.authenticate(email, password, role)) {
-
-                // Authentication successful, get user details (excluding sensitive info)
-                User user = DatabaseUtil.getUserByEmail(email);
+            if (result.isSuccess()) {
 
-                if (user == null) {
-                    // Should not happen if authenticate passed, but good practice to check
-                    System.err.println(
-                            "AuthServlet: Authentication succeeded but failed to retrieve user details for " + email);
-                    resp.sendRedirect(req.getContextPath() + "/login.html?error=internal_error");
-                    return;
+                // Authentication successful; the user comes without sensitive info
+                User user = result.getUser();
+                if (throttle != null) {
+                    throttle.loginSucceeded(email);
                 }
 
                 // Create or get the session
@@ -102,8 +118,7 @@ public class AuthServlet extends HttpServlet {
                         resp.sendRedirect(req.getContextPath() + "/login.html?error=invalid_role");
                 }
             } else {
-                // Authentication failed (user not found, wrong password, wrong role, inactive
-                // status)
+                // Authentication failed (user not found, wrong password, wrong role, locked)
                 System.out.println("AuthServlet: Authentication failed for email: " + email + ", role: " + role);
                 resp.sendRedirect(req.getContextPath() + "/login.html?error=invalid_credentials");
             }
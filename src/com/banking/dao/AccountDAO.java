@@ -0,0 +1,148 @@
+package com.banking.dao;
+
+import com.banking.model.Account;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data access for accounts
+ */
+public class AccountDAO {
+
+    // Stays well under SQLite's limit on bound parameters per statement
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    private static final String COLUMNS = "id, user_id, account_number, type, balance_cents, created_at";
+
+    public static final RowMapper<Account> MAPPER = rs -> {
+        Account account = new Account();
+        account.setId(rs.getInt("id"));
+        account.setUserId(rs.getInt("user_id"));
+        account.setAccountNumber(rs.getString("account_number"));
+        account.setType(rs.getString("type"));
+        account.setBalanceCents(rs.getLong("balance_cents"));
+        account.setCreatedAt(rs.getTimestamp("created_at"));
+        return account;
+    };
+
+    /**
+     * @return The account, or null if not found
+     */
+    public static Account findById(Connection conn, int accountId) throws SQLException {
+        return DaoSupport.findOne(conn, "SELECT " + COLUMNS + " FROM accounts WHERE id = ?", MAPPER, accountId);
+    }
+
+    /**
+     * @return The account, or null if no account has this number
+     */
+    public static Account findByAccountNumber(Connection conn, String accountNumber) throws SQLException {
+        return DaoSupport.findOne(conn, "SELECT " + COLUMNS + " FROM accounts WHERE account_number = ?", MAPPER,
+                accountNumber);
+    }
+
+    /**
+     * Looks up many account numbers at once, MAX_IN_PARAMETERS per query
+     *
+     * @return Account id by account number; numbers that don't exist are
+     *         left out
+     */
+    public static Map<String, Integer> findIdsByAccountNumbers(Connection conn, Collection<String> accountNumbers)
+            throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> numbers = new ArrayList<>(accountNumbers);
+        for (int start = 0; start < numbers.size(); start += MAX_IN_PARAMETERS) {
+            List<String> chunk = numbers.subList(start, Math.min(numbers.size(), start + MAX_IN_PARAMETERS));
+            StringBuilder sql = new StringBuilder("SELECT id, account_number FROM accounts WHERE account_number IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            try (PreparedStatement stmt = DaoSupport.prepare(conn, sql.toString(), chunk.toArray());
+                    ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.put(rs.getString("account_number"), rs.getInt("id"));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the accounts owned by a user, oldest first
+     */
+    public static List<Account> findByUserId(Connection conn, int userId) throws SQLException {
+        return DaoSupport.findAll(conn, "SELECT " + COLUMNS + " FROM accounts WHERE user_id = ? ORDER BY id", MAPPER,
+                userId);
+    }
+
+    /**
+     * Finds a user's first account of the given type ('checking' or 'savings')
+     *
+     * @return The account, or null if the user has none of that type
+     */
+    public static Account findFirstByUserAndType(Connection conn, int userId, String type) throws SQLException {
+        return DaoSupport.findOne(conn,
+                "SELECT " + COLUMNS + " FROM accounts WHERE user_id = ? AND type = ? ORDER BY id LIMIT 1", MAPPER,
+                userId, type);
+    }
+
+    /**
+     * Creates an account
+     *
+     * @return The new account's id
+     */
+    public static int insert(Connection conn, int userId, String accountNumber, String type, long balanceCents)
+            throws SQLException {
+        // balance is kept in step for pages that still read the DECIMAL column
+        return DaoSupport.insertAndGetKey(conn,
+                "INSERT INTO accounts (user_id, account_number, type, balance_cents, balance) " +
+                        "VALUES (?, ?, ?, ?, ? / 100.0)",
+                userId, accountNumber, type, balanceCents, balanceCents);
+    }
+
+    /**
+     * Adds to (or, with a negative delta, subtracts from) an account balance
+     *
+     * @return Number of rows updated, 0 if the account doesn't exist
+     */
+    public static int adjustBalance(Connection conn, int accountId, long deltaCents) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "UPDATE accounts SET balance_cents = balance_cents + ?, balance = (balance_cents + ?) / 100.0 " +
+                        "WHERE id = ?",
+                deltaCents, deltaCents, accountId)) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Applies many balance changes as one JDBC batch
+     *
+     * @param deltasCents Change in cents by account id
+     * @throws SQLException if any of the accounts doesn't exist
+     */
+    public static void adjustBalances(Connection conn, Map<Integer, Long> deltasCents) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE accounts SET balance_cents = balance_cents + ?, balance = (balance_cents + ?) / 100.0 " +
+                        "WHERE id = ?")) {
+            for (Map.Entry<Integer, Long> delta : deltasCents.entrySet()) {
+                stmt.setLong(1, delta.getValue());
+                stmt.setLong(2, delta.getValue());
+                stmt.setInt(3, delta.getKey());
+                stmt.addBatch();
+            }
+            for (int rows : stmt.executeBatch()) {
+                if (rows == 0) {
+                    throw new SQLException("Failed to update account balance. Account may not exist.");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.banking.dao;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query helpers shared by the DAOs. Parameters are bound in order with
+ * setObject.
+ */
+final class DaoSupport {
+
+    private DaoSupport() {
+    }
+
+    /**
+     * Runs a query expected to return at most one row
+     *
+     * @return The mapped first row, or null if there is none
+     */
+    static <T> T findOne(Connection conn, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        try (PreparedStatement stmt = prepare(conn, sql, params);
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? mapper.mapRow(rs) : null;
+        }
+    }
+
+    /**
+     * Runs a query and collects every mapped row
+     */
+    static <T> List<T> findAll(Connection conn, String sql, RowMapper<T> mapper, Object... params)
+            throws SQLException {
+        List<T> rows = new ArrayList<>();
+        try (PreparedStatement stmt = prepare(conn, sql, params);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(mapper.mapRow(rs));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Runs a query and hands each mapped row to the callback
+     *
+     * @return Number of rows processed
+     */
+    static <T> int forEach(Connection conn, String sql, RowMapper<T> mapper, RowCallback<T> callback,
+            Object... params) throws SQLException, IOException {
+        int count = 0;
+        try (PreparedStatement stmt = prepare(conn, sql, params);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                callback.processRow(mapper.mapRow(rs));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs an INSERT and returns the generated key
+     *
+     * @throws SQLException if no row was inserted
+     */
+    static int insertAndGetKey(Connection conn, String sql, Object... params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Insert failed, no rows affected.");
+            }
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Insert failed, no ID obtained.");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    static PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+}
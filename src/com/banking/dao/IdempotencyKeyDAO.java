@@ -0,0 +1,82 @@
+package com.banking.dao;
+
+import com.banking.model.IdempotencyRecord;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Data access for idempotency keys
+ */
+public class IdempotencyKeyDAO {
+
+    public static final RowMapper<IdempotencyRecord> MAPPER = rs -> {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setUserId(rs.getInt("user_id"));
+        record.setKey(rs.getString("idempotency_key"));
+        record.setFingerprint(rs.getString("fingerprint"));
+        record.setSuccess(rs.getInt("success") != 0);
+        record.setMessage(rs.getString("message"));
+        return record;
+    };
+
+    /**
+     * Finds a key used within the last retentionHours hours
+     *
+     * @return The stored outcome, or null if the key is unknown or expired
+     */
+    public static IdempotencyRecord find(Connection conn, int userId, String key, int retentionHours)
+            throws SQLException {
+        return DaoSupport.findOne(conn,
+                "SELECT user_id, idempotency_key, fingerprint, success, message FROM idempotency_keys " +
+                        "WHERE user_id = ? AND idempotency_key = ? AND created_at >= datetime('now', ?)",
+                MAPPER, userId, key, "-" + retentionHours + " hours");
+    }
+
+    /**
+     * Stores an outcome, replacing an expired record for the same key
+     */
+    public static int insert(Connection conn, IdempotencyRecord record) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "INSERT OR REPLACE INTO idempotency_keys (user_id, idempotency_key, fingerprint, success, message) " +
+                        "VALUES (?, ?, ?, ?, ?)",
+                record.getUserId(), record.getKey(), record.getFingerprint(), record.isSuccess() ? 1 : 0,
+                record.getMessage())) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Stores an outcome unless the key already has one from within the last
+     * retentionHours hours; an expired record is replaced
+     *
+     * @return 0 if the key is still in use
+     */
+    public static int insertIfUnused(Connection conn, IdempotencyRecord record, int retentionHours)
+            throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "INSERT INTO idempotency_keys (user_id, idempotency_key, fingerprint, success, message) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON CONFLICT (user_id, idempotency_key) DO UPDATE SET fingerprint = excluded.fingerprint, " +
+                        "success = excluded.success, message = excluded.message, created_at = CURRENT_TIMESTAMP " +
+                        "WHERE idempotency_keys.created_at < datetime('now', ?)",
+                record.getUserId(), record.getKey(), record.getFingerprint(), record.isSuccess() ? 1 : 0,
+                record.getMessage(), "-" + retentionHours + " hours")) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes keys older than retentionHours hours
+     *
+     * @return Number of keys removed
+     */
+    public static int deleteExpired(Connection conn, int retentionHours) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "DELETE FROM idempotency_keys WHERE created_at < datetime('now', ?)",
+                "-" + retentionHours + " hours")) {
+            return stmt.executeUpdate();
+        }
+    }
+}
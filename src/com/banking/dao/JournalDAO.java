@@ -0,0 +1,48 @@
+package com.banking.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data access for the transfer journal checkpoint: the sequence number of
+ * the last journal record whose postings are in the database
+ */
+public class JournalDAO {
+
+    /**
+     * @return The checkpoint, or 0 if nothing has been checkpointed
+     */
+    public static long getCheckpoint(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "SELECT sequence FROM journal_checkpoint WHERE id = 1");
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong("sequence") : 0;
+        }
+    }
+
+    /**
+     * Moves the checkpoint forward to sequence; never moves it back
+     */
+    public static int advanceCheckpoint(Connection conn, long sequence) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "UPDATE journal_checkpoint SET sequence = ? WHERE id = 1 AND sequence < ?",
+                sequence, sequence)) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves the checkpoint from previous to sequence
+     *
+     * @return 0 if the checkpoint isn't at previous
+     */
+    public static int advanceCheckpoint(Connection conn, long previous, long sequence) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "UPDATE journal_checkpoint SET sequence = ? WHERE id = 1 AND sequence = ?",
+                sequence, previous)) {
+            return stmt.executeUpdate();
+        }
+    }
+}
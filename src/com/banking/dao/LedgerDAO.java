@@ -0,0 +1,85 @@
+package com.banking.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data access for the double-entry ledger (ledger_postings) and its balance
+ * snapshots.
+ *
+ * Postings are written by triggers on accounts and transactions, so there is
+ * nothing to insert here. A historical balance is the latest snapshot taken
+ * at or before the requested time plus the postings after it, and the scan
+ * stops at the next snapshot, so it never reads more than one snapshot
+ * interval of an account's history.
+ */
+public class LedgerDAO {
+
+    /**
+     * Records the balance of every account with at least minPostings postings
+     * since its last snapshot
+     *
+     * @return Number of snapshots taken
+     */
+    public static int takeSnapshots(Connection conn, int minPostings) throws SQLException {
+        // Driven from accounts so each account's new postings are an index range
+        String lastSnapshot = "(SELECT MAX(posting_id) FROM balance_snapshots WHERE account_id = %s)";
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "INSERT INTO balance_snapshots (account_id, posting_id, balance_cents, as_of) " +
+                        "SELECT d.account_id, d.last_id, COALESCE(s.balance_cents, 0) + d.delta, d.as_of FROM (" +
+                        "SELECT p.account_id, MAX(p.id) AS last_id, SUM(p.amount_cents) AS delta, " +
+                        "MAX(p.posted_at) AS as_of, COUNT(*) AS postings " +
+                        "FROM accounts a JOIN ledger_postings p ON p.account_id = a.id " +
+                        "AND p.id > COALESCE(" + String.format(lastSnapshot, "a.id") + ", 0) " +
+                        "GROUP BY p.account_id" +
+                        ") d " +
+                        "LEFT JOIN balance_snapshots s ON s.account_id = d.account_id " +
+                        "AND s.posting_id = " + String.format(lastSnapshot, "d.account_id") + " " +
+                        "WHERE d.postings >= ?",
+                Math.max(1, minPostings))) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Balance of an account at a point in time
+     *
+     * @param asOf Time in SQLite's format (YYYY-MM-DD HH:MM:SS, UTC)
+     * @return Balance in cents, or null if the account didn't exist yet (or
+     *         doesn't exist at all)
+     */
+    public static Long balanceAt(Connection conn, int accountId, String asOf) throws SQLException {
+        long baseCents = 0;
+        long afterPostingId = 0;
+        boolean found = false;
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "SELECT posting_id, balance_cents FROM balance_snapshots " +
+                        "WHERE account_id = ? AND as_of <= ? ORDER BY posting_id DESC LIMIT 1",
+                accountId, asOf);
+                ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                afterPostingId = rs.getLong("posting_id");
+                baseCents = rs.getLong("balance_cents");
+                found = true;
+            }
+        }
+
+        // Postings past the next snapshot are all later than asOf, or that
+        // snapshot would have been picked
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "SELECT COUNT(*), COALESCE(SUM(amount_cents), 0) FROM ledger_postings " +
+                        "WHERE account_id = ? AND id > ? AND posted_at <= ? AND id <= COALESCE(" +
+                        "(SELECT MIN(posting_id) FROM balance_snapshots WHERE account_id = ? AND posting_id > ?), " +
+                        Long.MAX_VALUE + ")",
+                accountId, afterPostingId, asOf, accountId, afterPostingId);
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            if (!found && rs.getLong(1) == 0) {
+                return null;
+            }
+            return baseCents + rs.getLong(2);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.banking.dao;
+
+import com.banking.model.Loan;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Data access for loans
+ */
+public class LoanDAO {
+
+    private static final String COLUMNS_WITH_CUSTOMER = "l.loanid, l.userid, u.name as customerName, l.amount_cents, "
+            + "l.type, l.date, l.status, l.adminComment";
+
+    /**
+     * Maps the loans columns; customerName is set if the query selects it
+     */
+    public static final RowMapper<Loan> MAPPER = rs -> {
+        Loan loan = new Loan();
+        loan.setId(rs.getInt("loanid"));
+        loan.setUserId(rs.getInt("userid"));
+        loan.setAmountCents(rs.getLong("amount_cents"));
+        loan.setType(rs.getString("type"));
+        loan.setDate(rs.getString("date"));
+        loan.setStatus(rs.getString("status"));
+        loan.setAdminComment(rs.getString("adminComment"));
+        return loan;
+    };
+
+    public static final RowMapper<Loan> MAPPER_WITH_CUSTOMER = rs -> {
+        Loan loan = MAPPER.mapRow(rs);
+        loan.setCustomerName(rs.getString("customerName"));
+        return loan;
+    };
+
+    /**
+     * Finds a loan with its customer's name
+     *
+     * @return The loan, or null if not found
+     */
+    public static Loan findById(Connection conn, int loanId) throws SQLException {
+        return DaoSupport.findOne(conn,
+                "SELECT " + COLUMNS_WITH_CUSTOMER + " FROM loans l JOIN users u ON l.userid = u.id " +
+                        "WHERE l.loanid = ?",
+                MAPPER_WITH_CUSTOMER, loanId);
+    }
+
+    /**
+     * Finds a loan that is still pending
+     *
+     * @return The loan, or null if not found or already processed
+     */
+    public static Loan findPendingById(Connection conn, int loanId) throws SQLException {
+        return DaoSupport.findOne(conn,
+                "SELECT loanid, userid, amount_cents, type, date, status, adminComment FROM loans " +
+                        "WHERE loanid = ? AND status = 'pending'",
+                MAPPER, loanId);
+    }
+
+    /**
+     * Streams pending loans with customer names, newest first
+     *
+     * @return Number of loans
+     */
+    public static int forEachPending(Connection conn, RowCallback<Loan> callback) throws SQLException, IOException {
+        return DaoSupport.forEach(conn,
+                "SELECT " + COLUMNS_WITH_CUSTOMER + " FROM loans l JOIN users u ON l.userid = u.id " +
+                        "WHERE l.status = 'pending' ORDER BY l.date DESC",
+                MAPPER_WITH_CUSTOMER, callback);
+    }
+
+    /**
+     * Streams a user's loans, newest first
+     *
+     * @return Number of loans
+     */
+    public static int forEachByUser(Connection conn, int userId, RowCallback<Loan> callback)
+            throws SQLException, IOException {
+        return DaoSupport.forEach(conn,
+                "SELECT loanid, userid, amount_cents, type, date, status, adminComment FROM loans " +
+                        "WHERE userid = ? ORDER BY date DESC",
+                MAPPER, callback, userId);
+    }
+
+    /**
+     * Creates a pending loan request
+     *
+     * @return Number of rows inserted
+     */
+    public static int insertPending(Connection conn, int userId, long amountCents, String type) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "INSERT INTO loans (userid, amount_cents, amount, type, status, adminComment) " +
+                        "VALUES (?, ?, ? / 100.0, ?, 'pending', NULL)",
+                userId, amountCents, amountCents, type)) {
+            return stmt.executeUpdate();
+        }
+    }
+}
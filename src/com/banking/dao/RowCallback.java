@@ -0,0 +1,11 @@
+package com.banking.dao;
+
+import java.io.IOException;
+
+/**
+ * Receives mapped rows one at a time while the query is still open, so
+ * callers can stream them (e.g. into a response) without collecting a list
+ */
+public interface RowCallback<T> {
+    void processRow(T row) throws IOException;
+}
@@ -0,0 +1,140 @@
+package com.banking.dao;
+
+import com.banking.model.ScheduledTransfer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data access for scheduled and standing-order transfers
+ */
+public class ScheduledTransferDAO {
+
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    private static final String COLUMNS = "s.id, s.user_id, s.from_account_id, s.to_account_id, s.amount_cents, "
+            + "s.description, s.frequency, s.anchor_day, s.scheduled_for, s.next_run_at, s.status, s.attempts, "
+            + "s.last_error, s.last_run_at, s.created_at";
+
+    public static final RowMapper<ScheduledTransfer> MAPPER = rs -> {
+        ScheduledTransfer transfer = new ScheduledTransfer();
+        transfer.setId(rs.getInt("id"));
+        transfer.setUserId(rs.getInt("user_id"));
+        transfer.setFromAccountId(rs.getInt("from_account_id"));
+        transfer.setToAccountId(rs.getInt("to_account_id"));
+        transfer.setAmountCents(rs.getLong("amount_cents"));
+        transfer.setDescription(rs.getString("description"));
+        transfer.setFrequency(rs.getString("frequency"));
+        transfer.setAnchorDay(rs.getInt("anchor_day"));
+        transfer.setScheduledFor(rs.getString("scheduled_for"));
+        transfer.setNextRunAt(rs.getString("next_run_at"));
+        transfer.setStatus(rs.getString("status"));
+        transfer.setAttempts(rs.getInt("attempts"));
+        transfer.setLastError(rs.getString("last_error"));
+        transfer.setLastRunAt(rs.getString("last_run_at"));
+        transfer.setCreatedAt(rs.getString("created_at"));
+        return transfer;
+    };
+
+    public static final RowMapper<ScheduledTransfer> MAPPER_WITH_ACCOUNT_NUMBER = rs -> {
+        ScheduledTransfer transfer = MAPPER.mapRow(rs);
+        transfer.setToAccountNumber(rs.getString("to_account_number"));
+        return transfer;
+    };
+
+    /**
+     * Inserts an active scheduled transfer
+     *
+     * @return The new id
+     */
+    public static int insert(Connection conn, ScheduledTransfer transfer) throws SQLException {
+        return DaoSupport.insertAndGetKey(conn,
+                "INSERT INTO scheduled_transfers (user_id, from_account_id, to_account_id, amount_cents, description, " +
+                        "frequency, anchor_day, scheduled_for, next_run_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                transfer.getUserId(), transfer.getFromAccountId(), transfer.getToAccountId(),
+                transfer.getAmountCents(), transfer.getDescription(), transfer.getFrequency(),
+                transfer.getAnchorDay(), transfer.getScheduledFor(), transfer.getNextRunAt());
+    }
+
+    /**
+     * Pages through active transfers due up to a time, ordered by
+     * (next_run_at, id) and starting after the given position
+     *
+     * @param afterRunAt next_run_at of the last row of the previous page, or
+     *                   "" for the first page
+     * @param afterId    id of that row
+     * @param until      Latest next_run_at to return (UTC)
+     */
+    public static List<ScheduledTransfer> findActiveDue(Connection conn, String afterRunAt, int afterId,
+            String until, int limit) throws SQLException {
+        return DaoSupport.findAll(conn,
+                "SELECT " + COLUMNS + " FROM scheduled_transfers s " +
+                        "WHERE s.status = 'active' AND (s.next_run_at, s.id) > (?, ?) AND s.next_run_at <= ? " +
+                        "ORDER BY s.next_run_at, s.id LIMIT ?",
+                MAPPER, afterRunAt, afterId, until, limit);
+    }
+
+    /**
+     * Finds the transfers with the given ids that are still active,
+     * MAX_IN_PARAMETERS per query
+     */
+    public static List<ScheduledTransfer> findActiveByIds(Connection conn, List<Integer> ids) throws SQLException {
+        List<ScheduledTransfer> transfers = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += MAX_IN_PARAMETERS) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IN_PARAMETERS));
+            StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM scheduled_transfers s " +
+                    "WHERE s.status = 'active' AND s.id IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            transfers.addAll(DaoSupport.findAll(conn, sql.toString(), MAPPER, chunk.toArray()));
+        }
+        return transfers;
+    }
+
+    /**
+     * Finds a user's scheduled transfers with their destination account
+     * numbers, newest first
+     */
+    public static List<ScheduledTransfer> findByUser(Connection conn, int userId) throws SQLException {
+        return DaoSupport.findAll(conn,
+                "SELECT " + COLUMNS + ", a.account_number AS to_account_number FROM scheduled_transfers s " +
+                        "JOIN accounts a ON a.id = s.to_account_id WHERE s.user_id = ? ORDER BY s.id DESC",
+                MAPPER_WITH_ACCOUNT_NUMBER, userId);
+    }
+
+    /**
+     * Stops an active transfer belonging to a user
+     *
+     * @return Number of rows updated (0 if not found, not the user's or no
+     *         longer active)
+     */
+    public static int cancel(Connection conn, int id, int userId) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "UPDATE scheduled_transfers SET status = 'cancelled' " +
+                        "WHERE id = ? AND user_id = ? AND status = 'active'",
+                id, userId)) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Stores the state of a transfer after an attempt to run it. A transfer
+     * cancelled in the meantime is left cancelled.
+     *
+     * @return Number of rows updated
+     */
+    public static int updateAfterRun(Connection conn, ScheduledTransfer transfer) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "UPDATE scheduled_transfers SET scheduled_for = ?, next_run_at = ?, status = ?, attempts = ?, " +
+                        "last_error = ?, last_run_at = CURRENT_TIMESTAMP WHERE id = ? AND status = 'active'",
+                transfer.getScheduledFor(), transfer.getNextRunAt(), transfer.getStatus(), transfer.getAttempts(),
+                transfer.getLastError(), transfer.getId())) {
+            return stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.banking.dao;
+
+import com.banking.model.Account;
+import com.banking.model.Transaction;
+import com.banking.util.BalanceEngine;
+import com.banking.util.PageCursor;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Data access for transaction lists.
+ *
+ * Lists are ordered newest first by (timestamp, id) and paged either by a
+ * {@link PageCursor} or, without one, by page number. Rows are handed to a
+ * {@link RowCallback} while the query is open, one flat Transaction per row.
+ * Account numbers are returned as stored; masking them is up to the caller.
+ */
+public class TransactionDAO {
+
+    private static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM dd, yyyy");
+
+    // Flagged transactions are left out of both lists
+    private static final String USER_SELECT = "SELECT t.id, t.timestamp as sort_ts, " +
+            "strftime('%Y-%m-%d', t.timestamp) as formatted_date, t.amount_cents, t.description, t.type, " +
+            "a1.account_number as from_account, a2.account_number as to_account, " +
+            "a1.user_id as from_user_id, a2.user_id as to_user_id, " +
+            "u.name as user_name " +
+            "FROM transactions t " +
+            "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
+            "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
+            "LEFT JOIN users u ON (CASE WHEN a1.user_id = ? THEN a2.user_id ELSE a1.user_id END) = u.id " +
+            "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
+            "WHERE (a1.user_id = ? OR a2.user_id = ?) AND ft.id IS NULL ";
+
+    private static final String ALL_SELECT = "SELECT t.id, t.timestamp as sort_ts, " +
+            "strftime('%Y-%m-%d', t.timestamp) as formatted_date, t.amount_cents, t.description, t.type, " +
+            "a1.account_number as from_account, a2.account_number as to_account, " +
+            "a1.user_id as from_user_id, a2.user_id as to_user_id, " +
+            // SQLite has no CONCAT function
+            "COALESCE(u1.name, 'Unknown') || ' (' || COALESCE(a1.user_id, 0) || ')' as from_user_name, " +
+            "COALESCE(u2.name, 'Unknown') || ' (' || COALESCE(a2.user_id, 0) || ')' as to_user_name " +
+            "FROM transactions t " +
+            "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
+            "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
+            "LEFT JOIN users u1 ON a1.user_id = u1.id " +
+            "LEFT JOIN users u2 ON a2.user_id = u2.id " +
+            "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
+            "WHERE ft.id IS NULL ";
+
+    // Rows after an id, once for each side that has an owner, seen from that
+    // owner as in USER_SELECT. A transfer between two accounts of the same user
+    // only comes from the debit side.
+    private static final String SIDES_AFTER_SELECT = "SELECT t.id, t.timestamp as sort_ts, " +
+            "strftime('%Y-%m-%d', t.timestamp) as formatted_date, t.amount_cents, t.description, t.type, " +
+            "a1.account_number as from_account, a2.account_number as to_account, " +
+            "a1.user_id as from_user_id, a2.user_id as to_user_id, u2.name as user_name, 1 as debit_side " +
+            "FROM transactions t " +
+            "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
+            "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
+            "LEFT JOIN users u2 ON a2.user_id = u2.id " +
+            "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
+            "WHERE t.id > ? AND ft.id IS NULL AND a1.user_id IS NOT NULL " +
+            "UNION ALL " +
+            "SELECT t.id, t.timestamp, strftime('%Y-%m-%d', t.timestamp), t.amount_cents, t.description, t.type, " +
+            "a1.account_number, a2.account_number, a1.user_id, a2.user_id, u1.name, 0 " +
+            "FROM transactions t " +
+            "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
+            "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
+            "LEFT JOIN users u1 ON a1.user_id = u1.id " +
+            "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
+            "WHERE t.id > ? AND ft.id IS NULL AND a2.user_id IS NOT NULL AND a2.user_id IS NOT a1.user_id " +
+            "ORDER BY 1";
+
+    /**
+     * Outcome of streaming one page
+     */
+    public static class PageResult {
+        private final int rowCount;
+        private final String nextCursor;
+        private final String prevCursor;
+
+        PageResult(int rowCount, String nextCursor, String prevCursor) {
+            this.rowCount = rowCount;
+            this.nextCursor = nextCursor;
+            this.prevCursor = prevCursor;
+        }
+
+        /**
+         * Number of rows handed to the callback
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Token for the next (older) page, or null if this is the last one
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * Token for the previous (newer) page, or null if this is the first one
+         */
+        public String getPrevCursor() {
+            return prevCursor;
+        }
+    }
+
+    /**
+     * Streams one page of a user's unflagged transactions. isDebit is set when
+     * the money left one of the user's accounts, and userName is the other
+     * party's name.
+     *
+     * @param cursor Cursor from a previous page, or null to page by number
+     */
+    public static PageResult forEachUserPage(Connection conn, int userId, int page, int size, PageCursor cursor,
+            RowCallback<Transaction> callback) throws SQLException, IOException {
+        RowMapper<Transaction> mapper = rs -> {
+            Transaction transaction = mapCommon(rs);
+            transaction.setIsDebit(transaction.getFromUserId() == userId);
+            transaction.setUserName(rs.getString("user_name"));
+            return transaction;
+        };
+
+        try (PreparedStatement stmt = conn.prepareStatement(pagedQuery(USER_SELECT, cursor))) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, userId);
+            stmt.setInt(3, userId);
+            bindPageParameters(stmt, 4, cursor, page, size);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return streamPage(rs, mapper, page, size, cursor, callback);
+            }
+        }
+    }
+
+    /**
+     * Streams one page of all unflagged transactions. Rows are marked as
+     * debits and userName names both parties ("from → to").
+     *
+     * @param cursor Cursor from a previous page, or null to page by number
+     */
+    public static PageResult forEachPage(Connection conn, int page, int size, PageCursor cursor,
+            RowCallback<Transaction> callback) throws SQLException, IOException {
+        RowMapper<Transaction> mapper = rs -> {
+            Transaction transaction = mapCommon(rs);
+            transaction.setIsDebit(true);
+            transaction.setUserName(rs.getString("from_user_name") + " → " + rs.getString("to_user_name"));
+            return transaction;
+        };
+
+        try (PreparedStatement stmt = conn.prepareStatement(pagedQuery(ALL_SELECT, cursor))) {
+            bindPageParameters(stmt, 1, cursor, page, size);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return streamPage(rs, mapper, page, size, cursor, callback);
+            }
+        }
+    }
+
+    /**
+     * Streams the unflagged transactions with an id above afterId, in id
+     * order, as rows of {@link #forEachUserPage} for each user involved. The
+     * user a row is for is the sender if isDebit is set and the recipient
+     * otherwise.
+     */
+    public static void forEachUserRowAfter(Connection conn, long afterId, RowCallback<Transaction> callback)
+            throws SQLException, IOException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn, SIDES_AFTER_SELECT, afterId, afterId);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Transaction transaction = mapCommon(rs);
+                transaction.setIsDebit(rs.getInt("debit_side") == 1);
+                transaction.setUserName(rs.getString("user_name"));
+                callback.processRow(transaction);
+            }
+        }
+    }
+
+    /**
+     * Highest transaction id, or 0 if there are none
+     */
+    public static long findMaxId(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM transactions");
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Owners of a transaction's two accounts
+     *
+     * @return The source and destination user ids, 0 for a side without an
+     *         owner, or null if there is no such transaction
+     */
+    public static int[] findUserIds(Connection conn, int transactionId) throws SQLException {
+        try (PreparedStatement stmt = DaoSupport.prepare(conn, "SELECT a1.user_id, a2.user_id " +
+                "FROM transactions t " +
+                "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
+                "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
+                "WHERE t.id = ?", transactionId);
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? new int[] { rs.getInt(1), rs.getInt(2) } : null;
+        }
+    }
+
+    /**
+     * Records a transaction
+     *
+     * @param fromAccountId Source account, or null for money coming in from outside (e.g. a loan)
+     * @param toAccountId   Destination account, or null for money leaving the bank
+     * @return Number of rows inserted
+     */
+    public static int insert(Connection conn, Integer fromAccountId, Integer toAccountId, String type,
+            long amountCents, String description) throws SQLException {
+        // amount is kept in step for pages that still read the DECIMAL column
+        try (PreparedStatement stmt = DaoSupport.prepare(conn,
+                "INSERT INTO transactions (from_account_id, to_account_id, type, amount_cents, amount, description) " +
+                        "VALUES (?, ?, ?, ?, ? / 100.0, ?)",
+                fromAccountId, toAccountId, type, amountCents, amountCents, description)) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Checks and applies a transfer between two accounts on a write
+     * connection: the same checks, in the same order, as the balance engine,
+     * then both balance updates and the transaction row. Nothing is written
+     * unless the status is OK.
+     *
+     * @param ownerId User the source account must belong to
+     * @return Why the transfer was refused, or OK if it was applied
+     * @throws SQLException if an update or the insert didn't take
+     */
+    public static BalanceEngine.TransferStatus transfer(Connection conn, int fromAccountId, int ownerId,
+            int toAccountId, long amountCents, String description) throws SQLException {
+        Account source = AccountDAO.findById(conn, fromAccountId);
+        if (source == null || source.getUserId() != ownerId) {
+            return BalanceEngine.TransferStatus.NOT_OWNER;
+        }
+        if (source.getBalanceCents() < amountCents) {
+            return BalanceEngine.TransferStatus.INSUFFICIENT_FUNDS;
+        }
+        if (AccountDAO.findById(conn, toAccountId) == null) {
+            return BalanceEngine.TransferStatus.UNKNOWN_DESTINATION;
+        }
+        if (fromAccountId == toAccountId) {
+            return BalanceEngine.TransferStatus.SAME_ACCOUNT;
+        }
+
+        if (AccountDAO.adjustBalance(conn, fromAccountId, -amountCents) == 0
+                || AccountDAO.adjustBalance(conn, toAccountId, amountCents) == 0) {
+            throw new SQLException("Failed to update account balance. Account may not exist.");
+        }
+        if (insert(conn, fromAccountId, toAccountId, "transfer", amountCents, description) == 0) {
+            throw new SQLException("Failed to create transaction record.");
+        }
+        return BalanceEngine.TransferStatus.OK;
+    }
+
+    /**
+     * Inserts the transaction rows of a bulk transfer as one JDBC batch. Row i
+     * moves amountsCents[i] from fromAccountId to toAccountIds[i].
+     *
+     * @throws SQLException if any row wasn't inserted
+     */
+    public static void insertTransfers(Connection conn, int fromAccountId, int[] toAccountIds, long[] amountsCents,
+            String[] descriptions) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO transactions (from_account_id, to_account_id, type, amount_cents, amount, description) " +
+                        "VALUES (?, ?, 'transfer', ?, ? / 100.0, ?)")) {
+            for (int i = 0; i < toAccountIds.length; i++) {
+                stmt.setInt(1, fromAccountId);
+                stmt.setInt(2, toAccountIds[i]);
+                stmt.setLong(3, amountsCents[i]);
+                stmt.setLong(4, amountsCents[i]);
+                stmt.setString(5, descriptions[i]);
+                stmt.addBatch();
+            }
+            for (int rows : stmt.executeBatch()) {
+                if (rows == 0) {
+                    throw new SQLException("Failed to create transaction record.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the columns shared by both list queries
+     */
+    private static Transaction mapCommon(ResultSet rs) throws SQLException {
+        Transaction transaction = new Transaction();
+        transaction.setId(rs.getInt("id"));
+        transaction.setTimestamp(rs.getString("sort_ts"));
+        transaction.setDate(formatDate(rs.getString("formatted_date")));
+        transaction.setDescription(rs.getString("description"));
+        transaction.setType(rs.getString("type"));
+        transaction.setAmountCents(rs.getLong("amount_cents"));
+        transaction.setFromAccount(rs.getString("from_account"));
+        transaction.setToAccount(rs.getString("to_account"));
+        transaction.setFromUserId(rs.getInt("from_user_id"));
+        transaction.setToUserId(rs.getInt("to_user_id"));
+        return transaction;
+    }
+
+    /**
+     * Builds a list query from its SELECT ... WHERE part: keyset paging from
+     * the cursor if there is one, otherwise the page offset. One extra row is
+     * fetched to tell whether there is more beyond this page.
+     *
+     * Rows always come back newest first. A backward page has to be read in
+     * ascending order to find the rows just above the cursor, so it is wrapped
+     * in an outer query that flips it back and reports the row count
+     * (page_rows), letting {@link #streamPage} skip the look-ahead row at the
+     * top.
+     */
+    private static String pagedQuery(String selectWhere, PageCursor cursor) {
+        if (cursor == null) {
+            return selectWhere + "ORDER BY t.timestamp DESC, t.id DESC LIMIT ? OFFSET ?";
+        }
+        String keyset = selectWhere + "AND " + cursor.toSqlCondition() + " " + cursor.toSqlOrderBy() + " LIMIT ?";
+        if (!cursor.isBackward()) {
+            return keyset;
+        }
+        return "SELECT *, COUNT(*) OVER () AS page_rows FROM (" + keyset + ") ORDER BY sort_ts DESC, id DESC";
+    }
+
+    /**
+     * Binds the parameters of {@link #pagedQuery} starting at index
+     */
+    private static void bindPageParameters(PreparedStatement stmt, int index, PageCursor cursor, int page, int size)
+            throws SQLException {
+        if (cursor != null) {
+            stmt.setString(index++, cursor.getTimestamp());
+            stmt.setLong(index++, cursor.getId());
+            stmt.setInt(index, size + 1);
+        } else {
+            stmt.setInt(index++, size + 1);
+            stmt.setInt(index, Math.max(0, (page - 1) * size));
+        }
+    }
+
+    /**
+     * Hands at most size rows of a {@link #pagedQuery} result to the callback
+     * and works out the cursors to the neighbouring pages
+     */
+    private static PageResult streamPage(ResultSet rs, RowMapper<Transaction> mapper, int page, int size,
+            PageCursor cursor, RowCallback<Transaction> callback) throws SQLException, IOException {
+        boolean backward = cursor != null && cursor.isBackward();
+        boolean hasRows = rs.next();
+
+        // Backward pages lead with the look-ahead row, if there is one
+        boolean hasMoreBackward = hasRows && backward && rs.getInt("page_rows") > size;
+        boolean more = hasMoreBackward ? rs.next() : hasRows;
+        boolean hasMoreForward = false;
+
+        int count = 0;
+        Transaction first = null;
+        Transaction last = null;
+        while (more) {
+            if (count == size) {
+                // Look-ahead row: there is at least one more page
+                hasMoreForward = true;
+                break;
+            }
+            last = mapper.mapRow(rs);
+            if (first == null) {
+                first = last;
+            }
+            callback.processRow(last);
+            count++;
+            more = rs.next();
+        }
+
+        String nextCursor = null;
+        String prevCursor = null;
+        if (count > 0) {
+            boolean hasOlder = backward || hasMoreForward;
+            boolean hasNewer = cursor != null ? (!backward || hasMoreBackward) : page > 1;
+            if (hasOlder) {
+                nextCursor = PageCursor.next(last.getTimestamp(), last.getId()).encode();
+            }
+            if (hasNewer) {
+                prevCursor = PageCursor.prev(first.getTimestamp(), first.getId()).encode();
+            }
+        }
+        return new PageResult(count, nextCursor, prevCursor);
+    }
+
+    /**
+     * Formats a YYYY-MM-DD date from SQLite for display
+     */
+    private static String formatDate(String dateStr) {
+        try {
+            return LocalDate.parse(dateStr).format(DISPLAY_DATE_FORMAT);
+        } catch (Exception e) {
+            // Fallback if date parsing fails
+            System.err.println("Error parsing date: " + dateStr + " - " + e.getMessage());
+            return "Unknown Date";
+        }
+    }
+}
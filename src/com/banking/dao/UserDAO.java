@@ -0,0 +1,70 @@
+package com.banking.dao;
+
+import com.banking.model.User;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Data access for users
+ */
+public class UserDAO {
+
+    private static final String PROFILE_COLUMNS = "id, name, email, role, status, created_at";
+
+    /**
+     * Maps a user without the password hash and salt
+     */
+    public static final RowMapper<User> PROFILE_MAPPER = rs -> {
+        User user = new User();
+        user.setId(rs.getInt("id"));
+        user.setName(rs.getString("name"));
+        user.setEmail(rs.getString("email"));
+        user.setRole(rs.getString("role"));
+        user.setStatus(rs.getString("status"));
+        user.setCreatedAt(rs.getTimestamp("created_at"));
+        return user;
+    };
+
+    /**
+     * Maps a user with the password hash and salt
+     */
+    public static final RowMapper<User> CREDENTIALS_MAPPER = rs -> {
+        User user = PROFILE_MAPPER.mapRow(rs);
+        user.setPasswordHash(rs.getString("password_hash"));
+        user.setSalt(rs.getString("salt"));
+        return user;
+    };
+
+    /**
+     * Finds a user by ID. Excludes the password hash and salt.
+     *
+     * @return The user, or null if not found
+     */
+    public static User findById(Connection conn, int userId) throws SQLException {
+        return DaoSupport.findOne(conn, "SELECT " + PROFILE_COLUMNS + " FROM users WHERE id = ?", PROFILE_MAPPER,
+                userId);
+    }
+
+    /**
+     * Finds a user by email. Excludes the password hash and salt.
+     *
+     * @return The user, or null if not found
+     */
+    public static User findByEmail(Connection conn, String email) throws SQLException {
+        return DaoSupport.findOne(conn, "SELECT " + PROFILE_COLUMNS + " FROM users WHERE email = ?", PROFILE_MAPPER,
+                email);
+    }
+
+    /**
+     * Finds a user by email, including the password hash and salt, so a login
+     * needs only this one query
+     *
+     * @return The user, or null if not found
+     */
+    public static User findWithCredentialsByEmail(Connection conn, String email) throws SQLException {
+        return DaoSupport.findOne(conn,
+                "SELECT " + PROFILE_COLUMNS + ", password_hash, salt FROM users WHERE email = ?",
+                CREDENTIALS_MAPPER, email);
+    }
+}
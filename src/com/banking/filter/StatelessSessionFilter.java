@@ -0,0 +1,169 @@
+package com.banking.filter;
+
+import com.banking.util.ConfigUtil;
+import com.banking.util.SessionTokens;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * Stateless session mode, enabled with banking.session.mode=stateless, for
+ * running several Tomcat nodes behind a plain round-robin balancer.
+ *
+ * Instead of a container session the user is carried in a signed cookie (see
+ * {@link SessionTokens}). For each request this filter checks the cookie and
+ * hands on a request whose {@code getSession} returns a {@link TokenSession}
+ * holding the same "user", "userId", "userRole" and "userName" attributes a
+ * login stores, and whose {@code getUserPrincipal} is the token's user.
+ * Nothing is kept on the server between requests. A token past half its
+ * lifetime is reissued, so an active user stays logged in like with the
+ * container's idle timeout.
+ *
+ * The cookie is marked Secure when the request came over HTTPS, so plain
+ * HTTP (e.g. local development) still works. Behind a balancer that
+ * terminates TLS the requests reach Tomcat as HTTP; set
+ * banking.session.secureCookie=true there to mark it Secure regardless.
+ *
+ * Only sessions are shared this way; other components keep their state in
+ * one JVM, so in this mode they default to off. The in-memory balance engine
+ * (banking.balances.inMemory) and recent transactions cache
+ * (banking.transactions.recent.enabled) can't be enabled at all. The account
+ * directory and login throttle can, the throttle's limits then applying per
+ * node. The transfer scheduler (banking.scheduler.enabled) must be enabled on
+ * exactly one node. Idempotency keys held on one node aren't seen by others,
+ * but the database refuses a second outcome for the same key.
+ *
+ * In the default mode the filter passes requests through untouched.
+ */
+@WebFilter(urlPatterns = "/*", dispatcherTypes = { DispatcherType.REQUEST, DispatcherType.ERROR })
+public class StatelessSessionFilter extends HttpFilter {
+
+    static final String COOKIE_NAME = "BANKING_SESSION";
+    public static final String TOKENS_ATTRIBUTE = "com.banking.sessionTokens";
+
+    private SessionTokens tokens; // null unless stateless
+    private boolean alwaysSecure; // Secure cookie even on plain HTTP requests
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        super.init(config);
+        if (SessionTokens.isStatelessMode()) {
+            tokens = SessionTokens.fromConfig();
+            alwaysSecure = ConfigUtil.getBoolean("banking.session.secureCookie", false);
+            config.getServletContext().setAttribute(TOKENS_ATTRIBUTE, tokens);
+            System.out.println("StatelessSessionFilter: Stateless sessions enabled (ttl=" + tokens.getTtlSeconds()
+                    + "s)");
+        }
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (tokens == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        SessionTokens.SessionPrincipal principal = tokens.verify(readCookie(request));
+        String cookiePath = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        TokenRequest wrapped = new TokenRequest(request, response, cookiePath, alwaysSecure || request.isSecure(),
+                principal);
+        if (principal != null
+                && principal.getExpiresAt() - System.currentTimeMillis() / 1000 < tokens.getTtlSeconds() / 2) {
+            wrapped.session.renew();
+        }
+        chain.doFilter(wrapped, response);
+    }
+
+    private static String readCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Request whose session and principal come from the token
+     */
+    private class TokenRequest extends HttpServletRequestWrapper {
+        private final HttpServletResponse response;
+        private final String cookiePath;
+        private final boolean secureCookie;
+        private final SessionTokens.SessionPrincipal principal;
+        private TokenSession session;
+
+        TokenRequest(HttpServletRequest request, HttpServletResponse response, String cookiePath,
+                boolean secureCookie, SessionTokens.SessionPrincipal principal) {
+            super(request);
+            this.response = response;
+            this.cookiePath = cookiePath;
+            this.secureCookie = secureCookie;
+            this.principal = principal;
+            if (principal != null) {
+                session = newSession(principal);
+            }
+        }
+
+        private TokenSession newSession(SessionTokens.SessionPrincipal from) {
+            return new TokenSession(tokens, response, getServletContext(), cookiePath, secureCookie, from);
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            if (session != null && session.isInvalidated()) {
+                session = null;
+            }
+            if (session == null && create) {
+                session = newSession(null);
+            }
+            return session;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public String changeSessionId() {
+            return getSession(true).getId();
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            return principal != null;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public String getRemoteUser() {
+            return principal != null ? principal.getName() : null;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return principal != null && principal.getRole().equalsIgnoreCase(role);
+        }
+    }
+}
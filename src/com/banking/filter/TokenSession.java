@@ -0,0 +1,165 @@
+package com.banking.filter;
+
+import com.banking.model.User;
+import com.banking.util.SessionTokens;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A session that lives only for one request. Its attributes come from the
+ * session token, and the token cookie is the only thing that outlives the
+ * request: storing a {@link User} under "user" issues a token for it, and
+ * {@link #invalidate} clears the cookie.
+ */
+class TokenSession implements HttpSession {
+
+    private final SessionTokens tokens;
+    private final HttpServletResponse response;
+    private final ServletContext servletContext;
+    private final String cookiePath;
+    private final boolean secureCookie;
+    private final boolean isNew;
+    private final long createdAt = System.currentTimeMillis();
+    private final String id = UUID.randomUUID().toString();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private boolean invalidated;
+
+    TokenSession(SessionTokens tokens, HttpServletResponse response, ServletContext servletContext,
+            String cookiePath, boolean secureCookie, SessionTokens.SessionPrincipal principal) {
+        this.tokens = tokens;
+        this.response = response;
+        this.servletContext = servletContext;
+        this.cookiePath = cookiePath;
+        this.secureCookie = secureCookie;
+        this.isNew = principal == null;
+        if (principal != null) {
+            // Only what the token carries; pages use the ID, role and name
+            User user = new User();
+            user.setId(principal.getUserId());
+            user.setRole(principal.getRole());
+            user.setName(principal.getDisplayName());
+            attributes.put("user", user);
+            attributes.put("userId", principal.getUserId());
+            attributes.put("userRole", principal.getRole());
+            attributes.put("userName", principal.getDisplayName());
+        }
+    }
+
+    /**
+     * Adds the token cookie to the response
+     */
+    void writeCookie(String token, int maxAgeSeconds) {
+        Cookie cookie = new Cookie(StatelessSessionFilter.COOKIE_NAME, token);
+        cookie.setPath(cookiePath);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(secureCookie);
+        cookie.setAttribute("SameSite", "Lax");
+        cookie.setMaxAge(maxAgeSeconds);
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Issues a fresh token for the session's user
+     */
+    void renew() {
+        User user = (User) attributes.get("user");
+        if (user != null) {
+            writeCookie(tokens.issue(user.getId(), user.getRole(), user.getName()), (int) tokens.getTtlSeconds());
+        }
+    }
+
+    boolean isInvalidated() {
+        return invalidated;
+    }
+
+    private void checkValid() {
+        if (invalidated) {
+            throw new IllegalStateException("Session already invalidated");
+        }
+    }
+
+    @Override
+    public long getCreationTime() {
+        checkValid();
+        return createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+        checkValid();
+        return createdAt;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return servletContext;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+        // Token lifetime is fixed by banking.session.ttlMinutes
+    }
+
+    @Override
+    public int getMaxInactiveInterval() {
+        return (int) tokens.getTtlSeconds();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        checkValid();
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        checkValid();
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        checkValid();
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        attributes.put(name, value);
+        if ("user".equals(name) && value instanceof User) {
+            renew();
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        checkValid();
+        attributes.remove(name);
+    }
+
+    @Override
+    public void invalidate() {
+        checkValid();
+        invalidated = true;
+        attributes.clear();
+        writeCookie("", 0);
+    }
+
+    @Override
+    public boolean isNew() {
+        checkValid();
+        return isNew;
+    }
+}
@@ -0,0 +1,30 @@
+package com.banking.listener;
+
+import com.banking.util.DatabaseUtil;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Initializes the database when the web application starts and releases
+ * pooled connections when it stops, so redeploys don't leave SQLite file
+ * handles open inside Tomcat.
+ */
+@WebListener
+public class DatabaseLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        System.out.println("DatabaseLifecycleListener: Initializing database...");
+        if (DatabaseUtil.getConnectionPool() == null) {
+            System.err.println("DatabaseLifecycleListener: Database initialization failed, will retry on first use.");
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        System.out.println("DatabaseLifecycleListener: Shutting down database connections...");
+        DatabaseUtil.shutdown();
+    }
+}
@@ -0,0 +1,78 @@
+package com.banking.model;
+
+import java.sql.Timestamp;
+
+/**
+ * Represents a customer's bank account
+ */
+public class Account {
+    private int id;
+    private int userId;
+    private String accountNumber;
+    private String type;
+    private long balanceCents; // See Money
+    private Timestamp createdAt;
+
+    // Default constructor
+    public Account() {
+    }
+
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getBalanceCents() {
+        return balanceCents;
+    }
+
+    public void setBalanceCents(long balanceCents) {
+        this.balanceCents = balanceCents;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Account{" +
+                "id=" + id +
+                ", userId=" + userId +
+                ", accountNumber='" + accountNumber + '\'' +
+                ", type='" + type + '\'' +
+                '}';
+    }
+}
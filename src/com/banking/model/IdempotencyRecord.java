@@ -0,0 +1,57 @@
+package com.banking.model;
+
+/**
+ * Stored outcome of a request made with an Idempotency-Key
+ */
+public class IdempotencyRecord {
+    private int userId;
+    private String key;
+    private String fingerprint; // Hash of the request the key was first used with
+    private boolean success;
+    private String message;
+
+    // Default constructor
+    public IdempotencyRecord() {
+    }
+
+    // Getters and Setters
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,175 @@
+package com.banking.model;
+
+/**
+ * An amount of money held as a whole number of cents.
+ *
+ * Amounts are parsed from and formatted to decimal strings directly, so
+ * arithmetic and comparisons are exact and never go through double. Code on
+ * hot paths can use the static {@link #parseCents} and {@link #format}
+ * helpers on raw long cents to avoid allocating Money objects at all.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "12.5" or "-0.25"
+     *
+     * @throws NumberFormatException if the amount is malformed, has more than
+     *                               two decimal places or is out of range
+     */
+    public static Money parse(String amount) {
+        return ofCents(parseCents(amount));
+    }
+
+    /**
+     * Parses a decimal amount into cents, see {@link #parse}
+     */
+    public static long parseCents(String amount) {
+        if (amount == null) {
+            throw new NumberFormatException("Amount is missing");
+        }
+        String s = amount.trim();
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int unitDigits = 0;
+        while (i < length && isDigit(s.charAt(i))) {
+            units = checkedAppendDigit(units, s.charAt(i), amount);
+            unitDigits++;
+            i++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < length && s.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(s.charAt(i))) {
+                if (fractionDigits == 2) {
+                    throw new NumberFormatException("Amount has more than two decimal places: " + amount);
+                }
+                fraction = fraction * 10 + (s.charAt(i) - '0');
+                fractionDigits++;
+                i++;
+            }
+        }
+
+        if (i != length || unitDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Invalid amount: " + amount);
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        try {
+            long cents = Math.addExact(Math.multiplyExact(units, 100), fraction);
+            return negative ? -cents : cents;
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + amount);
+        }
+    }
+
+    /**
+     * Formats cents as a decimal string with two places, e.g. 123456 as
+     * "1234.56" and -5 as "-0.05". The result is also a valid JSON number.
+     */
+    public static String format(long cents) {
+        // Divide before taking the absolute value so Long.MIN_VALUE can't overflow
+        long units = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+        StringBuilder sb = new StringBuilder(24);
+        if (cents < 0) {
+            sb.append('-');
+        }
+        sb.append(units).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * The amount as a decimal string, see {@link #format}
+     */
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long checkedAppendDigit(long value, char digit, String amount) {
+        try {
+            return Math.addExact(Math.multiplyExact(value, 10), digit - '0');
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + amount);
+        }
+    }
+}
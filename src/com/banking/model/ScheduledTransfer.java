@@ -0,0 +1,156 @@
+package com.banking.model;
+
+/**
+ * A transfer scheduled for later, run once or repeated as a standing order
+ */
+public class ScheduledTransfer {
+    private int id;
+    private int userId;
+    private int fromAccountId;
+    private int toAccountId;
+    private String toAccountNumber; // Only set by queries that join accounts
+    private long amountCents; // See Money
+    private String description;
+    private String frequency; // once, daily, weekly or monthly
+    private int anchorDay; // Day of the month monthly orders run on
+    private String scheduledFor; // Occurrence being paid (UTC)
+    private String nextRunAt; // Next attempt at it (UTC)
+    private String status; // active, completed, cancelled or failed
+    private int attempts; // Failed attempts at this occurrence
+    private String lastError;
+    private String lastRunAt;
+    private String createdAt;
+
+    // Default constructor
+    public ScheduledTransfer() {
+    }
+
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public int getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public void setFromAccountId(int fromAccountId) {
+        this.fromAccountId = fromAccountId;
+    }
+
+    public int getToAccountId() {
+        return toAccountId;
+    }
+
+    public void setToAccountId(int toAccountId) {
+        this.toAccountId = toAccountId;
+    }
+
+    public String getToAccountNumber() {
+        return toAccountNumber;
+    }
+
+    public void setToAccountNumber(String toAccountNumber) {
+        this.toAccountNumber = toAccountNumber;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getFrequency() {
+        return frequency;
+    }
+
+    public void setFrequency(String frequency) {
+        this.frequency = frequency;
+    }
+
+    public int getAnchorDay() {
+        return anchorDay;
+    }
+
+    public void setAnchorDay(int anchorDay) {
+        this.anchorDay = anchorDay;
+    }
+
+    public String getScheduledFor() {
+        return scheduledFor;
+    }
+
+    public void setScheduledFor(String scheduledFor) {
+        this.scheduledFor = scheduledFor;
+    }
+
+    public String getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public void setNextRunAt(String nextRunAt) {
+        this.nextRunAt = nextRunAt;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public String getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public void setLastRunAt(String lastRunAt) {
+        this.lastRunAt = lastRunAt;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
+}
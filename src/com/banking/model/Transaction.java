@@ -6,9 +6,10 @@ package com.banking.model;
 public class Transaction {
     private int id;
     private String date;
+    private String timestamp; // Raw database value, used as the paging key
     private String description;
     private String type;
-    private double amount;
+    private long amountCents; // See Money
     private boolean isDebit;
     private String fromAccount;
     private String toAccount;
@@ -37,6 +38,14 @@ public class Transaction {
         this.date = date;
     }
 
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -53,12 +62,12 @@ public class Transaction {
         this.type = type;
     }
 
-    public double getAmount() {
-        return amount;
+    public long getAmountCents() {
+        return amountCents;
     }
 
-    public void setAmount(double amount) {
-        this.amount = amount;
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
     }
 
     public boolean getIsDebit() {
@@ -1,7 +1,15 @@
 package com.banking.servlet;
 
+import com.banking.dao.AccountDAO;
+import com.banking.dao.LoanDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.Account;
+import com.banking.model.Loan;
+import com.banking.model.Money;
 import com.banking.model.User;
+import com.banking.util.BalanceEngine;
 import com.banking.util.DatabaseUtil;
+import com.banking.util.TransactionExecutor;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -11,10 +19,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 
 /**
  * Servlet that handles loan approval requests
@@ -57,50 +62,25 @@ public class ApproveLoanServlet extends HttpServlet {
             int loanId = Integer.parseInt(loanIdParam);
             int adminId = currentUser.getId();
 
-            // Get loan details to find userId and amount
-            Connection conn = null;
-            try {
-                conn = DatabaseUtil.getConnection();
-                conn.setAutoCommit(false); // Start transaction
-
+            // Approve and disburse on the single database writer; any exception
+            // rolls the whole approval back
+            ApprovalOutcome outcome = DatabaseUtil.write("approveLoanRequest", conn -> {
                 // First, get the loan details
-                int userId = 0;
-                double loanAmount = 0;
-                String loanType = "";
-
-                String getLoanSql = "SELECT userid, amount, type FROM loans WHERE loanid = ? AND status = 'pending'";
-                try (PreparedStatement loanStmt = conn.prepareStatement(getLoanSql)) {
-                    loanStmt.setInt(1, loanId);
-                    try (ResultSet rs = loanStmt.executeQuery()) {
-                        if (rs.next()) {
-                            userId = rs.getInt("userid");
-                            loanAmount = rs.getDouble("amount");
-                            loanType = rs.getString("type");
-                        } else {
-                            conn.rollback();
-                            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                            out.print("{\"success\":false,\"message\":\"Loan not found or already processed.\"}");
-                            return;
-                        }
-                    }
+                Loan loan = LoanDAO.findPendingById(conn, loanId);
+                if (loan == null) {
+                    return ApprovalOutcome.failure(HttpServletResponse.SC_BAD_REQUEST,
+                            "Loan not found or already processed.");
                 }
+                long loanAmountCents = loan.getAmountCents();
+                String loanType = loan.getType();
 
                 // Find the user's checking account
-                int checkingAccountId = 0;
-                String getAccountSql = "SELECT id FROM accounts WHERE user_id = ? AND type = 'checking' LIMIT 1";
-                try (PreparedStatement accountStmt = conn.prepareStatement(getAccountSql)) {
-                    accountStmt.setInt(1, userId);
-                    try (ResultSet rs = accountStmt.executeQuery()) {
-                        if (rs.next()) {
-                            checkingAccountId = rs.getInt("id");
-                        } else {
-                            conn.rollback();
-                            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                            out.print("{\"success\":false,\"message\":\"User does not have a checking account.\"}");
-                            return;
-                        }
-                    }
+                Account checkingAccount = AccountDAO.findFirstByUserAndType(conn, loan.getUserId(), "checking");
+                if (checkingAccount == null) {
+                    return ApprovalOutcome.failure(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                            "User does not have a checking account.");
                 }
+                int checkingAccountId = checkingAccount.getId();
 
                 // Update loan status
                 String updateLoanSql = "UPDATE loans SET status = 'approved', adminComment = 'Approved by admin ID: ' || ? WHERE loanid = ?";
@@ -111,54 +91,70 @@ public class ApproveLoanServlet extends HttpServlet {
                 }
 
                 // Credit the account with the loan amount
-                String creditAccountSql = "UPDATE accounts SET balance = balance + ? WHERE id = ?";
-                try (PreparedStatement creditStmt = conn.prepareStatement(creditAccountSql)) {
-                    creditStmt.setDouble(1, loanAmount);
-                    creditStmt.setInt(2, checkingAccountId);
-                    creditStmt.executeUpdate();
-                }
+                AccountDAO.adjustBalance(conn, checkingAccountId, loanAmountCents);
 
                 // Create a transaction record
-                String createTransactionSql = "INSERT INTO transactions (from_account_id, to_account_id, type, amount, description) VALUES (NULL, ?, 'deposit', ?, ?)";
-                try (PreparedStatement transactionStmt = conn.prepareStatement(createTransactionSql)) {
-                    transactionStmt.setInt(1, checkingAccountId);
-                    transactionStmt.setDouble(2, loanAmount);
-                    transactionStmt.setString(3, "Loan disbursement - " + loanType);
-                    transactionStmt.executeUpdate();
-                }
+                TransactionDAO.insert(conn, null, checkingAccountId, "deposit", loanAmountCents,
+                        "Loan disbursement - " + loanType);
 
-                // Commit all changes
-                conn.commit();
-                out.print("{\"success\":true,\"message\":\"Loan #" + loanId +
-                        " has been approved successfully. $" + String.format("%.2f", loanAmount) +
-                        " has been credited to the user's account.\"}");
-
-            } catch (SQLException e) {
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-                throw e;
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.setAutoCommit(true);
-                        conn.close();
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
-                }
+                return ApprovalOutcome.approved(checkingAccountId, loanAmountCents); // Committed by the writer
+            });
+
+            if (!outcome.approved) {
+                response.setStatus(outcome.status);
+                out.print("{\"success\":false,\"message\":\"" + outcome.message + "\"}");
+                return;
+            }
+
+            // The deposit bypassed the balance engine, so tell it now it's committed
+            BalanceEngine engine = DatabaseUtil.getBalanceEngine();
+            if (engine != null) {
+                engine.credit(outcome.accountId, outcome.amountCents);
             }
+            DatabaseUtil.transactionsCommitted();
+
+            out.print("{\"success\":true,\"message\":\"Loan #" + loanId +
+                    " has been approved successfully. $" + Money.format(outcome.amountCents) +
+                    " has been credited to the user's account.\"}");
+
         } catch (NumberFormatException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             out.print("{\"success\":false,\"message\":\"Invalid loan ID format.\"}");
+        } catch (TransactionExecutor.BusyException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            out.print("{\"success\":false,\"message\":\"The database is busy, please try again.\"}");
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             out.print("{\"success\":false,\"message\":\"Server error: " + e.getMessage() + "\"}");
             e.printStackTrace();
         }
     }
-}
+
+    /**
+     * Result of the approval write: either the credited account and amount or
+     * an error to report to the admin
+     */
+    private static class ApprovalOutcome {
+        final boolean approved;
+        final int status;
+        final String message;
+        final int accountId;
+        final long amountCents;
+
+        private ApprovalOutcome(boolean approved, int status, String message, int accountId, long amountCents) {
+            this.approved = approved;
+            this.status = status;
+            this.message = message;
+            this.accountId = accountId;
+            this.amountCents = amountCents;
+        }
+
+        static ApprovalOutcome approved(int accountId, long amountCents) {
+            return new ApprovalOutcome(true, HttpServletResponse.SC_OK, null, accountId, amountCents);
+        }
+
+        static ApprovalOutcome failure(int status, String message) {
+            return new ApprovalOutcome(false, status, message, 0, 0);
+        }
+    }
+}
\ No newline at end of file
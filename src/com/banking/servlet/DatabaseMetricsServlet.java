@@ -0,0 +1,90 @@
+package com.banking.servlet;
+
+import com.banking.filter.StatelessSessionFilter;
+import com.banking.model.User;
+import com.banking.util.AccountDirectory;
+import com.banking.util.BalanceEngine;
+import com.banking.util.ConnectionPool;
+import com.banking.util.DatabaseUtil;
+import com.banking.util.DatabaseWriter;
+import com.banking.util.IdempotencyStore;
+import com.banking.util.LoginThrottle;
+import com.banking.util.PasswordHasher;
+import com.banking.util.RecentTransactionCache;
+import com.banking.util.SessionTokens;
+import com.banking.util.SqliteProfile;
+import com.banking.util.TransferJournal;
+import com.banking.util.TransferScheduler;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Servlet that exposes database connection pool, writer, statement cache,
+ * balance engine, idempotency key, account directory, transfer journal,
+ * transfer scheduler, recent transactions cache, password hashing, login
+ * throttle and session token counters for the admin panel
+ */
+@WebServlet("/api/admin/db-metrics")
+public class DatabaseMetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        // Security check: ensure user is logged in and is an admin
+        HttpSession session = request.getSession(false);
+        if (session == null || session.getAttribute("user") == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "You must be logged in to access this resource");
+            return;
+        }
+
+        User currentUser = (User) session.getAttribute("user");
+        if (!"admin".equalsIgnoreCase(currentUser.getRole())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Admin access required");
+            return;
+        }
+
+        ConnectionPool pool = DatabaseUtil.getConnectionPool();
+        SqliteProfile profile = DatabaseUtil.getProfile();
+        DatabaseWriter writer = DatabaseUtil.getWriter();
+        BalanceEngine balanceEngine = DatabaseUtil.getBalanceEngine();
+        IdempotencyStore idempotency = DatabaseUtil.getIdempotencyStore();
+        AccountDirectory directory = DatabaseUtil.getAccountDirectory();
+        TransferJournal journal = DatabaseUtil.getJournal();
+        TransferScheduler scheduler = DatabaseUtil.getTransferScheduler();
+        RecentTransactionCache recentTransactions = DatabaseUtil.getRecentTransactionCache();
+        PasswordHasher passwordHasher = DatabaseUtil.getPasswordHasher();
+        LoginThrottle loginThrottle = DatabaseUtil.getLoginThrottle();
+        SessionTokens sessionTokens = (SessionTokens) getServletContext()
+                .getAttribute(StatelessSessionFilter.TOKENS_ATTRIBUTE); // null unless stateless
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        try (PrintWriter out = response.getWriter()) {
+            out.print("{");
+            out.print("\"pool\":" + (pool != null ? pool.getStatsAsJson() : "null") + ",");
+            out.print("\"writer\":" + (writer != null ? writer.getStatsAsJson() : "null") + ",");
+            out.print("\"statementCache\":" + DatabaseUtil.getStatementCacheStatsAsJson() + ",");
+            out.print("\"balanceEngine\":" + (balanceEngine != null ? balanceEngine.getStatsAsJson() : "null") + ",");
+            out.print("\"idempotency\":" + (idempotency != null ? idempotency.getStatsAsJson() : "null") + ",");
+            out.print("\"accountDirectory\":" + (directory != null ? directory.getStatsAsJson() : "null") + ",");
+            out.print("\"journal\":" + (journal != null ? journal.getStatsAsJson() : "null") + ",");
+            out.print("\"scheduler\":" + (scheduler != null ? scheduler.getStatsAsJson() : "null") + ",");
+            out.print("\"recentTransactions\":" +
+                    (recentTransactions != null ? recentTransactions.getStatsAsJson() : "null") + ",");
+            out.print("\"passwordHashing\":" + (passwordHasher != null ? passwordHasher.getStatsAsJson() : "null") + ",");
+            out.print("\"loginThrottle\":" + (loginThrottle != null ? loginThrottle.getStatsAsJson() : "null") + ",");
+            out.print("\"sessionTokens\":" + (sessionTokens != null ? sessionTokens.getStatsAsJson() : "null") + ",");
+            out.print("\"sqliteProfile\":" + (profile != null ? "\"" + profile.getName() + "\"" : "null"));
+            out.print("}");
+        }
+    }
+}
@@ -76,7 +76,7 @@ public class EmployeeDashboardServlet extends HttpServlet {
         int offset = (page - 1) * pageSize;
 
         try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT t.id, t.timestamp, t.amount, t.description, t.type, " +
+            String sql = "SELECT t.id, t.timestamp, t.amount_cents, t.description, t.type, " +
                     "a1.account_number as from_account, a2.account_number as to_account, " +
                     "a1.user_id as from_user_id, a2.user_id as to_user_id, " +
                     "u.name as user_name " +
@@ -85,7 +85,7 @@ public class EmployeeDashboardServlet extends HttpServlet {
                     "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
                     "LEFT JOIN users u ON (CASE WHEN a1.user_id = a2.user_id THEN a1.user_id ELSE a1.user_id END) = u.id "
                     +
-                    "ORDER BY t.timestamp DESC " +
+                    "ORDER BY t.timestamp DESC, t.id DESC " +
                     "LIMIT ? OFFSET ?";
 
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -97,7 +97,7 @@ public class EmployeeDashboardServlet extends HttpServlet {
                         Transaction transaction = new Transaction();
                         transaction.setId(rs.getInt("id"));
                         transaction.setDate(dateFormat.format(rs.getTimestamp("timestamp")));
-                        transaction.setAmount(rs.getDouble("amount"));
+                        transaction.setAmountCents(rs.getLong("amount_cents"));
                         transaction.setDescription(rs.getString("description"));
                         transaction.setType(rs.getString("type"));
 
@@ -129,21 +129,7 @@ public class EmployeeDashboardServlet extends HttpServlet {
      * Count total number of transactions for pagination
      */
     private int countTotalTransactions() throws SQLException {
-        int count = 0;
-
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT COUNT(*) FROM transactions";
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        count = rs.getInt(1);
-                    }
-                }
-            }
-        }
-
-        return count;
+        return DatabaseUtil.getTransactionCount("global", 0, false);
     }
 
     /**
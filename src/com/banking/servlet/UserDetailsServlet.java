@@ -14,6 +14,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Servlet that handles individual user operations (get, update)
@@ -125,7 +126,14 @@ public class UserDetailsServlet extends HttpServlet {
         }
 
         // Update user
-        boolean success = DatabaseUtil.updateUser(userId, name, role, status, newPassword);
+        boolean success;
+        try {
+            success = DatabaseUtil.updateUser(userId, name, role, status, newPassword);
+        } catch (RejectedExecutionException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            sendJsonResponse(response, false, "Server is busy, please try again.");
+            return;
+        }
 
         if (success) {
             sendJsonResponse(response, true, "User updated successfully");
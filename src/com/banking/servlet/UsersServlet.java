@@ -14,6 +14,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Servlet that handles user listing, searching and creation
@@ -123,7 +124,14 @@ public class UsersServlet extends HttpServlet {
         String password = (String) userData.get("password");
 
         // Register user
-        boolean success = DatabaseUtil.registerUser(newUser, password);
+        boolean success;
+        try {
+            success = DatabaseUtil.registerUser(newUser, password);
+        } catch (RejectedExecutionException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            sendJsonResponse(response, false, "Server is busy, please try again.");
+            return;
+        }
 
         if (success) {
             response.setStatus(HttpServletResponse.SC_CREATED);
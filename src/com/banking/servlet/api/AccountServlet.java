@@ -1,5 +1,7 @@
 package com.banking.servlet.api;
 
+import com.banking.dao.LedgerDAO;
+import com.banking.model.Money;
 import com.banking.model.User;
 import com.banking.util.DatabaseUtil;
 import jakarta.servlet.ServletException;
@@ -13,10 +15,22 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Lists a user's accounts with their balances. With asOf (YYYY-MM-DD or
+ * YYYY-MM-DD HH:MM:SS, UTC; a date means the end of that day) the balances are
+ * read from the ledger as they were at that time, and accounts opened later
+ * are left out.
+ */
 @WebServlet("/api/accounts")
 public class AccountServlet extends HttpServlet {
 
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
@@ -59,8 +73,19 @@ public class AccountServlet extends HttpServlet {
             }
         }
 
+        String asOf = null;
+        String asOfParam = request.getParameter("asOf");
+        if (asOfParam != null && !asOfParam.trim().isEmpty()) {
+            asOf = parseAsOf(asOfParam.trim());
+            if (asOf == null) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().write("{\"error\":\"Invalid asOf\"}");
+                return;
+            }
+        }
+
         try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT id, account_number, type, balance FROM accounts WHERE user_id = ? ORDER BY type";
+            String sql = "SELECT id, account_number, type, balance_cents FROM accounts WHERE user_id = ? ORDER BY type";
 
             StringBuilder jsonBuilder = new StringBuilder();
             jsonBuilder.append("{\"accounts\":[");
@@ -70,6 +95,16 @@ public class AccountServlet extends HttpServlet {
                 stmt.setInt(1, userId);
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
+                        // Includes transfers whose postings are still being written
+                        long balanceCents = DatabaseUtil.currentBalanceCents(rs.getInt("id"),
+                                rs.getLong("balance_cents"));
+                        if (asOf != null) {
+                            Long historical = LedgerDAO.balanceAt(conn, rs.getInt("id"), asOf);
+                            if (historical == null) {
+                                continue; // not opened yet
+                            }
+                            balanceCents = historical;
+                        }
                         if (!first) {
                             jsonBuilder.append(",");
                         }
@@ -82,13 +117,17 @@ public class AccountServlet extends HttpServlet {
                                 .append("\"id\":").append(rs.getInt("id")).append(",")
                                 .append("\"accountNumber\":\"").append(accountNumber).append("\",")
                                 .append("\"type\":\"").append(rs.getString("type")).append("\",")
-                                .append("\"balance\":").append(rs.getDouble("balance"))
+                                .append("\"balance\":").append(Money.format(balanceCents))
                                 .append("}");
                     }
                 }
             }
 
-            jsonBuilder.append("]}");
+            jsonBuilder.append("]");
+            if (asOf != null) {
+                jsonBuilder.append(",\"asOf\":\"").append(asOf).append("\"");
+            }
+            jsonBuilder.append("}");
             response.getWriter().write(jsonBuilder.toString());
 
         } catch (SQLException e) {
@@ -97,4 +136,20 @@ public class AccountServlet extends HttpServlet {
             response.getWriter().write("{\"error\":\"Database error\"}");
         }
     }
+
+    /**
+     * Normalizes an asOf parameter to SQLite's timestamp format
+     *
+     * @return The timestamp, or null if the value can't be parsed
+     */
+    private static String parseAsOf(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atTime(23, 59, 59).format(SQLITE_TIMESTAMP);
+            }
+            return LocalDateTime.parse(value.replace(' ', 'T')).format(SQLITE_TIMESTAMP);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,556 @@
+package com.banking.servlet.api;
+
+import com.banking.dao.AccountDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.Account;
+import com.banking.model.Money;
+import com.banking.model.User;
+import com.banking.util.AccountDirectory;
+import com.banking.util.BalanceEngine;
+import com.banking.util.ConfigUtil;
+import com.banking.util.DatabaseUtil;
+import com.banking.util.JsonStreamWriter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Pays many accounts from one of the customer's accounts in a single request
+ * (e.g. a payroll run).
+ *
+ * The body is either JSON:
+ *
+ * <pre>
+ * {"fromAccount": 12, "transfers": [{"toAccountNumber": "...", "amount": "1500.00", "description": "May"}]}
+ * </pre>
+ *
+ * or CSV (Content-Type text/csv, fromAccount as a query parameter) with one
+ * toAccountNumber,amount,description line per payment and an optional header
+ * line.
+ *
+ * Destinations are resolved from the account directory, with one query for
+ * any it doesn't know. Payments that are malformed, go to an unknown account
+ * or back to the source are reported and skipped; the rest are made together
+ * with a single debit of the source, or not at all if it can't cover their
+ * total. The response lists a result per payment in input order and is
+ * written as it is produced.
+ *
+ * A body longer than banking.transfers.bulk.maxItems payments could need is
+ * refused with 413, from its Content-Length if it has one and otherwise as
+ * soon as that much has been read.
+ */
+@WebServlet("/api/transfers/bulk")
+public class BulkTransferServlet extends HttpServlet {
+
+    private static final String DEFAULT_DESCRIPTION = "Bulk transfer";
+    // Body size allowed per payment (account number, amount and a description
+    // with JSON or CSV syntax around them), plus room for the rest of the body
+    private static final long MAX_CHARS_PER_ITEM = 512;
+    private static final long MAX_CHARS_OVERHEAD = 4096;
+
+    /**
+     * The body is longer than banking.transfers.bulk.maxItems payments can be
+     */
+    private static class BodyTooLargeException extends IOException {
+        BodyTooLargeException() {
+            super("Request body is too large");
+        }
+    }
+
+    /**
+     * Reads at most a fixed number of chars, so an oversized body is rejected
+     * before it has all been buffered
+     */
+    private static class LimitedReader extends FilterReader {
+        private long remaining;
+
+        LimitedReader(Reader in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                count(1);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws BodyTooLargeException {
+            remaining -= read;
+            if (remaining < 0) {
+                throw new BodyTooLargeException();
+            }
+        }
+    }
+
+    /**
+     * One payment from the request and what happened to it
+     */
+    private static class Item {
+        final int line; // 1-based position in the input
+        final String toAccountNumber;
+        final String amount;
+        final String description;
+        long amountCents;
+        int toAccountId;
+        String status; // ok, invalid, unknown_account, same_account or rejected
+        String message;
+
+        Item(int line, String toAccountNumber, String amount, String description) {
+            this.line = line;
+            this.toAccountNumber = toAccountNumber != null ? toAccountNumber.trim() : "";
+            this.amount = amount != null ? amount.trim() : "";
+            this.description = description != null && !description.trim().isEmpty() ? description.trim()
+                    : DEFAULT_DESCRIPTION;
+        }
+
+        boolean isPending() {
+            return status == null;
+        }
+
+        void fail(String status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Parsed request body
+     */
+    private static class BulkRequest {
+        String fromAccount;
+        final List<Item> items = new ArrayList<>();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        // Verify user is logged in and is a customer
+        HttpSession session = request.getSession(false);
+        if (session == null || session.getAttribute("user") == null) {
+            sendError(response, HttpServletResponse.SC_UNAUTHORIZED, "You must be logged in to perform this action.");
+            return;
+        }
+        User user = (User) session.getAttribute("user");
+        if (!"customer".equals(user.getRole())) {
+            sendError(response, HttpServletResponse.SC_FORBIDDEN, "Only customers can initiate transfers.");
+            return;
+        }
+
+        int maxItems = ConfigUtil.getInt("banking.transfers.bulk.maxItems", 5000);
+        String tooLarge = "At most " + maxItems + " transfers can be sent at once.";
+        long maxChars = maxItems * MAX_CHARS_PER_ITEM + MAX_CHARS_OVERHEAD;
+        // Turn away a declared oversized body before reading any of it
+        if (request.getContentLengthLong() > maxChars) {
+            sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, tooLarge);
+            return;
+        }
+
+        BulkRequest bulk;
+        try {
+            Reader body = new LimitedReader(request.getReader(), maxChars);
+            bulk = isCsv(request) ? parseCsv(request, body) : parseJson(request, body);
+        } catch (JSONException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON: " + e.getMessage());
+            return;
+        } catch (BodyTooLargeException e) {
+            sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, tooLarge);
+            return;
+        }
+
+        int sourceAccountId;
+        try {
+            sourceAccountId = Integer.parseInt(bulk.fromAccount != null ? bulk.fromAccount.trim() : "");
+        } catch (NumberFormatException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid source account.");
+            return;
+        }
+        if (bulk.items.isEmpty()) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "No transfers given.");
+            return;
+        }
+        if (bulk.items.size() > maxItems) {
+            sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, tooLarge);
+            return;
+        }
+
+        String error;
+        try {
+            validateItems(bulk.items, sourceAccountId);
+            error = transfer(sourceAccountId, user.getId(), bulk.items);
+        } catch (ArithmeticException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Total amount is too large.");
+            return;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Database error: " + e.getMessage());
+            return;
+        }
+
+        writeResults(response, sourceAccountId, bulk.items, error);
+    }
+
+    // === Parsing ===
+
+    private static boolean isCsv(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return (contentType != null && contentType.toLowerCase().startsWith("text/csv"))
+                || "csv".equalsIgnoreCase(request.getParameter("format"));
+    }
+
+    private static BulkRequest parseJson(HttpServletRequest request, Reader body) throws IOException {
+        JSONObject json = new JSONObject(readBody(body));
+        BulkRequest bulk = new BulkRequest();
+        bulk.fromAccount = json.has("fromAccount") ? json.optString("fromAccount")
+                : request.getParameter("fromAccount");
+        JSONArray transfers = json.optJSONArray("transfers");
+        if (transfers == null) {
+            return bulk;
+        }
+        for (int i = 0; i < transfers.length(); i++) {
+            JSONObject transfer = transfers.optJSONObject(i);
+            if (transfer == null) {
+                Item item = new Item(i + 1, null, null, null);
+                item.fail("invalid", "Transfer must be an object.");
+                bulk.items.add(item);
+                continue;
+            }
+            bulk.items.add(new Item(i + 1, transfer.optString("toAccountNumber", null),
+                    transfer.optString("amount", null), transfer.optString("description", null)));
+        }
+        return bulk;
+    }
+
+    private static BulkRequest parseCsv(HttpServletRequest request, Reader body) throws IOException {
+        BulkRequest bulk = new BulkRequest();
+        bulk.fromAccount = request.getParameter("fromAccount");
+        BufferedReader reader = new BufferedReader(body);
+        String line;
+        boolean first = true;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitCsvLine(line);
+            if (first && !fields.isEmpty() && "toAccountNumber".equalsIgnoreCase(fields.get(0).trim())) {
+                first = false;
+                continue; // header
+            }
+            first = false;
+            lineNumber++;
+            bulk.items.add(new Item(lineNumber, field(fields, 0), field(fields, 1), field(fields, 2)));
+        }
+        return bulk;
+    }
+
+    /**
+     * Splits one CSV line. Fields may be double-quoted, with "" for a quote.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static String readBody(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+
+    // === Validation and posting ===
+
+    /**
+     * Checks each payment's amount and resolves all destination accounts, from
+     * the account directory where possible and with one query for the rest.
+     * Payments that can't be made are marked as failed.
+     */
+    private static void validateItems(List<Item> items, int sourceAccountId) throws SQLException {
+        Set<String> accountNumbers = new LinkedHashSet<>();
+        for (Item item : items) {
+            if (!item.isPending()) {
+                continue;
+            }
+            if (item.toAccountNumber.isEmpty() || item.amount.isEmpty()) {
+                item.fail("invalid", "Account number and amount are required.");
+                continue;
+            }
+            try {
+                item.amountCents = Money.parseCents(item.amount);
+            } catch (NumberFormatException e) {
+                item.fail("invalid", "Invalid amount format.");
+                continue;
+            }
+            if (item.amountCents <= 0) {
+                item.fail("invalid", "Amount must be greater than zero.");
+                continue;
+            }
+            accountNumbers.add(item.toAccountNumber);
+        }
+        if (accountNumbers.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> accountIds = new HashMap<>();
+        AccountDirectory directory = DatabaseUtil.getAccountDirectory();
+        if (directory != null) {
+            for (Iterator<String> it = accountNumbers.iterator(); it.hasNext();) {
+                String accountNumber = it.next();
+                int accountId = directory.findAccountId(accountNumber);
+                if (accountId >= 0) {
+                    accountIds.put(accountNumber, accountId);
+                    it.remove();
+                }
+            }
+        }
+        if (!accountNumbers.isEmpty()) {
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                accountIds.putAll(AccountDAO.findIdsByAccountNumbers(conn, accountNumbers));
+            }
+        }
+        for (Item item : items) {
+            if (!item.isPending()) {
+                continue;
+            }
+            Integer accountId = accountIds.get(item.toAccountNumber);
+            if (accountId == null) {
+                item.fail("unknown_account", "Destination account not found.");
+            } else if (accountId == sourceAccountId) {
+                item.fail("same_account", "Cannot transfer to the same account.");
+            } else {
+                item.toAccountId = accountId;
+            }
+        }
+    }
+
+    /**
+     * Makes every payment that passed validation, as one debit of the source
+     *
+     * @return Error that stopped all of them, or null if they were made (or
+     *         there were none)
+     * @throws ArithmeticException if the total overflows
+     */
+    private static String transfer(int sourceAccountId, int userId, List<Item> items) throws SQLException {
+        List<Item> payments = new ArrayList<>();
+        for (Item item : items) {
+            if (item.isPending()) {
+                payments.add(item);
+            }
+        }
+        if (payments.isEmpty()) {
+            return null;
+        }
+
+        int[] toAccountIds = new int[payments.size()];
+        long[] amountsCents = new long[payments.size()];
+        String[] descriptions = new String[payments.size()];
+        for (int i = 0; i < payments.size(); i++) {
+            Item payment = payments.get(i);
+            toAccountIds[i] = payment.toAccountId;
+            amountsCents[i] = payment.amountCents;
+            descriptions[i] = payment.description;
+        }
+
+        BalanceEngine engine = DatabaseUtil.getBalanceEngine();
+        String error = engine != null
+                ? transferInMemory(engine, sourceAccountId, userId, toAccountIds, amountsCents, descriptions)
+                : transferInDatabase(sourceAccountId, userId, toAccountIds, amountsCents, descriptions);
+
+        for (Item payment : payments) {
+            if (error == null) {
+                payment.status = "ok";
+            } else {
+                payment.fail("rejected", error);
+            }
+        }
+        return error;
+    }
+
+    private static String transferInMemory(BalanceEngine engine, int sourceAccountId, int userId,
+            int[] toAccountIds, long[] amountsCents, String[] descriptions) throws SQLException {
+        BalanceEngine.TransferResult result = engine.transferBatch(sourceAccountId, userId, toAccountIds,
+                amountsCents, descriptions);
+        switch (result.getStatus()) {
+            case OK:
+                break;
+            case NOT_OWNER:
+                return "Source account not found or does not belong to the current user.";
+            case INSUFFICIENT_FUNDS:
+                return "Insufficient funds to complete these transfers.";
+            case UNKNOWN_DESTINATION:
+                return "Destination account not found.";
+            case SAME_ACCOUNT:
+                return "Cannot transfer to the same account.";
+            default:
+                throw new IllegalStateException("Unexpected transfer status " + result.getStatus());
+        }
+
+        // Postings that are already done may have failed (the engine waits for them
+        // when there is no journal or it couldn't be written), so check those too
+        if (!engine.isWriteBehind() || result.getPersisted().isDone()) {
+            try {
+                result.getPersisted().join();
+            } catch (CompletionException e) {
+                // Already reversed in memory by the engine
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new SQLException(cause.getMessage(), cause);
+            }
+        }
+
+        // Once the postings are committed, add them to the recent transactions cache
+        DatabaseUtil.transactionsCommitted(result.getPersisted());
+        return null;
+    }
+
+    private static String transferInDatabase(int sourceAccountId, int userId, int[] toAccountIds,
+            long[] amountsCents, String[] descriptions) throws SQLException {
+        long totalCents = 0;
+        Map<Integer, Long> credits = new HashMap<>();
+        for (int i = 0; i < toAccountIds.length; i++) {
+            totalCents = Math.addExact(totalCents, amountsCents[i]);
+            credits.merge(toAccountIds[i], amountsCents[i], Math::addExact);
+        }
+        final long debitCents = totalCents;
+
+        String error = DatabaseUtil.write("bulkTransfer", conn -> {
+            Account source = AccountDAO.findById(conn, sourceAccountId);
+            if (source == null || source.getUserId() != userId) {
+                return "Source account not found or does not belong to the current user.";
+            }
+            if (source.getBalanceCents() < debitCents) {
+                return "Insufficient funds to complete these transfers.";
+            }
+
+            if (AccountDAO.adjustBalance(conn, sourceAccountId, -debitCents) == 0) {
+                throw new SQLException("Failed to update account balance. Account may not exist.");
+            }
+            AccountDAO.adjustBalances(conn, credits);
+            TransactionDAO.insertTransfers(conn, sourceAccountId, toAccountIds, amountsCents, descriptions);
+            return null; // Committed by the writer
+        });
+        if (error == null) {
+            DatabaseUtil.transactionsCommitted();
+        }
+        return error;
+    }
+
+    // === Response ===
+
+    private static void writeResults(HttpServletResponse response, int sourceAccountId, List<Item> items,
+            String error) throws IOException {
+        int succeeded = 0;
+        long totalCents = 0;
+        for (Item item : items) {
+            if ("ok".equals(item.status)) {
+                succeeded++;
+                totalCents += item.amountCents;
+            }
+        }
+        if (error != null) {
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+        }
+
+        JsonStreamWriter json = new JsonStreamWriter(response.getOutputStream());
+        json.beginObject()
+                .field("success", error == null)
+                .field("fromAccount", sourceAccountId)
+                .field("submitted", items.size())
+                .field("succeeded", succeeded)
+                .field("failed", items.size() - succeeded)
+                .centsField("totalAmount", totalCents);
+        if (error != null) {
+            json.field("error", error);
+        }
+        json.name("results").beginArray();
+        for (Item item : items) {
+            json.beginObject()
+                    .field("line", item.line)
+                    .field("toAccountNumber", item.toAccountNumber)
+                    .field("status", item.status);
+            if (item.amountCents > 0) {
+                json.centsField("amount", item.amountCents);
+            }
+            if (item.message != null) {
+                json.field("message", item.message);
+            }
+            json.endObject();
+        }
+        json.endArray().endObject().flush();
+    }
+
+    private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        JSONObject errorJson = new JSONObject();
+        errorJson.put("error", message);
+        response.getWriter().write(errorJson.toString());
+    }
+}
@@ -1,5 +1,6 @@
 package com.banking.servlet.api;
 
+import com.banking.model.Money;
 import com.banking.model.User;
 import com.banking.util.DatabaseUtil;
 
@@ -71,7 +72,7 @@ public class LoanDataServlet extends HttpServlet {
         }
 
         try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT loanid, amount, type, date, status, adminComment FROM loans WHERE userid = ? ORDER BY date DESC";
+            String sql = "SELECT loanid, amount_cents, type, date, status, adminComment FROM loans WHERE userid = ? ORDER BY date DESC";
             StringBuilder jsonBuilder = new StringBuilder("[");
             boolean first = true;
 
@@ -86,7 +87,7 @@ public class LoanDataServlet extends HttpServlet {
 
                         jsonBuilder.append("{");
                         jsonBuilder.append("\"id\":").append(rs.getInt("loanid")).append(",");
-                        jsonBuilder.append("\"amount\":").append(rs.getDouble("amount")).append(",");
+                        jsonBuilder.append("\"amount\":").append(Money.format(rs.getLong("amount_cents"))).append(",");
 
                         String type = rs.getString("type");
                         jsonBuilder.append("\"type\":\"").append(escapeJson(type)).append("\",");
@@ -1,5 +1,7 @@
 package com.banking.servlet.api;
 
+import com.banking.dao.LoanDAO;
+import com.banking.model.Money;
 import com.banking.model.User;
 import com.banking.util.DatabaseUtil;
 
@@ -11,8 +13,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 @WebServlet("/api/loan-request")
@@ -48,10 +48,10 @@ public class LoanRequestServlet extends HttpServlet {
             return;
         }
 
-        double loanAmount;
+        final long loanAmountCents;
         try {
-            loanAmount = Double.parseDouble(loanAmountStr);
-            if (loanAmount < 1000) {
+            loanAmountCents = Money.parseCents(loanAmountStr);
+            if (loanAmountCents < 1000_00) {
                 setErrorAndRedirect(request, response, "Loan amount must be at least $1,000.");
                 return;
             }
@@ -67,23 +67,17 @@ public class LoanRequestServlet extends HttpServlet {
         }
 
         // Create the loan request
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "INSERT INTO loans (userid, amount, type, status, adminComment) VALUES (?, ?, ?, 'pending', NULL)";
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, user.getId());
-                stmt.setDouble(2, loanAmount);
-                String fullType = loanType + " - " + loanPurpose;
-                stmt.setString(3, fullType);
-
-                int result = stmt.executeUpdate();
-
-                if (result > 0) {
-                    request.setAttribute("loanResult",
-                            "Your loan application has been submitted successfully and is pending review.");
-                } else {
-                    request.setAttribute("loanError", "Failed to submit your loan application. Please try again.");
-                }
+        try {
+            String fullType = loanType + " - " + loanPurpose;
+
+            int result = DatabaseUtil.write("createLoanRequest",
+                    conn -> LoanDAO.insertPending(conn, user.getId(), loanAmountCents, fullType));
+
+            if (result > 0) {
+                request.setAttribute("loanResult",
+                        "Your loan application has been submitted successfully and is pending review.");
+            } else {
+                request.setAttribute("loanError", "Failed to submit your loan application. Please try again.");
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -0,0 +1,275 @@
+package com.banking.servlet.api;
+
+import com.banking.dao.AccountDAO;
+import com.banking.dao.ScheduledTransferDAO;
+import com.banking.model.Account;
+import com.banking.model.Money;
+import com.banking.model.ScheduledTransfer;
+import com.banking.model.User;
+import com.banking.util.DatabaseUtil;
+import com.banking.util.JsonStreamWriter;
+import com.banking.util.TransferScheduler;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Scheduled and standing-order transfers of the logged-in customer.
+ *
+ * GET lists them. POST with fromAccount, toAccountNumber, amount, an optional
+ * description, startAt (YYYY-MM-DD or YYYY-MM-DD HH:MM:SS, UTC; defaults to
+ * now) and frequency (once, daily, weekly or monthly; defaults to once)
+ * creates one, and POST with action=cancel and id cancels one. The transfers
+ * themselves are made by {@link TransferScheduler}.
+ */
+@WebServlet("/api/scheduled-transfers")
+public class ScheduledTransferServlet extends HttpServlet {
+
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String DEFAULT_DESCRIPTION = "Scheduled transfer";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        User user = requireCustomer(request, response);
+        if (user == null) {
+            return;
+        }
+
+        List<ScheduledTransfer> transfers;
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            transfers = ScheduledTransferDAO.findByUser(conn, user.getId());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Database error");
+            return;
+        }
+
+        JsonStreamWriter json = new JsonStreamWriter(response.getOutputStream());
+        json.beginObject().name("scheduledTransfers").beginArray();
+        for (ScheduledTransfer transfer : transfers) {
+            writeTransfer(json, transfer);
+        }
+        json.endArray().endObject().flush();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        User user = requireCustomer(request, response);
+        if (user == null) {
+            return;
+        }
+
+        if ("cancel".equals(request.getParameter("action"))) {
+            cancel(request, response, user);
+        } else {
+            create(request, response, user);
+        }
+    }
+
+    private void create(HttpServletRequest request, HttpServletResponse response, User user) throws IOException {
+        String fromAccountId = request.getParameter("fromAccount");
+        String toAccountNumber = request.getParameter("toAccountNumber");
+        String amountStr = request.getParameter("amount");
+        String description = request.getParameter("description");
+        String startAtParam = request.getParameter("startAt");
+        String frequency = request.getParameter("frequency");
+
+        if (fromAccountId == null || toAccountNumber == null || amountStr == null ||
+                fromAccountId.trim().isEmpty() || toAccountNumber.trim().isEmpty() || amountStr.trim().isEmpty()) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "All fields are required.");
+            return;
+        }
+        long amountCents;
+        try {
+            amountCents = Money.parseCents(amountStr);
+        } catch (NumberFormatException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid amount format.");
+            return;
+        }
+        if (amountCents <= 0) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Amount must be greater than zero.");
+            return;
+        }
+        int sourceAccountId;
+        try {
+            sourceAccountId = Integer.parseInt(fromAccountId.trim());
+        } catch (NumberFormatException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid source account.");
+            return;
+        }
+        frequency = frequency != null && !frequency.trim().isEmpty() ? frequency.trim() : "once";
+        if (!frequency.matches("once|daily|weekly|monthly")) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST,
+                    "Frequency must be once, daily, weekly or monthly.");
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+        LocalDateTime startAt = startAtParam != null && !startAtParam.trim().isEmpty()
+                ? parseStartAt(startAtParam.trim())
+                : now;
+        if (startAt == null) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid startAt.");
+            return;
+        }
+        if (startAt.toLocalDate().isBefore(now.toLocalDate())) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Start date must not be in the past.");
+            return;
+        }
+
+        ScheduledTransfer transfer = new ScheduledTransfer();
+        try {
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                Account source = AccountDAO.findById(conn, sourceAccountId);
+                if (source == null || source.getUserId() != user.getId()) {
+                    sendError(response, HttpServletResponse.SC_BAD_REQUEST,
+                            "Source account not found or does not belong to the current user.");
+                    return;
+                }
+            }
+            int destinationAccountId = DatabaseUtil.findAccountIdByNumber(toAccountNumber.trim());
+            if (destinationAccountId < 0) {
+                sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Destination account not found.");
+                return;
+            }
+            if (destinationAccountId == sourceAccountId) {
+                sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Cannot transfer to the same account.");
+                return;
+            }
+
+            String firstRun = startAt.format(SQLITE_TIMESTAMP);
+            transfer.setUserId(user.getId());
+            transfer.setFromAccountId(sourceAccountId);
+            transfer.setToAccountId(destinationAccountId);
+            transfer.setToAccountNumber(toAccountNumber.trim());
+            transfer.setAmountCents(amountCents);
+            transfer.setDescription(description != null && !description.trim().isEmpty() ? description.trim()
+                    : DEFAULT_DESCRIPTION);
+            transfer.setFrequency(frequency);
+            transfer.setAnchorDay(startAt.getDayOfMonth());
+            transfer.setScheduledFor(firstRun);
+            transfer.setNextRunAt(firstRun);
+            transfer.setStatus("active");
+            transfer.setId(DatabaseUtil.write("createScheduledTransfer",
+                    conn -> ScheduledTransferDAO.insert(conn, transfer)));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Database error: " + e.getMessage());
+            return;
+        }
+
+        TransferScheduler scheduler = DatabaseUtil.getTransferScheduler();
+        if (scheduler != null) {
+            scheduler.schedule(transfer);
+        }
+
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        JsonStreamWriter json = new JsonStreamWriter(response.getOutputStream());
+        writeTransfer(json, transfer);
+        json.flush();
+    }
+
+    private void cancel(HttpServletRequest request, HttpServletResponse response, User user) throws IOException {
+        int id;
+        try {
+            id = Integer.parseInt(request.getParameter("id"));
+        } catch (NumberFormatException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid scheduled transfer id.");
+            return;
+        }
+        int cancelled;
+        try {
+            cancelled = DatabaseUtil.write("cancelScheduledTransfer",
+                    conn -> ScheduledTransferDAO.cancel(conn, id, user.getId()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Database error: " + e.getMessage());
+            return;
+        }
+        if (cancelled == 0) {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND, "No active scheduled transfer with this id.");
+            return;
+        }
+        response.getWriter().write("{\"success\":true,\"id\":" + id + "}");
+    }
+
+    /**
+     * @return The logged-in customer, or null after sending an error
+     */
+    private static User requireCustomer(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        HttpSession session = request.getSession(false);
+        if (session == null || session.getAttribute("user") == null) {
+            sendError(response, HttpServletResponse.SC_UNAUTHORIZED, "You must be logged in to perform this action.");
+            return null;
+        }
+        User user = (User) session.getAttribute("user");
+        if (!"customer".equals(user.getRole())) {
+            sendError(response, HttpServletResponse.SC_FORBIDDEN, "Only customers can schedule transfers.");
+            return null;
+        }
+        return user;
+    }
+
+    private static void writeTransfer(JsonStreamWriter json, ScheduledTransfer transfer) throws IOException {
+        json.beginObject()
+                .field("id", transfer.getId())
+                .field("fromAccount", transfer.getFromAccountId())
+                .field("toAccountNumber", transfer.getToAccountNumber())
+                .centsField("amount", transfer.getAmountCents())
+                .field("description", transfer.getDescription())
+                .field("frequency", transfer.getFrequency())
+                .field("status", transfer.getStatus())
+                .field("nextRunAt", "active".equals(transfer.getStatus()) ? transfer.getNextRunAt() : null)
+                .field("attempts", transfer.getAttempts())
+                .field("lastError", transfer.getLastError())
+                .field("lastRunAt", transfer.getLastRunAt())
+                .endObject();
+    }
+
+    /**
+     * Parses startAt; a date means the start of that day
+     *
+     * @return The time, or null if the value can't be parsed
+     */
+    private static LocalDateTime parseStartAt(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay();
+            }
+            return LocalDateTime.parse(value.replace(' ', 'T')).withNano(0);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        JSONObject errorJson = new JSONObject();
+        errorJson.put("error", message);
+        response.getWriter().write(errorJson.toString());
+    }
+}
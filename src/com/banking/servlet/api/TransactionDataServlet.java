@@ -1,6 +1,8 @@
 package com.banking.servlet.api;
 
+import com.banking.model.Money;
 import com.banking.util.DatabaseUtil;
+import com.banking.util.JsonStreamWriter;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -23,6 +25,7 @@ public class TransactionDataServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
 
         // Get user ID from session for security
         Object userId = req.getSession().getAttribute("userId");
@@ -39,7 +42,7 @@ public class TransactionDataServlet extends HttpServlet {
         try {
             // Handle transaction volume endpoint
             if ("/api/transaction-volume".equals(path)) {
-                Map<String, Double> dailyTotals = getTransactionVolumeForLast7Days((Integer) userId);
+                Map<String, Long> dailyTotals = getTransactionVolumeForLast7Days((Integer) userId);
 
                 // Debug: Log the results
                 System.out.println("Transaction volume data: " + dailyTotals);
@@ -65,32 +68,23 @@ public class TransactionDataServlet extends HttpServlet {
     /**
      * Write chart data response
      */
-    private void writeChartDataResponse(HttpServletResponse resp, Map<String, Double> dailyTotals) throws IOException {
-        // Convert to JSON
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("{\"labels\":[");
+    private void writeChartDataResponse(HttpServletResponse resp, Map<String, Long> dailyTotals) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(resp.getOutputStream());
+        json.beginObject();
 
-        boolean first = true;
+        json.name("labels").beginArray();
         for (String date : dailyTotals.keySet()) {
-            if (!first)
-                jsonBuilder.append(",");
-            jsonBuilder.append("\"").append(date).append("\"");
-            first = false;
+            json.value(date);
         }
+        json.endArray();
 
-        jsonBuilder.append("],\"values\":[");
-
-        first = true;
-        for (Double value : dailyTotals.values()) {
-            if (!first)
-                jsonBuilder.append(",");
-            jsonBuilder.append(value);
-            first = false;
+        json.name("values").beginArray();
+        for (Long cents : dailyTotals.values()) {
+            json.centsValue(cents);
         }
+        json.endArray();
 
-        jsonBuilder.append("]}");
-
-        resp.getWriter().write(jsonBuilder.toString());
+        json.endObject().flush();
     }
 
     /**
@@ -105,49 +99,43 @@ public class TransactionDataServlet extends HttpServlet {
         int totalItems = getTotalTransactionCount(userId);
         int totalPages = (int) Math.ceil((double) totalItems / size);
 
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("{\"transactions\":[");
-
-        boolean first = true;
+        JsonStreamWriter json = new JsonStreamWriter(resp.getOutputStream());
+        json.beginObject().name("transactions").beginArray();
         for (Map<String, Object> transaction : transactions) {
-            if (!first) {
-                jsonBuilder.append(",");
-            }
-            jsonBuilder.append("{");
-            jsonBuilder.append("\"id\":").append(transaction.get("id")).append(",");
-            jsonBuilder.append("\"date\":\"").append(transaction.get("date")).append("\",");
-            jsonBuilder.append("\"description\":\"").append(transaction.get("description")).append("\",");
-            jsonBuilder.append("\"type\":\"").append(transaction.get("type")).append("\",");
-            jsonBuilder.append("\"amount\":").append(transaction.get("amount")).append(",");
-            jsonBuilder.append("\"isDebit\":").append(transaction.get("isDebit")).append(",");
-            jsonBuilder.append("\"fromAccount\":\"").append(transaction.get("fromAccount")).append("\",");
-            jsonBuilder.append("\"toAccount\":\"").append(transaction.get("toAccount")).append("\",");
-            jsonBuilder.append("\"fromUserId\":").append(transaction.get("fromUserId")).append(",");
-            jsonBuilder.append("\"toUserId\":").append(transaction.get("toUserId")).append(",");
-            jsonBuilder.append("\"userName\":\"").append(transaction.get("userName")).append("\"");
-            jsonBuilder.append("}");
-            first = false;
+            json.beginObject();
+            json.field("id", (Integer) transaction.get("id"));
+            json.field("date", (String) transaction.get("date"));
+            json.field("description", (String) transaction.get("description"));
+            json.field("type", (String) transaction.get("type"));
+            json.centsField("amount", (Long) transaction.get("amountCents"));
+            json.field("isDebit", (Boolean) transaction.get("isDebit"));
+            json.field("fromAccount", (String) transaction.get("fromAccount"));
+            json.field("toAccount", (String) transaction.get("toAccount"));
+            json.field("fromUserId", (Integer) transaction.get("fromUserId"));
+            json.field("toUserId", (Integer) transaction.get("toUserId"));
+            json.field("userName", (String) transaction.get("userName"));
+            json.endObject();
         }
+        json.endArray();
 
-        jsonBuilder.append("],");
-        jsonBuilder.append("\"pagination\":{");
-        jsonBuilder.append("\"totalItems\":").append(totalItems).append(",");
-        jsonBuilder.append("\"totalPages\":").append(totalPages).append(",");
-        jsonBuilder.append("\"currentPage\":").append(page).append(",");
-        jsonBuilder.append("\"pageSize\":").append(size);
-        jsonBuilder.append("}}");
+        json.name("pagination").beginObject();
+        json.field("totalItems", totalItems);
+        json.field("totalPages", totalPages);
+        json.field("currentPage", page);
+        json.field("pageSize", size);
+        json.endObject();
 
-        resp.getWriter().write(jsonBuilder.toString());
+        json.endObject().flush();
     }
 
     /**
      * Get transaction volume data for the past 7 days
      * 
      * @param userId The user ID to get data for
-     * @return Map containing dates as keys and transaction volumes as values
+     * @return Map containing dates as keys and transaction volumes in cents as values
      */
-    private Map<String, Double> getTransactionVolumeForLast7Days(int userId) throws SQLException {
-        Map<String, Double> dailyTotals = new LinkedHashMap<>(); // To maintain insertion order
+    private Map<String, Long> getTransactionVolumeForLast7Days(int userId) throws SQLException {
+        Map<String, Long> dailyTotals = new LinkedHashMap<>(); // To maintain insertion order
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd"); // Format like "May 15"
 
         System.out.println("Querying transaction volume for user ID: " + userId);
@@ -180,7 +168,7 @@ public class TransactionDataServlet extends HttpServlet {
             for (int i = 6; i >= 0; i--) {
                 LocalDate date = referenceDate.minusDays(i);
                 String formattedDate = date.format(formatter);
-                dailyTotals.put(formattedDate, 0.0);
+                dailyTotals.put(formattedDate, 0L);
             }
 
             // Get 7 days before reference date for the query
@@ -223,7 +211,7 @@ public class TransactionDataServlet extends HttpServlet {
                 accountIdsClause.append(userAccountIds.get(i));
             }
             
-            String sql = "SELECT strftime('%Y-%m-%d', timestamp) as date_str, SUM(amount) as total " +
+            String sql = "SELECT strftime('%Y-%m-%d', timestamp) as date_str, SUM(amount_cents) as total " +
                          "FROM transactions " +
                          "WHERE (from_account_id IN (" + accountIdsClause.toString() + ") " +
                          "OR to_account_id IN (" + accountIdsClause.toString() + ")) " +
@@ -254,13 +242,13 @@ public class TransactionDataServlet extends HttpServlet {
                         }
 
                         String formattedDateResult = transactionDate.format(formatter);
-                        double amount = rs.getDouble("total");
+                        long amountCents = rs.getLong("total");
 
-                        System.out.println("Date: " + formattedDateResult + ", Amount: " + amount);
+                        System.out.println("Date: " + formattedDateResult + ", Amount: " + Money.format(amountCents));
 
                         // Update existing entry
                         if (dailyTotals.containsKey(formattedDateResult)) {
-                            dailyTotals.put(formattedDateResult, amount);
+                            dailyTotals.put(formattedDateResult, amountCents);
                         }
                     }
 
@@ -303,16 +291,13 @@ public class TransactionDataServlet extends HttpServlet {
      * Generate mock transaction volume data when database connection fails
      * or no real data is available
      */
-    private Map<String, Double> generateMockTransactionVolume(Map<String, Double> template) {
-        Map<String, Double> mockData = new LinkedHashMap<>(template);
+    private Map<String, Long> generateMockTransactionVolume(Map<String, Long> template) {
+        Map<String, Long> mockData = new LinkedHashMap<>(template);
 
         // Replace zeros with random realistic values
         for (String date : mockData.keySet()) {
             // Generate random value between $1000 and $5000
-            double randomAmount = 1000 + random.nextDouble() * 4000;
-            // Round to 2 decimal places
-            randomAmount = Math.round(randomAmount * 100) / 100.0;
-            mockData.put(date, randomAmount);
+            mockData.put(date, 1000_00L + random.nextInt(4000_00));
         }
 
         System.out.println("Generated mock transaction volume data: " + mockData);
@@ -349,12 +334,11 @@ public class TransactionDataServlet extends HttpServlet {
             // Transaction details
             String type = types[random.nextInt(types.length)];
             String description = descriptions[random.nextInt(descriptions.length)];
-            double amount = 10.0 + random.nextDouble() * 990.0; // $10-$1000
-            amount = Math.round(amount * 100.0) / 100.0; // Round to 2 decimals
+            long amountCents = 10_00 + random.nextInt(990_00); // $10-$1000
 
             transaction.put("type", type);
             transaction.put("description", description);
-            transaction.put("amount", amount);
+            transaction.put("amountCents", amountCents);
             transaction.put("isDebit", isDebit);
 
             // Account information
@@ -1,6 +1,12 @@
 package com.banking.servlet.api;
 
+import com.banking.dao.RowCallback;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.Transaction;
 import com.banking.util.DatabaseUtil;
+import com.banking.util.JsonStreamWriter;
+import com.banking.util.PageCursor;
+import com.banking.util.RecentTransactionCache;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -8,8 +14,6 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -19,6 +23,13 @@ import java.util.*;
  * Servlet to provide transaction data for transaction-list.js
  * Handles both /api/transaction-data and /api/admin-transactions endpoints
  * for backward compatibility
+ *
+ * Lists are paged by (timestamp, id). Responses carry nextCursor/prevCursor
+ * tokens; passing one back as the cursor parameter pages by key instead of
+ * OFFSET. The page parameter still works when no cursor is given. Rows come
+ * from {@link TransactionDAO} and are written to the response as they are
+ * read, see {@link JsonStreamWriter}. A user's first page comes from the
+ * {@link RecentTransactionCache} when it is enabled.
  */
 @WebServlet(urlPatterns = { "/api/transaction-data", "/api/admin-transactions" })
 public class TransactionListServlet extends HttpServlet {
@@ -28,6 +39,7 @@ public class TransactionListServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
 
         // Get user ID and role from session user object instead of direct attributes
         Object userObj = req.getSession().getAttribute("user");
@@ -57,6 +69,16 @@ public class TransactionListServlet extends HttpServlet {
             int page = getIntParam(req, "page", 1);
             int size = getIntParam(req, "size", 10);
 
+            // A cursor (from a previous response) takes precedence over page; page is
+            // then only echoed back for display
+            String cursorParam = req.getParameter("cursor");
+            PageCursor cursor = PageCursor.decode(cursorParam);
+            if (cursorParam != null && !cursorParam.isEmpty() && cursor == null) {
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                resp.getWriter().write("{\"error\":\"Invalid cursor\"}");
+                return;
+            }
+
             // Check if this is an admin-transactions endpoint request
             if (req.getServletPath().equals("/api/admin-transactions")) {
                 // Verify admin permissions for admin-specific endpoint
@@ -73,10 +95,10 @@ public class TransactionListServlet extends HttpServlet {
                 }
 
                 if (targetUserId == null || targetUserId < 0) {
-                    writeAdminTransactionResponse(resp, page, size);
+                    writeAdminTransactionResponse(resp, page, size, cursor);
                     return;
                 } else {
-                    writeTransactionResponse(resp, targetUserId, page, size);
+                    writeTransactionResponse(resp, targetUserId, page, size, cursor);
                     return;
                 }
             }
@@ -104,253 +126,119 @@ public class TransactionListServlet extends HttpServlet {
 
             // If specific user requested by admin/employee, show that user's transactions
             if (targetUserId != null && targetUserId > 0) {
-                writeTransactionResponse(resp, targetUserId, page, size);
+                writeTransactionResponse(resp, targetUserId, page, size, cursor);
                 return;
             }
 
             // If admin/employee and no specific user requested, show all transactions
             if (isAdminOrEmployee) {
-                writeAdminTransactionResponse(resp, page, size);
+                writeAdminTransactionResponse(resp, page, size, cursor);
                 return;
             }
 
             // Default: show current user's own transactions
-            writeTransactionResponse(resp, userId, page, size);
+            writeTransactionResponse(resp, userId, page, size, cursor);
 
         } catch (SQLException e) {
+            e.printStackTrace();
+            if (resp.isCommitted()) {
+                // Part of the list has already been streamed; nothing sensible to add
+                return;
+            }
+            resp.reset();
+            resp.setContentType("application/json");
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().write("{\"error\":\"Database error: " + e.getMessage() + "\"}");
-            e.printStackTrace();
         }
     }
 
     /**
      * Write transaction list response in the exact format required by
-     * transaction-list.js
+     * transaction-list.js. Rows are streamed as they are read; if the user
+     * has no transactions at all (first page, no cursor) mock data is shown
+     * instead.
      */
-    private void writeTransactionResponse(HttpServletResponse resp, int userId, int page, int size)
-            throws IOException, SQLException {
+    private void writeTransactionResponse(HttpServletResponse resp, int userId, int page, int size,
+            PageCursor cursor) throws IOException, SQLException {
 
-        List<Map<String, Object>> transactions = getTransactionData(userId, page, size);
-        int totalItems = getTotalTransactionCount(userId);
-        int totalPages = (int) Math.ceil((double) totalItems / size);
+        RecentTransactionCache recent = DatabaseUtil.getRecentTransactionCache();
+        if (recent != null && recent.canServe(page, size, cursor)) {
+            try {
+                writeRecentResponse(resp, userId, recent.firstPage(userId, size), page, size);
+                return;
+            } catch (SQLException e) {
+                System.err.println("Database error reading recent transactions: " + e.getMessage());
+            }
+        }
 
-        // Build JSON response
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("{\"transactions\":[");
+        int totalItems = getTotalTransactionCount(userId);
 
-        boolean first = true;
-        for (Map<String, Object> transaction : transactions) {
-            if (!first) {
-                jsonBuilder.append(",");
+        TransactionArrayWriter writer = new TransactionArrayWriter(resp);
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            TransactionDAO.PageResult result = TransactionDAO.forEachUserPage(conn, userId, page, size, cursor,
+                    writer);
+            // Paging past the end with a cursor legitimately returns nothing
+            if (result.getRowCount() > 0 || cursor != null) {
+                writer.finish(result, totalItems, page, size);
+                return;
             }
-
-            jsonBuilder.append("{");
-            jsonBuilder.append("\"id\":").append(transaction.get("id")).append(",");
-            jsonBuilder.append("\"date\":\"").append(transaction.get("date")).append("\",");
-            jsonBuilder.append("\"description\":\"").append(transaction.get("description")).append("\",");
-            jsonBuilder.append("\"type\":\"").append(transaction.get("type")).append("\",");
-            jsonBuilder.append("\"amount\":").append(transaction.get("amount")).append(",");
-            jsonBuilder.append("\"isDebit\":").append(transaction.get("isDebit")).append(",");
-            jsonBuilder.append("\"fromAccount\":\"").append(transaction.get("fromAccount")).append("\",");
-            jsonBuilder.append("\"toAccount\":\"").append(transaction.get("toAccount")).append("\",");
-            jsonBuilder.append("\"fromUserId\":").append(transaction.get("fromUserId")).append(",");
-            jsonBuilder.append("\"toUserId\":").append(transaction.get("toUserId")).append(",");
-            jsonBuilder.append("\"userName\":\"").append(transaction.get("userName")).append("\"");
-            jsonBuilder.append("}");
-
-            first = false;
+        } catch (SQLException e) {
+            if (writer.isStarted()) {
+                throw e;
+            }
+            // Log the exception but continue to generate mock data
+            System.err.println("Database error in writeTransactionResponse: " + e.getMessage());
         }
 
-        // Add pagination information
-        jsonBuilder.append("],");
-        jsonBuilder.append("\"pagination\":{");
-        jsonBuilder.append("\"totalItems\":").append(totalItems).append(",");
-        jsonBuilder.append("\"totalPages\":").append(totalPages).append(",");
-        jsonBuilder.append("\"currentPage\":").append(page).append(",");
-        jsonBuilder.append("\"pageSize\":").append(size);
-        jsonBuilder.append("}}");
+        // Fallback to mock data if database connection fails or returns no data
+        writeMockResponse(resp, generateMockTransactionData(userId, page, size), totalItems, page, size);
+    }
 
-        resp.getWriter().write(jsonBuilder.toString());
+    /**
+     * Writes a first page from the recent transactions cache, with mock data
+     * for a user without any transactions as in
+     * {@link #writeTransactionResponse}
+     */
+    private void writeRecentResponse(HttpServletResponse resp, int userId, RecentTransactionCache.Page recent,
+            int page, int size) throws IOException {
+        if (recent.getTransactions().isEmpty()) {
+            writeMockResponse(resp, generateMockTransactionData(userId, page, size), recent.getTotalItems(), page,
+                    size);
+            return;
+        }
+        TransactionArrayWriter writer = new TransactionArrayWriter(resp);
+        for (Transaction transaction : recent.getTransactions()) {
+            writer.processRow(transaction);
+        }
+        writer.finish(recent.getNextCursor(), null, recent.getTotalItems(), page, size);
     }
 
     /**
      * Write admin transaction response with all transactions
      */
-    private void writeAdminTransactionResponse(HttpServletResponse resp, int page, int size)
+    private void writeAdminTransactionResponse(HttpServletResponse resp, int page, int size, PageCursor cursor)
             throws IOException, SQLException {
         try (Connection conn = DatabaseUtil.getConnection()) {
             if (conn != null) {
-                // Fix quotes for SQLite CONCAT function (SQLite doesn't support CONCAT)
-                // Added LEFT JOIN with flagged_transactions to filter out already flagged
-                // transactions for admin view
-                String sql = "SELECT t.id, strftime('%Y-%m-%d', t.timestamp) as formatted_date, " +
-                        "t.amount, t.description, t.type, " +
-                        "a1.account_number as from_account, a2.account_number as to_account, " +
-                        "a1.user_id as from_user_id, a2.user_id as to_user_id, " +
-                        // Use SQLite string concatenation instead of CONCAT function
-                        "COALESCE(u1.name, 'Unknown') || ' (' || COALESCE(a1.user_id, 0) || ')' as from_user_name, " +
-                        "COALESCE(u2.name, 'Unknown') || ' (' || COALESCE(a2.user_id, 0) || ')' as to_user_name " +
-                        "FROM transactions t " +
-                        "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
-                        "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
-                        "LEFT JOIN users u1 ON a1.user_id = u1.id " +
-                        "LEFT JOIN users u2 ON a2.user_id = u2.id " +
-                        "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
-                        "WHERE ft.id IS NULL " +
-                        "ORDER BY t.timestamp DESC " +
-                        "LIMIT ? OFFSET ?";
-
-                List<Map<String, Object>> transactions = new ArrayList<>();
-                int totalItems = 0;
-
-                // Update count query to also exclude flagged transactions
-                try (PreparedStatement countStmt = conn.prepareStatement(
-                        "SELECT COUNT(*) FROM transactions t " +
-                                "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
-                                "WHERE ft.id IS NULL")) {
-                    try (ResultSet countRs = countStmt.executeQuery()) {
-                        if (countRs.next()) {
-                            totalItems = countRs.getInt(1);
-                        }
-                    }
-                }
-
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setInt(1, size);
-                    stmt.setInt(2, (page - 1) * size);
-
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd, yyyy");
-
-                        while (rs.next()) {
-                            Map<String, Object> transaction = new HashMap<>();
-                            transaction.put("id", rs.getInt("id"));
-
-                            // Fix: Use the formatted date string from SQLite directly
-                            String dateStr = rs.getString("formatted_date");
-                            LocalDate transactionDate;
-                            try {
-                                // Parse the date string from SQLite (YYYY-MM-DD format)
-                                transactionDate = LocalDate.parse(dateStr);
-                                transaction.put("date", transactionDate.format(dateFormatter));
-                            } catch (Exception e) {
-                                // Fallback if date parsing fails
-                                System.err.println("Error parsing date: " + dateStr + " - " + e.getMessage());
-                                transaction.put("date", "Unknown Date");
-                            }
-
-                            transaction.put("description", rs.getString("description"));
-                            transaction.put("type", rs.getString("type"));
-                            transaction.put("amount", rs.getDouble("amount"));
-
-                            // For admin view, show as debit by default (money leaving the system)
-                            transaction.put("isDebit", true);
-
-                            // Account information
-                            transaction.put("fromAccount", maskAccountNumber(rs.getString("from_account")));
-                            transaction.put("toAccount", maskAccountNumber(rs.getString("to_account")));
-                            transaction.put("fromUserId", rs.getInt("from_user_id"));
-                            transaction.put("toUserId", rs.getInt("to_user_id"));
-
-                            // Show both users' information
-                            transaction.put("userName", rs.getString("from_user_name") + " → " +
-                                    rs.getString("to_user_name"));
-
-                            transactions.add(transaction);
-                        }
-                    }
-                }
-
-                // Build JSON response
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("{\"transactions\":[");
-
-                boolean first = true;
-                for (Map<String, Object> transaction : transactions) {
-                    if (!first)
-                        jsonBuilder.append(",");
-
-                    jsonBuilder.append("{");
-                    for (Map.Entry<String, Object> entry : transaction.entrySet()) {
-                        if (entry.getValue() instanceof String) {
-                            jsonBuilder.append("\"").append(entry.getKey()).append("\":\"")
-                                    .append(entry.getValue()).append("\",");
-                        } else {
-                            jsonBuilder.append("\"").append(entry.getKey()).append("\":")
-                                    .append(entry.getValue()).append(",");
-                        }
-                    }
-                    // Remove trailing comma and close the object
-                    if (!transaction.isEmpty()) {
-                        jsonBuilder.setLength(jsonBuilder.length() - 1);
-                    }
-                    jsonBuilder.append("}");
-                    first = false;
-                }
+                // Unflagged transactions, from the maintained counters
+                int totalItems = DatabaseUtil.getTransactionCount(conn, "global", 0, true);
 
-                // Add pagination information
-                int totalPages = (int) Math.ceil((double) totalItems / size);
-                jsonBuilder.append("],");
-                jsonBuilder.append("\"pagination\":{");
-                jsonBuilder.append("\"totalItems\":").append(totalItems).append(",");
-                jsonBuilder.append("\"totalPages\":").append(totalPages).append(",");
-                jsonBuilder.append("\"currentPage\":").append(page).append(",");
-                jsonBuilder.append("\"pageSize\":").append(size);
-                jsonBuilder.append("}}");
-
-                resp.getWriter().write(jsonBuilder.toString());
+                TransactionArrayWriter writer = new TransactionArrayWriter(resp);
+                TransactionDAO.PageResult result = TransactionDAO.forEachPage(conn, page, size, cursor, writer);
+                writer.finish(result, totalItems, page, size);
                 return;
             }
         }
 
         // Fallback to mock data for admin view
-        List<Map<String, Object>> mockData = generateAdminMockData(page, size);
-        int totalItems = 100; // Default total for admin mock data
-        int totalPages = (int) Math.ceil((double) totalItems / size);
-
-        // Build JSON response for mock data
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("{\"transactions\":[");
-
-        boolean first = true;
-        for (Map<String, Object> transaction : mockData) {
-            if (!first)
-                jsonBuilder.append(",");
-            jsonBuilder.append("{");
-            for (Map.Entry<String, Object> entry : transaction.entrySet()) {
-                if (entry.getValue() instanceof String) {
-                    jsonBuilder.append("\"").append(entry.getKey()).append("\":\"")
-                            .append(entry.getValue()).append("\",");
-                } else {
-                    jsonBuilder.append("\"").append(entry.getKey()).append(":")
-                            .append(entry.getValue()).append(",");
-                }
-            }
-            // Remove trailing comma and close the object
-            if (!transaction.isEmpty()) {
-                jsonBuilder.setLength(jsonBuilder.length() - 1);
-            }
-            jsonBuilder.append("}");
-            first = false;
-        }
-
-        jsonBuilder.append("],");
-        jsonBuilder.append("\"pagination\":{");
-        jsonBuilder.append("\"totalItems\":").append(totalItems).append(",");
-        jsonBuilder.append("\"totalPages\":").append(totalPages).append(",");
-        jsonBuilder.append("\"currentPage\":").append(page).append(",");
-        jsonBuilder.append("\"pageSize\":").append(size);
-        jsonBuilder.append("}}");
-
-        resp.getWriter().write(jsonBuilder.toString());
+        writeMockResponse(resp, generateAdminMockData(page, size), 100, page, size);
     }
 
     /**
      * Generate mock transaction data for admin view
      */
-    private List<Map<String, Object>> generateAdminMockData(int page, int size) {
-        List<Map<String, Object>> transactions = new ArrayList<>();
+    private List<Transaction> generateAdminMockData(int page, int size) {
+        List<Transaction> transactions = new ArrayList<>(size);
         int startIdx = (page - 1) * size;
 
         // Fix: Use lowercase transaction types to match database schema
@@ -362,29 +250,25 @@ public class TransactionListServlet extends HttpServlet {
         LocalDate today = LocalDate.now();
 
         for (int i = 0; i < size; i++) {
-            Map<String, Object> transaction = new HashMap<>();
-            int id = startIdx + i + 1;
-
-            transaction.put("id", id);
+            Transaction transaction = new Transaction();
+            transaction.setId(startIdx + i + 1);
             LocalDate date = today.minusDays(random.nextInt(30));
-            transaction.put("date", date.format(formatter));
+            transaction.setDate(date.format(formatter));
 
-            transaction.put("type", types[random.nextInt(types.length)]);
-            transaction.put("description", descriptions[random.nextInt(descriptions.length)]);
+            transaction.setType(types[random.nextInt(types.length)]);
+            transaction.setDescription(descriptions[random.nextInt(descriptions.length)]);
 
-            double amount = 10.0 + random.nextDouble() * 990.0;
-            amount = Math.round(amount * 100.0) / 100.0;
-            transaction.put("amount", amount);
-            transaction.put("isDebit", true);
+            transaction.setAmountCents(10_00 + random.nextInt(990_00));
+            transaction.setIsDebit(true);
 
             int fromUserId = random.nextInt(100) + 1;
             int toUserId = random.nextInt(100) + 1;
 
-            transaction.put("fromAccount", "Account ****" + (1000 + random.nextInt(9000)));
-            transaction.put("toAccount", "Account ****" + (1000 + random.nextInt(9000)));
-            transaction.put("fromUserId", fromUserId);
-            transaction.put("toUserId", toUserId);
-            transaction.put("userName", "User " + fromUserId + " → User " + toUserId);
+            transaction.setFromAccount("Account ****" + (1000 + random.nextInt(9000)));
+            transaction.setToAccount("Account ****" + (1000 + random.nextInt(9000)));
+            transaction.setFromUserId(fromUserId);
+            transaction.setToUserId(toUserId);
+            transaction.setUserName("User " + fromUserId + " → User " + toUserId);
 
             transactions.add(transaction);
         }
@@ -393,104 +277,117 @@ public class TransactionListServlet extends HttpServlet {
     }
 
     /**
-     * Get transaction data for a specific user
-     * In a production environment, this would query the database
+     * Streams DAO rows into the "transactions" array. The response is only
+     * started when the first row arrives, so a caller can still fall back to
+     * something else if there are none.
      */
-    private List<Map<String, Object>> getTransactionData(int userId, int page, int size) throws SQLException {
-        List<Map<String, Object>> transactions = new ArrayList<>();
-        int startIdx = (page - 1) * size;
+    private class TransactionArrayWriter implements RowCallback<Transaction> {
+        private final HttpServletResponse resp;
+        private JsonStreamWriter json;
 
-        // Try to get data from database first
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            if (conn != null) {
-                // Update SQL to use strftime for safe date handling and proper SQLite syntax
-                // Added LEFT JOIN with flagged_transactions to filter out already flagged
-                // transactions
-                String sql = "SELECT t.id, strftime('%Y-%m-%d', t.timestamp) as formatted_date, t.amount, " +
-                        "t.description, t.type, " +
-                        "a1.account_number as from_account, a2.account_number as to_account, " +
-                        "a1.user_id as from_user_id, a2.user_id as to_user_id, " +
-                        "u.name as user_name " +
-                        "FROM transactions t " +
-                        "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
-                        "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
-                        "LEFT JOIN users u ON (CASE WHEN a1.user_id = ? THEN a2.user_id ELSE a1.user_id END) = u.id " +
-                        "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
-                        "WHERE (a1.user_id = ? OR a2.user_id = ?) AND ft.id IS NULL " +
-                        "ORDER BY t.timestamp DESC " +
-                        "LIMIT ? OFFSET ?";
-
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setInt(1, userId);
-                    stmt.setInt(2, userId);
-                    stmt.setInt(3, userId);
-                    stmt.setInt(4, size);
-                    stmt.setInt(5, startIdx);
-
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd, yyyy");
-
-                        while (rs.next()) {
-                            Map<String, Object> transaction = new HashMap<>();
-                            int id = rs.getInt("id");
-
-                            // Determine if this is a debit from the user's perspective
-                            int fromUserId = rs.getInt("from_user_id");
-                            boolean isDebit = (fromUserId == userId);
-
-                            transaction.put("id", id);
-
-                            // Fix: Use the formatted date string from SQLite directly
-                            String dateStr = rs.getString("formatted_date");
-                            try {
-                                LocalDate transactionDate = LocalDate.parse(dateStr);
-                                transaction.put("date", transactionDate.format(dateFormatter));
-                            } catch (Exception e) {
-                                System.err.println("Error parsing date: " + dateStr + " - " + e.getMessage());
-                                transaction.put("date", "Unknown Date");
-                            }
-
-                            transaction.put("description", rs.getString("description"));
-                            transaction.put("type", rs.getString("type"));
-                            transaction.put("amount", rs.getDouble("amount"));
-                            transaction.put("isDebit", isDebit);
-
-                            // Mask account numbers for security
-                            String fromAccount = maskAccountNumber(rs.getString("from_account"));
-                            String toAccount = maskAccountNumber(rs.getString("to_account"));
-
-                            transaction.put("fromAccount", fromAccount);
-                            transaction.put("toAccount", toAccount);
-                            transaction.put("fromUserId", fromUserId);
-                            transaction.put("toUserId", rs.getInt("to_user_id"));
-
-                            // Get appropriate username based on the transaction direction
-                            transaction.put("userName", rs.getString("user_name"));
-
-                            transactions.add(transaction);
-                        }
-                    }
-                }
+        TransactionArrayWriter(HttpServletResponse resp) {
+            this.resp = resp;
+        }
 
-                // If we got transactions from the DB, return them
-                if (!transactions.isEmpty()) {
-                    return transactions;
-                }
+        @Override
+        public void processRow(Transaction transaction) throws IOException {
+            if (json == null) {
+                start();
             }
-        } catch (SQLException e) {
-            // Log the exception but continue to generate mock data
-            System.err.println("Database error in getTransactionData: " + e.getMessage());
+            // Mask account numbers for security
+            writeTransaction(json, transaction, maskAccountNumber(transaction.getFromAccount()),
+                    maskAccountNumber(transaction.getToAccount()));
         }
 
-        // Fallback to mock data if database connection fails or returns no data
-        return generateMockTransactionData(userId, page, size);
+        boolean isStarted() {
+            return json != null;
+        }
+
+        /**
+         * Closes the array and writes the pagination object with the cursors
+         * from the DAO
+         */
+        void finish(TransactionDAO.PageResult result, int totalItems, int page, int size) throws IOException {
+            finish(result.getNextCursor(), result.getPrevCursor(), totalItems, page, size);
+        }
+
+        /**
+         * Closes the array and writes the pagination object with the given
+         * cursors
+         */
+        void finish(String nextCursor, String prevCursor, int totalItems, int page, int size) throws IOException {
+            if (json == null) {
+                start();
+            }
+            json.endArray();
+            writePagination(json, totalItems, page, size, nextCursor, prevCursor);
+            json.endObject().flush();
+        }
+
+        private void start() throws IOException {
+            json = new JsonStreamWriter(resp.getOutputStream());
+            json.beginObject().name("transactions").beginArray();
+        }
+    }
+
+    /**
+     * Writes one transaction, with fields in the order transaction-list.js has
+     * always received them
+     */
+    private void writeTransaction(JsonStreamWriter json, Transaction transaction, String fromAccount,
+            String toAccount) throws IOException {
+        json.beginObject();
+        json.field("id", transaction.getId());
+        json.field("date", transaction.getDate());
+        json.field("description", transaction.getDescription());
+        json.field("type", transaction.getType());
+        json.centsField("amount", transaction.getAmountCents());
+        json.field("isDebit", transaction.getIsDebit());
+        json.field("fromAccount", fromAccount);
+        json.field("toAccount", toAccount);
+        json.field("fromUserId", transaction.getFromUserId());
+        json.field("toUserId", transaction.getToUserId());
+        json.field("userName", transaction.getUserName());
+        json.endObject();
+    }
+
+    /**
+     * Writes a list of mock rows with page-number pagination
+     */
+    private void writeMockResponse(HttpServletResponse resp, List<Transaction> transactions, int totalItems,
+            int page, int size) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(resp.getOutputStream());
+        json.beginObject().name("transactions").beginArray();
+        for (Transaction transaction : transactions) {
+            // Mock account labels are already masked
+            writeTransaction(json, transaction, transaction.getFromAccount(), transaction.getToAccount());
+        }
+        json.endArray();
+        writePagination(json, totalItems, page, size, null, null);
+        json.endObject().flush();
+    }
+
+    /**
+     * Writes the pagination object
+     */
+    private void writePagination(JsonStreamWriter json, int totalItems, int page, int size, String nextCursor,
+            String prevCursor) throws IOException {
+        int totalPages = (int) Math.ceil((double) totalItems / size);
+        json.name("pagination").beginObject();
+        json.field("totalItems", totalItems);
+        json.field("totalPages", totalPages);
+        json.field("currentPage", page);
+        json.field("pageSize", size);
+        json.field("nextCursor", nextCursor);
+        json.field("prevCursor", prevCursor);
+        json.endObject();
     }
 
     /**
      * Generate mock transaction data when the database is unavailable
      */
-    private List<Map<String, Object>> generateMockTransactionData(int userId, int page, int size) {
-        List<Map<String, Object>> transactions = new ArrayList<>();
+    private List<Transaction> generateMockTransactionData(int userId, int page, int size) {
+        List<Transaction> transactions = new ArrayList<>(size);
         int startIdx = (page - 1) * size;
 
         // Transaction types and descriptions for mock data - fix lowercase
@@ -503,29 +400,26 @@ public class TransactionListServlet extends HttpServlet {
 
         // Generate transactions
         for (int i = 0; i < size; i++) {
-            Map<String, Object> transaction = new HashMap<>();
-            int id = startIdx + i + 1;
+            Transaction transaction = new Transaction();
             boolean isDebit = random.nextBoolean();
 
-            transaction.put("id", id);
+            transaction.setId(startIdx + i + 1);
 
             // Create a date within the last 30 days
             LocalDate date = today.minusDays(random.nextInt(30));
-            transaction.put("date", date.format(formatter));
+            transaction.setDate(date.format(formatter));
 
             // Transaction details
-            transaction.put("type", types[random.nextInt(types.length)]);
-            transaction.put("description", descriptions[random.nextInt(descriptions.length)]);
+            transaction.setType(types[random.nextInt(types.length)]);
+            transaction.setDescription(descriptions[random.nextInt(descriptions.length)]);
 
-            // Amount between $10 and $1000, rounded to 2 decimal places
-            double amount = 10.0 + random.nextDouble() * 990.0;
-            amount = Math.round(amount * 100.0) / 100.0;
-            transaction.put("amount", amount);
-            transaction.put("isDebit", isDebit);
+            // Amount between $10 and $1000
+            transaction.setAmountCents(10_00 + random.nextInt(990_00));
+            transaction.setIsDebit(isDebit);
 
             // Account information
-            transaction.put("fromAccount", isDebit ? "Checking ****4321" : "External");
-            transaction.put("toAccount", isDebit ? "External" : "Checking ****4321");
+            transaction.setFromAccount(isDebit ? "Checking ****4321" : "External");
+            transaction.setToAccount(isDebit ? "External" : "Checking ****4321");
 
             // User information
             int otherUserId = random.nextInt(100) + 1;
@@ -533,9 +427,9 @@ public class TransactionListServlet extends HttpServlet {
                 otherUserId = random.nextInt(100) + 1; // Ensure other user is different
             }
 
-            transaction.put("fromUserId", isDebit ? userId : otherUserId);
-            transaction.put("toUserId", isDebit ? otherUserId : userId);
-            transaction.put("userName", "User " + (isDebit ? otherUserId : userId));
+            transaction.setFromUserId(isDebit ? userId : otherUserId);
+            transaction.setToUserId(isDebit ? otherUserId : userId);
+            transaction.setUserName("User " + (isDebit ? otherUserId : userId));
 
             transactions.add(transaction);
         }
@@ -563,26 +457,10 @@ public class TransactionListServlet extends HttpServlet {
      * Get total transaction count for pagination
      */
     private int getTotalTransactionCount(int userId) {
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            if (conn != null) {
-                // Updated query to exclude flagged transactions
-                String sql = "SELECT COUNT(*) FROM transactions t " +
-                        "LEFT JOIN accounts a1 ON t.from_account_id = a1.id " +
-                        "LEFT JOIN accounts a2 ON t.to_account_id = a2.id " +
-                        "LEFT JOIN flagged_transactions ft ON t.id = ft.transaction_id " +
-                        "WHERE (a1.user_id = ? OR a2.user_id = ?) AND ft.id IS NULL";
-
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setInt(1, userId);
-                    stmt.setInt(2, userId);
-
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        if (rs.next()) {
-                            return rs.getInt(1);
-                        }
-                    }
-                }
-            }
+        try {
+            // Unflagged transactions touching any of the user's accounts, from the
+            // maintained counters
+            return DatabaseUtil.getTransactionCount("user", userId, true);
         } catch (SQLException e) {
             System.err.println("Database error in getTotalTransactionCount: " + e.getMessage());
         }
@@ -1,7 +1,13 @@
 package com.banking.servlet.api;
 
+import com.banking.dao.TransactionDAO;
+import com.banking.model.IdempotencyRecord;
+import com.banking.model.Money;
 import com.banking.model.User;
+import com.banking.util.BalanceEngine;
 import com.banking.util.DatabaseUtil;
+import com.banking.util.IdempotencyStore;
+import com.banking.util.TransactionExecutor;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -12,13 +18,21 @@ import jakarta.servlet.http.HttpSession;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Moves money between accounts for the transfer form.
+ *
+ * A request may carry an Idempotency-Key header. Its outcome is then stored,
+ * and a retry with the same key (after a timeout, say) is answered with that
+ * outcome instead of transferring again. See {@link IdempotencyStore}.
+ */
 @WebServlet("/api/transfer-funds")
 public class TransferFundsServlet extends HttpServlet {
 
+    private static final String SUCCESS_MESSAGE = "Transfer completed successfully!";
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
@@ -50,10 +64,11 @@ public class TransferFundsServlet extends HttpServlet {
             return;
         }
 
-        double amount;
+        // Whole cents, so the balance check and updates below are exact
+        final long amountCents;
         try {
-            amount = Double.parseDouble(amountStr);
-            if (amount <= 0) {
+            amountCents = Money.parseCents(amountStr);
+            if (amountCents <= 0) {
                 setErrorAndRedirect(request, response, "Amount must be greater than zero.");
                 return;
             }
@@ -62,165 +77,244 @@ public class TransferFundsServlet extends HttpServlet {
             return;
         }
 
-        // Process the transfer
-        Connection conn = null;
+        // Process the transfer on the single database writer
+        int sourceAccountId;
         try {
-            conn = DatabaseUtil.getConnection();
-            conn.setAutoCommit(false); // Start transaction
-
-            // 1. Verify the source account belongs to the current user
-            int sourceAccountId = Integer.parseInt(fromAccountId);
-            double sourceBalance = getAccountBalanceAndVerifyOwner(conn, sourceAccountId, user.getId());
-
-            if (sourceBalance < 0) {
-                throw new SQLException("Source account not found or does not belong to the current user.");
-            }
+            sourceAccountId = Integer.parseInt(fromAccountId);
+        } catch (NumberFormatException e) {
+            setErrorAndRedirect(request, response, "Invalid source account.");
+            return;
+        }
+        String transferDescription = description != null && !description.trim().isEmpty() ? description
+                : "Fund transfer";
 
-            // 2. Check if user has sufficient funds
-            if (sourceBalance < amount) {
-                setErrorAndRedirect(request, response, "Insufficient funds to complete this transfer.");
+        // A retry with the same Idempotency-Key gets the first attempt's outcome
+        IdempotencyStore.Claim claim = null;
+        String idempotencyKey = request.getHeader("Idempotency-Key");
+        IdempotencyStore idempotencyStore = DatabaseUtil.getIdempotencyStore();
+        if (idempotencyKey != null && idempotencyStore != null) {
+            if (!IdempotencyStore.isValidKey(idempotencyKey)) {
+                setErrorAndRedirect(request, response, "Invalid Idempotency-Key header.");
                 return;
             }
-
-            // 3. Find the destination account
-            int destinationAccountId = getAccountIdByNumber(conn, toAccountNumber);
-            if (destinationAccountId < 0) {
-                setErrorAndRedirect(request, response, "Destination account not found.");
+            try {
+                claim = idempotencyStore.claim(user.getId(), idempotencyKey, IdempotencyStore.fingerprint(
+                        sourceAccountId, toAccountNumber, amountCents, transferDescription));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                setErrorAndRedirect(request, response, "Database error: " + e.getMessage());
                 return;
             }
+            switch (claim.getStatus()) {
+                case ACQUIRED:
+                    break;
+                case REPLAY:
+                    response.setHeader("Idempotent-Replayed", "true");
+                    IdempotencyRecord stored = claim.getStored();
+                    if (stored.isSuccess()) {
+                        request.setAttribute("transferResult", stored.getMessage());
+                        request.getRequestDispatcher("/pages/customer/transfer-funds.jsp").forward(request, response);
+                    } else {
+                        setErrorAndRedirect(request, response, stored.getMessage());
+                    }
+                    return;
+                case MISMATCH:
+                    setErrorAndRedirect(request, response,
+                            "This Idempotency-Key was already used for a different transfer.");
+                    return;
+                case IN_PROGRESS:
+                    setErrorAndRedirect(request, response,
+                            "A transfer with this Idempotency-Key is already being processed.");
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected claim status " + claim.getStatus());
+            }
+        }
 
-            // 4. Prevent transfer to the same account
-            if (sourceAccountId == destinationAccountId) {
-                setErrorAndRedirect(request, response, "Cannot transfer to the same account.");
+        String transferError;
+        try {
+            BalanceEngine engine = DatabaseUtil.getBalanceEngine();
+            if (engine != null) {
+                transferError = transferInMemory(engine, sourceAccountId, user.getId(), toAccountNumber, amountCents,
+                        transferDescription, claim);
+            } else {
+                transferError = transferInDatabase(sourceAccountId, user.getId(), toAccountNumber, amountCents,
+                        transferDescription, claim);
+            }
+        } catch (SQLException e) {
+            // Nothing was stored for the key, so a retry runs the transfer again
+            if (claim != null) {
+                claim.release();
+            }
+            // The writer has already rolled the transaction back
+            if (e instanceof TransactionExecutor.BusyException) {
+                // Still locked after the writer's retries
+                setErrorAndRedirect(request, response, "The bank is busy right now. Please try the transfer again.");
                 return;
             }
+            e.printStackTrace();
+            setErrorAndRedirect(request, response, "Database error: " + e.getMessage());
+            return;
+        }
 
-            // 5. Update source account balance (subtract amount)
-            updateAccountBalance(conn, sourceAccountId, -amount); // Negative for deduction
-
-            // 6. Update destination account balance (add amount)
-            updateAccountBalance(conn, destinationAccountId, amount); // Positive for addition
+        if (transferError != null) {
+            setErrorAndRedirect(request, response, transferError);
+            return;
+        }
 
-            // 7. Create transaction record
-            createTransactionRecord(conn, sourceAccountId, destinationAccountId, amount,
-                    description != null && !description.trim().isEmpty() ? description : "Fund transfer");
+        // Set success message and redirect
+        request.setAttribute("transferResult", SUCCESS_MESSAGE);
+        request.getRequestDispatcher("/pages/customer/transfer-funds.jsp").forward(request, response);
+    }
 
-            // Commit the transaction
-            conn.commit();
+    /**
+     * Checks and applies the transfer on the in-memory balances. The postings
+     * are written behind unless the engine is configured not to
+     * (banking.balances.writeBehind=false), in which case this waits for them
+     * to be committed. Balances are shown from the engine, so the customer
+     * sees the transfer either way.
+     *
+     * A successful transfer's idempotency key is written in the same
+     * transaction as its postings and stays claimed until they are committed.
+     *
+     * @param claim Idempotency key held by this request, or null
+     * @return Error message for the user, or null on success
+     * @throws SQLException if the postings were waited for and failed
+     */
+    private String transferInMemory(BalanceEngine engine, int sourceAccountId, int userId, String toAccountNumber,
+            long amountCents, String description, IdempotencyStore.Claim claim) throws SQLException {
+        int destinationAccountId = DatabaseUtil.findAccountIdByNumber(toAccountNumber);
+        if (destinationAccountId < 0) {
+            return rejected(claim, "Destination account not found.");
+        }
 
-            // Set success message and redirect
-            request.setAttribute("transferResult", "Transfer completed successfully!");
-            request.getRequestDispatcher("/pages/customer/transfer-funds.jsp").forward(request, response);
+        IdempotencyRecord outcome = claim != null ? claim.outcome(true, SUCCESS_MESSAGE) : null;
+        BalanceEngine.TransferResult result = engine.transfer(sourceAccountId, userId, destinationAccountId,
+                amountCents, description, outcome);
+        switch (result.getStatus()) {
+            case OK:
+                break;
+            case NOT_OWNER:
+                return rejected(claim, "Source account not found or does not belong to the current user.");
+            case INSUFFICIENT_FUNDS:
+                return rejected(claim, "Insufficient funds to complete this transfer.");
+            case UNKNOWN_DESTINATION:
+                return rejected(claim, "Destination account not found.");
+            case SAME_ACCOUNT:
+                return rejected(claim, "Cannot transfer to the same account.");
+            default:
+                throw new IllegalStateException("Unexpected transfer status " + result.getStatus());
+        }
 
-        } catch (SQLException e) {
-            // Roll back the transaction on error
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+        if (claim != null) {
+            // If the postings fail the engine reverses the transfer, so a retry should run it again
+            result.getPersisted().whenComplete((ignored, error) -> {
+                if (error == null) {
+                    claim.completePersisted(outcome);
+                } else {
+                    claim.release();
                 }
-            }
+            });
+        }
 
-            e.printStackTrace();
-            setErrorAndRedirect(request, response, "Database error: " + e.getMessage());
-            return;
-        } finally {
-            // Restore auto-commit mode and close connection
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+        // Postings that are already done may have failed (the engine waits for them
+        // when there is no journal or it couldn't be written), so check those too
+        if (!engine.isWriteBehind() || result.getPersisted().isDone()) {
+            try {
+                result.getPersisted().join();
+            } catch (CompletionException e) {
+                // Already reversed in memory by the engine
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new SQLException(cause.getMessage(), cause);
             }
         }
+
+        // Once the postings are committed, add them to the recent transactions cache
+        DatabaseUtil.transactionsCommitted(result.getPersisted());
+        return null;
     }
 
     /**
-     * Set error message and redirect back to transfer form
+     * Stores a rejected transfer's outcome for its idempotency key
+     *
+     * @return The error message
      */
-    private void setErrorAndRedirect(HttpServletRequest request, HttpServletResponse response, String errorMessage)
-            throws ServletException, IOException {
-        request.setAttribute("transferError", errorMessage);
-        request.getRequestDispatcher("/pages/customer/transfer-funds.jsp").forward(request, response);
+    private static String rejected(IdempotencyStore.Claim claim, String error) {
+        if (claim != null) {
+            claim.complete(false, error);
+        }
+        return error;
     }
 
     /**
-     * Get account balance and verify ownership
-     * 
-     * @return account balance if found and owned by user, -1 otherwise
+     * Checks and applies the transfer in a single writer transaction, which
+     * also stores the outcome for the idempotency key if there is one
+     *
+     * @param claim Idempotency key held by this request, or null
+     * @return Error message for the user, or null on success
      */
-    private double getAccountBalanceAndVerifyOwner(Connection conn, int accountId, int userId) throws SQLException {
-        String sql = "SELECT balance FROM accounts WHERE id = ? AND user_id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, accountId);
-            stmt.setInt(2, userId);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getDouble("balance");
-                }
+    private String transferInDatabase(int sourceAccountId, int userId, String toAccountNumber, long amountCents,
+            String transferDescription, IdempotencyStore.Claim claim) throws SQLException {
+        String transferError = DatabaseUtil.write("transferFunds", conn -> {
+            String error = applyTransfer(conn, sourceAccountId, userId, toAccountNumber, amountCents,
+                    transferDescription);
+            if (claim != null) {
+                claim.persist(conn, claim.outcome(error == null, error == null ? SUCCESS_MESSAGE : error));
             }
+            return error; // Committed by the writer
+        });
+        if (claim != null) {
+            claim.completePersisted(
+                    claim.outcome(transferError == null, transferError == null ? SUCCESS_MESSAGE : transferError));
+        }
+        if (transferError == null) {
+            DatabaseUtil.transactionsCommitted();
         }
-        return -1;
+        return transferError;
     }
 
     /**
-     * Get account ID by account number
-     * 
-     * @return account ID if found, -1 otherwise
+     * Checks and applies the transfer on the writer connection
+     *
+     * @return Error message for the user, or null on success
      */
-    private int getAccountIdByNumber(Connection conn, String accountNumber) throws SQLException {
-        String sql = "SELECT id FROM accounts WHERE account_number = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, accountNumber);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
-                }
-            }
+    private String applyTransfer(Connection conn, int sourceAccountId, int userId, String toAccountNumber,
+            long amountCents, String transferDescription) throws SQLException {
+        int destinationAccountId = getAccountIdByNumber(conn, toAccountNumber);
+        BalanceEngine.TransferStatus status = TransactionDAO.transfer(conn, sourceAccountId, userId,
+                destinationAccountId, amountCents, transferDescription);
+        switch (status) {
+            case OK:
+                return null;
+            case NOT_OWNER:
+                throw new SQLException("Source account not found or does not belong to the current user.");
+            case INSUFFICIENT_FUNDS:
+                return "Insufficient funds to complete this transfer.";
+            case UNKNOWN_DESTINATION:
+                return "Destination account not found.";
+            case SAME_ACCOUNT:
+                return "Cannot transfer to the same account.";
+            default:
+                throw new IllegalStateException("Unexpected transfer status " + status);
         }
-        return -1;
     }
 
     /**
-     * Update account balance
-     * 
-     * @param amount Positive for deposit, negative for withdrawal
+     * Set error message and redirect back to transfer form
      */
-    private void updateAccountBalance(Connection conn, int accountId, double amount) throws SQLException {
-        String sql = "UPDATE accounts SET balance = balance + ? WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setDouble(1, amount);
-            stmt.setInt(2, accountId);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new SQLException("Failed to update account balance. Account may not exist.");
-            }
-        }
+    private void setErrorAndRedirect(HttpServletRequest request, HttpServletResponse response, String errorMessage)
+            throws ServletException, IOException {
+        request.setAttribute("transferError", errorMessage);
+        request.getRequestDispatcher("/pages/customer/transfer-funds.jsp").forward(request, response);
     }
 
     /**
-     * Create transaction record
+     * Get account ID by account number, usually without a query (see
+     * {@link com.banking.util.AccountDirectory})
+     * 
+     * @return account ID if found, -1 otherwise
      */
-    private void createTransactionRecord(Connection conn, int fromAccountId, int toAccountId, double amount,
-            String description)
-            throws SQLException {
-        String sql = "INSERT INTO transactions (from_account_id, to_account_id, amount, description, type) VALUES (?, ?, ?, ?, 'transfer')";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, fromAccountId);
-            stmt.setInt(2, toAccountId);
-            stmt.setDouble(3, amount);
-            stmt.setString(4, description);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new SQLException("Failed to create transaction record.");
-            }
-        }
+    private int getAccountIdByNumber(Connection conn, String accountNumber) throws SQLException {
+        return DatabaseUtil.findAccountIdByNumber(conn, accountNumber);
     }
 }
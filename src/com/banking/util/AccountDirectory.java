@@ -0,0 +1,340 @@
+package com.banking.util;
+
+import com.banking.model.Account;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * In-memory map from account number to (account id, owner, type), so the
+ * transfer path can resolve destinations without a query.
+ *
+ * Numbers in the generated XX-YYYYYYY-Z format are packed into a long and
+ * kept in an open-addressing table of parallel primitive arrays: 17 bytes a
+ * slot, at most half the slots used, and no objects per entry. Any other
+ * number (or an unexpected account type) goes to a small overflow map.
+ * Lookups are lock-free unless they race with an insert, in which case they
+ * retry under the read lock.
+ *
+ * The directory is loaded at startup and told about every account created
+ * afterwards. Accounts are never renumbered or deleted, so entries don't go
+ * stale; a number that isn't found may still have been added behind the
+ * application's back, which is why callers fall back to the database on a
+ * miss.
+ */
+public class AccountDirectory {
+
+    private static final long EMPTY = 0; // packed keys are offset by one so they are never 0
+    private static final int MIN_CAPACITY = 1024;
+
+    // Values of the types array
+    private static final byte TYPE_CHECKING = 1;
+    private static final byte TYPE_SAVINGS = 2;
+    private static final byte TYPE_OTHER = 3;
+
+    /**
+     * Account that doesn't fit the packed layout
+     */
+    private static class OverflowEntry {
+        final int accountId;
+        final int userId;
+        final String type;
+
+        OverflowEntry(int accountId, int userId, String type) {
+            this.accountId = accountId;
+            this.userId = userId;
+            this.type = type;
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+
+    // Parallel arrays, replaced together when the table grows; guarded by lock
+    private long[] keys;
+    private int[] accountIds;
+    private int[] userIds;
+    private byte[] types;
+    private int size;
+
+    private final ConcurrentHashMap<String, OverflowEntry> overflow = new ConcurrentHashMap<>();
+
+    // Counters
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param expectedAccounts Accounts to make room for up front
+     */
+    public AccountDirectory(int expectedAccounts) {
+        allocate(capacityFor(expectedAccounts));
+    }
+
+    /**
+     * Creates a directory holding every account in the database
+     */
+    public static AccountDirectory load(Connection conn) throws SQLException {
+        int count;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM accounts")) {
+            count = rs.next() ? rs.getInt(1) : 0;
+        }
+        AccountDirectory directory = new AccountDirectory(count);
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, user_id, account_number, type FROM accounts")) {
+            while (rs.next()) {
+                directory.add(rs.getString("account_number"), rs.getInt("id"), rs.getInt("user_id"),
+                        rs.getString("type"));
+            }
+        }
+        System.out.println("Account directory loaded " + directory.size() + " account(s) ("
+                + directory.overflow.size() + " in overflow)");
+        return directory;
+    }
+
+    /**
+     * Adds (or replaces) an account
+     */
+    public void add(String accountNumber, int accountId, int userId, String type) {
+        long key = pack(accountNumber);
+        byte typeCode = typeCode(type);
+        if (key == EMPTY || typeCode == TYPE_OTHER) {
+            overflow.put(accountNumber, new OverflowEntry(accountId, userId, type));
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int slot = findSlot(keys, key);
+            if (keys[slot] == EMPTY) {
+                size++;
+            }
+            accountIds[slot] = accountId;
+            userIds[slot] = userId;
+            types[slot] = typeCode;
+            keys[slot] = key;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void add(Account account) {
+        add(account.getAccountNumber(), account.getId(), account.getUserId(), account.getType());
+    }
+
+    /**
+     * @return The account's id, or -1 if the number isn't in the directory
+     */
+    public int findAccountId(String accountNumber) {
+        long key = pack(accountNumber);
+        if (key == EMPTY) {
+            return findOverflowAccountId(accountNumber);
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        int accountId = probeAccountId(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                accountId = probeAccountId(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return accountId >= 0 ? recordLookup(accountId) : findOverflowAccountId(accountNumber);
+    }
+
+    /**
+     * @return The account's id, owner, number and type (balance and creation
+     *         date are not set), or null if the number isn't in the directory
+     */
+    public Account find(String accountNumber) {
+        long key = pack(accountNumber);
+        if (key != EMPTY) {
+            long stamp = lock.readLock();
+            try {
+                int slot = findSlot(keys, key);
+                if (keys[slot] != EMPTY) {
+                    recordLookup(accountIds[slot]);
+                    return toAccount(accountNumber, accountIds[slot], userIds[slot], typeName(types[slot]));
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        OverflowEntry entry = accountNumber != null ? overflow.get(accountNumber) : null;
+        recordLookup(entry != null ? entry.accountId : -1);
+        return entry != null ? toAccount(accountNumber, entry.accountId, entry.userId, entry.type) : null;
+    }
+
+    /**
+     * Number of accounts held, including the overflow map
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size + overflow.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // === Internals ===
+
+    private int findOverflowAccountId(String accountNumber) {
+        OverflowEntry entry = accountNumber != null ? overflow.get(accountNumber) : null;
+        return recordLookup(entry != null ? entry.accountId : -1);
+    }
+
+    /**
+     * Reads without locking; the caller validates the stamp afterwards. The
+     * arrays are read once so a concurrent resize can't mix two tables.
+     */
+    private int probeAccountId(long key) {
+        long[] table = keys;
+        int[] ids = accountIds;
+        if (ids.length != table.length) {
+            return -1; // torn read during a resize, the caller retries
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask, probes = 0; probes < table.length; slot = (slot + 1) & mask, probes++) {
+            long current = table[slot];
+            if (current == key) {
+                return ids[slot];
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int findSlot(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldAccountIds = accountIds;
+        int[] oldUserIds = userIds;
+        byte[] oldTypes = types;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                accountIds[slot] = oldAccountIds[i];
+                userIds[slot] = oldUserIds[i];
+                types[slot] = oldTypes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        accountIds = new int[capacity];
+        userIds = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Power of two holding the given number of accounts at half load
+     */
+    private static int capacityFor(int accounts) {
+        int needed = Math.max(MIN_CAPACITY, accounts * 2);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    /**
+     * Packs an XX-YYYYYYY-Z number into its ten digits plus one
+     *
+     * @return The key, or EMPTY if the number has any other shape
+     */
+    private static long pack(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != 12
+                || accountNumber.charAt(2) != '-' || accountNumber.charAt(10) != '-') {
+            return EMPTY;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            if (i == 2 || i == 10) {
+                continue;
+            }
+            char c = accountNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return EMPTY;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value + 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static byte typeCode(String type) {
+        if ("checking".equals(type)) {
+            return TYPE_CHECKING;
+        }
+        if ("savings".equals(type)) {
+            return TYPE_SAVINGS;
+        }
+        return TYPE_OTHER;
+    }
+
+    private static String typeName(byte code) {
+        return code == TYPE_CHECKING ? "checking" : "savings";
+    }
+
+    private static Account toAccount(String accountNumber, int accountId, int userId, String type) {
+        Account account = new Account();
+        account.setId(accountId);
+        account.setUserId(userId);
+        account.setAccountNumber(accountNumber);
+        account.setType(type);
+        return account;
+    }
+
+    private int recordLookup(int accountId) {
+        (accountId >= 0 ? hitCount : missCount).incrementAndGet();
+        return accountId;
+    }
+
+    // === Metrics ===
+
+    /**
+     * Directory counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        int capacity;
+        int packed;
+        long stamp = lock.readLock();
+        try {
+            capacity = keys.length;
+            packed = size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return "{" +
+                "\"accounts\":" + (packed + overflow.size()) + "," +
+                "\"overflow\":" + overflow.size() + "," +
+                "\"capacity\":" + capacity + "," +
+                "\"tableBytes\":" + (long) capacity * (8 + 4 + 4 + 1) + "," +
+                "\"hits\":" + hitCount.get() + "," +
+                "\"misses\":" + missCount.get() +
+                "}";
+    }
+}
@@ -0,0 +1,50 @@
+package com.banking.util;
+
+import com.banking.model.User;
+
+/**
+ * Outcome of a login attempt, see {@link DatabaseUtil#login}
+ */
+public class AuthResult {
+
+    public enum Status {
+        SUCCESS,
+        PENDING_APPROVAL, // right role, account not yet approved
+        WRONG_ROLE, // the account exists with another role
+        LOCKED, // the account is neither active nor pending
+        BAD_CREDENTIALS, // unknown email or wrong password
+        BUSY // the password couldn't be checked because hashing is saturated
+    }
+
+    private final Status status;
+    private final User user;
+
+    private AuthResult(Status status, User user) {
+        this.status = status;
+        this.user = user;
+    }
+
+    static AuthResult success(User user) {
+        return new AuthResult(Status.SUCCESS, user);
+    }
+
+    static AuthResult failure(Status status) {
+        return new AuthResult(status, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * The logged-in user, without password hash and salt. Null unless the
+     * status is SUCCESS.
+     */
+    public User getUser() {
+        return user;
+    }
+}
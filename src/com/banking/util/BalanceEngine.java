@@ -0,0 +1,760 @@
+package com.banking.util;
+
+import com.banking.dao.AccountDAO;
+import com.banking.dao.IdempotencyKeyDAO;
+import com.banking.dao.JournalDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.IdempotencyRecord;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Account balances held in memory, with transfers checked and applied at
+ * memory speed and written to SQLite in the background.
+ *
+ * Balances (in cents) and owners live in primitive arrays indexed by account
+ * id, loaded from the accounts table at startup. Each account maps to one of a
+ * fixed set of lock stripes; a transfer locks the stripes of both accounts in
+ * stripe order, so two transfers can never deadlock on each other.
+ *
+ * Once a transfer has been applied in memory its postings (two balance
+ * updates and the transaction row) are queued on the {@link DatabaseWriter},
+ * so memory always equals the committed balances plus the postings still
+ * queued. Postings are plain balance deltas and inserts, so a write that fails
+ * is queued again, with a growing delay, instead of undoing the transfer:
+ * once a customer has been told a transfer happened it is never reversed.
+ * Without a journal a transfer is only confirmed once its postings commit; if
+ * they still fail after banking.balances.postingRetries attempts the caller
+ * gets the error and the transfer is reversed in memory. A journaled transfer
+ * is confirmed once its record is durable and its postings are retried until
+ * they commit, in journal order, so the database checkpoint never skips a
+ * record that isn't in the database yet; if the node stops first, startup
+ * replays them. SQLite stays the system of record: after a restart balances
+ * are reloaded from it.
+ *
+ * With a {@link TransferJournal}, every applied transfer is appended to the
+ * journal before its postings are queued, and the call returns once the
+ * record is durable under the journal's fsync policy. Postings reach the
+ * writer in journal order and advance the journal checkpoint in their own
+ * transaction, so after a crash the journal replays exactly the transfers
+ * that were acknowledged but not yet committed.
+ *
+ * Every other change to a balance must either go through the engine or be
+ * reported to it afterwards with {@link #credit}.
+ */
+public class BalanceEngine {
+
+    /**
+     * Outcome of a transfer attempt
+     */
+    public enum TransferStatus {
+        OK,
+        NOT_OWNER, // source account unknown or owned by someone else
+        INSUFFICIENT_FUNDS,
+        UNKNOWN_DESTINATION,
+        SAME_ACCOUNT
+    }
+
+    /**
+     * A transfer's status and, if it was applied, its pending write
+     */
+    public static class TransferResult {
+        private final TransferStatus status;
+        private final CompletableFuture<Void> persisted;
+
+        TransferResult(TransferStatus status, CompletableFuture<Void> persisted) {
+            this.status = status;
+            this.persisted = persisted;
+        }
+
+        public TransferStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Completes when the postings have been committed, or exceptionally if
+         * they could not be before the transfer was confirmed (it has then
+         * already been reversed). Null unless the status is OK.
+         */
+        public CompletableFuture<Void> getPersisted() {
+            return persisted;
+        }
+    }
+
+    /**
+     * The postings of one applied transfer, queued again until they commit
+     */
+    private static class Posting {
+        final String operation;
+        final DatabaseWriter.WriteTask<Void> task;
+        final Runnable reversal; // null if journaled, those are never given up
+        final long sequence; // journal record, 0 if not journaled
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+        volatile boolean failed; // journaled and waiting to be queued again
+        int failures; // only touched by the callback of the latest attempt
+
+        Posting(String operation, DatabaseWriter.WriteTask<Void> task, Runnable reversal, long sequence) {
+            this.operation = operation;
+            this.task = task;
+            this.reversal = reversal;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A journaled posting ran before the one journaled ahead of it committed
+     */
+    private static class OutOfOrderException extends SQLException {
+        OutOfOrderException(long sequence) {
+            super("Journal record " + sequence + " is waiting for earlier postings");
+        }
+    }
+
+    private static final int NO_OWNER = 0; // user ids start at 1
+    private static final long RETRY_DELAY_MS = 50;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final DatabaseWriter writer;
+    private final TransferJournal journal; // null if transfers are not journaled
+    private final Object journalOrder = new Object(); // keeps journal and writer queue in the same order
+    private final int postingRetries;
+    private final boolean writeBehind;
+    private final ScheduledExecutorService retryScheduler;
+    // Journaled postings not committed yet, by sequence
+    private final ConcurrentSkipListMap<Long, Posting> journaledPostings = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean requeueScheduled = new AtomicBoolean();
+    private final AtomicInteger requeueRounds = new AtomicInteger(); // since a journaled posting last committed
+    private final ReentrantLock[] stripes;
+
+    // Indexed by account id; guarded by the stripe locks. Growing them takes
+    // every stripe, so a thread holding any stripe sees the current arrays.
+    private long[] balances;
+    private int[] owners;
+
+    // Counters
+    private final AtomicInteger trackedAccounts = new AtomicInteger();
+    private final AtomicLong transferCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong pendingPostings = new AtomicLong();
+    private final AtomicLong persistedCount = new AtomicLong();
+    private final AtomicLong persistFailureCount = new AtomicLong();
+    private final AtomicLong postingRetryCount = new AtomicLong();
+    private final AtomicLong totalApplyNanos = new AtomicLong();
+
+    /**
+     * @param writer      Writer the postings are queued on
+     * @param stripeCount Number of lock stripes (rounded up to a power of two)
+     */
+    public BalanceEngine(DatabaseWriter writer, int stripeCount) {
+        this(writer, stripeCount, null);
+    }
+
+    /**
+     * @param writer      Writer the postings are queued on
+     * @param stripeCount Number of lock stripes (rounded up to a power of two)
+     * @param journal     Journal to append transfers to, or null
+     */
+    public BalanceEngine(DatabaseWriter writer, int stripeCount, TransferJournal journal) {
+        this(writer, stripeCount, journal, 3);
+    }
+
+    /**
+     * @param writer         Writer the postings are queued on
+     * @param stripeCount    Number of lock stripes (rounded up to a power of two)
+     * @param journal        Journal to append transfers to, or null
+     * @param postingRetries Attempts to commit an unconfirmed transfer's
+     *                       postings before it is reversed
+     */
+    public BalanceEngine(DatabaseWriter writer, int stripeCount, TransferJournal journal, int postingRetries) {
+        this(writer, stripeCount, journal, postingRetries, true);
+    }
+
+    /**
+     * @param writer         Writer the postings are queued on
+     * @param stripeCount    Number of lock stripes (rounded up to a power of two)
+     * @param journal        Journal to append transfers to, or null
+     * @param postingRetries Attempts to commit an unconfirmed transfer's
+     *                       postings before it is reversed
+     * @param writeBehind    Whether callers may answer before a journaled
+     *                       transfer's postings commit
+     */
+    public BalanceEngine(DatabaseWriter writer, int stripeCount, TransferJournal journal, int postingRetries,
+            boolean writeBehind) {
+        this.writer = writer;
+        this.journal = journal;
+        this.postingRetries = Math.max(0, postingRetries);
+        this.writeBehind = writeBehind;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "balance-posting-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.balances = new long[0];
+        this.owners = new int[0];
+    }
+
+    /**
+     * Loads every account's balance and owner, replacing what is held
+     *
+     * @return Number of accounts loaded
+     */
+    public int load(Connection conn) throws SQLException {
+        long[] loadedBalances = new long[0];
+        int[] loadedOwners = new int[0];
+        int count = 0;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, user_id, balance_cents FROM accounts")) {
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                if (id >= loadedBalances.length) {
+                    int capacity = grownCapacity(loadedBalances.length, id);
+                    loadedBalances = Arrays.copyOf(loadedBalances, capacity);
+                    loadedOwners = Arrays.copyOf(loadedOwners, capacity);
+                }
+                loadedBalances[id] = rs.getLong("balance_cents");
+                loadedOwners[id] = rs.getInt("user_id");
+                count++;
+            }
+        }
+
+        lockAll();
+        try {
+            balances = loadedBalances;
+            owners = loadedOwners;
+            trackedAccounts.set(count);
+        } finally {
+            unlockAll();
+        }
+        System.out.println("Balance engine loaded " + count + " account(s) with " + stripes.length + " lock stripes");
+        return count;
+    }
+
+    /**
+     * Starts tracking an account that has just been committed to the database
+     */
+    public void register(int accountId, int ownerId, long balanceCents) {
+        if (accountId <= 0 || ownerId == NO_OWNER) {
+            throw new IllegalArgumentException("Invalid account " + accountId + " or owner " + ownerId);
+        }
+        grow(accountId);
+        ReentrantLock lock = stripeFor(accountId);
+        lock.lock();
+        try {
+            if (owners[accountId] == NO_OWNER) {
+                trackedAccounts.incrementAndGet();
+            }
+            balances[accountId] = balanceCents;
+            owners[accountId] = ownerId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves money between two accounts. The source must belong to ownerId and
+     * cover the amount. On success the balances have already changed in memory
+     * and the postings are queued for the database.
+     *
+     * @param amountCents Amount to move, greater than zero
+     */
+    public TransferResult transfer(int fromAccountId, int ownerId, int toAccountId, long amountCents,
+            String description) {
+        return transfer(fromAccountId, ownerId, toAccountId, amountCents, description, null);
+    }
+
+    /**
+     * Like {@link #transfer(int, int, int, long, String)}, also storing the
+     * outcome for an idempotency key in the same transaction as the postings
+     * (and in the same journal record), so both are committed or neither is
+     *
+     * @param idempotencyOutcome Outcome to store, or null
+     */
+    public TransferResult transfer(int fromAccountId, int ownerId, int toAccountId, long amountCents,
+            String description, IdempotencyRecord idempotencyOutcome) {
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive: " + amountCents);
+        }
+        long started = System.nanoTime();
+        TransferStatus status = applyTransfer(fromAccountId, ownerId, toAccountId, amountCents);
+        totalApplyNanos.addAndGet(System.nanoTime() - started);
+        if (status != TransferStatus.OK) {
+            rejectedCount.incrementAndGet();
+            return new TransferResult(status, null);
+        }
+        transferCount.incrementAndGet();
+        return new TransferResult(status,
+                persistTransfer(fromAccountId, toAccountId, amountCents, description, idempotencyOutcome));
+    }
+
+    /**
+     * Moves money from one account to many (e.g. a payroll run) as a single
+     * debit. Either every payment is applied or none is: the source must
+     * belong to ownerId and cover the total, and every destination must be
+     * tracked and differ from the source.
+     *
+     * @param toAccountIds  Destination of each payment
+     * @param amountsCents  Amount of each payment, each greater than zero
+     * @param descriptions  Description of each payment
+     * @throws ArithmeticException if the total overflows
+     */
+    public TransferResult transferBatch(int fromAccountId, int ownerId, int[] toAccountIds, long[] amountsCents,
+            String[] descriptions) {
+        long totalCents = 0;
+        Map<Integer, Long> credits = new HashMap<>();
+        for (int i = 0; i < toAccountIds.length; i++) {
+            if (amountsCents[i] <= 0) {
+                throw new IllegalArgumentException("Transfer amount must be positive: " + amountsCents[i]);
+            }
+            totalCents = Math.addExact(totalCents, amountsCents[i]);
+            credits.merge(toAccountIds[i], amountsCents[i], Math::addExact);
+        }
+
+        long started = System.nanoTime();
+        TransferStatus status = applyBatch(fromAccountId, ownerId, credits, totalCents);
+        totalApplyNanos.addAndGet(System.nanoTime() - started);
+        if (status != TransferStatus.OK) {
+            rejectedCount.incrementAndGet();
+            return new TransferResult(status, null);
+        }
+        transferCount.addAndGet(toAccountIds.length);
+        return new TransferResult(status,
+                persistBatch(fromAccountId, credits, totalCents, toAccountIds, amountsCents, descriptions));
+    }
+
+    /**
+     * Adds money that has already been committed to the database by someone
+     * else (e.g. a loan disbursement). Accounts the engine doesn't track are
+     * ignored.
+     */
+    public void credit(int accountId, long amountCents) {
+        ReentrantLock lock = stripeFor(accountId);
+        lock.lock();
+        try {
+            if (isKnown(accountId)) {
+                balances[accountId] += amountCents;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether callers may answer before a transfer's postings commit. If not,
+     * they wait for {@link TransferResult#getPersisted()} first.
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * The account's balance including transfers whose postings are still
+     * queued, which is the balance customers should see
+     *
+     * @return The account's balance in cents, or null if it isn't tracked
+     */
+    public Long getBalance(int accountId) {
+        ReentrantLock lock = stripeFor(accountId);
+        lock.lock();
+        try {
+            return isKnown(accountId) ? balances[accountId] : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransferStatus applyTransfer(int fromAccountId, int ownerId, int toAccountId, long amountCents) {
+        // Same checks, in the same order, as the database transfer path
+        ReentrantLock first = stripeFor(fromAccountId);
+        ReentrantLock second = stripeFor(toAccountId);
+        if (stripeIndex(fromAccountId) > stripeIndex(toAccountId)) {
+            ReentrantLock swap = first;
+            first = second;
+            second = swap;
+        }
+        first.lock();
+        if (second != first) {
+            second.lock();
+        }
+        try {
+            if (!isKnown(fromAccountId) || owners[fromAccountId] != ownerId) {
+                return TransferStatus.NOT_OWNER;
+            }
+            if (balances[fromAccountId] < amountCents) {
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            }
+            if (!isKnown(toAccountId)) {
+                return TransferStatus.UNKNOWN_DESTINATION;
+            }
+            if (fromAccountId == toAccountId) {
+                return TransferStatus.SAME_ACCOUNT;
+            }
+            balances[fromAccountId] -= amountCents;
+            balances[toAccountId] += amountCents;
+            return TransferStatus.OK;
+        } finally {
+            if (second != first) {
+                second.unlock();
+            }
+            first.unlock();
+        }
+    }
+
+    private TransferStatus applyBatch(int fromAccountId, int ownerId, Map<Integer, Long> credits, long totalCents) {
+        // Lock every stripe involved, in stripe order like applyTransfer
+        boolean[] needed = new boolean[stripes.length];
+        needed[stripeIndex(fromAccountId)] = true;
+        for (int toAccountId : credits.keySet()) {
+            needed[stripeIndex(toAccountId)] = true;
+        }
+        for (int i = 0; i < needed.length; i++) {
+            if (needed[i]) {
+                stripes[i].lock();
+            }
+        }
+        try {
+            if (!isKnown(fromAccountId) || owners[fromAccountId] != ownerId) {
+                return TransferStatus.NOT_OWNER;
+            }
+            if (balances[fromAccountId] < totalCents) {
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            }
+            for (int toAccountId : credits.keySet()) {
+                if (!isKnown(toAccountId)) {
+                    return TransferStatus.UNKNOWN_DESTINATION;
+                }
+                if (toAccountId == fromAccountId) {
+                    return TransferStatus.SAME_ACCOUNT;
+                }
+            }
+            balances[fromAccountId] -= totalCents;
+            for (Map.Entry<Integer, Long> credit : credits.entrySet()) {
+                balances[credit.getKey()] += credit.getValue();
+            }
+            return TransferStatus.OK;
+        } finally {
+            for (int i = needed.length - 1; i >= 0; i--) {
+                if (needed[i]) {
+                    stripes[i].unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the postings of an applied batch as one write: a single debit,
+     * one update per destination and one transaction row per payment
+     */
+    private CompletableFuture<Void> persistBatch(int fromAccountId, Map<Integer, Long> credits, long totalCents,
+            int[] toAccountIds, long[] amountsCents, String[] descriptions) {
+        pendingPostings.incrementAndGet();
+        CompletableFuture<Void> persisted = submitPostings("bulkTransferPosting", fromAccountId, toAccountIds,
+                amountsCents, descriptions, null, conn -> {
+            if (AccountDAO.adjustBalance(conn, fromAccountId, -totalCents) == 0) {
+                throw new SQLException("Account no longer exists");
+            }
+            AccountDAO.adjustBalances(conn, credits);
+            TransactionDAO.insertTransfers(conn, fromAccountId, toAccountIds, amountsCents, descriptions);
+            return null;
+        }, () -> {
+            System.err.println("Balance engine: reversing bulk transfer of " + totalCents + " cents from account "
+                    + fromAccountId + " to " + credits.size() + " account(s)");
+            credit(fromAccountId, totalCents);
+            for (Map.Entry<Integer, Long> credit : credits.entrySet()) {
+                credit(credit.getKey(), -credit.getValue());
+            }
+        });
+        return persisted.whenComplete((ignored, error) -> {
+            pendingPostings.decrementAndGet();
+            if (error == null) {
+                persistedCount.addAndGet(toAccountIds.length);
+            }
+        });
+    }
+
+    /**
+     * Queues the postings of an applied transfer
+     */
+    private CompletableFuture<Void> persistTransfer(int fromAccountId, int toAccountId, long amountCents,
+            String description, IdempotencyRecord idempotencyOutcome) {
+        pendingPostings.incrementAndGet();
+        CompletableFuture<Void> persisted = submitPostings("transferPosting", fromAccountId,
+                new int[] { toAccountId }, new long[] { amountCents }, new String[] { description },
+                idempotencyOutcome, conn -> {
+            if (AccountDAO.adjustBalance(conn, fromAccountId, -amountCents) == 0
+                    || AccountDAO.adjustBalance(conn, toAccountId, amountCents) == 0) {
+                throw new SQLException("Account no longer exists");
+            }
+            TransactionDAO.insert(conn, fromAccountId, toAccountId, "transfer", amountCents, description);
+            if (idempotencyOutcome != null) {
+                IdempotencyKeyDAO.insert(conn, idempotencyOutcome);
+            }
+            return null;
+        }, () -> {
+            System.err.println("Balance engine: reversing transfer of " + amountCents + " cents from account "
+                    + fromAccountId + " to " + toAccountId);
+            credit(fromAccountId, amountCents);
+            credit(toAccountId, -amountCents);
+        });
+        return persisted.whenComplete((ignored, error) -> {
+            pendingPostings.decrementAndGet();
+            if (error == null) {
+                persistedCount.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Queues postings on the writer, first journaling the transfer if there
+     * is a journal and waiting for the record to be durable. Without a journal,
+     * or if it can't be written, this waits for the postings to commit instead,
+     * so the transfer is never confirmed before it is durable somewhere.
+     *
+     * @param reversal Undoes the transfer in memory if it is given up
+     */
+    private CompletableFuture<Void> submitPostings(String operation, int fromAccountId, int[] toAccountIds,
+            long[] amountsCents, String[] descriptions, IdempotencyRecord idempotencyOutcome,
+            DatabaseWriter.WriteTask<Void> postings, Runnable reversal) {
+        if (journal == null) {
+            return awaitQuietly(post(new Posting(operation, postings, reversal, 0)));
+        }
+        long sequence;
+        CompletableFuture<Void> persisted;
+        synchronized (journalOrder) {
+            try {
+                sequence = journal.appendTransfer(fromAccountId, toAccountIds, amountsCents, descriptions,
+                        idempotencyOutcome);
+            } catch (IOException e) {
+                System.err.println("Balance engine: could not journal a transfer, waiting for its commit instead: "
+                        + e.getMessage());
+                return awaitQuietly(post(new Posting(operation, postings, reversal, 0)));
+            }
+            // Sequences are consecutive, so the checkpoint only moves past a
+            // record once every earlier one is in the database
+            Posting posting = new Posting(operation, conn -> {
+                if (JournalDAO.advanceCheckpoint(conn, sequence - 1, sequence) == 0) {
+                    throw new OutOfOrderException(sequence);
+                }
+                postings.execute(conn);
+                return null;
+            }, null, sequence);
+            journaledPostings.put(sequence, posting);
+            persisted = post(posting);
+        }
+        try {
+            journal.awaitDurable(sequence);
+        } catch (IOException e) {
+            // The record may still be replayed, so the transfer stands either way
+            System.err.println("Balance engine: journal fsync failed, waiting for the commit instead: "
+                    + e.getMessage());
+            awaitQuietly(persisted);
+        }
+        return persisted;
+    }
+
+    /**
+     * Queues a posting on the writer. If it fails it is queued again after a
+     * delay; a posting without a journal record that is out of attempts is
+     * given up instead, reversing the transfer and reporting the failure.
+     *
+     * @return Future completed once the posting commits
+     */
+    private CompletableFuture<Void> post(Posting posting) {
+        writer.submit(posting.operation, posting.task).whenComplete((ignored, error) -> {
+            if (error == null) {
+                if (posting.sequence != 0) {
+                    journaledPostings.remove(posting.sequence);
+                    requeueRounds.set(0);
+                    journal.checkpoint(posting.sequence);
+                }
+                posting.committed.complete(null);
+                return;
+            }
+            posting.failures++;
+            if (posting.sequence != 0) {
+                journaledPostingFailed(posting, error);
+                return;
+            }
+            if (posting.failures > postingRetries) {
+                persistFailureCount.incrementAndGet();
+                System.err.println("Balance engine: " + posting.operation + " could not be saved after "
+                        + posting.failures + " attempt(s): " + error.getMessage());
+                posting.reversal.run();
+                posting.committed.completeExceptionally(error);
+                return;
+            }
+            long delayMs = Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << Math.min(posting.failures - 1, 20));
+            System.err.println("Balance engine: " + posting.operation + " failed, retrying in " + delayMs + "ms: "
+                    + error.getMessage());
+            postingRetryCount.incrementAndGet();
+            try {
+                retryScheduler.schedule(() -> post(posting), delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                posting.committed.completeExceptionally(error);
+            }
+        });
+        return posting.committed;
+    }
+
+    /**
+     * Marks a journaled posting to be queued again. The postings after it
+     * fail too until it commits, so failed ones are queued again together,
+     * in journal order.
+     */
+    private void journaledPostingFailed(Posting posting, Throwable error) {
+        posting.failed = true;
+        if (!(error instanceof OutOfOrderException)) {
+            System.err.println("Balance engine: " + posting.operation + " for journal record " + posting.sequence
+                    + " failed, retrying: " + error.getMessage());
+        }
+        if (!requeueScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayMs = Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << Math.min(requeueRounds.getAndIncrement(), 20));
+        try {
+            retryScheduler.schedule(this::requeueJournaledPostings, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the record is replayed on the next start
+            requeueScheduled.set(false);
+            posting.committed.completeExceptionally(error);
+        }
+    }
+
+    private void requeueJournaledPostings() {
+        requeueScheduled.set(false);
+        for (Posting posting : journaledPostings.values()) {
+            if (posting.failed) {
+                posting.failed = false;
+                postingRetryCount.incrementAndGet();
+                post(posting);
+            }
+        }
+    }
+
+    /**
+     * Stops retrying failed postings. Journaled ones that haven't committed
+     * are replayed from the journal on the next start.
+     */
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        for (Posting posting : journaledPostings.values()) {
+            if (posting.failed) {
+                posting.committed.completeExceptionally(
+                        new IllegalStateException("Balance engine shut down before journal record "
+                                + posting.sequence + " was saved; it is replayed on the next start"));
+            }
+        }
+    }
+
+    /**
+     * Waits for a write; its outcome is left on the future
+     */
+    private static CompletableFuture<Void> awaitQuietly(CompletableFuture<Void> persisted) {
+        persisted.handle((ignored, error) -> null).join();
+        return persisted;
+    }
+
+    private boolean isKnown(int accountId) {
+        return accountId > 0 && accountId < owners.length && owners[accountId] != NO_OWNER;
+    }
+
+    private int stripeIndex(int accountId) {
+        // Spread consecutive ids (e.g. a user's checking and savings accounts)
+        int h = accountId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    private ReentrantLock stripeFor(int accountId) {
+        return stripes[stripeIndex(accountId)];
+    }
+
+    /**
+     * Makes room for accountId; a no-op (taking one stripe) if there already is
+     */
+    private void grow(int accountId) {
+        ReentrantLock lock = stripeFor(accountId);
+        lock.lock();
+        try {
+            if (accountId < balances.length) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        lockAll();
+        try {
+            if (accountId >= balances.length) {
+                int capacity = grownCapacity(balances.length, accountId);
+                balances = Arrays.copyOf(balances, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private static int grownCapacity(int current, int neededIndex) {
+        return Math.max(neededIndex + 1, Math.max(64, current + (current >> 1)));
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    // === Metrics ===
+
+    public int getTrackedAccountCount() {
+        return trackedAccounts.get();
+    }
+
+    /**
+     * Engine counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        long transfers = transferCount.get();
+        long rejected = rejectedCount.get();
+        long attempts = transfers + rejected;
+        return "{" +
+                "\"stripes\":" + stripes.length + "," +
+                "\"accounts\":" + getTrackedAccountCount() + "," +
+                "\"transfers\":" + transfers + "," +
+                "\"rejected\":" + rejected + "," +
+                "\"pendingPostings\":" + pendingPostings.get() + "," +
+                "\"persisted\":" + persistedCount.get() + "," +
+                "\"persistFailures\":" + persistFailureCount.get() + "," +
+                "\"postingRetries\":" + postingRetryCount.get() + "," +
+                "\"avgApplyMicros\":" + String.format("%.3f",
+                        attempts == 0 ? 0.0 : totalApplyNanos.get() / 1000.0 / attempts) +
+                "}";
+    }
+}
@@ -0,0 +1,65 @@
+package com.banking.util;
+
+/**
+ * Utility class for reading runtime configuration.
+ * Values are looked up as JVM system properties first (e.g.
+ * -Dbanking.db.pool.maxSize=20 in Tomcat's setenv), then as environment
+ * variables using the upper-case form of the key (BANKING_DB_POOL_MAXSIZE).
+ */
+public class ConfigUtil {
+
+    /**
+     * Get a string setting
+     *
+     * @param key          Property key, e.g. "banking.db.pool.maxSize"
+     * @param defaultValue Value to use when the setting is absent
+     * @return Configured value or the default
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv(key.replace('.', '_').toUpperCase());
+        }
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Get an integer setting, falling back to the default if it is missing or
+     * malformed
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid integer for setting " + key + ": '" + value + "', using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get a long setting, falling back to the default if it is missing or
+     * malformed
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number for setting " + key + ": '" + value + "', using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get a boolean setting ("true"/"false")
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
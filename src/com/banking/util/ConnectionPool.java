@@ -0,0 +1,536 @@
+package com.banking.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of JDBC connections.
+ *
+ * Connections handed out by {@link #borrow()} are proxies: calling close()
+ * returns the underlying connection to the pool instead of closing it, so
+ * existing try-with-resources code keeps working unchanged. Idle connections
+ * are validated before being handed out, and a background housekeeper reports
+ * connections that have been held longer than the leak threshold together with
+ * the stack trace of the code that borrowed them.
+ */
+public class ConnectionPool {
+
+    /**
+     * Opens a new physical connection for the pool
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_INTERVAL_MS = 5000;
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long leakThresholdMs;
+    private final long idleTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock(true); // fair, so waiters are served in order
+    private final Condition connectionAvailable = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>(); // guarded by lock
+    private int totalConnections = 0; // guarded by lock
+    private boolean closed = false; // guarded by lock
+
+    private final Set<Lease> activeLeases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    // Counters
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    /**
+     * Creates the pool and opens minSize connections up front
+     *
+     * @param name            Name used in log messages
+     * @param factory         Opens new physical connections
+     * @param minSize         Connections kept open even when idle
+     * @param maxSize         Upper bound on open connections
+     * @param borrowTimeoutMs How long borrow() waits for a free connection
+     * @param leakThresholdMs Report connections held longer than this (0
+     *                        disables leak detection)
+     * @param idleTimeoutMs   Close idle connections above minSize after this long
+     */
+    public ConnectionPool(String name, ConnectionFactory factory, int minSize, int maxSize,
+            long borrowTimeoutMs, long leakThresholdMs, long idleTimeoutMs) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-" + name + "-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        fillToMinimum();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_INTERVAL_MS, HOUSEKEEPING_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+
+        System.out.println("Connection pool '" + name + "' started (min=" + this.minSize + ", max=" + maxSize
+                + ", borrowTimeout=" + borrowTimeoutMs + "ms, leakThreshold=" + leakThresholdMs + "ms)");
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout if all connections
+     * are in use. Close the returned connection to give it back.
+     *
+     * @return A validated connection
+     * @throws SQLException if the pool is closed, the wait times out, or a new
+     *                      connection cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean createNew = false;
+
+            lock.lock();
+            try {
+                while (candidate == null && !createNew) {
+                    if (closed) {
+                        throw new SQLException("Connection pool '" + name + "' is closed");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate == null) {
+                        if (totalConnections < maxSize) {
+                            totalConnections++;
+                            createNew = true;
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                timeoutCount.incrementAndGet();
+                                throw new SQLException("Timed out after " + borrowTimeoutMs
+                                        + " ms waiting for a connection from pool '" + name + "' (active="
+                                        + activeLeases.size() + ", max=" + maxSize + ")");
+                            }
+                            connectionAvailable.awaitNanos(remaining);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (createNew) {
+                try {
+                    candidate = openConnection();
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        totalConnections--;
+                        connectionAvailable.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            } else if (!isValid(candidate)) {
+                validationFailureCount.incrementAndGet();
+                System.err.println("Connection pool '" + name + "': discarding invalid idle connection");
+                discard(candidate);
+                continue;
+            }
+
+            recordWait(System.nanoTime() - start);
+            return lease(candidate);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops accepting borrows. Connections that
+     * are currently borrowed are closed when they are returned.
+     */
+    public void shutdown() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            connectionAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pc : toClose) {
+            discard(pc);
+        }
+        System.out.println("Connection pool '" + name + "' shut down (" + activeLeases.size()
+                + " connection(s) still borrowed)");
+    }
+
+    // === Metrics ===
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getActiveCount() {
+        return activeLeases.size();
+    }
+
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTotalCount() {
+        lock.lock();
+        try {
+            return totalConnections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0.0 : totalWaitNanos.get() / (double) borrows / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * Pool counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"name\":\"" + name + "\"," +
+                "\"minSize\":" + minSize + "," +
+                "\"maxSize\":" + maxSize + "," +
+                "\"total\":" + getTotalCount() + "," +
+                "\"active\":" + getActiveCount() + "," +
+                "\"idle\":" + getIdleCount() + "," +
+                "\"borrows\":" + getBorrowCount() + "," +
+                "\"avgWaitMs\":" + String.format("%.3f", getAverageWaitMillis()) + "," +
+                "\"maxWaitMs\":" + String.format("%.3f", getMaxWaitMillis()) + "," +
+                "\"timeouts\":" + getTimeoutCount() + "," +
+                "\"created\":" + getCreatedCount() + "," +
+                "\"destroyed\":" + getDestroyedCount() + "," +
+                "\"validationFailures\":" + getValidationFailureCount() + "," +
+                "\"leaksDetected\":" + getLeakCount() +
+                "}";
+    }
+
+    // === Internals ===
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection raw = factory.create();
+        createdCount.incrementAndGet();
+        return new PooledConnection(raw);
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return !pc.raw.isClosed() && pc.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection lease(PooledConnection pc) {
+        Lease lease = new Lease(pc, leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null);
+        activeLeases.add(lease);
+        borrowCount.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, lease);
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        long currentMax;
+        while (waitNanos > (currentMax = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(currentMax, waitNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool, resetting any transaction state
+     * the borrower left behind
+     */
+    private void release(Lease lease) {
+        activeLeases.remove(lease);
+        PooledConnection pc = lease.pooled;
+
+        boolean reusable = true;
+        try {
+            if (pc.raw.isClosed()) {
+                reusable = false;
+            } else if (!pc.raw.getAutoCommit()) {
+                // Borrower left a transaction open; never leak it to the next borrower
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection pool '" + name + "': failed to reset returned connection: "
+                    + e.getMessage());
+            reusable = false;
+        }
+
+        lock.lock();
+        try {
+            if (reusable && !closed) {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.addFirst(pc); // LIFO keeps the hottest connections in use
+                connectionAvailable.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(pc);
+    }
+
+    private void discard(PooledConnection pc) {
+        try {
+            pc.raw.close();
+        } catch (SQLException e) {
+            System.err.println("Connection pool '" + name + "': error closing connection: " + e.getMessage());
+        }
+        destroyedCount.incrementAndGet();
+        lock.lock();
+        try {
+            totalConnections--;
+            connectionAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || totalConnections >= minSize) {
+                    return;
+                }
+                totalConnections++;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                PooledConnection pc = openConnection();
+                lock.lock();
+                try {
+                    pc.lastReturnedAt = System.currentTimeMillis();
+                    idle.addLast(pc);
+                    connectionAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    totalConnections--;
+                } finally {
+                    lock.unlock();
+                }
+                System.err.println("Connection pool '" + name + "': could not open connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void housekeep() {
+        try {
+            detectLeaks();
+            evictIdle();
+            fillToMinimum();
+        } catch (Exception e) {
+            System.err.println("Connection pool '" + name + "': housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMs <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Lease lease : activeLeases) {
+            long heldMs = now - lease.borrowedAt;
+            if (!lease.leakReported && heldMs > leakThresholdMs) {
+                lease.leakReported = true;
+                leakCount.incrementAndGet();
+                System.err.println("Connection pool '" + name + "': possible connection leak - connection held for "
+                        + heldMs + " ms by thread '" + lease.borrowerThread + "'");
+                if (lease.borrowSite != null) {
+                    lease.borrowSite.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void evictIdle() {
+        if (idleTimeoutMs <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            // Oldest idle connections sit at the tail of the deque
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections - expired.size() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturnedAt < idleTimeoutMs) {
+                    break;
+                }
+                it.remove();
+                expired.add(pc);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            discard(pc);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private static class PooledConnection {
+        final Connection raw;
+        volatile long lastReturnedAt;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.lastReturnedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. Acts as the invocation handler behind
+     * the proxy handed to callers.
+     */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pooled;
+        final Throwable borrowSite;
+        final String borrowerThread;
+        final long borrowedAt;
+        final AtomicBoolean returned = new AtomicBoolean(); // set once, by the close that gives it back
+        volatile boolean leakReported = false;
+
+        Lease(PooledConnection pooled, Throwable borrowSite) {
+            this.pooled = pooled;
+            this.borrowSite = borrowSite;
+            this.borrowerThread = Thread.currentThread().getName();
+            this.borrowedAt = System.currentTimeMillis();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pooled.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + name + "]" + (returned.get() ? " (returned)" : "");
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to pool '" + name + "'");
+            }
+            try {
+                return method.invoke(pooled.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,23 +1,58 @@
 package com.banking.util;
 
+import com.banking.dao.AccountDAO;
+import com.banking.dao.LedgerDAO;
+import com.banking.dao.LoanDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.dao.UserDAO;
+import com.banking.model.Account;
+import com.banking.model.Loan;
+import com.banking.model.Money;
 import com.banking.model.User;
 
 import java.sql.*;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class DatabaseUtil {
     private static final String DB_RELATIVE_PATH = "banking.db";
     private static String DB_URL = null; // Will be set during initialization
-    private static boolean initialized = false;
+    private static volatile boolean initialized = false;
     private static final Object initLock = new Object(); // Lock for thread-safe initialization
+    private static volatile ConnectionPool pool = null; // Created by initializeDatabase()
+    private static volatile SqliteProfile profile = null; // PRAGMAs applied to every connection
+    private static volatile DatabaseWriter writer = null; // Single writer for all mutations
+    private static volatile BalanceEngine balanceEngine = null; // In-memory balances, null if disabled
+    private static volatile IdempotencyStore idempotencyStore = null; // Outcomes of keyed transfers
+    private static volatile TransferJournal journal = null; // Write-ahead journal of transfers, null if disabled
+    private static volatile AccountDirectory accountDirectory = null; // Account numbers, null if disabled
+    private static volatile ScheduledExecutorService snapshotScheduler = null; // Balance snapshots, null if disabled
+    private static volatile TransferScheduler transferScheduler = null; // Scheduled transfers, null if disabled
+    private static volatile RecentTransactionCache recentTransactions = null; // First pages, null if disabled
+    private static volatile PasswordHasher passwordHasher = null; // Pool for password hashing
+    private static volatile LoginThrottle loginThrottle = null; // Login rate limits, null if disabled
+    private static final StatementCache.Stats READ_STATEMENT_STATS = new StatementCache.Stats("read");
+    private static final StatementCache.Stats WRITER_STATEMENT_STATS = new StatementCache.Stats("writer");
 
     public static void setDatabasePath(String absolutePath) {
-        DB_URL = "jdbc:sqlite:" + absolutePath;
-        System.out.println("Database path set to: " + DB_URL);
-        // Reset initialized flag if path changes after initial use (though typically
-        // set once)
-        initialized = false;
+        synchronized (initLock) {
+            DB_URL = "jdbc:sqlite:" + absolutePath;
+            System.out.println("Database path set to: " + DB_URL);
+            // Reset initialized flag if path changes after initial use (though typically
+            // set once); connections to the old file must not be handed out again
+            initialized = false;
+            closeConnections();
+        }
     }
 
     private static void ensureDbUrlIsSet() {
@@ -33,14 +68,360 @@ public class DatabaseUtil {
         }
     }
 
+    /**
+     * Borrows a read-only connection from the connection pool. Callers must
+     * close the connection (preferably with try-with-resources), which returns
+     * it to the pool. Inserts, updates and deletes must go through
+     * {@link #write(String, DatabaseWriter.WriteTask)} instead.
+     */
     public static Connection getConnection() throws SQLException {
         if (!initialized) {
-            initializeDatabase(); // This will ensure DB_URL is set
+            initializeDatabase(); // This will ensure DB_URL is set and the pool exists
         }
-        if (DB_URL == null) {
-            throw new SQLException("Database URL has not been initialized.");
+        ConnectionPool currentPool = pool;
+        if (currentPool == null) {
+            throw new SQLException("Database connection pool has not been initialized.");
+        }
+        return currentPool.borrow();
+    }
+
+    /**
+     * Gets the connection pool, initializing the database if needed
+     *
+     * @return The active pool, or null if initialization failed
+     */
+    public static ConnectionPool getConnectionPool() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the single database writer, initializing the database if needed
+     *
+     * @return The writer, or null if initialization failed
+     */
+    public static DatabaseWriter getWriter() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return writer;
+    }
+
+    /**
+     * Gets the in-memory balance engine, initializing the database if needed
+     *
+     * @return The engine, or null if it is disabled or initialization failed
+     */
+    public static BalanceEngine getBalanceEngine() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return balanceEngine;
+    }
+
+    /**
+     * Gets an account's current balance: the balance engine's if it tracks the
+     * account (it includes transfers whose postings are still being written),
+     * otherwise the committed one
+     *
+     * @param committedCents Balance read from the accounts table
+     * @return The balance in cents
+     */
+    public static long currentBalanceCents(int accountId, long committedCents) {
+        BalanceEngine engine = getBalanceEngine();
+        Long balance = engine != null ? engine.getBalance(accountId) : null;
+        return balance != null ? balance : committedCents;
+    }
+
+    /**
+     * Gets the store of Idempotency-Key outcomes, initializing the database if
+     * needed
+     *
+     * @return The store, or null if initialization failed
+     */
+    public static IdempotencyStore getIdempotencyStore() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return idempotencyStore;
+    }
+
+    /**
+     * Gets the in-memory account number directory, initializing the database
+     * if needed
+     *
+     * @return The directory, or null if it is disabled or initialization failed
+     */
+    public static AccountDirectory getAccountDirectory() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return accountDirectory;
+    }
+
+    /**
+     * Gets the transfer journal, initializing the database if needed
+     *
+     * @return The journal, or null if it is disabled
+     */
+    public static TransferJournal getJournal() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return journal;
+    }
+
+    /**
+     * Gets the scheduler that runs scheduled and standing-order transfers,
+     * initializing the database if needed
+     *
+     * @return The scheduler, or null if it is disabled or initialization failed
+     */
+    public static TransferScheduler getTransferScheduler() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return transferScheduler;
+    }
+
+    /**
+     * Gets the cache of users' newest transactions, initializing the database
+     * if needed
+     *
+     * @return The cache, or null if it is disabled or initialization failed
+     */
+    public static RecentTransactionCache getRecentTransactionCache() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return recentTransactions;
+    }
+
+    /**
+     * Gets the pool that password hashes run on, initializing the database if
+     * needed
+     *
+     * @return The hasher, or null if initialization failed
+     */
+    public static PasswordHasher getPasswordHasher() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return passwordHasher;
+    }
+
+    /**
+     * Gets the login rate limiter, initializing the database if needed
+     *
+     * @return The throttle, or null if disabled or initialization failed
+     */
+    public static LoginThrottle getLoginThrottle() {
+        if (!initialized) {
+            initializeDatabase();
+        }
+        return loginThrottle;
+    }
+
+    /**
+     * Hashes a password on the password hasher, or on the calling thread
+     * before it exists
+     *
+     * @throws RejectedExecutionException if the hasher is saturated
+     */
+    private static String hashPassword(String password, String salt) {
+        PasswordHasher hasher = passwordHasher;
+        return hasher != null ? hasher.hash(password, salt) : PasswordUtil.hashPassword(password, salt);
+    }
+
+    /**
+     * Checks a password on the password hasher, see {@link #hashPassword}
+     */
+    private static boolean verifyPassword(String password, String storedHash, String storedSalt) {
+        PasswordHasher hasher = passwordHasher;
+        return hasher != null ? hasher.verify(password, storedHash, storedSalt)
+                : PasswordUtil.verifyPassword(password, storedHash, storedSalt);
+    }
+
+    /**
+     * Brings the recent transactions cache up to date. Called after every
+     * commit that inserts transactions; blocks while the new rows are read.
+     */
+    public static void transactionsCommitted() {
+        RecentTransactionCache cache = recentTransactions;
+        if (cache != null) {
+            cache.refresh();
+        }
+    }
+
+    /**
+     * Brings the recent transactions cache up to date once postings commit:
+     * right away if they already have, otherwise on the cache's refresh
+     * thread, so neither the writer nor the common pool waits on the read
+     */
+    public static void transactionsCommitted(CompletableFuture<?> committed) {
+        if (committed.isDone()) {
+            if (!committed.isCompletedExceptionally()) {
+                transactionsCommitted();
+            }
+            return;
+        }
+        committed.whenComplete((ignored, error) -> {
+            RecentTransactionCache cache = recentTransactions;
+            if (error == null && cache != null) {
+                cache.refreshLater();
+            }
+        });
+    }
+
+    /**
+     * Finds an account's id by its number, from the account directory if
+     * possible and otherwise with a read connection
+     *
+     * @return The account id, or -1 if no account has this number
+     */
+    public static int findAccountIdByNumber(String accountNumber) throws SQLException {
+        AccountDirectory directory = getAccountDirectory();
+        int accountId = directory != null ? directory.findAccountId(accountNumber) : -1;
+        if (accountId >= 0) {
+            return accountId;
+        }
+        try (Connection conn = getConnection()) {
+            return findAccountIdInDatabase(conn, directory, accountNumber);
+        }
+    }
+
+    /**
+     * Like {@link #findAccountIdByNumber(String)}, querying on the given
+     * connection (e.g. inside a write) on a directory miss
+     */
+    public static int findAccountIdByNumber(Connection conn, String accountNumber) throws SQLException {
+        AccountDirectory directory = getAccountDirectory();
+        int accountId = directory != null ? directory.findAccountId(accountNumber) : -1;
+        if (accountId >= 0) {
+            return accountId;
+        }
+        return findAccountIdInDatabase(conn, directory, accountNumber);
+    }
+
+    private static int findAccountIdInDatabase(Connection conn, AccountDirectory directory, String accountNumber)
+            throws SQLException {
+        Account account = AccountDAO.findByAccountNumber(conn, accountNumber);
+        if (account == null) {
+            return -1;
+        }
+        if (directory != null) {
+            directory.add(account); // created outside the application
+        }
+        return account.getId();
+    }
+
+    /**
+     * Snapshots the balance of every account with at least
+     * banking.ledger.snapshotEvery postings since its last snapshot, so that
+     * historical balance lookups stay short
+     *
+     * @return Number of snapshots taken
+     */
+    public static int takeBalanceSnapshots() throws SQLException {
+        int minPostings = ConfigUtil.getInt("banking.ledger.snapshotEvery", 100);
+        return write("takeBalanceSnapshots", conn -> LedgerDAO.takeSnapshots(conn, minPostings));
+    }
+
+    /**
+     * Gets the prepared statement cache counters for the read pool and the
+     * writer connection
+     *
+     * @return JSON object with one entry per connection group
+     */
+    public static String getStatementCacheStatsAsJson() {
+        return "{\"read\":" + READ_STATEMENT_STATS.getStatsAsJson() + ",\"writer\":"
+                + WRITER_STATEMENT_STATS.getStatsAsJson() + "}";
+    }
+
+    /**
+     * Runs a write on the single writer connection and waits for it. The task
+     * runs in its own transaction, which is rolled back if it throws.
+     *
+     * @param operation Name used in logs and metrics
+     * @param task      Work to perform with the writer connection
+     * @return The task's result
+     * @throws SQLException if the task fails or the write queue is full
+     */
+    public static <T> T write(String operation, DatabaseWriter.WriteTask<T> task) throws SQLException {
+        DatabaseWriter currentWriter = getWriter();
+        if (currentWriter == null) {
+            throw new SQLException("Database writer has not been initialized.");
+        }
+        return currentWriter.execute(operation, task);
+    }
+
+    /**
+     * Queues a write on the single writer connection without waiting for it
+     *
+     * @param operation Name used in logs and metrics
+     * @param task      Work to perform with the writer connection
+     * @return Future completed when the write has been committed
+     */
+    public static <T> CompletableFuture<T> writeAsync(String operation, DatabaseWriter.WriteTask<T> task) {
+        DatabaseWriter currentWriter = getWriter();
+        if (currentWriter == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new SQLException("Database writer has not been initialized."));
+            return failed;
+        }
+        return currentWriter.submit(operation, task);
+    }
+
+    /**
+     * Closes all pooled connections and the writer. Called when the web
+     * application stops.
+     */
+    public static void shutdown() {
+        synchronized (initLock) {
+            closeConnections();
+            initialized = false;
+        }
+    }
+
+    private static void closeConnections() {
+        // The writer commits any queued transfer postings before it stops
+        if (balanceEngine != null) {
+            balanceEngine.shutdown();
+        }
+        balanceEngine = null;
+        idempotencyStore = null;
+        accountDirectory = null;
+        if (recentTransactions != null) {
+            recentTransactions.shutdown();
+        }
+        recentTransactions = null;
+        loginThrottle = null;
+        if (passwordHasher != null) {
+            passwordHasher.shutdown();
+            passwordHasher = null;
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            snapshotScheduler = null;
+        }
+        if (transferScheduler != null) {
+            transferScheduler.stop(); // records the outcomes of a batch in progress
+            transferScheduler = null;
+        }
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
-        return DriverManager.getConnection(DB_URL);
     }
 
     private static void initializeDatabase() {
@@ -64,14 +445,49 @@ public class DatabaseUtil {
                             dbFile.getParentFile().mkdirs();
                         }
 
+                        profile = SqliteProfile.fromConfig();
+                        PasswordUtil.configure();
+
                         // Get connection (creates DB if it doesn't exist)
                         try (Connection conn = DriverManager.getConnection(DB_URL)) {
 
                             System.out.println("Init Database, DB URL: " + DB_URL);
+                            profile.applyDatabaseSettings(conn);
                             createTables(conn);
-                            initialized = true;
-                            System.out.println("Database initialization complete for: " + DB_URL);
                         }
+
+                        writer = createWriter(DB_URL, profile);
+                        pool = createPool(DB_URL, profile);
+                        try (Connection conn = pool.borrow()) {
+                            profile.printEffectiveSettings(conn);
+                        }
+                        journal = openJournal(writer, dbFilePath);
+                        balanceEngine = createBalanceEngine(writer, pool, journal);
+                        if (isNodeLocalEnabled("banking.accounts.directory", true)) {
+                            try (Connection conn = pool.borrow()) {
+                                accountDirectory = AccountDirectory.load(conn);
+                            }
+                        }
+                        idempotencyStore = new IdempotencyStore(
+                                ConfigUtil.getInt("banking.idempotency.cacheSize", 10000),
+                                ConfigUtil.getInt("banking.idempotency.retentionHours", 24));
+                        passwordHasher = PasswordHasher.fromConfig();
+                        if (isNodeLocalEnabled("banking.login.throttle.enabled", true)) {
+                            loginThrottle = LoginThrottle.fromConfig();
+                        }
+                        if (isNodeLocalEnabled("banking.transactions.recent.enabled", false)) {
+                            recentTransactions = RecentTransactionCache.fromConfig(pool);
+                        }
+                        snapshotScheduler = startSnapshotScheduler();
+                        if (isNodeLocalEnabled("banking.scheduler.enabled", true)) {
+                            transferScheduler = TransferScheduler.fromConfig(writer, pool, balanceEngine,
+                                    idempotencyStore);
+                            transferScheduler.start();
+                        } else {
+                            System.out.println("Transfer scheduler disabled");
+                        }
+                        initialized = true;
+                        System.out.println("Database initialization complete for: " + DB_URL);
                     } catch (Exception e) {
                         System.err.println("FATAL: Database initialization failed for URL: "
                                 + (DB_URL != null ? DB_URL : "Not Set") + " - " + e.getMessage());
@@ -82,77 +498,185 @@ public class DatabaseUtil {
         }
     }
 
+    /**
+     * Whether a component that keeps its state in this JVM is enabled. They
+     * are on by default, but with banking.session.mode=stateless requests are
+     * spread over several nodes, so there they default to off. Ones whose
+     * state is only a shortcut (misses and other nodes' changes fall back to
+     * the database) or that must run on a single node can still be enabled
+     * explicitly; the others would serve stale or conflicting data, and
+     * enabling them stops the application from starting.
+     *
+     * @param allowedWhenStateless Whether it may be enabled in stateless mode
+     * @throws IllegalStateException if it is enabled where it isn't allowed
+     */
+    private static boolean isNodeLocalEnabled(String key, boolean allowedWhenStateless) {
+        if (!SessionTokens.isStatelessMode()) {
+            return ConfigUtil.getBoolean(key, true);
+        }
+        boolean enabled = ConfigUtil.getBoolean(key, false);
+        if (enabled && !allowedWhenStateless) {
+            throw new IllegalStateException(key + "=true keeps state on one node and can't be used with "
+                    + "banking.session.mode=stateless");
+        }
+        if (!enabled) {
+            System.out.println("Stateless sessions: " + key + " is off on this node");
+        }
+        return enabled;
+    }
+
+    /**
+     * Gets the SQLite profile applied to pooled connections
+     *
+     * @return The active profile, or null before initialization
+     */
+    public static SqliteProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Opens a connection with the SQLite profile applied and a prepared
+     * statement cache of banking.db.statementCacheSize entries (0 disables it)
+     *
+     * @param readOnly true to reject writes on this connection (query_only)
+     */
+    private static Connection openConnection(String url, SqliteProfile sqliteProfile, boolean readOnly)
+            throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try {
+            sqliteProfile.applyConnectionSettings(conn);
+            if (readOnly) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("PRAGMA query_only = 1");
+                }
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        int statementCacheSize = ConfigUtil.getInt("banking.db.statementCacheSize", 64);
+        return StatementCache.wrap(conn, statementCacheSize, readOnly ? READ_STATEMENT_STATS : WRITER_STATEMENT_STATS);
+    }
+
+    /**
+     * Creates the single writer using the banking.db.writer.* settings,
+     * including its transaction mode and busy retries (see
+     * {@link TransactionExecutor#fromConfig()})
+     */
+    private static DatabaseWriter createWriter(String url, SqliteProfile sqliteProfile) throws SQLException {
+        int queueCapacity = ConfigUtil.getInt("banking.db.writer.queueCapacity", 10000);
+        long enqueueTimeoutMs = ConfigUtil.getLong("banking.db.writer.enqueueTimeoutMs", 2000);
+        int maxBatchSize = ConfigUtil.getInt("banking.db.writer.maxBatchSize", 64);
+        long batchWindowMicros = ConfigUtil.getLong("banking.db.writer.batchWindowMicros", 0);
+
+        return new DatabaseWriter(() -> openConnection(url, sqliteProfile, false), queueCapacity, enqueueTimeoutMs,
+                maxBatchSize, batchWindowMicros, TransactionExecutor.fromConfig());
+    }
+
+    /**
+     * Opens the transfer journal (banking.journal.*) and replays whatever it
+     * holds that the database doesn't have yet, unless banking.journal.enabled
+     * is false
+     *
+     * @param dbFilePath Database file; the journal defaults to a directory
+     *                   next to it
+     * @return The journal, or null if disabled
+     */
+    private static TransferJournal openJournal(DatabaseWriter dbWriter, String dbFilePath)
+            throws IOException, SQLException {
+        if (!ConfigUtil.getBoolean("banking.journal.enabled", true)) {
+            System.out.println("Transfer journal disabled");
+            return null;
+        }
+        // Not "<db>-journal": SQLite uses that name for its rollback journal
+        File directory = new File(ConfigUtil.getString("banking.journal.dir", dbFilePath + "-transfers"));
+        TransferJournal transferJournal = TransferJournal.open(directory,
+                ConfigUtil.getInt("banking.journal.segmentBytes", 16 * 1024 * 1024),
+                TransferJournal.parsePolicy(ConfigUtil.getString("banking.journal.fsync", "batch")),
+                ConfigUtil.getLong("banking.journal.fsyncIntervalMs", 10));
+        try {
+            transferJournal.replay(dbWriter);
+        } catch (SQLException e) {
+            transferJournal.close();
+            throw e;
+        }
+        return transferJournal;
+    }
+
+    /**
+     * Creates and loads the in-memory balance engine unless
+     * banking.balances.inMemory is false
+     *
+     * @return The engine, or null if disabled
+     */
+    private static BalanceEngine createBalanceEngine(DatabaseWriter dbWriter, ConnectionPool readPool,
+            TransferJournal transferJournal) throws SQLException {
+        if (!isNodeLocalEnabled("banking.balances.inMemory", false)) {
+            System.out.println("In-memory balance engine disabled; transfers run against the database");
+            return null;
+        }
+        BalanceEngine engine = new BalanceEngine(dbWriter, ConfigUtil.getInt("banking.balances.lockStripes", 64),
+                transferJournal, ConfigUtil.getInt("banking.balances.postingRetries", 3),
+                ConfigUtil.getBoolean("banking.balances.writeBehind", true));
+        try (Connection conn = readPool.borrow()) {
+            engine.load(conn);
+        }
+        return engine;
+    }
+
+    /**
+     * Takes balance snapshots every banking.ledger.snapshotIntervalSeconds
+     * seconds in the background
+     *
+     * @return The scheduler, or null if the interval is 0
+     */
+    private static ScheduledExecutorService startSnapshotScheduler() {
+        long intervalSeconds = ConfigUtil.getLong("banking.ledger.snapshotIntervalSeconds", 300);
+        if (intervalSeconds <= 0) {
+            System.out.println("Balance snapshots disabled");
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-snapshots");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int taken = takeBalanceSnapshots();
+                if (taken > 0) {
+                    System.out.println("Took " + taken + " balance snapshot(s)");
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to take balance snapshots: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    /**
+     * Creates the read-only connection pool using the banking.db.pool.*
+     * settings. Every new connection gets the SQLite profile's PRAGMAs before it
+     * is pooled.
+     */
+    private static ConnectionPool createPool(String url, SqliteProfile sqliteProfile) {
+        int minSize = ConfigUtil.getInt("banking.db.pool.minSize", 2);
+        int maxSize = ConfigUtil.getInt("banking.db.pool.maxSize", 10);
+        long borrowTimeoutMs = ConfigUtil.getLong("banking.db.pool.borrowTimeoutMs", 5000);
+        long leakThresholdMs = ConfigUtil.getLong("banking.db.pool.leakThresholdMs", 30000);
+        long idleTimeoutMs = ConfigUtil.getLong("banking.db.pool.idleTimeoutMs", 600000);
+
+        return new ConnectionPool("read", () -> openConnection(url, sqliteProfile, true),
+                minSize, maxSize, borrowTimeoutMs, leakThresholdMs, idleTimeoutMs);
+    }
+
+    /**
+     * Brings the schema up to the latest version and seeds the default admin
+     * user. Table and index definitions live in {@link SchemaMigrator}.
+     */
     private static void createTables(Connection conn) throws SQLException {
-        try (Statement stmt = conn.createStatement()) {
-            // Create Users table
-            System.out.println("Creating users table...");
-            stmt.execute(
-                    "CREATE TABLE IF NOT EXISTS users (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "name TEXT NOT NULL, " +
-                            "email TEXT UNIQUE NOT NULL, " +
-                            "password_hash TEXT NOT NULL, " +
-                            "salt TEXT NOT NULL, " +
-                            "role TEXT NOT NULL CHECK(role IN ('admin', 'employee', 'customer')), " +
-                            "status TEXT DEFAULT 'active' CHECK(status IN ('active', 'inactive', 'locked')), " +
-                            "created_at DATETIME DEFAULT CURRENT_TIMESTAMP" +
-                            ")");
-
-            // Create Accounts table
-            System.out.println("Creating accounts table...");
-            stmt.execute(
-                    "CREATE TABLE IF NOT EXISTS accounts (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "user_id INTEGER NOT NULL, " +
-                            "account_number TEXT UNIQUE NOT NULL, " +
-                            "type TEXT NOT NULL CHECK(type IN ('checking', 'savings')), " +
-                            "balance DECIMAL(15,2) DEFAULT 0.00, " +
-                            "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                            "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE" +
-                            ")");
-
-            // Create Transactions table
-            System.out.println("Creating transactions table...");
-            stmt.execute(
-                    "CREATE TABLE IF NOT EXISTS transactions (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "from_account_id INTEGER, " +
-                            "to_account_id INTEGER, " +
-                            "type TEXT NOT NULL CHECK(type IN ('deposit', 'withdrawal', 'transfer')), " +
-                            "amount DECIMAL(15,2) NOT NULL, " +
-                            "description TEXT, " +
-                            "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                            "FOREIGN KEY (from_account_id) REFERENCES accounts(id) ON DELETE SET NULL, " +
-                            "FOREIGN KEY (to_account_id) REFERENCES accounts(id) ON DELETE SET NULL" +
-                            ")");
-
-            // Create Loans table
-            System.out.println("Creating loans table...");
-            stmt.execute(
-                    "CREATE TABLE IF NOT EXISTS loans (" +
-                            "loanid INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "userid INTEGER NOT NULL, " +
-                            "amount DECIMAL(15,2) NOT NULL, " +
-                            "type TEXT NOT NULL, " +
-                            "date DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                            "status TEXT DEFAULT 'pending' CHECK(status IN ('pending', 'approved', 'rejected')), " +
-                            "adminComment TEXT, " +
-                            "FOREIGN KEY (userid) REFERENCES users(id) ON DELETE CASCADE" +
-                            ")");
-
-            // Create Flagged Transactions table
-            System.out.println("Creating flagged_transactions table...");
-            stmt.execute(
-                    "CREATE TABLE IF NOT EXISTS flagged_transactions (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "transaction_id INTEGER NOT NULL, " +
-                            "employee_id INTEGER NOT NULL, " +
-                            "flag_reason TEXT, " +
-                            "flag_date DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                            "status TEXT DEFAULT 'pending' CHECK(status IN ('pending', 'reviewing', 'resolved')), " +
-                            "FOREIGN KEY (transaction_id) REFERENCES transactions(id), " +
-                            "FOREIGN KEY (employee_id) REFERENCES users(id)" +
-                            ")");
+        try {
+            SchemaMigrator.migrate(conn);
 
             // Check if admin exists before inserting
             boolean adminExists = false;
@@ -185,7 +709,7 @@ public class DatabaseUtil {
                 System.out.println("Admin user already exists. Skipping creation.");
             }
 
-            System.out.println("Database tables checked/created successfully.");
+            System.out.println("Database schema checked/migrated successfully.");
         } catch (SQLException e) {
             System.err.println("Error during table creation: " + e.getMessage());
             throw e;
@@ -205,66 +729,70 @@ public class DatabaseUtil {
      * @param password Plain text password for the new user
      * @return true if registration is successful, false otherwise (e.g., email
      *         already exists)
+     * @throws RejectedExecutionException if password hashing is saturated
      */
     public static boolean registerUser(User user, String password) {
-        Connection conn = null;
-        try {
-            conn = getConnection();
-            conn.setAutoCommit(false); // Start transaction
-
-            // Insert user
-            String sql = "INSERT INTO users (name, email, password_hash, salt, role, status) VALUES (?, ?, ?, ?, ?, ?)";
-            int userId = -1;
+        // Hash before queueing so the writer thread only does database work
+        String salt = PasswordUtil.generateSalt();
+        String passwordHash = hashPassword(password, salt);
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                String salt = PasswordUtil.generateSalt();
-                String passwordHash = PasswordUtil.hashPassword(password, salt);
-
-                pstmt.setString(1, user.getName());
-                pstmt.setString(2, user.getEmail());
-                pstmt.setString(3, passwordHash);
-                pstmt.setString(4, salt);
-                pstmt.setString(5, user.getRole());
-                pstmt.setString(6, user.getRole().equals("customer") ? "inactive" : "active");
+        try {
+            List<Account> createdAccounts = write("registerUser", conn -> {
+                List<Account> accounts = new ArrayList<>();
+                // Insert user
+                String sql = "INSERT INTO users (name, email, password_hash, salt, role, status) VALUES (?, ?, ?, ?, ?, ?)";
+                int userId = -1;
+
+                try (PreparedStatement pstmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setString(1, user.getName());
+                    pstmt.setString(2, user.getEmail());
+                    pstmt.setString(3, passwordHash);
+                    pstmt.setString(4, salt);
+                    pstmt.setString(5, user.getRole());
+                    pstmt.setString(6, user.getRole().equals("customer") ? "inactive" : "active");
 
-                int affectedRows = pstmt.executeUpdate();
+                    int affectedRows = pstmt.executeUpdate();
 
-                if (affectedRows == 0) {
-                    throw new SQLException("Creating user failed, no rows affected.");
-                }
+                    if (affectedRows == 0) {
+                        throw new SQLException("Creating user failed, no rows affected.");
+                    }
 
-                // Get the generated user ID
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        userId = generatedKeys.getInt(1);
-                    } else {
-                        throw new SQLException("Creating user failed, no ID obtained.");
+                    // Get the generated user ID
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            userId = generatedKeys.getInt(1);
+                        } else {
+                            throw new SQLException("Creating user failed, no ID obtained.");
+                        }
                     }
                 }
-            }
 
-            // If the user is a customer, create accounts
-            if ("customer".equalsIgnoreCase(user.getRole()) && userId > 0) {
-                // Create checking account
-                createAccount(conn, userId, "checking", 100.00); // Initial balance of $100
+                // If the user is a customer, create accounts
+                if ("customer".equalsIgnoreCase(user.getRole()) && userId > 0) {
+                    // Create checking account
+                    accounts.add(createAccount(conn, userId, "checking", 100_00)); // Initial balance of $100
 
-                // Create savings account
-                createAccount(conn, userId, "savings", 500.00); // Initial balance of $500
-            }
+                    // Create savings account
+                    accounts.add(createAccount(conn, userId, "savings", 500_00)); // Initial balance of $500
+                }
 
-            conn.commit(); // Commit transaction
-            return true;
+                return accounts; // Committed by the writer
+            });
 
-        } catch (SQLException e) {
-            // Roll back transaction on error
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+            // Only track the accounts once they are committed
+            BalanceEngine engine = balanceEngine;
+            AccountDirectory directory = accountDirectory;
+            for (Account account : createdAccounts) {
+                if (engine != null) {
+                    engine.register(account.getId(), account.getUserId(), account.getBalanceCents());
+                }
+                if (directory != null) {
+                    directory.add(account);
                 }
             }
+            return true;
 
+        } catch (SQLException e) {
             if (e.getMessage() != null && e.getMessage().contains("CHECK constraint failed")
                     && e.getMessage().contains("role")) {
                 System.err.println("Registration failed: Invalid role specified: '" + user.getRole() +
@@ -277,43 +805,28 @@ public class DatabaseUtil {
                 e.printStackTrace();
             }
             return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
         }
     }
 
     /**
      * Creates a new account for a user
      * 
-     * @param conn           Database connection (from transaction)
-     * @param userId         User ID to create account for
-     * @param type           Account type ("checking" or "savings")
-     * @param initialBalance Initial account balance
-     * @return true if successful, false otherwise
+     * @param conn                Database connection (from transaction)
+     * @param userId              User ID to create account for
+     * @param type                Account type ("checking" or "savings")
+     * @param initialBalanceCents Initial account balance in cents
+     * @return The created account
      * @throws SQLException on database error
      */
-    private static boolean createAccount(Connection conn, int userId, String type, double initialBalance)
+    private static Account createAccount(Connection conn, int userId, String type, long initialBalanceCents)
             throws SQLException {
-        String sql = "INSERT INTO accounts (user_id, account_number, type, balance) VALUES (?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            String accountNumber = generateAccountNumber(userId, type);
-
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, accountNumber);
-            pstmt.setString(3, type);
-            pstmt.setDouble(4, initialBalance);
-
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        }
+        Account account = new Account();
+        account.setUserId(userId);
+        account.setType(type);
+        account.setAccountNumber(generateAccountNumber(userId, type));
+        account.setBalanceCents(initialBalanceCents);
+        account.setId(AccountDAO.insert(conn, userId, account.getAccountNumber(), type, initialBalanceCents));
+        return account;
     }
 
     /**
@@ -349,15 +862,29 @@ public class DatabaseUtil {
         String sql = "INSERT INTO flagged_transactions (transaction_id, employee_id, flag_reason) " +
                 "VALUES (?, ?, ?)";
 
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, transactionId);
-            pstmt.setInt(2, employeeId);
-            pstmt.setString(3, reason);
-
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+        try {
+            // The owners of both sides, or null if nothing was flagged
+            int[] userIds = write("flagTransaction", conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, transactionId);
+                    pstmt.setInt(2, employeeId);
+                    pstmt.setString(3, reason);
+
+                    int rowsAffected = pstmt.executeUpdate();
+                    if (rowsAffected == 0) {
+                        return null;
+                    }
+                }
+                int[] owners = TransactionDAO.findUserIds(conn, transactionId);
+                return owners != null ? owners : new int[0];
+            });
+
+            // Flagged transactions are left out of the lists and counts
+            RecentTransactionCache cache = recentTransactions;
+            if (userIds != null && cache != null) {
+                cache.transactionFlagged(userIds);
+            }
+            return userIds != null;
 
         } catch (SQLException e) {
             System.err.println("Error flagging transaction ID " + transactionId + ": " + e.getMessage());
@@ -403,7 +930,7 @@ public class DatabaseUtil {
         try (Connection conn = getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(
                         "SELECT ft.id, ft.transaction_id, ft.employee_id, ft.flag_reason, ft.flag_date, ft.status, " +
-                                "t.amount, t.description, t.type, t.timestamp, " +
+                                "t.amount_cents, t.description, t.type, t.timestamp, " +
                                 "e.name as employee_name " +
                                 "FROM flagged_transactions ft " +
                                 "JOIN transactions t ON ft.transaction_id = t.id " +
@@ -427,7 +954,7 @@ public class DatabaseUtil {
                             .append("\"reason\":\"").append(escapeJson(rs.getString("flag_reason"))).append("\",")
                             .append("\"flagDate\":\"").append(rs.getString("flag_date")).append("\",")
                             .append("\"status\":\"").append(rs.getString("status")).append("\",")
-                            .append("\"amount\":").append(rs.getDouble("amount")).append(",")
+                            .append("\"amount\":").append(Money.format(rs.getLong("amount_cents"))).append(",")
                             .append("\"description\":\"").append(escapeJson(rs.getString("description"))).append("\",")
                             .append("\"type\":\"").append(rs.getString("type")).append("\",")
                             .append("\"timestamp\":\"").append(rs.getString("timestamp")).append("\"")
@@ -446,6 +973,91 @@ public class DatabaseUtil {
 
     // === User Management Methods ===
 
+    /**
+     * Checks a login with a single read of the user's row
+     *
+     * @param email    User's email
+     * @param password User's plain text password
+     * @param role     Expected role ('admin', 'employee', or 'customer')
+     * @return The outcome; the password is only checked for an active account
+     *         with the expected role
+     * @throws SQLException if the user can't be read
+     */
+    public static AuthResult login(String email, String password, String role) throws SQLException {
+        User user;
+        try (Connection conn = getConnection()) {
+            user = UserDAO.findWithCredentialsByEmail(conn, email);
+        }
+        if (user == null) {
+            System.err.println("Authentication failed: User not found with email " + email);
+            return AuthResult.failure(AuthResult.Status.BAD_CREDENTIALS);
+        }
+        if (!role.equalsIgnoreCase(user.getRole())) {
+            System.err.println("Authentication failed for " + email + ": Role mismatch (expected: " + role
+                    + ", found: " + user.getRole() + ")");
+            return AuthResult.failure(AuthResult.Status.WRONG_ROLE);
+        }
+        if ("inactive".equalsIgnoreCase(user.getStatus())) {
+            return AuthResult.failure(AuthResult.Status.PENDING_APPROVAL);
+        }
+        if (!"active".equalsIgnoreCase(user.getStatus())) {
+            System.err.println(
+                    "Authentication failed for " + email + ": Account not active (status: " + user.getStatus() + ")");
+            return AuthResult.failure(AuthResult.Status.LOCKED);
+        }
+        boolean passwordMatch;
+        try {
+            passwordMatch = verifyPassword(password, user.getPasswordHash(), user.getSalt());
+        } catch (RejectedExecutionException e) {
+            System.err.println("Authentication deferred for " + email + ": " + e.getMessage());
+            return AuthResult.failure(AuthResult.Status.BUSY);
+        }
+        if (!passwordMatch) {
+            System.err.println("Authentication failed for " + email + ": Invalid password");
+            return AuthResult.failure(AuthResult.Status.BAD_CREDENTIALS);
+        }
+        if (PasswordUtil.needsRehash(user.getPasswordHash())) {
+            rehashPassword(user.getId(), password, user.getPasswordHash());
+        }
+
+        // The session only gets the profile
+        user.setPasswordHash(null);
+        user.setSalt(null);
+        return AuthResult.success(user);
+    }
+
+    /**
+     * Replaces a hash written with a weaker scheme, now that the password is
+     * known. Best effort: the login doesn't wait for the write, and a busy
+     * hasher or a password changed meanwhile just leaves the old hash for the
+     * next login.
+     */
+    private static void rehashPassword(int userId, String password, String verifiedHash) {
+        String salt = PasswordUtil.generateSalt();
+        String newHash;
+        try {
+            newHash = hashPassword(password, salt);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        writeAsync("rehashPassword", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE users SET password_hash = ?, salt = ? WHERE id = ? AND password_hash = ?")) {
+                pstmt.setString(1, newHash);
+                pstmt.setString(2, salt);
+                pstmt.setInt(3, userId);
+                pstmt.setString(4, verifiedHash);
+                return pstmt.executeUpdate();
+            }
+        }).whenComplete((rows, error) -> {
+            if (error != null) {
+                System.err.println("Password rehash failed for user ID " + userId + ": " + error.getMessage());
+            } else if (rows > 0) {
+                System.out.println("Password rehashed to " + PasswordUtil.getAlgorithm() + " for user ID " + userId);
+            }
+        });
+    }
+
     /**
      * Authenticates a user based on email, password, and expected role.
      * Handles 'admin', 'employee', and 'customer' roles.
@@ -454,41 +1066,11 @@ public class DatabaseUtil {
      * @param password User's plain text password
      * @param role     Expected role ('admin', 'employee', or 'customer')
      * @return true if authentication is successful, false otherwise
+     * @see #login
      */
     public static boolean authenticate(String email, String password, String role) {
-        String sql = "SELECT password_hash, salt, role, status FROM users WHERE email = ?";
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, email);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String storedHash = rs.getString("password_hash");
-                    String storedSalt = rs.getString("salt");
-                    String storedRole = rs.getString("role");
-                    String status = rs.getString("status");
-
-                    if (!"active".equalsIgnoreCase(status)) {
-                        System.err.println(
-                                "Authentication failed for " + email + ": Account not active (status: " + status + ")");
-                        return false;
-                    }
-                    if (!role.equalsIgnoreCase(storedRole)) {
-                        System.err.println("Authentication failed for " + email + ": Role mismatch (expected: " + role
-                                + ", found: " + storedRole + ")");
-                        return false;
-                    }
-
-                    boolean passwordMatch = PasswordUtil.verifyPassword(password, storedHash, storedSalt);
-                    if (!passwordMatch) {
-                        System.err.println("Authentication failed for " + email + ": Invalid password");
-                    }
-                    return passwordMatch;
-                } else {
-                    System.err.println("Authentication failed: User not found with email " + email);
-                    return false;
-                }
-            }
+        try {
+            return login(email, password, role).isSuccess();
         } catch (SQLException e) {
             System.err.println("Database error during authentication for " + email + ": " + e.getMessage());
             e.printStackTrace();
@@ -534,25 +1116,8 @@ public class DatabaseUtil {
      * @return User object if found, null otherwise
      */
     public static User getUserByEmail(String email) {
-        String sql = "SELECT id, name, email, role, status, created_at FROM users WHERE email = ?";
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, email);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    User user = new User();
-                    user.setId(rs.getInt("id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    user.setRole(rs.getString("role"));
-                    user.setStatus(rs.getString("status"));
-                    user.setCreatedAt(rs.getTimestamp("created_at"));
-                    return user;
-                } else {
-                    return null;
-                }
-            }
+        try (Connection conn = getConnection()) {
+            return UserDAO.findByEmail(conn, email);
         } catch (SQLException e) {
             System.err.println("Database error retrieving user by email " + email + ": " + e.getMessage());
             e.printStackTrace();
@@ -568,15 +1133,17 @@ public class DatabaseUtil {
      * @param newPassword The new plain text password
      * @return true if the password was successfully changed, false otherwise (user
      *         not found, old password incorrect, db error)
+     * @throws RejectedExecutionException if password hashing is saturated
      */
     public static boolean changePassword(int userId, String oldPassword, String newPassword) {
         String selectSql = "SELECT password_hash, salt FROM users WHERE id = ?";
-        String updateSql = "UPDATE users SET password_hash = ?, salt = ? WHERE id = ?";
+        String updateSql = "UPDATE users SET password_hash = ?, salt = ? WHERE id = ? AND password_hash = ?";
 
-        try (Connection conn = getConnection()) {
+        try {
             String storedHash = null;
             String storedSalt = null;
-            try (PreparedStatement selectPstmt = conn.prepareStatement(selectSql)) {
+            try (Connection conn = getConnection();
+                    PreparedStatement selectPstmt = conn.prepareStatement(selectSql)) {
                 selectPstmt.setInt(1, userId);
                 try (ResultSet rs = selectPstmt.executeQuery()) {
                     if (rs.next()) {
@@ -589,28 +1156,33 @@ public class DatabaseUtil {
                 }
             }
 
-            if (!PasswordUtil.verifyPassword(oldPassword, storedHash, storedSalt)) {
+            if (!verifyPassword(oldPassword, storedHash, storedSalt)) {
                 System.err.println("Change password failed for user ID " + userId + ": Incorrect old password.");
                 return false;
             }
 
             String newSalt = PasswordUtil.generateSalt();
-            String newHash = PasswordUtil.hashPassword(newPassword, newSalt);
-
-            try (PreparedStatement updatePstmt = conn.prepareStatement(updateSql)) {
-                updatePstmt.setString(1, newHash);
-                updatePstmt.setString(2, newSalt);
-                updatePstmt.setInt(3, userId);
-
-                int affectedRows = updatePstmt.executeUpdate();
-                if (affectedRows > 0) {
-                    System.out.println("Password changed successfully for user ID " + userId);
-                    return true;
-                } else {
-                    System.err.println(
-                            "Change password failed for user ID " + userId + ": User not found during update phase.");
-                    return false;
+            String newHash = hashPassword(newPassword, newSalt);
+            String verifiedHash = storedHash;
+
+            // Only replace the hash we verified against, in case it changed meanwhile
+            int affectedRows = write("changePassword", conn -> {
+                try (PreparedStatement updatePstmt = conn.prepareStatement(updateSql)) {
+                    updatePstmt.setString(1, newHash);
+                    updatePstmt.setString(2, newSalt);
+                    updatePstmt.setInt(3, userId);
+                    updatePstmt.setString(4, verifiedHash);
+                    return updatePstmt.executeUpdate();
                 }
+            });
+
+            if (affectedRows > 0) {
+                System.out.println("Password changed successfully for user ID " + userId);
+                return true;
+            } else {
+                System.err.println(
+                        "Change password failed for user ID " + userId + ": User not found during update phase.");
+                return false;
             }
         } catch (SQLException e) {
             System.err.println("Database error changing password for user ID " + userId + ": " + e.getMessage());
@@ -804,23 +1376,8 @@ public class DatabaseUtil {
      * @return User object if found, null otherwise
      */
     public static User getUserById(int userId) {
-        String sql = "SELECT id, name, email, role, status, created_at FROM users WHERE id = ?";
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, userId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    User user = new User();
-                    user.setId(rs.getInt("id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    user.setRole(rs.getString("role"));
-                    user.setStatus(rs.getString("status"));
-                    user.setCreatedAt(rs.getTimestamp("created_at"));
-                    return user;
-                }
-            }
+        try (Connection conn = getConnection()) {
+            return UserDAO.findById(conn, userId);
         } catch (SQLException e) {
             System.err.println("Error retrieving user by ID " + userId + ": " + e.getMessage());
             e.printStackTrace();
@@ -837,59 +1394,49 @@ public class DatabaseUtil {
      * @param status      New status
      * @param newPassword New password (null if not changing)
      * @return true if successful, false otherwise
+     * @throws RejectedExecutionException if password hashing is saturated
      */
     public static boolean updateUser(int userId, String name, String role, String status, String newPassword) {
-        Connection conn = null;
-        try {
-            conn = getConnection();
-            conn.setAutoCommit(false);
+        boolean changePassword = newPassword != null && !newPassword.trim().isEmpty();
+        String salt = changePassword ? PasswordUtil.generateSalt() : null;
+        String passwordHash = changePassword ? hashPassword(newPassword, salt) : null;
 
-            String updateSql = "UPDATE users SET name = ?, role = ?, status = ? WHERE id = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                pstmt.setString(1, name);
-                pstmt.setString(2, role);
-                pstmt.setString(3, status);
-                pstmt.setInt(4, userId);
-
-                int rowsAffected = pstmt.executeUpdate();
-
-                if (newPassword != null && !newPassword.trim().isEmpty()) {
-                    String passwordSql = "UPDATE users SET password_hash = ?, salt = ? WHERE id = ?";
-                    try (PreparedStatement passwordStmt = conn.prepareStatement(passwordSql)) {
-                        String salt = PasswordUtil.generateSalt();
-                        String passwordHash = PasswordUtil.hashPassword(newPassword, salt);
-
-                        passwordStmt.setString(1, passwordHash);
-                        passwordStmt.setString(2, salt);
-                        passwordStmt.setInt(3, userId);
-
-                        passwordStmt.executeUpdate();
+        try {
+            boolean updated = write("updateUser", conn -> {
+                String updateSql = "UPDATE users SET name = ?, role = ?, status = ? WHERE id = ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
+                    pstmt.setString(1, name);
+                    pstmt.setString(2, role);
+                    pstmt.setString(3, status);
+                    pstmt.setInt(4, userId);
+
+                    int rowsAffected = pstmt.executeUpdate();
+
+                    if (changePassword) {
+                        String passwordSql = "UPDATE users SET password_hash = ?, salt = ? WHERE id = ?";
+                        try (PreparedStatement passwordStmt = conn.prepareStatement(passwordSql)) {
+                            passwordStmt.setString(1, passwordHash);
+                            passwordStmt.setString(2, salt);
+                            passwordStmt.setInt(3, userId);
+
+                            passwordStmt.executeUpdate();
+                        }
                     }
+
+                    return rowsAffected > 0;
                 }
+            });
 
-                conn.commit();
-                return rowsAffected > 0;
+            // Cached rows carry the user's name as the other party
+            RecentTransactionCache cache = recentTransactions;
+            if (updated && cache != null) {
+                cache.clear();
             }
+            return updated;
         } catch (SQLException e) {
             System.err.println("Error updating user ID " + userId + ": " + e.getMessage());
             e.printStackTrace();
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-            }
             return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
         }
     }
 
@@ -902,14 +1449,16 @@ public class DatabaseUtil {
      */
     public static boolean updateUserStatus(int userId, String status) {
         String sql = "UPDATE users SET status = ? WHERE id = ?";
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, status);
-            pstmt.setInt(2, userId);
+        try {
+            return write("updateUserStatus", conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, status);
+                    pstmt.setInt(2, userId);
 
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+                    int rowsAffected = pstmt.executeUpdate();
+                    return rowsAffected > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating status for user ID " + userId + ": " + e.getMessage());
             e.printStackTrace();
@@ -967,11 +1516,13 @@ public class DatabaseUtil {
     public static boolean approveUser(int userId, int adminId) {
         String sql = "UPDATE users SET status = 'active' WHERE id = ? AND status = 'inactive'";
 
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, userId);
-            int rowsAffected = pstmt.executeUpdate();
+        try {
+            int rowsAffected = write("approveUser", conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, userId);
+                    return pstmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 System.out.println("User #" + userId + " successfully approved by admin #" + adminId);
@@ -1056,6 +1607,39 @@ public class DatabaseUtil {
         }
     }
 
+    /**
+     * Gets a transaction count from the counters maintained by triggers on
+     * transactions and flagged_transactions, instead of counting rows
+     *
+     * @param scope         "global" (scopeId 0), "account" or "user"
+     * @param scopeId       Account or user id
+     * @param unflaggedOnly true to leave out flagged transactions
+     * @return The count, 0 if nothing has been counted for the scope yet
+     * @throws SQLException if the database query fails
+     */
+    public static int getTransactionCount(String scope, int scopeId, boolean unflaggedOnly) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return getTransactionCount(conn, scope, scopeId, unflaggedOnly);
+        }
+    }
+
+    /**
+     * Same as {@link #getTransactionCount(String, int, boolean)}, on a
+     * connection the caller already holds
+     */
+    public static int getTransactionCount(Connection conn, String scope, int scopeId, boolean unflaggedOnly)
+            throws SQLException {
+        String sql = "SELECT " + (unflaggedOnly ? "unflagged_count" : "total_count") +
+                " FROM transaction_counters WHERE scope = ? AND scope_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, scope);
+            pstmt.setInt(2, scopeId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
     /**
      * Gets the count of approved loan requests
      * 
@@ -1149,7 +1733,8 @@ public class DatabaseUtil {
     /**
      * Fetches pending loan requests with customer information
      * 
-     * @return List of pending loan requests as a ResultSet
+     * @return List of pending loan requests as a disconnected ResultSet, so the
+     *         pooled connection is returned before this method exits
      */
     public static ResultSet getPendingLoanRequests() throws SQLException {
         String sql = "SELECT l.loanid, l.userid, u.name as customerName, l.amount, " +
@@ -1159,9 +1744,13 @@ public class DatabaseUtil {
                 "WHERE l.status = 'pending' " +
                 "ORDER BY l.date DESC";
 
-        Connection conn = getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql);
-        return pstmt.executeQuery();
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql);
+                ResultSet rs = pstmt.executeQuery()) {
+            CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+            rowSet.populate(rs);
+            return rowSet;
+        }
     }
 
     /**
@@ -1172,35 +1761,14 @@ public class DatabaseUtil {
     public static String getPendingLoansAsJson() {
         StringBuilder jsonBuilder = new StringBuilder("[");
 
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(
-                        "SELECT l.loanid, l.userid, u.name as customerName, l.amount, " +
-                                "l.type, l.date, l.status " +
-                                "FROM loans l " +
-                                "JOIN users u ON l.userid = u.id " +
-                                "WHERE l.status = 'pending' " +
-                                "ORDER BY l.date DESC");
-                ResultSet rs = pstmt.executeQuery()) {
-
-            boolean first = true;
-            while (rs.next()) {
-                if (!first) {
+        try (Connection conn = getConnection()) {
+            LoanDAO.forEachPending(conn, loan -> {
+                if (jsonBuilder.length() > 1) {
                     jsonBuilder.append(",");
                 }
-                first = false;
-
-                jsonBuilder.append("{")
-                        .append("\"id\":").append(rs.getInt("loanid")).append(",")
-                        .append("\"userId\":").append(rs.getInt("userid")).append(",")
-                        .append("\"customerName\":\"").append(escapeJson(rs.getString("customerName"))).append("\",")
-                        .append("\"amount\":").append(rs.getDouble("amount")).append(",")
-                        .append("\"type\":\"").append(escapeJson(rs.getString("type"))).append("\",")
-                        .append("\"date\":\"").append(rs.getString("date")).append("\",")
-                        .append("\"status\":\"").append(rs.getString("status")).append("\"")
-                        .append("}");
-            }
-
-        } catch (SQLException e) {
+                appendLoanJson(jsonBuilder, loan, false);
+            });
+        } catch (SQLException | IOException e) {
             System.err.println("Error fetching pending loans: " + e.getMessage());
             e.printStackTrace();
             return "[]";
@@ -1210,6 +1778,28 @@ public class DatabaseUtil {
         return jsonBuilder.toString();
     }
 
+    /**
+     * Appends a loan with its customer as a JSON object
+     *
+     * @param includeComment Whether to add adminComment when the loan has one
+     */
+    private static void appendLoanJson(StringBuilder json, Loan loan, boolean includeComment) {
+        json.append("{")
+                .append("\"id\":").append(loan.getId()).append(",")
+                .append("\"userId\":").append(loan.getUserId()).append(",")
+                .append("\"customerName\":\"").append(escapeJson(loan.getCustomerName())).append("\",")
+                .append("\"amount\":").append(Money.format(loan.getAmountCents())).append(",")
+                .append("\"type\":\"").append(escapeJson(loan.getType())).append("\",")
+                .append("\"date\":\"").append(loan.getDate()).append("\",")
+                .append("\"status\":\"").append(loan.getStatus()).append("\"");
+
+        if (includeComment && loan.getAdminComment() != null) {
+            json.append(",\"adminComment\":\"").append(escapeJson(loan.getAdminComment())).append("\"");
+        }
+
+        json.append("}");
+    }
+
     /**
      * Escape JSON strings properly
      */
@@ -1235,13 +1825,14 @@ public class DatabaseUtil {
     public static boolean approveLoan(int loanId, int adminId) {
         String sql = "UPDATE loans SET status = 'approved', adminComment = 'Approved by admin ID: ' || ? WHERE loanid = ?";
 
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, adminId);
-            pstmt.setInt(2, loanId);
-
-            int rowsAffected = pstmt.executeUpdate();
+        try {
+            int rowsAffected = write("approveLoan", conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, adminId);
+                    pstmt.setInt(2, loanId);
+                    return pstmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 System.out.println("Loan #" + loanId + " successfully approved by admin #" + adminId);
@@ -1268,20 +1859,21 @@ public class DatabaseUtil {
     public static boolean rejectLoan(int loanId, int adminId, String comment) {
         String sql = "UPDATE loans SET status = 'rejected', adminComment = ? WHERE loanid = ?";
 
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            String adminComment = comment;
-            if (comment == null || comment.trim().isEmpty()) {
-                adminComment = "Rejected by admin ID: " + adminId;
-            } else {
-                adminComment = escapeJson(comment) + " (Rejected by admin ID: " + adminId + ")";
-            }
-
-            pstmt.setString(1, adminComment);
-            pstmt.setInt(2, loanId);
+        String adminComment;
+        if (comment == null || comment.trim().isEmpty()) {
+            adminComment = "Rejected by admin ID: " + adminId;
+        } else {
+            adminComment = escapeJson(comment) + " (Rejected by admin ID: " + adminId + ")";
+        }
 
-            int rowsAffected = pstmt.executeUpdate();
+        try {
+            int rowsAffected = write("rejectLoan", conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, adminComment);
+                    pstmt.setInt(2, loanId);
+                    return pstmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 System.out.println("Loan #" + loanId + " successfully rejected by admin #" + adminId);
@@ -1304,40 +1896,14 @@ public class DatabaseUtil {
      * @return JSON string with loan data or empty JSON object if not found
      */
     public static String getLoanById(int loanId) {
-        try (Connection conn = getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(
-                        "SELECT l.loanid, l.userid, u.name as customerName, l.amount, " +
-                                "l.type, l.date, l.status, l.adminComment " +
-                                "FROM loans l " +
-                                "JOIN users u ON l.userid = u.id " +
-                                "WHERE l.loanid = ?")) {
-
-            pstmt.setInt(1, loanId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    StringBuilder json = new StringBuilder();
-                    json.append("{")
-                            .append("\"id\":").append(rs.getInt("loanid")).append(",")
-                            .append("\"userId\":").append(rs.getInt("userid")).append(",")
-                            .append("\"customerName\":\"").append(escapeJson(rs.getString("customerName")))
-                            .append("\",")
-                            .append("\"amount\":").append(rs.getDouble("amount")).append(",")
-                            .append("\"type\":\"").append(escapeJson(rs.getString("type"))).append("\",")
-                            .append("\"date\":\"").append(rs.getString("date")).append("\",")
-                            .append("\"status\":\"").append(rs.getString("status")).append("\"");
-
-                    String comment = rs.getString("adminComment");
-                    if (comment != null) {
-                        json.append(",\"adminComment\":\"").append(escapeJson(comment)).append("\"");
-                    }
-
-                    json.append("}");
-                    return json.toString();
-                } else {
-                    return "{}";
-                }
+        try (Connection conn = getConnection()) {
+            Loan loan = LoanDAO.findById(conn, loanId);
+            if (loan == null) {
+                return "{}";
             }
+            StringBuilder json = new StringBuilder();
+            appendLoanJson(json, loan, true);
+            return json.toString();
         } catch (SQLException e) {
             System.err.println("Error retrieving loan #" + loanId + ": " + e.getMessage());
             e.printStackTrace();
@@ -1355,46 +1921,32 @@ public class DatabaseUtil {
         StringBuilder jsonBuilder = new StringBuilder("[");
 
         try (Connection conn = getConnection()) {
-            String sql = "SELECT l.loanid, l.amount, l.type, l.date, l.status, l.adminComment " +
-                    "FROM loans l " +
-                    "WHERE l.userid = ? " +
-                    "ORDER BY l.date DESC";
-
-            boolean first = true;
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, userId);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        if (!first) {
-                            jsonBuilder.append(",");
-                        }
-                        first = false;
-
-                        jsonBuilder.append("{");
-                        jsonBuilder.append("\"id\":").append(rs.getInt("loanid")).append(",");
-                        jsonBuilder.append("\"amount\":").append(rs.getDouble("amount")).append(",");
+            LoanDAO.forEachByUser(conn, userId, loan -> {
+                if (jsonBuilder.length() > 1) {
+                    jsonBuilder.append(",");
+                }
 
-                        String type = rs.getString("type");
-                        jsonBuilder.append("\"type\":\"").append(type != null ? escapeJson(type) : "").append("\",");
+                jsonBuilder.append("{");
+                jsonBuilder.append("\"id\":").append(loan.getId()).append(",");
+                jsonBuilder.append("\"amount\":").append(Money.format(loan.getAmountCents())).append(",");
 
-                        String date = rs.getString("date");
-                        jsonBuilder.append("\"date\":\"").append(date != null ? date : "").append("\",");
+                String type = loan.getType();
+                jsonBuilder.append("\"type\":\"").append(type != null ? escapeJson(type) : "").append("\",");
 
-                        String status = rs.getString("status");
-                        jsonBuilder.append("\"status\":\"").append(status != null ? status : "pending").append("\"");
+                String date = loan.getDate();
+                jsonBuilder.append("\"date\":\"").append(date != null ? date : "").append("\",");
 
-                        String comment = rs.getString("adminComment");
-                        if (comment != null) {
-                            jsonBuilder.append(",\"adminComment\":\"").append(escapeJson(comment)).append("\"");
-                        }
+                String status = loan.getStatus();
+                jsonBuilder.append("\"status\":\"").append(status != null ? status : "pending").append("\"");
 
-                        jsonBuilder.append("}");
-                    }
+                String comment = loan.getAdminComment();
+                if (comment != null) {
+                    jsonBuilder.append(",\"adminComment\":\"").append(escapeJson(comment)).append("\"");
                 }
-            }
-        } catch (SQLException e) {
+
+                jsonBuilder.append("}");
+            });
+        } catch (SQLException | IOException e) {
             System.err.println("Error getting loans for user ID " + userId + ": " + e.getMessage());
             e.printStackTrace();
             return "[]"; // Return empty array on error
@@ -1412,37 +1964,11 @@ public class DatabaseUtil {
      */
     public static String getLoanDetailsAsJson(int loanId) {
         try (Connection conn = getConnection()) {
-            String sql = "SELECT l.loanid, l.userid, l.amount, l.type, l.date, l.status, l.adminComment, " +
-                    "u.name as customerName " +
-                    "FROM loans l " +
-                    "JOIN users u ON l.userid = u.id " +
-                    "WHERE l.loanid = ?";
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, loanId);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        StringBuilder json = new StringBuilder();
-                        json.append("{")
-                                .append("\"id\":").append(rs.getInt("loanid")).append(",")
-                                .append("\"userId\":").append(rs.getInt("userid")).append(",")
-                                .append("\"customerName\":\"").append(escapeJson(rs.getString("customerName")))
-                                .append("\",")
-                                .append("\"amount\":").append(rs.getDouble("amount")).append(",")
-                                .append("\"type\":\"").append(escapeJson(rs.getString("type"))).append("\",")
-                                .append("\"date\":\"").append(rs.getString("date")).append("\",")
-                                .append("\"status\":\"").append(rs.getString("status")).append("\"");
-
-                        String comment = rs.getString("adminComment");
-                        if (comment != null) {
-                            json.append(",\"adminComment\":\"").append(escapeJson(comment)).append("\"");
-                        }
-
-                        json.append("}");
-                        return json.toString();
-                    }
-                }
+            Loan loan = LoanDAO.findById(conn, loanId);
+            if (loan != null) {
+                StringBuilder json = new StringBuilder();
+                appendLoanJson(json, loan, true);
+                return json.toString();
             }
         } catch (SQLException e) {
             System.err.println("Error retrieving loan details for ID " + loanId + ": " + e.getMessage());
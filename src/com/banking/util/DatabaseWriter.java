@@ -0,0 +1,536 @@
+package com.banking.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes all database mutations through a single writer connection.
+ *
+ * SQLite allows only one writer at a time, so instead of letting request
+ * threads race for the write lock (and fail with SQLITE_BUSY), write tasks are
+ * queued and executed one after another on a dedicated thread.
+ *
+ * Tasks are group-committed: the writer takes whatever is queued (waiting up
+ * to a short window for more, and at most maxBatchSize tasks) and runs the
+ * whole batch in one transaction, so a burst of writes costs one commit
+ * instead of one each. Every task runs under its own savepoint, so a task that
+ * throws is rolled back on its own and only its caller sees the failure. The
+ * other callers' futures complete once the batch has been committed. If the
+ * batch as a whole can't be committed, its tasks are run again one transaction
+ * each so every caller still gets its own result.
+ *
+ * Transactions are begun, committed and retried when the database is busy by
+ * a {@link TransactionExecutor}, which also keeps lock wait and commit times
+ * per operation name. Tasks must not commit, roll back or set savepoints
+ * through the JDBC connection; use {@link TransactionExecutor#inSavepoint}.
+ */
+public class DatabaseWriter {
+
+    /**
+     * A unit of work executed on the writer connection inside a transaction
+     */
+    public interface WriteTask<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    private static final long POLL_INTERVAL_MS = 200;
+
+    private final ConnectionPool.ConnectionFactory factory;
+    private final TransactionExecutor transactions;
+    private Connection connection; // only touched by the writer thread after construction
+    private final BlockingQueue<WriteRequest<?>> queue;
+    private final long enqueueTimeoutMs;
+    private final int maxBatchSize;
+    private final long batchWindowNanos;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Counters
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    private final AtomicLong totalExecutionNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchedTaskCount = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong batchRetryCount = new AtomicLong();
+
+    /**
+     * Opens the writer connection and starts the writer thread, committing
+     * each write on its own
+     *
+     * @param factory          Opens the dedicated writer connection (and
+     *                         reopens it if it is ever lost)
+     * @param queueCapacity    Maximum number of queued writes
+     * @param enqueueTimeoutMs How long submit() waits when the queue is full
+     * @throws SQLException if the writer connection cannot be opened
+     */
+    public DatabaseWriter(ConnectionPool.ConnectionFactory factory, int queueCapacity, long enqueueTimeoutMs)
+            throws SQLException {
+        this(factory, queueCapacity, enqueueTimeoutMs, 1, 0);
+    }
+
+    /**
+     * Opens the writer connection and starts the writer thread, with
+     * immediate transactions and the default busy retries
+     *
+     * @see #DatabaseWriter(ConnectionPool.ConnectionFactory, int, long, int, long, TransactionExecutor)
+     */
+    public DatabaseWriter(ConnectionPool.ConnectionFactory factory, int queueCapacity, long enqueueTimeoutMs,
+            int maxBatchSize, long batchWindowMicros) throws SQLException {
+        this(factory, queueCapacity, enqueueTimeoutMs, maxBatchSize, batchWindowMicros,
+                new TransactionExecutor(TransactionExecutor.Mode.IMMEDIATE, 5, 5, 250));
+    }
+
+    /**
+     * Opens the writer connection and starts the writer thread
+     *
+     * @param factory           Opens the dedicated writer connection (and
+     *                          reopens it if it is ever lost)
+     * @param queueCapacity     Maximum number of queued writes
+     * @param enqueueTimeoutMs  How long submit() waits when the queue is full
+     * @param maxBatchSize      Most writes committed together (1 disables
+     *                          group commit)
+     * @param batchWindowMicros How long to wait for more writes once one has
+     *                          arrived (0 only takes what is already queued)
+     * @param transactions      Begins and commits the writer's transactions
+     * @throws SQLException if the writer connection cannot be opened
+     */
+    public DatabaseWriter(ConnectionPool.ConnectionFactory factory, int queueCapacity, long enqueueTimeoutMs,
+            int maxBatchSize, long batchWindowMicros, TransactionExecutor transactions) throws SQLException {
+        this.factory = factory;
+        this.transactions = transactions;
+        this.connection = factory.create();
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, batchWindowMicros));
+        this.writerThread = new Thread(this::run, "db-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        System.out.println("Database writer started (queueCapacity=" + queueCapacity + ", maxBatchSize="
+                + this.maxBatchSize + ", batchWindow=" + Math.max(0, batchWindowMicros) + "us)");
+    }
+
+    /**
+     * Queues a write and returns immediately
+     *
+     * @param operation Name used in logs and metrics, e.g. "transferFunds"
+     * @param task      Work to run on the writer connection
+     * @return Future completed with the task's result, or exceptionally with the
+     *         SQLException it threw
+     */
+    public <T> CompletableFuture<T> submit(String operation, WriteTask<T> task) {
+        WriteRequest<T> request = new WriteRequest<>(operation, task);
+        if (!running) {
+            request.future.completeExceptionally(new SQLException("Database writer is shut down"));
+            return request.future;
+        }
+        // Re-entrant call from inside a write task: run inline instead of deadlocking
+        if (Thread.currentThread() == writerThread) {
+            try {
+                request.future.complete(task.execute(connection));
+            } catch (Throwable t) {
+                request.future.completeExceptionally(t);
+            }
+            return request.future;
+        }
+        try {
+            if (!queue.offer(request, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedCount.incrementAndGet();
+                request.future.completeExceptionally(new SQLException(
+                        "Database write queue is full (" + queue.size() + " pending), rejected " + operation));
+                return request.future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(new SQLException("Interrupted while queueing " + operation, e));
+            return request.future;
+        }
+        submittedCount.incrementAndGet();
+        return request.future;
+    }
+
+    /**
+     * Queues a write and waits for it to finish
+     *
+     * @param operation Name used in logs and metrics
+     * @param task      Work to run on the writer connection
+     * @return The task's result
+     * @throws SQLException if the task failed or could not be queued
+     */
+    public <T> T execute(String operation, WriteTask<T> task) throws SQLException {
+        try {
+            return submit(operation, task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for " + operation, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(operation + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Stops accepting writes, finishes the queued ones and closes the writer
+     * connection
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        WriteRequest<?> leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.future.completeExceptionally(new SQLException("Database writer is shut down"));
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing writer connection: " + e.getMessage());
+        }
+        System.out.println("Database writer shut down (" + completedCount.get() + " writes completed)");
+    }
+
+    // === Metrics ===
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public double getAverageQueueWaitMillis() {
+        long done = completedCount.get() + failedCount.get();
+        return done == 0 ? 0.0 : totalQueueWaitNanos.get() / (double) done / 1_000_000.0;
+    }
+
+    public double getAverageExecutionMillis() {
+        long done = completedCount.get() + failedCount.get();
+        return done == 0 ? 0.0 : totalExecutionNanos.get() / (double) done / 1_000_000.0;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0.0 : batchedTaskCount.get() / (double) batches;
+    }
+
+    public long getLargestBatchSize() {
+        return largestBatch.get();
+    }
+
+    /**
+     * Number of batches that could not be committed together and were rerun
+     * one write at a time
+     */
+    public long getBatchRetryCount() {
+        return batchRetryCount.get();
+    }
+
+    /**
+     * Writer counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"queueDepth\":" + getQueueDepth() + "," +
+                "\"submitted\":" + getSubmittedCount() + "," +
+                "\"completed\":" + getCompletedCount() + "," +
+                "\"failed\":" + getFailedCount() + "," +
+                "\"rejected\":" + getRejectedCount() + "," +
+                "\"avgQueueWaitMs\":" + String.format("%.3f", getAverageQueueWaitMillis()) + "," +
+                "\"avgExecutionMs\":" + String.format("%.3f", getAverageExecutionMillis()) + "," +
+                "\"maxLatencyMs\":" + String.format("%.3f", getMaxLatencyMillis()) + "," +
+                "\"maxBatchSize\":" + maxBatchSize + "," +
+                "\"batchWindowUs\":" + TimeUnit.NANOSECONDS.toMicros(batchWindowNanos) + "," +
+                "\"batches\":" + getBatchCount() + "," +
+                "\"avgBatchSize\":" + String.format("%.2f", getAverageBatchSize()) + "," +
+                "\"largestBatch\":" + getLargestBatchSize() + "," +
+                "\"batchRetries\":" + getBatchRetryCount() + "," +
+                "\"transactions\":" + transactions.getStatsAsJson() +
+                "}";
+    }
+
+    // === Internals ===
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            WriteRequest<?> request;
+            try {
+                request = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (request == null) {
+                continue;
+            }
+            List<WriteRequest<?>> batch = collectBatch(request);
+            if (batch.size() == 1) {
+                process(request);
+            } else {
+                processBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * Gathers the requests to commit together with the first one: everything
+     * already queued, plus whatever arrives within the batch window, up to
+     * maxBatchSize
+     */
+    private List<WriteRequest<?>> collectBatch(WriteRequest<?> first) {
+        List<WriteRequest<?>> batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+        batch.add(first);
+        if (maxBatchSize == 1) {
+            return batch;
+        }
+        queue.drainTo(batch, maxBatchSize - 1);
+        long deadline = System.nanoTime() + batchWindowNanos;
+        while (batch.size() < maxBatchSize && batchWindowNanos > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            WriteRequest<?> next;
+            try {
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        return batch;
+    }
+
+    /**
+     * Runs a batch in one transaction with a savepoint per request. Requests
+     * that throw are rolled back to their savepoint and failed right away
+     * (unless the database was busy, in which case they are rerun on their
+     * own); the rest are completed after the commit. If the transaction
+     * itself breaks, the requests that haven't failed are rerun one
+     * transaction each. If it can't even be begun, the whole batch fails.
+     */
+    private void processBatch(List<WriteRequest<?>> batch) {
+        long started = System.nanoTime();
+        batchCount.incrementAndGet();
+        batchedTaskCount.addAndGet(batch.size());
+        recordLargestBatch(batch.size());
+
+        List<String> operations = new ArrayList<>(batch.size());
+        for (WriteRequest<?> request : batch) {
+            operations.add(request.operation);
+        }
+        long lockWaitNanos;
+        try {
+            ensureConnectionOpen();
+            lockWaitNanos = transactions.begin(connection, operations);
+        } catch (Throwable t) {
+            System.err.println("Database writer: could not begin a transaction for a batch of " + batch.size()
+                    + ": " + t.getMessage());
+            for (WriteRequest<?> request : batch) {
+                transactions.recordFailure(request.operation);
+                failedCount.incrementAndGet();
+                request.future.completeExceptionally(t);
+                recordLatency(System.nanoTime() - request.enqueuedAt);
+            }
+            return;
+        }
+
+        List<BatchEntry<?>> succeeded = new ArrayList<>(batch.size());
+        List<WriteRequest<?>> rerun = new ArrayList<>();
+        try {
+            for (WriteRequest<?> request : batch) {
+                BatchEntry<?> entry = runInSavepoint(request, started);
+                if (entry != null) {
+                    succeeded.add(entry);
+                } else if (request.rerunAlone) {
+                    rerun.add(request);
+                }
+            }
+            List<String> committed = new ArrayList<>(succeeded.size());
+            for (BatchEntry<?> entry : succeeded) {
+                committed.add(entry.request.operation);
+            }
+            transactions.commit(connection, committed, lockWaitNanos);
+        } catch (Throwable t) {
+            System.err.println("Database writer: batch of " + batch.size() + " could not be committed, "
+                    + "running its writes one by one: " + t.getMessage());
+            transactions.rollback(connection);
+            batchRetryCount.incrementAndGet();
+            rerun.clear();
+            for (BatchEntry<?> entry : succeeded) {
+                rerun.add(entry.request);
+            }
+            // Requests the loop never reached, or that hit a busy database
+            for (WriteRequest<?> request : batch) {
+                if (!request.started || request.rerunAlone) {
+                    rerun.add(request);
+                }
+            }
+            succeeded.clear();
+        }
+
+        long finished = System.nanoTime();
+        for (BatchEntry<?> entry : succeeded) {
+            entry.complete();
+            completedCount.incrementAndGet();
+            recordLatency(finished - entry.request.enqueuedAt);
+        }
+        for (WriteRequest<?> request : rerun) {
+            process(request);
+        }
+    }
+
+    /**
+     * Runs one request of a batch under its own savepoint
+     *
+     * @return The request and its result, or null if it failed (its future has
+     *         then been completed)
+     * @throws SQLException if the savepoint couldn't be set or rolled back, in
+     *                      which case the whole transaction is unusable
+     */
+    private <T> BatchEntry<T> runInSavepoint(WriteRequest<T> request, long batchStarted) throws SQLException {
+        request.started = true;
+        long started = System.nanoTime();
+        totalQueueWaitNanos.addAndGet(batchStarted - request.enqueuedAt);
+        try {
+            T result = TransactionExecutor.inSavepoint(connection, "write_task", request.task);
+            return new BatchEntry<>(request, result);
+        } catch (TransactionExecutor.SavepointException e) {
+            request.started = false; // rerun on its own once the batch is rolled back
+            throw e;
+        } catch (Throwable t) {
+            if (TransactionExecutor.isBusy(t)) {
+                request.rerunAlone = true; // gets its own transaction and busy retries
+                return null;
+            }
+            transactions.recordFailure(request.operation);
+            failedCount.incrementAndGet();
+            request.future.completeExceptionally(t);
+            recordLatency(System.nanoTime() - request.enqueuedAt);
+            return null;
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            totalExecutionNanos.addAndGet(elapsed);
+            transactions.recordExecution(request.operation, elapsed);
+        }
+    }
+
+    private <T> void process(WriteRequest<T> request) {
+        long started = System.nanoTime();
+        totalQueueWaitNanos.addAndGet(started - request.enqueuedAt);
+        try {
+            ensureConnectionOpen();
+            T result = transactions.execute(connection, request.operation, request.task);
+            completedCount.incrementAndGet();
+            request.future.complete(result);
+        } catch (Throwable t) {
+            failedCount.incrementAndGet();
+            request.future.completeExceptionally(t);
+        } finally {
+            long finished = System.nanoTime();
+            totalExecutionNanos.addAndGet(finished - started);
+            recordLatency(finished - request.enqueuedAt);
+        }
+    }
+
+    private void ensureConnectionOpen() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            System.err.println("Database writer: connection lost, reopening");
+            connection = factory.create();
+        }
+    }
+
+    private void recordLatency(long latencyNanos) {
+        long currentMax;
+        while (latencyNanos > (currentMax = maxLatencyNanos.get())) {
+            if (maxLatencyNanos.compareAndSet(currentMax, latencyNanos)) {
+                break;
+            }
+        }
+    }
+
+    private void recordLargestBatch(long size) {
+        long currentMax;
+        while (size > (currentMax = largestBatch.get())) {
+            if (largestBatch.compareAndSet(currentMax, size)) {
+                break;
+            }
+        }
+    }
+
+    private static class WriteRequest<T> {
+        final String operation;
+        final WriteTask<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+        boolean started; // only touched by the writer thread
+        boolean rerunAlone; // hit a busy database inside a batch
+
+        WriteRequest(String operation, WriteTask<T> task) {
+            this.operation = operation;
+            this.task = task;
+        }
+    }
+
+    /**
+     * A batched request that succeeded, waiting for the commit
+     */
+    private static class BatchEntry<T> {
+        final WriteRequest<T> request;
+        final T result;
+
+        BatchEntry(WriteRequest<T> request, T result) {
+            this.request = request;
+            this.result = result;
+        }
+
+        void complete() {
+            request.future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.banking.util;
+
+import com.banking.dao.IdempotencyKeyDAO;
+import com.banking.model.IdempotencyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the outcome of requests sent with an Idempotency-Key so a retried
+ * request gets the original answer instead of being processed twice.
+ *
+ * Outcomes are stored in the idempotency_keys table and the most recently
+ * used ones are also kept in a bounded LRU map. A request first claims its
+ * key: if the key already has an outcome the caller replays it, and while
+ * another request holds the key the caller is told it is in progress. The
+ * holder finishes with {@link Claim#complete}, {@link Claim#completePersisted}
+ * (when it wrote the record itself, in the same transaction as its work) or
+ * {@link Claim#release} (when it failed in a way that should be retried).
+ *
+ * Keys are scoped to a user and expire after banking.idempotency.retentionHours.
+ *
+ * Held keys are only known to this JVM. With stateless sessions on several
+ * nodes the same key can be acquired on two of them at once, so work that
+ * stores its outcome in its own transaction does so with {@link Claim#persist},
+ * which fails if another node got there first.
+ */
+public class IdempotencyStore {
+
+    public static final int MAX_KEY_LENGTH = 255;
+    private static final int PURGE_EVERY = 1000; // completions between deletes of expired keys
+
+    public enum ClaimStatus {
+        ACQUIRED, // the caller should process the request and complete the claim
+        REPLAY, // the key has an outcome for the same request
+        MISMATCH, // the key was used for a different request
+        IN_PROGRESS // another request holds the key
+    }
+
+    /**
+     * Result of claiming a key
+     */
+    public static class Claim {
+        private final IdempotencyStore store;
+        private final ClaimStatus status;
+        private final int userId;
+        private final String key;
+        private final String fingerprint;
+        private final IdempotencyRecord stored;
+
+        Claim(IdempotencyStore store, ClaimStatus status, int userId, String key, String fingerprint,
+                IdempotencyRecord stored) {
+            this.store = store;
+            this.status = status;
+            this.userId = userId;
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.stored = stored;
+        }
+
+        public ClaimStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * The outcome to replay; only set for REPLAY
+         */
+        public IdempotencyRecord getStored() {
+            return stored;
+        }
+
+        /**
+         * Builds the record to store for this key
+         */
+        public IdempotencyRecord outcome(boolean success, String message) {
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setUserId(userId);
+            record.setKey(key);
+            record.setFingerprint(fingerprint);
+            record.setSuccess(success);
+            record.setMessage(message);
+            return record;
+        }
+
+        /**
+         * Stores the outcome of an acquired claim. The row is written in the
+         * background and the key stays held until it is, so a retry in the
+         * meantime is told the request is in progress rather than running it
+         * again. If the row can't be written the key is released.
+         */
+        public void complete(boolean success, String message) {
+            store.complete(outcome(success, message));
+        }
+
+        /**
+         * Writes the outcome on the caller's write connection, in the same
+         * transaction as its work
+         *
+         * @throws SQLException if the key already has an outcome, stored by a
+         *                      request on another node
+         */
+        public void persist(Connection conn, IdempotencyRecord outcome) throws SQLException {
+            if (IdempotencyKeyDAO.insertIfUnused(conn, outcome, store.retentionHours) == 0) {
+                throw new SQLException("This Idempotency-Key was already used by another request.");
+            }
+        }
+
+        /**
+         * Releases an acquired claim whose outcome the caller has already
+         * written with {@link #persist} or {@link IdempotencyKeyDAO#insert},
+         * remembering it in memory too
+         */
+        public void completePersisted(IdempotencyRecord outcome) {
+            store.remember(outcome);
+        }
+
+        /**
+         * Releases an acquired claim without storing anything, so the request
+         * can be retried with the same key
+         */
+        public void release() {
+            if (status == ClaimStatus.ACQUIRED) {
+                store.inFlight.remove(cacheKey(userId, key));
+            }
+        }
+    }
+
+    private static class CachedRecord {
+        final IdempotencyRecord record;
+        final long cachedAt;
+
+        CachedRecord(IdempotencyRecord record) {
+            this.record = record;
+            this.cachedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final int retentionHours;
+    private final long retentionMs;
+    private final Map<String, CachedRecord> cache; // guarded by itself
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Counters
+    private final AtomicLong claimCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong databaseHitCount = new AtomicLong();
+    private final AtomicLong replayCount = new AtomicLong();
+    private final AtomicLong mismatchCount = new AtomicLong();
+    private final AtomicLong inProgressCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * @param cacheSize      Most outcomes kept in memory
+     * @param retentionHours How long a key is remembered
+     */
+    public IdempotencyStore(int cacheSize, int retentionHours) {
+        int capacity = Math.max(1, cacheSize);
+        this.retentionHours = Math.max(1, retentionHours);
+        this.retentionMs = this.retentionHours * 3600_000L;
+        this.cache = new LinkedHashMap<String, CachedRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRecord> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Checks a key that isn't too long and has no control characters
+     */
+    public static boolean isValidKey(String key) {
+        if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isISOControl(key.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the parts of a request that a reused key must match
+     */
+    public static String fingerprint(Object... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Claims a key for a request
+     *
+     * @param fingerprint See {@link #fingerprint}
+     * @throws SQLException if the stored outcomes can't be read; the key is
+     *                      not held in that case
+     */
+    public Claim claim(int userId, String key, String fingerprint) throws SQLException {
+        claimCount.incrementAndGet();
+        String cacheKey = cacheKey(userId, key);
+        if (!inFlight.add(cacheKey)) {
+            inProgressCount.incrementAndGet();
+            return new Claim(this, ClaimStatus.IN_PROGRESS, userId, key, fingerprint, null);
+        }
+
+        IdempotencyRecord stored;
+        try {
+            stored = findCached(cacheKey);
+            if (stored != null) {
+                cacheHitCount.incrementAndGet();
+            } else {
+                try (Connection conn = DatabaseUtil.getConnection()) {
+                    stored = IdempotencyKeyDAO.find(conn, userId, key, retentionHours);
+                }
+                if (stored != null) {
+                    databaseHitCount.incrementAndGet();
+                    cache(cacheKey, stored);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            inFlight.remove(cacheKey);
+            throw e;
+        }
+
+        if (stored == null) {
+            return new Claim(this, ClaimStatus.ACQUIRED, userId, key, fingerprint, null);
+        }
+        inFlight.remove(cacheKey);
+        if (!stored.getFingerprint().equals(fingerprint)) {
+            mismatchCount.incrementAndGet();
+            return new Claim(this, ClaimStatus.MISMATCH, userId, key, fingerprint, null);
+        }
+        replayCount.incrementAndGet();
+        return new Claim(this, ClaimStatus.REPLAY, userId, key, fingerprint, stored);
+    }
+
+    private void complete(IdempotencyRecord outcome) {
+        // Only cached once the row is written: an outcome that is only in the
+        // LRU could be evicted, and a retry would then run the request again
+        DatabaseUtil.writeAsync("storeIdempotencyKey", conn -> IdempotencyKeyDAO.insert(conn, outcome))
+                .whenComplete((rows, error) -> {
+                    if (error == null) {
+                        remember(outcome);
+                        return;
+                    }
+                    System.err.println("Failed to store idempotency key for user " + outcome.getUserId()
+                            + ": " + error.getMessage());
+                    inFlight.remove(cacheKey(outcome.getUserId(), outcome.getKey()));
+                });
+    }
+
+    private void remember(IdempotencyRecord outcome) {
+        cache(cacheKey(outcome.getUserId(), outcome.getKey()), outcome);
+        finish(outcome);
+    }
+
+    private void finish(IdempotencyRecord outcome) {
+        inFlight.remove(cacheKey(outcome.getUserId(), outcome.getKey()));
+        if (completedCount.incrementAndGet() % PURGE_EVERY == 0) {
+            DatabaseUtil.writeAsync("purgeIdempotencyKeys",
+                    conn -> IdempotencyKeyDAO.deleteExpired(conn, retentionHours));
+        }
+    }
+
+    private IdempotencyRecord findCached(String cacheKey) {
+        synchronized (cache) {
+            CachedRecord cached = cache.get(cacheKey);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.cachedAt > retentionMs) {
+                cache.remove(cacheKey);
+                return null;
+            }
+            return cached.record;
+        }
+    }
+
+    private void cache(String cacheKey, IdempotencyRecord record) {
+        synchronized (cache) {
+            cache.put(cacheKey, new CachedRecord(record));
+        }
+    }
+
+    private static String cacheKey(int userId, String key) {
+        return userId + ":" + key;
+    }
+
+    // === Metrics ===
+
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Store counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"cached\":" + getCachedCount() + "," +
+                "\"inFlight\":" + inFlight.size() + "," +
+                "\"claims\":" + claimCount.get() + "," +
+                "\"cacheHits\":" + cacheHitCount.get() + "," +
+                "\"databaseHits\":" + databaseHitCount.get() + "," +
+                "\"replays\":" + replayCount.get() + "," +
+                "\"mismatches\":" + mismatchCount.get() + "," +
+                "\"inProgress\":" + inProgressCount.get() + "," +
+                "\"completed\":" + completedCount.get() +
+                "}";
+    }
+}
@@ -0,0 +1,320 @@
+package com.banking.util;
+
+import com.banking.model.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes JSON straight to an output stream as UTF-8.
+ *
+ * Output goes through a fixed-size byte buffer which is flushed to the stream
+ * whenever it fills up, so memory use doesn't depend on how much is written.
+ * This lets servlets encode rows as they come out of a ResultSet instead of
+ * building the whole response in a StringBuilder first. Commas between
+ * members and elements are inserted automatically.
+ *
+ * <pre>
+ * json.beginObject().name("transactions").beginArray();
+ * while (rs.next()) {
+ *     json.beginObject().field("id", rs.getInt("id")).endObject();
+ * }
+ * json.endArray().endObject().flush();
+ * </pre>
+ */
+public class JsonStreamWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+
+    // Per nesting level: does the next member/element need a leading comma?
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JsonStreamWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out        Stream to write to
+     * @param bufferSize Bytes buffered before writing to the stream (at least 16)
+     */
+    public JsonStreamWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(16, bufferSize)];
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes an object member name; the next call must write its value
+     */
+    public JsonStreamWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        separate();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a number the way Double.toString does (e.g. 100.0); NaN and
+     * infinities, which JSON can't represent, are written as null
+     */
+    public JsonStreamWriter value(double value) throws IOException {
+        separate();
+        writeAscii(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes an amount of money in cents as a number with two decimal places
+     * (e.g. 1234 as 12.34), without going through double
+     */
+    public JsonStreamWriter centsValue(long cents) throws IOException {
+        separate();
+        writeAscii(Money.format(cents));
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        separate();
+        writeAscii("null");
+        return this;
+    }
+
+    /**
+     * Writes a value that is already valid JSON (e.g. a nested stats object)
+     * without escaping it
+     */
+    public JsonStreamWriter rawValue(String json) throws IOException {
+        separate();
+        writeChars(json);
+        return this;
+    }
+
+    public JsonStreamWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonStreamWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonStreamWriter field(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonStreamWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonStreamWriter centsField(String name, long cents) throws IOException {
+        return name(name).centsValue(cents);
+    }
+
+    /**
+     * Writes buffered bytes to the stream and flushes it
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    // === Internals ===
+
+    private JsonStreamWriter open(char bracket) throws IOException {
+        separate();
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels");
+        }
+        writeByte(bracket);
+        needsComma[depth++] = false;
+        return this;
+    }
+
+    private JsonStreamWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("Unbalanced '" + bracket + "'");
+        }
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    /**
+     * Writes the comma before a member or element, unless it directly follows
+     * a name or is the first in its container
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (needsComma[depth - 1]) {
+                writeByte(',');
+            }
+            needsComma[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    writeAscii("\\\"");
+                    break;
+                case '\\':
+                    writeAscii("\\\\");
+                    break;
+                case '\n':
+                    writeAscii("\\n");
+                    break;
+                case '\r':
+                    writeAscii("\\r");
+                    break;
+                case '\t':
+                    writeAscii("\\t");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    // Valid JSON, but not valid inside a JavaScript string literal
+                    writeUnicodeEscape(c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writeUnicodeEscape(c);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                    } else {
+                        writeCodePoint(c);
+                    }
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        writeAscii("\\u");
+        writeByte(HEX[(c >> 12) & 0xF]);
+        writeByte(HEX[(c >> 8) & 0xF]);
+        writeByte(HEX[(c >> 4) & 0xF]);
+        writeByte(HEX[c & 0xF]);
+    }
+
+    private void writeChars(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    /**
+     * UTF-8 encodes one code point. Unpaired surrogates become U+FFFD.
+     */
+    private void writeCodePoint(int cp) throws IOException {
+        if (cp < 0x80) {
+            writeByte(cp);
+        } else if (cp < 0x800) {
+            writeByte(0xC0 | (cp >> 6));
+            writeByte(0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            if (cp >= 0xD800 && cp <= 0xDFFF) {
+                cp = 0xFFFD;
+            }
+            writeByte(0xE0 | (cp >> 12));
+            writeByte(0x80 | ((cp >> 6) & 0x3F));
+            writeByte(0x80 | (cp & 0x3F));
+        } else {
+            writeByte(0xF0 | (cp >> 18));
+            writeByte(0x80 | ((cp >> 12) & 0x3F));
+            writeByte(0x80 | ((cp >> 6) & 0x3F));
+            writeByte(0x80 | (cp & 0x3F));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
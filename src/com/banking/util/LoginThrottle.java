@@ -0,0 +1,249 @@
+package com.banking.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits login attempts with token buckets per email and per client IP, so
+ * repeated guesses are turned away before they cost a database read or a
+ * password hash.
+ *
+ * Each bucket holds up to a burst of attempts and refills at a steady rate
+ * per minute. A bucket that has refilled completely is the same as no bucket,
+ * so idle ones are dropped, and each map keeps at most
+ * banking.login.throttle.maxKeys buckets; past that the least recently used
+ * bucket makes room. The maps are kept in access order, so both only ever
+ * look at the oldest end and cost O(1) amortised per attempt. A successful
+ * login clears its email's bucket.
+ *
+ * The client IP is the connection's remote address unless that address is
+ * one of banking.login.trustedProxies (a comma-separated list, e.g. the load
+ * balancers). Then it comes from X-Forwarded-For: the rightmost entry that
+ * isn't itself a trusted proxy, since anything left of that was written by
+ * the client and can't be trusted.
+ */
+public class LoginThrottle {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    /**
+     * A token bucket; guarded by its own lock
+     */
+    private static class Bucket {
+        private final int capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long refilledAt;
+        private volatile long lastSeen;
+
+        Bucket(int capacity, double tokensPerNano, long now) {
+            this.capacity = capacity;
+            this.tokensPerNano = tokensPerNano;
+            this.tokens = capacity;
+            this.refilledAt = now;
+            this.lastSeen = now;
+        }
+
+        /**
+         * Takes a token if there is one
+         *
+         * @return 0 if taken, otherwise the nanoseconds until one is available
+         */
+        synchronized long tryTake(long now) {
+            lastSeen = now;
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+    }
+
+    // Access order, least recently used first; each guarded by itself
+    private final LinkedHashMap<String, Bucket> emailBuckets = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Bucket> ipBuckets = new LinkedHashMap<>(16, 0.75f, true);
+    private final int emailBurst;
+    private final double emailTokensPerNano;
+    private final int ipBurst;
+    private final double ipTokensPerNano;
+    private final int maxKeys;
+    private final Set<String> trustedProxies;
+
+    // Counters
+    private final AtomicLong allowedCount = new AtomicLong();
+    private final AtomicLong emailRejectedCount = new AtomicLong();
+    private final AtomicLong ipRejectedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * @param emailBurst     Attempts an email can make back to back
+     * @param emailPerMinute Attempts an email regains per minute
+     * @param ipBurst        Attempts a client IP can make back to back
+     * @param ipPerMinute    Attempts a client IP regains per minute
+     * @param maxKeys        Buckets kept per map
+     */
+    public LoginThrottle(int emailBurst, int emailPerMinute, int ipBurst, int ipPerMinute, int maxKeys) {
+        this(emailBurst, emailPerMinute, ipBurst, ipPerMinute, maxKeys, Collections.emptySet());
+    }
+
+    /**
+     * @param emailBurst     Attempts an email can make back to back
+     * @param emailPerMinute Attempts an email regains per minute
+     * @param ipBurst        Attempts a client IP can make back to back
+     * @param ipPerMinute    Attempts a client IP regains per minute
+     * @param maxKeys        Buckets kept per map
+     * @param trustedProxies Addresses whose X-Forwarded-For header is believed
+     */
+    public LoginThrottle(int emailBurst, int emailPerMinute, int ipBurst, int ipPerMinute, int maxKeys,
+            Set<String> trustedProxies) {
+        this.emailBurst = Math.max(1, emailBurst);
+        this.emailTokensPerNano = (double) Math.max(1, emailPerMinute) / NANOS_PER_MINUTE;
+        this.ipBurst = Math.max(1, ipBurst);
+        this.ipTokensPerNano = (double) Math.max(1, ipPerMinute) / NANOS_PER_MINUTE;
+        this.maxKeys = Math.max(1, maxKeys);
+        this.trustedProxies = new HashSet<>(trustedProxies);
+    }
+
+    /**
+     * Creates a throttle using the banking.login.throttle.* settings
+     */
+    public static LoginThrottle fromConfig() {
+        return new LoginThrottle(
+                ConfigUtil.getInt("banking.login.throttle.emailBurst", 5),
+                ConfigUtil.getInt("banking.login.throttle.emailPerMinute", 5),
+                ConfigUtil.getInt("banking.login.throttle.ipBurst", 20),
+                ConfigUtil.getInt("banking.login.throttle.ipPerMinute", 30),
+                ConfigUtil.getInt("banking.login.throttle.maxKeys", 10000),
+                parseAddresses(ConfigUtil.getString("banking.login.trustedProxies", "")));
+    }
+
+    /**
+     * Works out which address a request came from, see the class comment
+     *
+     * @param remoteAddr    The connection's remote address
+     * @param forwardedFor  The X-Forwarded-For header, or null
+     * @return The address to throttle on
+     */
+    public String clientIp(String remoteAddr, String forwardedFor) {
+        if (forwardedFor == null || !trustedProxies.contains(remoteAddr)) {
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return hop;
+            }
+        }
+        return remoteAddr; // every hop is one of ours
+    }
+
+    private static Set<String> parseAddresses(String value) {
+        Set<String> addresses = new HashSet<>();
+        for (String address : value.split(",")) {
+            if (!address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Counts a login attempt against its client IP and email
+     *
+     * @param email    The email being logged into
+     * @param clientIp The address the attempt came from
+     * @return 0 if the attempt may go ahead, otherwise the milliseconds until
+     *         it would be allowed
+     */
+    public long tryAcquire(String email, String clientIp) {
+        long now = System.nanoTime();
+        Bucket ip = bucket(ipBuckets, clientIp, ipBurst, ipTokensPerNano, now);
+        long wait = ip.tryTake(now);
+        if (wait > 0) {
+            ipRejectedCount.incrementAndGet();
+            return toMillis(wait);
+        }
+        Bucket user = bucket(emailBuckets, email.toLowerCase(), emailBurst, emailTokensPerNano, now);
+        wait = user.tryTake(now);
+        if (wait > 0) {
+            emailRejectedCount.incrementAndGet();
+            return toMillis(wait);
+        }
+        allowedCount.incrementAndGet();
+        return 0;
+    }
+
+    /**
+     * Forgets the failed attempts against an email once its owner logs in
+     */
+    public void loginSucceeded(String email) {
+        synchronized (emailBuckets) {
+            emailBuckets.remove(email.toLowerCase());
+        }
+    }
+
+    private Bucket bucket(Map<String, Bucket> buckets, String key, int burst, double tokensPerNano, long now) {
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(key); // moves it to the recent end
+            if (bucket == null) {
+                bucket = new Bucket(burst, tokensPerNano, now);
+                buckets.put(key, bucket);
+            }
+            bucket.lastSeen = now;
+            makeRoom(buckets, (long) (burst / tokensPerNano), now);
+            return bucket;
+        }
+    }
+
+    /**
+     * Drops buckets from the least recently used end while they have refilled
+     * completely or the map is over maxKeys. Stops at the first bucket that
+     * is neither, so each bucket is looked at here about once. Caller holds
+     * the map's lock.
+     */
+    private void makeRoom(Map<String, Bucket> buckets, long refillNanos, long now) {
+        for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext();) {
+            Bucket eldest = it.next();
+            boolean idle = now - eldest.lastSeen >= refillNanos;
+            if (!idle && buckets.size() <= maxKeys) {
+                return;
+            }
+            it.remove();
+            if (!idle) {
+                evictedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+
+    private static int size(Map<String, Bucket> buckets) {
+        synchronized (buckets) {
+            return buckets.size();
+        }
+    }
+
+    /**
+     * Get throttle counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"allowed\":" + allowedCount.get() + "," +
+                "\"rejectedByEmail\":" + emailRejectedCount.get() + "," +
+                "\"rejectedByIp\":" + ipRejectedCount.get() + "," +
+                "\"trackedEmails\":" + size(emailBuckets) + "," +
+                "\"trackedIps\":" + size(ipBuckets) + "," +
+                "\"evicted\":" + evictedCount.get() +
+                "}";
+    }
+}
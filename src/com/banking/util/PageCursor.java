@@ -0,0 +1,112 @@
+package com.banking.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a list ordered by (timestamp DESC, id DESC), used for keyset
+ * pagination.
+ *
+ * A cursor remembers the sort key of the row at the edge of a page and which
+ * way to move from it: {@link #next} pages towards older rows, {@link #prev}
+ * towards newer ones. Clients only ever see the opaque token produced by
+ * {@link #encode()} and send it back unchanged.
+ */
+public class PageCursor {
+
+    private static final String VERSION = "1";
+    private static final char SEPARATOR = '|';
+
+    private final String timestamp;
+    private final long id;
+    private final boolean backward;
+
+    private PageCursor(String timestamp, long id, boolean backward) {
+        this.timestamp = timestamp;
+        this.id = id;
+        this.backward = backward;
+    }
+
+    /**
+     * Cursor for the page after (older than) the given row
+     */
+    public static PageCursor next(String timestamp, long id) {
+        return new PageCursor(timestamp, id, false);
+    }
+
+    /**
+     * Cursor for the page before (newer than) the given row
+     */
+    public static PageCursor prev(String timestamp, long id) {
+        return new PageCursor(timestamp, id, true);
+    }
+
+    /**
+     * Encodes the cursor as a URL-safe token
+     */
+    public String encode() {
+        String raw = VERSION + SEPARATOR + (backward ? "p" : "n") + SEPARATOR + id + SEPARATOR
+                + (timestamp != null ? timestamp : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}
+     *
+     * @param token Token from the request, may be null
+     * @return The cursor, or null if the token is missing or malformed
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // version|direction|id|timestamp - the timestamp goes last as it is free text
+            String[] parts = raw.split("\\" + SEPARATOR, 4);
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                return null;
+            }
+            boolean backward;
+            if ("p".equals(parts[1])) {
+                backward = true;
+            } else if ("n".equals(parts[1])) {
+                backward = false;
+            } else {
+                return null;
+            }
+            return new PageCursor(parts[3], Long.parseLong(parts[2]), backward);
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or id (NumberFormatException is an IllegalArgumentException)
+            return null;
+        }
+    }
+
+    /**
+     * SQL condition selecting the rows beyond this cursor. Expects the table
+     * alias t and binds timestamp then id.
+     */
+    public String toSqlCondition() {
+        return backward ? "(t.timestamp, t.id) > (?, ?)" : "(t.timestamp, t.id) < (?, ?)";
+    }
+
+    /**
+     * ORDER BY clause matching {@link #toSqlCondition()}. Backward pages are
+     * read in ascending order and must be reversed by the caller.
+     */
+    public String toSqlOrderBy() {
+        return backward ? "ORDER BY t.timestamp ASC, t.id ASC" : "ORDER BY t.timestamp DESC, t.id DESC";
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+}
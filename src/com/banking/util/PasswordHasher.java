@@ -0,0 +1,202 @@
+package com.banking.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing on its own small pool of threads, so that a burst of
+ * logins can use at most banking.password.hashThreads cores and request
+ * threads stay free for everything else.
+ *
+ * At most banking.password.hashQueue hashes wait for a thread. A new hash is
+ * refused at once with a {@link RejectedExecutionException}, rather than
+ * holding its request thread, when the queue is full or when the hashes
+ * already queued would take longer than banking.password.hashTimeoutMs at the
+ * average hash time. One still unfinished after hashTimeoutMs is refused
+ * then.
+ *
+ * Giving up on a hash only stops it if it hasn't started: PBKDF2 doesn't
+ * check for interrupts, so a hash already running finishes on its pool
+ * thread and its result is dropped.
+ */
+public class PasswordHasher {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final long timeoutMs;
+
+    // Counters
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+
+    /**
+     * @param threads       Hashes run at the same time
+     * @param queueCapacity Hashes that may wait for a thread
+     * @param timeoutMs     Longest a caller waits for its hash
+     */
+    public PasswordHasher(int threads, int queueCapacity, long timeoutMs) {
+        int poolSize = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), r -> {
+                    Thread t = new Thread(r, "password-hasher");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.prestartAllCoreThreads();
+        System.out.println("Password hasher started (threads=" + poolSize + ", queue=" + this.queueCapacity
+                + ", timeout=" + this.timeoutMs + "ms)");
+    }
+
+    /**
+     * Creates a hasher using the banking.password.* settings; by default it
+     * gets half the cores
+     */
+    public static PasswordHasher fromConfig() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new PasswordHasher(
+                ConfigUtil.getInt("banking.password.hashThreads", Math.max(1, cores / 2)),
+                ConfigUtil.getInt("banking.password.hashQueue", 32),
+                ConfigUtil.getLong("banking.password.hashTimeoutMs", 2000));
+    }
+
+    /**
+     * Hashes a password, see {@link PasswordUtil#hashPassword}
+     *
+     * @throws RejectedExecutionException if the hasher is saturated
+     */
+    public String hash(String password, String salt) {
+        return run(() -> PasswordUtil.hashPassword(password, salt));
+    }
+
+    /**
+     * Checks a password, see {@link PasswordUtil#verifyPassword}
+     *
+     * @throws RejectedExecutionException if the hasher is saturated
+     */
+    public boolean verify(String password, String storedHash, String storedSalt) {
+        return run(() -> PasswordUtil.verifyPassword(password, storedHash, storedSalt));
+    }
+
+    /**
+     * Runs hashing work on the pool and waits for it
+     *
+     * @throws RejectedExecutionException if the queue is full or the work
+     *                                    didn't finish in time
+     */
+    public <T> T run(Supplier<T> work) {
+        submittedCount.incrementAndGet();
+        // The caller would only time out behind this backlog, so refuse it now
+        long expectedWaitMs = expectedQueueWaitMs();
+        if (expectedWaitMs > timeoutMs) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Password hashing is saturated (" + executor.getQueue().size()
+                    + " waiting, about " + expectedWaitMs + "ms)");
+        }
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                recordQueueWait(startedAt - submittedAt);
+                try {
+                    return work.get();
+                } finally {
+                    totalHashNanos.addAndGet(System.nanoTime() - startedAt);
+                    completedCount.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Password hashing is saturated (" + queueCapacity + " waiting)");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Keeps it from starting if it is still queued; a running hash finishes anyway
+            future.cancel(true);
+            timedOutCount.incrementAndGet();
+            throw new RejectedExecutionException("Password hashing took longer than " + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for password hashing", e);
+        } catch (CancellationException e) {
+            throw new RejectedExecutionException("Password hashing was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+
+    /**
+     * Stops the threads; hashes still queued are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * How long a hash submitted now would wait for a thread, from the queue
+     * depth and the average hash time so far
+     */
+    private long expectedQueueWaitMs() {
+        long completed = completedCount.get();
+        int queued = executor.getQueue().size();
+        if (completed == 0 || queued == 0) {
+            return 0;
+        }
+        double avgHashMs = totalHashNanos.get() / 1_000_000.0 / completed;
+        return (long) (Math.ceil((queued + 1) / (double) executor.getMaximumPoolSize()) * avgHashMs);
+    }
+
+    private void recordQueueWait(long nanos) {
+        totalQueueWaitNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = maxQueueWaitNanos.get();
+        } while (nanos > max && !maxQueueWaitNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Get hasher counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        long completed = completedCount.get();
+        return "{" +
+                "\"algorithm\":\"" + PasswordUtil.getAlgorithm() + "\"," +
+                "\"iterations\":" + PasswordUtil.getIterations() + "," +
+                "\"threads\":" + executor.getMaximumPoolSize() + "," +
+                "\"active\":" + executor.getActiveCount() + "," +
+                "\"queueDepth\":" + executor.getQueue().size() + "," +
+                "\"queueCapacity\":" + queueCapacity + "," +
+                "\"submitted\":" + submittedCount.get() + "," +
+                "\"completed\":" + completed + "," +
+                "\"rejected\":" + rejectedCount.get() + "," +
+                "\"timedOut\":" + timedOutCount.get() + "," +
+                "\"avgQueueWaitMs\":" + String.format("%.3f",
+                        completed == 0 ? 0.0 : totalQueueWaitNanos.get() / 1_000_000.0 / completed) + "," +
+                "\"maxQueueWaitMs\":" + String.format("%.3f", maxQueueWaitNanos.get() / 1_000_000.0) + "," +
+                "\"avgHashMs\":" + String.format("%.3f",
+                        completed == 0 ? 0.0 : totalHashNanos.get() / 1_000_000.0 / completed) +
+                "}";
+    }
+}
@@ -1,15 +1,38 @@
 package com.banking.util;
 
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.spec.KeySpec;
 import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
+/**
+ * Password hashing. Hashes are stored self-describing as
+ * {@code $<algorithm>$<iterations>$<salt>$<hash>}, so the algorithm and cost
+ * can be changed without breaking existing logins. Rows written before this
+ * format hold a bare hash with the salt in its own column; those are read as
+ * the legacy scheme at {@value #LEGACY_ITERATIONS} iterations.
+ */
 public class PasswordUtil {
 
+    /** PBKDF2 with HMAC-SHA256, the default */
+    public static final String PBKDF2_SHA256 = "pbkdf2-sha256";
+    /** The original scheme: SHA-256 over salt and password, then re-digested */
+    public static final String LEGACY_SHA256 = "sha256";
+
     private static final int SALT_LENGTH = 32;
-    private static final int ITERATIONS = 10000;
-    
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final int LEGACY_ITERATIONS = 10000;
+    private static final int MIN_PBKDF2_ITERATIONS = 100_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+
+    // Scheme new hashes are written with, see configure()
+    private static volatile String algorithm = PBKDF2_SHA256;
+    private static volatile int iterations = 310_000;
+
     // Generate a random salt
     public static String generateSalt() {
         SecureRandom random = new SecureRandom();
@@ -17,31 +40,167 @@ public class PasswordUtil {
         random.nextBytes(salt);
         return Base64.getEncoder().encodeToString(salt);
     }
-    
-    // Hash password with salt using PBKDF2WithHmacSHA256 (simplified version using SHA-256)
+
+    /**
+     * Sets the scheme for new hashes from banking.password.algorithm and
+     * banking.password.iterations. Without a fixed iteration count the cost
+     * is calibrated so one hash takes about banking.password.targetHashMs on
+     * this machine.
+     */
+    public static void configure() {
+        String configured = ConfigUtil.getString("banking.password.algorithm", PBKDF2_SHA256);
+        if (!PBKDF2_SHA256.equals(configured) && !LEGACY_SHA256.equals(configured)) {
+            System.err.println("Unknown password algorithm '" + configured + "', using " + PBKDF2_SHA256);
+            configured = PBKDF2_SHA256;
+        }
+        int cost = ConfigUtil.getInt("banking.password.iterations", 0);
+        if (cost <= 0) {
+            cost = calibrate(configured, ConfigUtil.getLong("banking.password.targetHashMs", 100));
+        }
+        algorithm = configured;
+        iterations = Math.min(MAX_ITERATIONS, Math.max(minIterations(configured), cost));
+        System.out.println("Password hashing: " + algorithm + " at " + iterations + " iterations");
+    }
+
+    /**
+     * Measures how many iterations of an algorithm fit in the target time
+     *
+     * @return The iteration count, rounded down to a thousand and no lower
+     *         than the algorithm's minimum
+     */
+    public static int calibrate(String algorithm, long targetMs) {
+        int sampleIterations = 20_000;
+        byte[] salt = Base64.getDecoder().decode(generateSalt());
+        long best = Long.MAX_VALUE;
+        // The first rounds warm up the JIT, so sample for a while and keep the fastest
+        long began = System.nanoTime();
+        for (int i = 0; i < 10 || System.nanoTime() - began < 500_000_000L; i++) {
+            long start = System.nanoTime();
+            digest(algorithm, "calibration", salt, sampleIterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perIteration = (double) best / sampleIterations;
+        long fitted = (long) (targetMs * 1_000_000.0 / perIteration);
+        int rounded = (int) Math.min(MAX_ITERATIONS, fitted / 1000 * 1000);
+        return Math.max(minIterations(algorithm), rounded);
+    }
+
+    public static String getAlgorithm() {
+        return algorithm;
+    }
+
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hashes a password with the current scheme
+     *
+     * @return The self-describing hash, which also carries the salt
+     */
     public static String hashPassword(String password, String salt) {
+        String scheme = algorithm;
+        int cost = iterations;
+        byte[] hash = digest(scheme, password, Base64.getDecoder().decode(salt), cost);
+        return "$" + scheme + "$" + cost + "$" + salt + "$" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * Verifies a password against a stored hash in either format
+     *
+     * @param storedSalt The salt column, only used by bare legacy hashes
+     */
+    public static boolean verifyPassword(String password, String storedHash, String storedSalt) {
+        if (storedHash == null) {
+            return false;
+        }
+        String scheme = LEGACY_SHA256;
+        int cost = LEGACY_ITERATIONS;
+        String salt = storedSalt;
+        String expected = storedHash;
+        if (storedHash.startsWith("$")) {
+            String[] parts = storedHash.split("\\$");
+            if (parts.length != 5) {
+                return false;
+            }
+            scheme = parts[1];
+            try {
+                cost = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            salt = parts[3];
+            expected = parts[4];
+        }
+        if (salt == null || !isKnown(scheme)) {
+            return false;
+        }
+        try {
+            byte[] actual = digest(scheme, password, Base64.getDecoder().decode(salt), cost);
+            return MessageDigest.isEqual(actual, Base64.getDecoder().decode(expected));
+        } catch (IllegalArgumentException e) {
+            return false; // corrupt salt or hash
+        }
+    }
+
+    /**
+     * Whether a stored hash is weaker than the current scheme and should be
+     * replaced the next time its password is known. A hash is never rehashed
+     * to a lower cost.
+     */
+    public static boolean needsRehash(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith("$")) {
+            return true;
+        }
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 5 || !parts[1].equals(algorithm)) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(parts[2]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static boolean isKnown(String scheme) {
+        return PBKDF2_SHA256.equals(scheme) || LEGACY_SHA256.equals(scheme);
+    }
+
+    private static int minIterations(String scheme) {
+        return PBKDF2_SHA256.equals(scheme) ? MIN_PBKDF2_ITERATIONS : LEGACY_ITERATIONS;
+    }
+
+    private static byte[] digest(String scheme, String password, byte[] salt, int cost) {
+        if (PBKDF2_SHA256.equals(scheme)) {
+            return pbkdf2(password, salt, cost);
+        }
+        return legacyDigest(password, salt, cost);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int cost) {
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, cost, KEY_LENGTH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error hashing password", e);
+        }
+    }
+
+    // SHA-256 over salt and password, then re-digested for each iteration
+    private static byte[] legacyDigest(String password, byte[] salt, int cost) {
         try {
-            byte[] saltBytes = Base64.getDecoder().decode(salt);
-            
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(saltBytes);
-            
-            // Apply multiple iterations for stronger security
+            md.update(salt);
+
             byte[] hashedPassword = md.digest(password.getBytes());
-            for (int i = 0; i < ITERATIONS; i++) {
+            for (int i = 0; i < cost; i++) {
                 md.reset();
                 hashedPassword = md.digest(hashedPassword);
             }
-            
-            return Base64.getEncoder().encodeToString(hashedPassword);
+            return hashedPassword;
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Error hashing password", e);
         }
     }
-    
-    // Verify password against stored hash
-    public static boolean verifyPassword(String password, String storedHash, String storedSalt) {
-        String generatedHash = hashPassword(password, storedSalt);
-        return generatedHash.equals(storedHash);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,504 @@
+package com.banking.util;
+
+import com.banking.dao.TransactionDAO;
+import com.banking.model.Transaction;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The newest unflagged transactions of recently active users, so the first
+ * page of a transaction list can be served without a query.
+ *
+ * Each user's rows are kept newest first, exactly as
+ * {@link TransactionDAO#forEachUserPage} returns them, in a ring buffer of
+ * parallel arrays holding banking.transactions.recent.rowsPerUser rows,
+ * together with the user's unflagged transaction count. Users are kept in LRU
+ * order and the least recently used are evicted once the estimated size of
+ * all buffers passes banking.transactions.recent.maxBytes.
+ *
+ * A buffer is filled on a miss from a single read transaction. After a commit
+ * that inserted transactions, {@link #refresh} reads the rows added since the
+ * last refresh and pushes each one into the buffers of the users on both
+ * sides, so buffers are updated in place instead of being dropped. This works
+ * by id because the single writer hands out ids in commit order. Flagging a
+ * transaction drops the buffers of the users on both sides, since its row and
+ * their counts change, and renaming a user clears the cache. Either one also
+ * discards the fills that were being read at the time.
+ */
+public class RecentTransactionCache {
+
+    // Rough sizes for the memory budget: the buffer object, its arrays and the
+    // map entry, then the primitives and references of one slot
+    private static final long ENTRY_OVERHEAD_BYTES = 320;
+    private static final long SLOT_BYTES = 4 + 8 + 4 + 4 + 7 * 4;
+
+    /**
+     * First page of a user's transactions
+     */
+    public static class Page {
+        private final List<Transaction> transactions;
+        private final int totalItems;
+        private final String nextCursor;
+
+        Page(List<Transaction> transactions, int totalItems, String nextCursor) {
+            this.transactions = transactions;
+            this.totalItems = totalItems;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * The user's unflagged transaction count
+         */
+        public int getTotalItems() {
+            return totalItems;
+        }
+
+        /**
+         * Token for the second page, or null if there is none
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Ring buffer of one user's newest rows. The row of rank r (0 being the
+     * newest) is in slot (head - r) mod capacity. It holds min(capacity,
+     * totalCount) rows, which is what lets it answer whether a page has a
+     * next one.
+     */
+    private static class UserRows {
+        final int userId;
+        final int[] ids;
+        final String[] timestamps;
+        final String[] dates;
+        final String[] descriptions;
+        final String[] types;
+        final long[] amountsCents;
+        final String[] fromAccounts;
+        final String[] toAccounts;
+        final int[] fromUserIds;
+        final int[] toUserIds;
+        final String[] userNames;
+        long coveredId; // every transaction up to this id is reflected here
+        int totalCount;
+        int head;
+        int count;
+        long bytes;
+
+        UserRows(int userId, int capacity) {
+            this.userId = userId;
+            this.ids = new int[capacity];
+            this.timestamps = new String[capacity];
+            this.dates = new String[capacity];
+            this.descriptions = new String[capacity];
+            this.types = new String[capacity];
+            this.amountsCents = new long[capacity];
+            this.fromAccounts = new String[capacity];
+            this.toAccounts = new String[capacity];
+            this.fromUserIds = new int[capacity];
+            this.toUserIds = new int[capacity];
+            this.userNames = new String[capacity];
+            this.bytes = ENTRY_OVERHEAD_BYTES + capacity * SLOT_BYTES;
+        }
+
+        int capacity() {
+            return ids.length;
+        }
+
+        /**
+         * Appends a row older than all others, while filling
+         */
+        void appendOldest(Transaction transaction) {
+            if (count < capacity()) {
+                set(slot(count), transaction);
+                count++;
+            }
+        }
+
+        /**
+         * Inserts a new row at its place in the order, dropping the oldest
+         * row if the buffer is full
+         *
+         * @return false if the row is older than every row of a full buffer
+         */
+        boolean add(Transaction transaction) {
+            int rank = 0;
+            while (rank < count && isNewer(rank, transaction)) {
+                rank++;
+            }
+            if (rank == capacity()) {
+                return false;
+            }
+            head = (head + 1) % capacity();
+            if (count == capacity()) {
+                // Slot 0 now holds the oldest row, which is overwritten
+                bytes -= rowBytes(slot(0));
+            } else {
+                count++;
+            }
+            for (int r = 1; r <= rank; r++) {
+                move(slot(r), slot(r - 1));
+            }
+            set(slot(rank), transaction);
+            return true;
+        }
+
+        Page page(int size) {
+            int rows = Math.min(size, count);
+            List<Transaction> transactions = new ArrayList<>(rows);
+            for (int r = 0; r < rows; r++) {
+                transactions.add(get(slot(r)));
+            }
+            String nextCursor = null;
+            if (count > size) {
+                Transaction last = transactions.get(rows - 1);
+                nextCursor = PageCursor.next(last.getTimestamp(), last.getId()).encode();
+            }
+            return new Page(transactions, totalCount, nextCursor);
+        }
+
+        private int slot(int rank) {
+            return Math.floorMod(head - rank, capacity());
+        }
+
+        /**
+         * Whether the row of a rank sorts before the given one, by
+         * (timestamp, id) descending
+         */
+        private boolean isNewer(int rank, Transaction transaction) {
+            int slot = slot(rank);
+            int byTimestamp = compareTimestamps(timestamps[slot], transaction.getTimestamp());
+            return byTimestamp != 0 ? byTimestamp > 0 : ids[slot] > transaction.getId();
+        }
+
+        private void set(int slot, Transaction transaction) {
+            ids[slot] = transaction.getId();
+            timestamps[slot] = transaction.getTimestamp();
+            dates[slot] = transaction.getDate();
+            descriptions[slot] = transaction.getDescription();
+            types[slot] = transaction.getType();
+            amountsCents[slot] = transaction.getAmountCents();
+            fromAccounts[slot] = transaction.getFromAccount();
+            toAccounts[slot] = transaction.getToAccount();
+            fromUserIds[slot] = transaction.getFromUserId();
+            toUserIds[slot] = transaction.getToUserId();
+            userNames[slot] = transaction.getUserName();
+            bytes += rowBytes(slot);
+        }
+
+        private void move(int from, int to) {
+            ids[to] = ids[from];
+            timestamps[to] = timestamps[from];
+            dates[to] = dates[from];
+            descriptions[to] = descriptions[from];
+            types[to] = types[from];
+            amountsCents[to] = amountsCents[from];
+            fromAccounts[to] = fromAccounts[from];
+            toAccounts[to] = toAccounts[from];
+            fromUserIds[to] = fromUserIds[from];
+            toUserIds[to] = toUserIds[from];
+            userNames[to] = userNames[from];
+        }
+
+        private Transaction get(int slot) {
+            Transaction transaction = new Transaction();
+            transaction.setId(ids[slot]);
+            transaction.setTimestamp(timestamps[slot]);
+            transaction.setDate(dates[slot]);
+            transaction.setDescription(descriptions[slot]);
+            transaction.setType(types[slot]);
+            transaction.setAmountCents(amountsCents[slot]);
+            transaction.setIsDebit(fromUserIds[slot] == userId);
+            transaction.setFromAccount(fromAccounts[slot]);
+            transaction.setToAccount(toAccounts[slot]);
+            transaction.setFromUserId(fromUserIds[slot]);
+            transaction.setToUserId(toUserIds[slot]);
+            transaction.setUserName(userNames[slot]);
+            return transaction;
+        }
+
+        private long rowBytes(int slot) {
+            return stringBytes(timestamps[slot]) + stringBytes(dates[slot]) + stringBytes(descriptions[slot])
+                    + stringBytes(types[slot]) + stringBytes(fromAccounts[slot]) + stringBytes(toAccounts[slot])
+                    + stringBytes(userNames[slot]);
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final int rowsPerUser;
+    private final long maxBytes;
+    private final Object refreshLock = new Object(); // one refresh at a time
+    private final ExecutorService refresher;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // Guarded by this
+    private final LinkedHashMap<Integer, UserRows> users = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long lastSeenId; // highest id pushed by a refresh
+    private long generation; // bumped when buffers are dropped, so fills read before are discarded
+
+    // Counters
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * @param rowsPerUser Rows kept per user; pages must be smaller than this
+     * @param maxBytes    Estimated size of all buffers above which users are
+     *                    evicted
+     * @throws SQLException if the current highest transaction id can't be read
+     */
+    public RecentTransactionCache(ConnectionPool pool, int rowsPerUser, long maxBytes) throws SQLException {
+        this.pool = pool;
+        this.rowsPerUser = Math.max(2, rowsPerUser);
+        this.maxBytes = Math.max(0, maxBytes);
+        try (Connection conn = pool.borrow()) {
+            this.lastSeenId = TransactionDAO.findMaxId(conn);
+        }
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "recent-transactions-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Creates a cache using the banking.transactions.recent.* settings
+     */
+    public static RecentTransactionCache fromConfig(ConnectionPool pool) throws SQLException {
+        return new RecentTransactionCache(pool,
+                ConfigUtil.getInt("banking.transactions.recent.rowsPerUser", 50),
+                ConfigUtil.getLong("banking.transactions.recent.maxBytes", 16L * 1024 * 1024));
+    }
+
+    /**
+     * Whether a page request can be answered by {@link #firstPage}: the first
+     * page by number, smaller than the buffers
+     */
+    public boolean canServe(int page, int size, PageCursor cursor) {
+        return cursor == null && page == 1 && size > 0 && size < rowsPerUser;
+    }
+
+    /**
+     * Gets the first page of a user's unflagged transactions, reading the
+     * user's buffer from the database on a miss
+     *
+     * @param size Page size, see {@link #canServe}
+     */
+    public Page firstPage(int userId, int size) throws SQLException {
+        long loadGeneration;
+        synchronized (this) {
+            UserRows rows = users.get(userId);
+            if (rows != null) {
+                hitCount.incrementAndGet();
+                return rows.page(size);
+            }
+            loadGeneration = generation;
+        }
+        missCount.incrementAndGet();
+        UserRows loaded = load(userId);
+        synchronized (this) {
+            UserRows rows = users.get(userId);
+            if (rows != null) {
+                // Filled by another request in the meantime
+                return rows.page(size);
+            }
+            if (loaded.coveredId < lastSeenId || loadGeneration != generation) {
+                // A refresh pushed rows committed after the read, or a
+                // transaction was flagged since; keeping this buffer would
+                // lose the change
+                discardedCount.incrementAndGet();
+            } else {
+                users.put(userId, loaded);
+                totalBytes += loaded.bytes;
+                evict();
+            }
+            return loaded.page(size);
+        }
+    }
+
+    /**
+     * Pushes the transactions committed since the last refresh into the
+     * buffers of their users. Called after every commit that inserts
+     * transactions; one missed call only delays rows to the next one. If the
+     * new rows can't be read the cache is cleared.
+     */
+    public void refresh() {
+        synchronized (refreshLock) {
+            refreshCount.incrementAndGet();
+            long after;
+            synchronized (this) {
+                after = lastSeenId;
+            }
+            List<Transaction> added = new ArrayList<>();
+            try (Connection conn = pool.borrow()) {
+                TransactionDAO.forEachUserRowAfter(conn, after, added::add);
+            } catch (SQLException | IOException e) {
+                System.err.println("Recent transactions cache: failed to read new transactions, clearing it: "
+                        + e.getMessage());
+                clear();
+                return;
+            }
+            synchronized (this) {
+                for (Transaction transaction : added) {
+                    // Rows come once per side, seen from that side's user
+                    int userId = transaction.getIsDebit() ? transaction.getFromUserId() : transaction.getToUserId();
+                    UserRows rows = users.get(userId);
+                    if (rows != null && transaction.getId() > rows.coveredId) {
+                        long before = rows.bytes;
+                        rows.add(transaction);
+                        rows.totalCount++;
+                        totalBytes += rows.bytes - before;
+                        appliedCount.incrementAndGet();
+                    }
+                    lastSeenId = Math.max(lastSeenId, transaction.getId());
+                }
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #refresh} on the cache's own thread. Calls made while one is
+     * still queued are folded into it, since it reads every row committed
+     * before it starts.
+     */
+    public void refreshLater() {
+        if (!refreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                refreshQueued.set(false);
+                refresh();
+            });
+        } catch (RejectedExecutionException e) {
+            refreshQueued.set(false); // shut down
+        }
+    }
+
+    /**
+     * Stops the refresh thread
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Drops the buffers of the users on both sides of a transaction that has
+     * just been flagged: its row and their counts are out of date
+     *
+     * @param userIds Owners of the transaction's accounts, 0 for none
+     */
+    public synchronized void transactionFlagged(int... userIds) {
+        generation++;
+        for (int userId : userIds) {
+            UserRows rows = users.remove(userId);
+            if (rows != null) {
+                totalBytes -= rows.bytes;
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops every buffer, e.g. after a user was renamed
+     */
+    public synchronized void clear() {
+        generation++;
+        invalidationCount.addAndGet(users.size());
+        users.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Reads a user's newest rows, count and the highest transaction id in one
+     * read transaction, so the three agree
+     */
+    private UserRows load(int userId) throws SQLException {
+        UserRows rows = new UserRows(userId, rowsPerUser);
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try {
+                rows.coveredId = TransactionDAO.findMaxId(conn);
+                rows.totalCount = DatabaseUtil.getTransactionCount(conn, "user", userId, true);
+                TransactionDAO.forEachUserPage(conn, userId, 1, rowsPerUser, null, rows::appendOldest);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read recent transactions", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Evicts least recently used buffers until the budget is met
+     */
+    private void evict() {
+        Iterator<Map.Entry<Integer, UserRows>> it = users.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private static int compareTimestamps(String a, String b) {
+        // SQLite sorts NULL below any text
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    /**
+     * Get cache counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        int cachedUsers;
+        long bytes;
+        synchronized (this) {
+            cachedUsers = users.size();
+            bytes = totalBytes;
+        }
+        return "{" +
+                "\"users\":" + cachedUsers + "," +
+                "\"rowsPerUser\":" + rowsPerUser + "," +
+                "\"bytes\":" + bytes + "," +
+                "\"maxBytes\":" + maxBytes + "," +
+                "\"hits\":" + hitCount.get() + "," +
+                "\"misses\":" + missCount.get() + "," +
+                "\"discardedFills\":" + discardedCount.get() + "," +
+                "\"refreshes\":" + refreshCount.get() + "," +
+                "\"rowsApplied\":" + appliedCount.get() + "," +
+                "\"evictions\":" + evictionCount.get() + "," +
+                "\"invalidations\":" + invalidationCount.get() +
+                "}";
+    }
+}
@@ -0,0 +1,551 @@
+package com.banking.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Versioned schema migrations for the banking database.
+ *
+ * Applied versions are recorded in the schema_version table. On startup every
+ * migration with a higher version than the recorded maximum is applied in
+ * order, each in its own transaction. Steps are written to be idempotent (IF
+ * NOT EXISTS etc.) so a database created before versioning existed can be
+ * brought up to date safely.
+ *
+ * To change the schema, append a new migration to {@link #MIGRATIONS} with the
+ * next version number. Never edit a migration that has already shipped.
+ */
+public class SchemaMigrator {
+
+    /**
+     * A single schema change
+     */
+    public interface MigrationStep {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS;
+
+    static {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(1, "Base tables", SchemaMigrator::createBaseTables));
+        migrations.add(new Migration(2, "Indexes for transaction, account, loan and user lookups",
+                SchemaMigrator::createLookupIndexes));
+        migrations.add(new Migration(3, "Maintained transaction counters",
+                SchemaMigrator::createTransactionCounters));
+        migrations.add(new Migration(4, "Money in integer cents",
+                SchemaMigrator::addCentsColumns));
+        migrations.add(new Migration(5, "Idempotency keys for transfer submissions",
+                SchemaMigrator::createIdempotencyKeys));
+        migrations.add(new Migration(6, "Double-entry ledger postings and balance snapshots",
+                SchemaMigrator::createLedger));
+        migrations.add(new Migration(7, "Transfer journal checkpoint",
+                SchemaMigrator::createJournalCheckpoint));
+        migrations.add(new Migration(8, "Scheduled and standing-order transfers",
+                SchemaMigrator::createScheduledTransfers));
+        MIGRATIONS = Collections.unmodifiableList(migrations);
+    }
+
+    /**
+     * Applies all pending migrations
+     *
+     * @param conn Connection with write access (not from the read-only pool)
+     * @return Number of migrations applied
+     * @throws SQLException if a migration fails; that migration is rolled back
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "CREATE TABLE IF NOT EXISTS schema_version (" +
+                            "version INTEGER PRIMARY KEY, " +
+                            "description TEXT NOT NULL, " +
+                            "applied_at DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                            ")");
+        }
+
+        int currentVersion = getCurrentVersion(conn);
+        int applied = 0;
+        boolean autoCommit = conn.getAutoCommit();
+
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= currentVersion) {
+                    continue;
+                }
+                System.out.println("Applying schema migration " + migration.version + ": " + migration.description);
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    migration.step.apply(stmt);
+                    try (PreparedStatement record = conn.prepareStatement(
+                            "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                        record.setInt(1, migration.version);
+                        record.setString(2, migration.description);
+                        record.executeUpdate();
+                    }
+                    conn.commit();
+                    applied++;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    System.err.println("Schema migration " + migration.version + " failed: " + e.getMessage());
+                    throw e;
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        if (applied > 0) {
+            // Refresh query planner statistics for the new indexes
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA optimize");
+            }
+        }
+        System.out.println("Schema is at version " + getCurrentVersion(conn) + " (" + applied
+                + " migration(s) applied)");
+        return applied;
+    }
+
+    /**
+     * Gets the highest applied schema version
+     *
+     * @return Version number, or 0 for a database without migrations
+     */
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Gets the version the code expects the database to be at
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    // === Migrations ===
+
+    private static void createBaseTables(Statement stmt) throws SQLException {
+        // Create Users table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS users (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "name TEXT NOT NULL, " +
+                        "email TEXT UNIQUE NOT NULL, " +
+                        "password_hash TEXT NOT NULL, " +
+                        "salt TEXT NOT NULL, " +
+                        "role TEXT NOT NULL CHECK(role IN ('admin', 'employee', 'customer')), " +
+                        "status TEXT DEFAULT 'active' CHECK(status IN ('active', 'inactive', 'locked')), " +
+                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                        ")");
+
+        // Create Accounts table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS accounts (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "user_id INTEGER NOT NULL, " +
+                        "account_number TEXT UNIQUE NOT NULL, " +
+                        "type TEXT NOT NULL CHECK(type IN ('checking', 'savings')), " +
+                        "balance DECIMAL(15,2) DEFAULT 0.00, " +
+                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE" +
+                        ")");
+
+        // Create Transactions table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS transactions (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "from_account_id INTEGER, " +
+                        "to_account_id INTEGER, " +
+                        "type TEXT NOT NULL CHECK(type IN ('deposit', 'withdrawal', 'transfer')), " +
+                        "amount DECIMAL(15,2) NOT NULL, " +
+                        "description TEXT, " +
+                        "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "FOREIGN KEY (from_account_id) REFERENCES accounts(id) ON DELETE SET NULL, " +
+                        "FOREIGN KEY (to_account_id) REFERENCES accounts(id) ON DELETE SET NULL" +
+                        ")");
+
+        // Create Loans table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS loans (" +
+                        "loanid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "userid INTEGER NOT NULL, " +
+                        "amount DECIMAL(15,2) NOT NULL, " +
+                        "type TEXT NOT NULL, " +
+                        "date DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "status TEXT DEFAULT 'pending' CHECK(status IN ('pending', 'approved', 'rejected')), " +
+                        "adminComment TEXT, " +
+                        "FOREIGN KEY (userid) REFERENCES users(id) ON DELETE CASCADE" +
+                        ")");
+
+        // Create Flagged Transactions table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS flagged_transactions (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "transaction_id INTEGER NOT NULL, " +
+                        "employee_id INTEGER NOT NULL, " +
+                        "flag_reason TEXT, " +
+                        "flag_date DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "status TEXT DEFAULT 'pending' CHECK(status IN ('pending', 'reviewing', 'resolved')), " +
+                        "FOREIGN KEY (transaction_id) REFERENCES transactions(id), " +
+                        "FOREIGN KEY (employee_id) REFERENCES users(id)" +
+                        ")");
+    }
+
+    private static void createLookupIndexes(Statement stmt) throws SQLException {
+        // Transaction history per account, newest first. SQLite appends the rowid (id)
+        // to every index, so these also serve ORDER BY timestamp, id.
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_from_account_ts " +
+                "ON transactions (from_account_id, timestamp)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_to_account_ts " +
+                "ON transactions (to_account_id, timestamp)");
+        // Admin/employee ledger views ordered by time
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_ts ON transactions (timestamp)");
+
+        // Anti-join against flagged transactions
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_flagged_transactions_transaction " +
+                "ON flagged_transactions (transaction_id)");
+
+        // Accounts of a user, optionally by type (loan disbursement looks up 'checking')
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_accounts_user_type ON accounts (user_id, type)");
+
+        // Loan queues by status and per-user loan history, both ordered by date
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_loans_status_date ON loans (status, date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_loans_user_date ON loans (userid, date)");
+
+        // User counts by role and the pending-approval list
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_users_role ON users (role)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_users_status_created ON users (status, created_at)");
+    }
+
+    private static void createTransactionCounters(Statement stmt) throws SQLException {
+        // One row per scope: ('global', 0), ('account', account id), ('user', user id).
+        // A transfer between two accounts of the same user counts once for that user.
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS transaction_counters (" +
+                        "scope TEXT NOT NULL CHECK(scope IN ('global', 'account', 'user')), " +
+                        "scope_id INTEGER NOT NULL, " +
+                        "total_count INTEGER NOT NULL DEFAULT 0, " +
+                        "unflagged_count INTEGER NOT NULL DEFAULT 0, " +
+                        "PRIMARY KEY (scope, scope_id)" +
+                        ") WITHOUT ROWID");
+
+        // Backfill from existing data
+        stmt.execute("DELETE FROM transaction_counters");
+        String unflagged = "NOT EXISTS (SELECT 1 FROM flagged_transactions ft WHERE ft.transaction_id = t.id)";
+        stmt.execute(
+                "INSERT INTO transaction_counters (scope, scope_id, total_count, unflagged_count) " +
+                        "SELECT 'global', 0, COUNT(*), COALESCE(SUM(" + unflagged + "), 0) FROM transactions t");
+        stmt.execute(
+                "INSERT INTO transaction_counters (scope, scope_id, total_count, unflagged_count) " +
+                        "SELECT 'account', account_id, COUNT(*), SUM(unflagged) FROM (" +
+                        "SELECT t.id, t.from_account_id AS account_id, " + unflagged + " AS unflagged " +
+                        "FROM transactions t WHERE t.from_account_id IS NOT NULL " +
+                        "UNION " +
+                        "SELECT t.id, t.to_account_id, " + unflagged + " " +
+                        "FROM transactions t WHERE t.to_account_id IS NOT NULL" +
+                        ") GROUP BY account_id");
+        stmt.execute(
+                "INSERT INTO transaction_counters (scope, scope_id, total_count, unflagged_count) " +
+                        "SELECT 'user', a.user_id, COUNT(DISTINCT t.id), " +
+                        "COUNT(DISTINCT CASE WHEN " + unflagged + " THEN t.id END) " +
+                        "FROM transactions t JOIN accounts a ON a.id IN (t.from_account_id, t.to_account_id) " +
+                        "GROUP BY a.user_id");
+
+        // New transaction: +1 total and unflagged for each scope it touches
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_transactions_count_insert AFTER INSERT ON transactions " +
+                        "BEGIN " +
+                        counterIncrement("SELECT 'global', 0, 1, 1 WHERE 1") +
+                        counterIncrement("SELECT 'account', NEW.from_account_id, 1, 1 " +
+                                "WHERE NEW.from_account_id IS NOT NULL") +
+                        counterIncrement("SELECT 'account', NEW.to_account_id, 1, 1 " +
+                                "WHERE NEW.to_account_id IS NOT NULL AND NEW.to_account_id IS NOT NEW.from_account_id") +
+                        counterIncrement("SELECT DISTINCT 'user', user_id, 1, 1 FROM accounts " +
+                                "WHERE id IN (NEW.from_account_id, NEW.to_account_id)") +
+                        "END");
+
+        // First flag on a transaction: -1 unflagged
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_flagged_transactions_count_insert " +
+                        "AFTER INSERT ON flagged_transactions " +
+                        "WHEN NOT EXISTS (SELECT 1 FROM flagged_transactions " +
+                        "WHERE transaction_id = NEW.transaction_id AND id <> NEW.id) " +
+                        "BEGIN " +
+                        counterAdjust("NEW.transaction_id", -1) +
+                        "END");
+
+        // Last flag removed: +1 unflagged
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_flagged_transactions_count_delete " +
+                        "AFTER DELETE ON flagged_transactions " +
+                        "WHEN NOT EXISTS (SELECT 1 FROM flagged_transactions WHERE transaction_id = OLD.transaction_id) " +
+                        "BEGIN " +
+                        counterAdjust("OLD.transaction_id", 1) +
+                        "END");
+    }
+
+    private static void addCentsColumns(Statement stmt) throws SQLException {
+        // The cents columns are authoritative. The DECIMAL columns are still
+        // written alongside them (derived from the cents) for pages that read
+        // them directly.
+        addColumnIfMissing(stmt, "accounts", "balance_cents", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(stmt, "transactions", "amount_cents", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(stmt, "loans", "amount_cents", "INTEGER NOT NULL DEFAULT 0");
+
+        stmt.execute("UPDATE accounts SET balance_cents = CAST(ROUND(balance * 100) AS INTEGER)");
+        stmt.execute("UPDATE transactions SET amount_cents = CAST(ROUND(amount * 100) AS INTEGER)");
+        stmt.execute("UPDATE loans SET amount_cents = CAST(ROUND(amount * 100) AS INTEGER)");
+
+        // Writers that only set the DECIMAL column (e.g. hand-run SQL) get the
+        // cents filled in. Writes through the DAOs set both, so the WHEN
+        // clauses keep these from doing anything on the normal path.
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_accounts_balance_cents_insert AFTER INSERT ON accounts " +
+                        "WHEN NEW.balance_cents = 0 AND NEW.balance <> 0 " +
+                        "BEGIN UPDATE accounts SET balance_cents = CAST(ROUND(NEW.balance * 100) AS INTEGER) " +
+                        "WHERE id = NEW.id; END");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_accounts_balance_cents_update AFTER UPDATE OF balance ON accounts " +
+                        "WHEN NEW.balance_cents = OLD.balance_cents " +
+                        "AND CAST(ROUND(NEW.balance * 100) AS INTEGER) <> NEW.balance_cents " +
+                        "BEGIN UPDATE accounts SET balance_cents = CAST(ROUND(NEW.balance * 100) AS INTEGER) " +
+                        "WHERE id = NEW.id; END");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_transactions_amount_cents_insert AFTER INSERT ON transactions " +
+                        "WHEN NEW.amount_cents = 0 AND NEW.amount <> 0 " +
+                        "BEGIN UPDATE transactions SET amount_cents = CAST(ROUND(NEW.amount * 100) AS INTEGER) " +
+                        "WHERE id = NEW.id; END");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_loans_amount_cents_insert AFTER INSERT ON loans " +
+                        "WHEN NEW.amount_cents = 0 AND NEW.amount <> 0 " +
+                        "BEGIN UPDATE loans SET amount_cents = CAST(ROUND(NEW.amount * 100) AS INTEGER) " +
+                        "WHERE loanid = NEW.loanid; END");
+    }
+
+    private static void createIdempotencyKeys(Statement stmt) throws SQLException {
+        // Keys are chosen by clients, so they are only unique per user.
+        // fingerprint identifies the request the key was first used with.
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS idempotency_keys (" +
+                        "user_id INTEGER NOT NULL, " +
+                        "idempotency_key TEXT NOT NULL, " +
+                        "fingerprint TEXT NOT NULL, " +
+                        "success INTEGER NOT NULL, " +
+                        "message TEXT, " +
+                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "PRIMARY KEY (user_id, idempotency_key), " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                        ") WITHOUT ROWID");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created ON idempotency_keys (created_at)");
+    }
+
+    private static void createLedger(Statement stmt) throws SQLException {
+        // Every money movement as two legs that sum to zero: positive amounts
+        // credit an account, negative ones debit it. account_id is NULL for the
+        // outside world (loan funding, cash), transaction_id is NULL for the
+        // opening balance of an account. There are no foreign keys so deleting
+        // users can't touch the ledger.
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS ledger_postings (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "transaction_id INTEGER, " +
+                        "account_id INTEGER, " +
+                        "kind TEXT NOT NULL CHECK(kind IN ('opening', 'deposit', 'withdrawal', 'transfer')), " +
+                        "amount_cents INTEGER NOT NULL, " +
+                        "posted_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                        ")");
+        // SQLite appends the rowid, so this also orders an account's postings by id
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_ledger_postings_account ON ledger_postings (account_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_ledger_postings_transaction ON ledger_postings (transaction_id)");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_ledger_postings_no_update BEFORE UPDATE ON ledger_postings " +
+                        "BEGIN SELECT RAISE(ABORT, 'ledger_postings is append-only'); END");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_ledger_postings_no_delete BEFORE DELETE ON ledger_postings " +
+                        "BEGIN SELECT RAISE(ABORT, 'ledger_postings is append-only'); END");
+
+        // An account's balance as of its posting_id; as_of is that posting's time
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS balance_snapshots (" +
+                        "account_id INTEGER NOT NULL, " +
+                        "posting_id INTEGER NOT NULL, " +
+                        "balance_cents INTEGER NOT NULL, " +
+                        "as_of DATETIME NOT NULL, " +
+                        "taken_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "PRIMARY KEY (account_id, posting_id)" +
+                        ") WITHOUT ROWID");
+
+        // Backfill: an opening entry per account for whatever its history
+        // doesn't explain, then both legs of every transaction
+        if (!hasRows(stmt, "ledger_postings")) {
+            // Per account: current balance minus the net of its transactions
+            String openingBalances = "SELECT a.id, a.balance_cents " +
+                    "- COALESCE((SELECT SUM(amount_cents) FROM transactions WHERE to_account_id = a.id), 0) " +
+                    "+ COALESCE((SELECT SUM(amount_cents) FROM transactions WHERE from_account_id = a.id), 0) " +
+                    "AS opening FROM accounts a";
+            stmt.execute(
+                    "INSERT INTO ledger_postings (transaction_id, account_id, kind, amount_cents, posted_at) " +
+                            "SELECT NULL, account_id, 'opening', amount_cents, posted_at FROM (" +
+                            "SELECT a.id AS sort_id, 0 AS leg, NULL AS account_id, -o.opening AS amount_cents, " +
+                            "COALESCE(a.created_at, CURRENT_TIMESTAMP) AS posted_at " +
+                            "FROM accounts a JOIN (" + openingBalances + ") o ON o.id = a.id " +
+                            "UNION ALL " +
+                            "SELECT a.id, 1, a.id, o.opening, COALESCE(a.created_at, CURRENT_TIMESTAMP) " +
+                            "FROM accounts a JOIN (" + openingBalances + ") o ON o.id = a.id" +
+                            ") ORDER BY sort_id, leg");
+            stmt.execute(
+                    "INSERT INTO ledger_postings (transaction_id, account_id, kind, amount_cents, posted_at) " +
+                            "SELECT transaction_id, account_id, type, amount_cents, posted_at FROM (" +
+                            "SELECT id AS transaction_id, 0 AS leg, from_account_id AS account_id, type, " +
+                            "-amount_cents AS amount_cents, COALESCE(timestamp, CURRENT_TIMESTAMP) AS posted_at " +
+                            "FROM transactions " +
+                            "UNION ALL " +
+                            "SELECT id, 1, to_account_id, type, amount_cents, COALESCE(timestamp, CURRENT_TIMESTAMP) " +
+                            "FROM transactions" +
+                            ") ORDER BY transaction_id, leg");
+        }
+
+        // New accounts and transactions post themselves in the same
+        // transaction. Amounts are taken from the DECIMAL column when only that
+        // was set, as the cents triggers may not have run yet.
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_accounts_ledger_insert AFTER INSERT ON accounts " +
+                        "BEGIN " +
+                        "INSERT INTO ledger_postings (transaction_id, account_id, kind, amount_cents, posted_at) " +
+                        "VALUES (NULL, NULL, 'opening', -" + centsOf("NEW.balance_cents", "NEW.balance") + ", " +
+                        "COALESCE(NEW.created_at, CURRENT_TIMESTAMP)), " +
+                        "(NULL, NEW.id, 'opening', " + centsOf("NEW.balance_cents", "NEW.balance") + ", " +
+                        "COALESCE(NEW.created_at, CURRENT_TIMESTAMP)); " +
+                        "END");
+        stmt.execute(
+                "CREATE TRIGGER IF NOT EXISTS trg_transactions_ledger_insert AFTER INSERT ON transactions " +
+                        "BEGIN " +
+                        "INSERT INTO ledger_postings (transaction_id, account_id, kind, amount_cents, posted_at) " +
+                        "VALUES (NEW.id, NEW.from_account_id, NEW.type, -" +
+                        centsOf("NEW.amount_cents", "NEW.amount") + ", " +
+                        "COALESCE(NEW.timestamp, CURRENT_TIMESTAMP)), " +
+                        "(NEW.id, NEW.to_account_id, NEW.type, " + centsOf("NEW.amount_cents", "NEW.amount") + ", " +
+                        "COALESCE(NEW.timestamp, CURRENT_TIMESTAMP)); " +
+                        "END");
+    }
+
+    private static void createJournalCheckpoint(Statement stmt) throws SQLException {
+        // Single row: the last transfer journal record whose postings are committed
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS journal_checkpoint (" +
+                        "id INTEGER PRIMARY KEY CHECK(id = 1), " +
+                        "sequence INTEGER NOT NULL" +
+                        ")");
+        stmt.execute("INSERT OR IGNORE INTO journal_checkpoint (id, sequence) VALUES (1, 0)");
+    }
+
+    private static void createScheduledTransfers(Statement stmt) throws SQLException {
+        // Times are UTC in SQLite's format. scheduled_for is the occurrence
+        // being paid and next_run_at the next attempt at it, which is later
+        // after a retry. anchor_day is the day of the month monthly orders
+        // return to after a shorter month.
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS scheduled_transfers (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "user_id INTEGER NOT NULL, " +
+                        "from_account_id INTEGER NOT NULL, " +
+                        "to_account_id INTEGER NOT NULL, " +
+                        "amount_cents INTEGER NOT NULL CHECK(amount_cents > 0), " +
+                        "description TEXT, " +
+                        "frequency TEXT NOT NULL CHECK(frequency IN ('once', 'daily', 'weekly', 'monthly')), " +
+                        "anchor_day INTEGER NOT NULL, " +
+                        "scheduled_for DATETIME NOT NULL, " +
+                        "next_run_at DATETIME NOT NULL, " +
+                        "status TEXT NOT NULL DEFAULT 'active' " +
+                        "CHECK(status IN ('active', 'completed', 'cancelled', 'failed')), " +
+                        "attempts INTEGER NOT NULL DEFAULT 0, " +
+                        "last_error TEXT, " +
+                        "last_run_at DATETIME, " +
+                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id), " +
+                        "FOREIGN KEY (from_account_id) REFERENCES accounts(id), " +
+                        "FOREIGN KEY (to_account_id) REFERENCES accounts(id)" +
+                        ")");
+        // The scheduler pages through active orders by due time; finished ones stay out of the index
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_scheduled_transfers_due " +
+                "ON scheduled_transfers (next_run_at, id) WHERE status = 'active'");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_scheduled_transfers_user ON scheduled_transfers (user_id)");
+    }
+
+    /**
+     * SQL for a cents amount, falling back to the DECIMAL column when the
+     * cents column wasn't set
+     */
+    private static String centsOf(String centsColumn, String decimalColumn) {
+        return "(CASE WHEN " + centsColumn + " = 0 THEN CAST(ROUND(" + decimalColumn + " * 100) AS INTEGER) " +
+                "ELSE " + centsColumn + " END)";
+    }
+
+    private static boolean hasRows(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM " + table + ")")) {
+            return rs.next() && rs.getInt(1) != 0;
+        }
+    }
+
+    /**
+     * ALTER TABLE ADD COLUMN has no IF NOT EXISTS, so check table_info first
+     */
+    private static void addColumnIfMissing(Statement stmt, String table, String column, String definition)
+            throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+    }
+
+    /**
+     * Trigger statement adding one to both counters of every (scope, scope_id)
+     * row the select returns, creating missing rows. The select needs a WHERE
+     * clause, or SQLite cannot parse the ON CONFLICT that follows it.
+     */
+    private static String counterIncrement(String scopeSelect) {
+        return "INSERT INTO transaction_counters (scope, scope_id, total_count, unflagged_count) " +
+                scopeSelect + " " +
+                "ON CONFLICT (scope, scope_id) DO UPDATE SET " +
+                "total_count = total_count + 1, unflagged_count = unflagged_count + 1; ";
+    }
+
+    /**
+     * Trigger statement changing unflagged_count for every scope of a
+     * transaction
+     */
+    private static String counterAdjust(String transactionId, int unflaggedDelta) {
+        return "UPDATE transaction_counters SET unflagged_count = unflagged_count + (" + unflaggedDelta + ") " +
+                "WHERE (scope = 'global' AND scope_id = 0) " +
+                "OR (scope = 'account' AND scope_id IN (" +
+                "SELECT from_account_id FROM transactions WHERE id = " + transactionId + " " +
+                "UNION SELECT to_account_id FROM transactions WHERE id = " + transactionId + ")) " +
+                "OR (scope = 'user' AND scope_id IN (" +
+                "SELECT a.user_id FROM transactions t JOIN accounts a ON a.id IN (t.from_account_id, t.to_account_id) " +
+                "WHERE t.id = " + transactionId + ")); ";
+    }
+}
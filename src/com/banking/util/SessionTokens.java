@@ -0,0 +1,195 @@
+package com.banking.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks the signed tokens used in stateless session mode. A token
+ * is {@code <id>.<role>.<expiry>.<name>.<signature>}: the user ID, role, expiry
+ * in epoch seconds and base64url display name, followed by an HMAC-SHA256 of
+ * those four parts.
+ *
+ * Every node behind the balancer must share banking.session.secret. Without
+ * one a random key is generated, so tokens only work on the node that issued
+ * them and not across restarts. Components that keep state on a single node
+ * are switched off in this mode; see StatelessSessionFilter.
+ */
+public class SessionTokens {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * The user a valid token stands for
+     */
+    public static class SessionPrincipal implements Principal {
+        private final int userId;
+        private final String role;
+        private final String displayName;
+        private final long expiresAt;
+
+        SessionPrincipal(int userId, String role, String displayName, long expiresAt) {
+            this.userId = userId;
+            this.role = role;
+            this.displayName = displayName;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * The user ID, so it matches {@code HttpServletRequest#getRemoteUser}
+         */
+        @Override
+        public String getName() {
+            return String.valueOf(userId);
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * Expiry in epoch seconds
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+
+    // Counters
+    private final AtomicLong issuedCount = new AtomicLong();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong badSignatureCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * @param secret     Key shared by every node
+     * @param ttlSeconds How long a token stays valid
+     */
+    public SessionTokens(byte[] secret, long ttlSeconds) {
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.ttlSeconds = Math.max(60, ttlSeconds);
+    }
+
+    /**
+     * Creates the codec using banking.session.secret and
+     * banking.session.ttlMinutes (30, the same as the servlet session timeout)
+     */
+    public static SessionTokens fromConfig() {
+        String secret = ConfigUtil.getString("banking.session.secret", null);
+        byte[] keyBytes;
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("SessionTokens: banking.session.secret is not set, using a random key. "
+                    + "Tokens will not be accepted by other nodes or after a restart.");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            if (secret.length() < 32) {
+                System.err.println("SessionTokens: banking.session.secret is shorter than 32 characters");
+            }
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        return new SessionTokens(keyBytes, ConfigUtil.getLong("banking.session.ttlMinutes", 30) * 60);
+    }
+
+    /**
+     * Whether banking.session.mode asks for stateless sessions
+     */
+    public static boolean isStatelessMode() {
+        return "stateless".equalsIgnoreCase(ConfigUtil.getString("banking.session.mode", "container"));
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Issues a token valid for the configured lifetime
+     */
+    public String issue(int userId, String role, String displayName) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        String name = displayName != null ? displayName : "";
+        String payload = userId + "." + role + "." + expiresAt + "."
+                + ENCODER.encodeToString(name.getBytes(StandardCharsets.UTF_8));
+        issuedCount.incrementAndGet();
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Checks a token's signature and expiry
+     *
+     * @return The principal, or null if the token is malformed, forged or
+     *         expired
+     */
+    public SessionPrincipal verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int lastDot = token.lastIndexOf('.');
+        if (lastDot < 0) {
+            badSignatureCount.incrementAndGet();
+            return null;
+        }
+        String payload = token.substring(0, lastDot);
+        String[] parts = payload.split("\\.", -1);
+        try {
+            byte[] signature = DECODER.decode(token.substring(lastDot + 1));
+            if (parts.length != 4 || !MessageDigest.isEqual(sign(payload), signature)) {
+                badSignatureCount.incrementAndGet();
+                return null;
+            }
+            long expiresAt = Long.parseLong(parts[2]);
+            if (expiresAt <= System.currentTimeMillis() / 1000) {
+                expiredCount.incrementAndGet();
+                return null;
+            }
+            String name = new String(DECODER.decode(parts[3]), StandardCharsets.UTF_8);
+            acceptedCount.incrementAndGet();
+            return new SessionPrincipal(Integer.parseInt(parts[0]), parts[1], name, expiresAt);
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or number in a token that wasn't signed by us
+            badSignatureCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    /**
+     * Get token counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"ttlSeconds\":" + ttlSeconds + "," +
+                "\"issued\":" + issuedCount.get() + "," +
+                "\"accepted\":" + acceptedCount.get() + "," +
+                "\"badSignature\":" + badSignatureCount.get() + "," +
+                "\"expired\":" + expiredCount.get() +
+                "}";
+    }
+}
@@ -0,0 +1,174 @@
+package com.banking.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A named set of SQLite PRAGMA settings applied to every connection the
+ * application opens.
+ *
+ * Built-in profiles:
+ * <ul>
+ * <li>performance (default) - WAL journal, synchronous=NORMAL, 16 MB page
+ * cache, 256 MB mmap, in-memory temp store</li>
+ * <li>durable - as performance, but synchronous=FULL so every commit is
+ * fsynced</li>
+ * <li>legacy - SQLite's own defaults (rollback journal, FULL sync)</li>
+ * </ul>
+ * The profile is chosen with banking.db.profile, and any single setting can be
+ * overridden with banking.db.pragma.&lt;name&gt; (e.g.
+ * -Dbanking.db.pragma.cache_size=-65536).
+ */
+public class SqliteProfile {
+
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize; // negative = KiB, positive = pages (SQLite semantics)
+    private final long mmapSize;
+    private final String tempStore;
+    private final int busyTimeoutMs;
+
+    public SqliteProfile(String name, String journalMode, String synchronous, int cacheSize, long mmapSize,
+            String tempStore, int busyTimeoutMs) {
+        this.name = name;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+        this.busyTimeoutMs = busyTimeoutMs;
+    }
+
+    /**
+     * Looks up a built-in profile by name
+     *
+     * @param name Profile name ('performance', 'durable' or 'legacy')
+     * @return The profile, or the performance profile if the name is unknown
+     */
+    public static SqliteProfile named(String name) {
+        String key = name == null ? "performance" : name.trim().toLowerCase();
+        switch (key) {
+            case "legacy":
+                return new SqliteProfile("legacy", "DELETE", "FULL", -2000, 0, "DEFAULT", 0);
+            case "durable":
+                return new SqliteProfile("durable", "WAL", "FULL", -16384, 268435456L, "MEMORY", 5000);
+            case "performance":
+                return new SqliteProfile("performance", "WAL", "NORMAL", -16384, 268435456L, "MEMORY", 5000);
+            default:
+                System.err.println("Unknown SQLite profile '" + name + "', using 'performance'");
+                return named("performance");
+        }
+    }
+
+    /**
+     * Builds the profile selected by banking.db.profile, applying any
+     * banking.db.pragma.* overrides
+     */
+    public static SqliteProfile fromConfig() {
+        SqliteProfile base = named(ConfigUtil.getString("banking.db.profile", "performance"));
+        return new SqliteProfile(
+                base.name,
+                ConfigUtil.getString("banking.db.pragma.journal_mode", base.journalMode).toUpperCase(),
+                ConfigUtil.getString("banking.db.pragma.synchronous", base.synchronous).toUpperCase(),
+                ConfigUtil.getInt("banking.db.pragma.cache_size", base.cacheSize),
+                ConfigUtil.getLong("banking.db.pragma.mmap_size", base.mmapSize),
+                ConfigUtil.getString("banking.db.pragma.temp_store", base.tempStore).toUpperCase(),
+                ConfigUtil.getInt("banking.db.pragma.busy_timeout", base.busyTimeoutMs));
+    }
+
+    /**
+     * Applies the per-connection settings. journal_mode is persistent in the
+     * database file, so it is set once by {@link #applyDatabaseSettings}.
+     *
+     * @param conn Freshly opened connection
+     * @throws SQLException if a PRAGMA fails
+     */
+    public void applyConnectionSettings(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    /**
+     * Applies database-wide settings (journal mode) and then the per-connection
+     * settings. Called once at startup.
+     */
+    public void applyDatabaseSettings(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = " + journalMode)) {
+                if (rs.next() && !journalMode.equalsIgnoreCase(rs.getString(1))) {
+                    System.err.println("SQLite refused journal_mode=" + journalMode + ", using " + rs.getString(1));
+                }
+            }
+        }
+        applyConnectionSettings(conn);
+    }
+
+    /**
+     * Prints the PRAGMA values actually in effect on a connection
+     */
+    public void printEffectiveSettings(Connection conn) {
+        String[] pragmas = { "journal_mode", "synchronous", "cache_size", "mmap_size", "temp_store", "busy_timeout",
+                "page_size" };
+        StringBuilder report = new StringBuilder("SQLite profile '" + name + "' effective settings:");
+        try (Statement stmt = conn.createStatement()) {
+            for (String pragma : pragmas) {
+                try (ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+                    report.append("\n  ").append(pragma).append(" = ").append(rs.next() ? rs.getString(1) : "?");
+                }
+            }
+        } catch (SQLException e) {
+            report.append("\n  (could not read settings: ").append(e.getMessage()).append(")");
+        }
+        System.out.println(report);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    public int getBusyTimeoutMs() {
+        return busyTimeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SqliteProfile{" +
+                "name='" + name + '\'' +
+                ", journalMode=" + journalMode +
+                ", synchronous=" + synchronous +
+                ", cacheSize=" + cacheSize +
+                ", mmapSize=" + mmapSize +
+                ", tempStore=" + tempStore +
+                ", busyTimeoutMs=" + busyTimeoutMs +
+                '}';
+    }
+}
@@ -0,0 +1,294 @@
+package com.banking.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU cache of prepared statements for one physical connection.
+ *
+ * {@link #wrap} returns a connection whose prepareStatement(sql) and
+ * prepareStatement(sql, autoGeneratedKeys) calls are served from the cache.
+ * Closing a cached statement does not finalize it: its result set is closed
+ * and its parameters cleared, and it goes back to the cache for the next
+ * caller preparing the same SQL. If the same SQL is prepared again while the
+ * cached statement is still open (e.g. nested loops, or a caller that never
+ * closed it), a fresh statement replaces it in the cache and the open one is
+ * finalized when its holder closes it, so a leaked statement can't keep its
+ * SQL out of the cache.
+ *
+ * A connection is only used by one thread at a time (a pool borrower or the
+ * writer thread), so the cache itself does no locking beyond that.
+ */
+public class StatementCache {
+
+    /**
+     * Hit/miss counters shared by all caches of one connection group (e.g. the
+     * read pool or the writer)
+     */
+    public static class Stats {
+        private final String name;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong bypasses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public Stats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getBypasses() {
+            return bypasses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        public double getHitRatio() {
+            long lookups = hits.get() + misses.get() + bypasses.get();
+            return lookups == 0 ? 0.0 : hits.get() / (double) lookups;
+        }
+
+        /**
+         * Cache counters as a JSON object
+         */
+        public String getStatsAsJson() {
+            return "{" +
+                    "\"name\":\"" + name + "\"," +
+                    "\"hits\":" + getHits() + "," +
+                    "\"misses\":" + getMisses() + "," +
+                    "\"bypasses\":" + getBypasses() + "," +
+                    "\"evictions\":" + getEvictions() + "," +
+                    "\"hitRatio\":" + String.format("%.3f", getHitRatio()) +
+                    "}";
+        }
+    }
+
+    private final Connection raw;
+    private final int capacity;
+    private final Stats stats;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private Connection proxy;
+
+    private StatementCache(Connection raw, int capacity, Stats stats) {
+        this.raw = raw;
+        this.capacity = capacity;
+        this.stats = stats;
+        // Access order, so iteration starts at the least recently used statement
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Wraps a connection with a statement cache
+     *
+     * @param raw      Physical connection
+     * @param capacity Maximum number of cached statements (0 disables caching)
+     * @param stats    Counters to update
+     * @return A connection that caches prepared statements, or raw itself if
+     *         caching is disabled
+     */
+    public static Connection wrap(Connection raw, int capacity, Stats stats) {
+        if (capacity <= 0) {
+            return raw;
+        }
+        StatementCache cache = new StatementCache(raw, capacity, stats);
+        cache.proxy = (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, cache.new ConnectionHandler());
+        return cache.proxy;
+    }
+
+    private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+
+        if (cached != null && cached.statement.isClosed()) {
+            statements.remove(key);
+            cached = null;
+        }
+        if (cached != null) {
+            if (!cached.inUse) {
+                stats.hits.incrementAndGet();
+                return checkout(cached);
+            }
+            // Same SQL still open further up the stack, or leaked by a caller
+            // that never closed it. Don't share it; cache a fresh statement in
+            // its place and let the open one be finalized when (if) it's closed.
+            stats.bypasses.incrementAndGet();
+            cached.evicted = true;
+            statements.remove(key);
+        } else {
+            stats.misses.incrementAndGet();
+        }
+
+        cached = new CachedStatement(raw.prepareStatement(sql, autoGeneratedKeys));
+        statements.put(key, cached);
+        evictOverflow();
+        return checkout(cached);
+    }
+
+    private PreparedStatement checkout(CachedStatement cached) {
+        cached.inUse = true;
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new StatementHandler(cached));
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            it.remove();
+            stats.evictions.incrementAndGet();
+            if (eldest.inUse) {
+                eldest.evicted = true; // closed for real when its holder closes it
+            } else {
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    private void checkin(CachedStatement cached) {
+        try {
+            ResultSet open = cached.statement.getResultSet();
+            if (open != null) {
+                open.close();
+            }
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+        } catch (SQLException e) {
+            // Can't be reset, so it can't be reused
+            cached.evicted = true;
+            statements.values().remove(cached);
+        }
+        cached.inUse = false;
+        if (cached.evicted) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private void closeAll() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Statement cache: error closing statement: " + e.getMessage());
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * Routes prepareStatement through the cache and closes cached statements
+     * with the connection
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return prepare((String) args[0], java.sql.Statement.NO_GENERATED_KEYS);
+                    }
+                    if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                        return prepare((String) args[0], (Integer) args[1]);
+                    }
+                    break;
+                case "close":
+                    closeAll();
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return invokeOn(raw, method, args);
+        }
+    }
+
+    /**
+     * One checkout of a cached statement. close() hands the statement back to
+     * the cache; any use after that fails like a closed statement would.
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed = false;
+
+        StatementHandler(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        checkin(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    return StatementCache.this.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            return invokeOn(cached.statement, method, args);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.banking.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: three levels of 64 slots, where a slot of level
+ * n covers 64^n ticks. An item goes into the finest level whose range covers
+ * its due time, and when a coarser slot comes round its items cascade down a
+ * level, so adding and expiring an item are O(1) however many are pending.
+ *
+ * Items due more than 64^3 ticks ahead are refused, and items already due are
+ * returned by the next {@link #advance}. Not thread-safe: one thread adds and
+ * advances.
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 3;
+
+    private static class Entry<T> {
+        final long dueTick;
+        final T item;
+
+        Entry(long dueTick, T item) {
+            this.dueTick = dueTick;
+            this.item = item;
+        }
+    }
+
+    private final long tickMillis;
+    private final ArrayDeque<Entry<T>>[][] slots;
+    private final List<T> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis Length of a tick
+     * @param nowMillis  Current time; the wheel starts at its tick
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.slots = new ArrayDeque[LEVELS][SLOTS];
+        this.currentTick = nowMillis / this.tickMillis;
+    }
+
+    /**
+     * Adds an item due at a time
+     *
+     * @return false if the time is beyond the wheel's horizon
+     */
+    public boolean add(T item, long dueMillis) {
+        long dueTick = dueMillis / tickMillis;
+        if (dueTick <= currentTick) {
+            overdue.add(item);
+            size++;
+            return true;
+        }
+        if (!place(new Entry<>(dueTick, item))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheel up to the given time
+     *
+     * @return Items that have become due, in due order (overdue items first)
+     */
+    public List<T> advance(long nowMillis) {
+        List<T> due = new ArrayList<>(overdue);
+        overdue.clear();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade coarser slots that start at this tick, coarsest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    ArrayDeque<Entry<T>> slot = slots[level][slotIndex(currentTick, level)];
+                    if (slot != null) {
+                        while (!slot.isEmpty()) {
+                            place(slot.poll());
+                        }
+                    }
+                }
+            }
+            ArrayDeque<Entry<T>> slot = slots[0][slotIndex(currentTick, 0)];
+            if (slot != null) {
+                while (!slot.isEmpty()) {
+                    due.add(slot.poll().item);
+                }
+            }
+        }
+        size -= due.size();
+        return due;
+    }
+
+    /**
+     * Latest time the wheel accepts an item for
+     */
+    public long getHorizonMillis() {
+        return (currentTick + (1L << (SLOT_BITS * LEVELS)) - 1) * tickMillis;
+    }
+
+    /**
+     * Number of items not yet returned by {@link #advance}
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean place(Entry<T> entry) {
+        long delta = entry.dueTick - currentTick;
+        if (delta <= 0) {
+            // Cascaded into the tick being processed
+            slotFor(0, entry.dueTick).add(entry);
+            return true;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                slotFor(level, entry.dueTick).add(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ArrayDeque<Entry<T>> slotFor(int level, long tick) {
+        int index = slotIndex(tick, level);
+        if (slots[level][index] == null) {
+            slots[level][index] = new ArrayDeque<>();
+        }
+        return slots[level][index];
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+}
@@ -0,0 +1,416 @@
+package com.banking.util;
+
+import org.json.JSONObject;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs units of work on a connection as explicit SQLite transactions, retrying
+ * when the database is busy or locked, and keeps per-operation counters.
+ *
+ * Transactions are started with BEGIN IMMEDIATE by default, so the write lock
+ * is taken up front: a deferred transaction that reads first and then writes
+ * can fail with SQLITE_BUSY straight away (the busy timeout doesn't apply),
+ * while an immediate one simply waits its turn. SQLITE_BUSY and SQLITE_LOCKED
+ * from BEGIN, from COMMIT (which leaves the transaction open) or from the
+ * work itself (which is rolled back and run again) are retried up to
+ * maxRetries times with jittered exponential backoff.
+ *
+ * Transactions, commits and savepoints are plain SQL rather than JDBC calls:
+ * the driver's commit() begins the next transaction straight away, which in
+ * IMMEDIATE mode would take the write lock again, and may fail, after the
+ * commit has already succeeded. Work run through here must therefore not use
+ * the connection's commit, rollback or savepoint methods; see
+ * {@link #inSavepoint}.
+ *
+ * Not thread-safe apart from the counters; the database writer owns one.
+ */
+public class TransactionExecutor {
+
+    public enum Mode {
+        DEFERRED,
+        IMMEDIATE,
+        EXCLUSIVE
+    }
+
+    // SQLite primary result codes; extended codes keep them in the low byte
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    /**
+     * Counters for one operation name
+     */
+    private static class OperationStats {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong busyRetries = new AtomicLong();
+        final AtomicLong lockWaitNanos = new AtomicLong();
+        final AtomicLong maxLockWaitNanos = new AtomicLong();
+        final AtomicLong executionNanos = new AtomicLong();
+        final AtomicLong commitNanos = new AtomicLong();
+
+        String toJson() {
+            long n = Math.max(1, count.get());
+            return "{" +
+                    "\"count\":" + count.get() + "," +
+                    "\"failed\":" + failed.get() + "," +
+                    "\"busyRetries\":" + busyRetries.get() + "," +
+                    "\"avgLockWaitMs\":" + millis(lockWaitNanos.get() / (double) n) + "," +
+                    "\"maxLockWaitMs\":" + millis(maxLockWaitNanos.get()) + "," +
+                    "\"avgExecutionMs\":" + millis(executionNanos.get() / (double) n) + "," +
+                    "\"avgCommitMs\":" + millis(commitNanos.get() / (double) n) +
+                    "}";
+        }
+    }
+
+    private final Mode mode;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final String beginSql;
+
+    private final ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final AtomicLong busyRetryCount = new AtomicLong();
+    private final AtomicLong busyFailureCount = new AtomicLong();
+
+    /**
+     * @param maxRetries        Retries after a busy or locked error before
+     *                          giving up
+     * @param baseBackoffMillis Backoff before the first retry, doubled for
+     *                          each further one
+     * @param maxBackoffMillis  Longest backoff
+     */
+    public TransactionExecutor(Mode mode, int maxRetries, long baseBackoffMillis, long maxBackoffMillis) {
+        this.mode = mode;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+        this.beginSql = "BEGIN " + mode.name();
+    }
+
+    /**
+     * Creates an executor using the banking.db.writer.transactionMode and
+     * banking.db.writer.busy* settings
+     */
+    public static TransactionExecutor fromConfig() {
+        Mode mode;
+        String configured = ConfigUtil.getString("banking.db.writer.transactionMode", "immediate");
+        try {
+            mode = Mode.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown transaction mode '" + configured + "', using IMMEDIATE");
+            mode = Mode.IMMEDIATE;
+        }
+        return new TransactionExecutor(mode,
+                ConfigUtil.getInt("banking.db.writer.busyRetries", 5),
+                ConfigUtil.getLong("banking.db.writer.busyBackoffMs", 5),
+                ConfigUtil.getLong("banking.db.writer.busyMaxBackoffMs", 250));
+    }
+
+    /**
+     * Runs work in its own transaction, committing if it returns and rolling
+     * back if it throws. Work that fails because the database is busy or
+     * locked is run again.
+     *
+     * @param operation Name the counters are kept under
+     */
+    public <T> T execute(Connection conn, String operation, DatabaseWriter.WriteTask<T> work) throws SQLException {
+        OperationStats stats = statsFor(operation);
+        for (int attempt = 0;; attempt++) {
+            long lockWait;
+            T result;
+            try {
+                lockWait = begin(conn, stats);
+                long started = System.nanoTime();
+                try {
+                    result = work.execute(conn);
+                } finally {
+                    stats.executionNanos.addAndGet(System.nanoTime() - started);
+                }
+            } catch (SQLException e) {
+                rollback(conn);
+                if (isBusy(e) && attempt < maxRetries && !(e instanceof BusyException)) {
+                    stats.busyRetries.incrementAndGet();
+                    busyRetryCount.incrementAndGet();
+                    backoff(attempt);
+                    continue; // the work hit the lock; run all of it again
+                }
+                stats.failed.incrementAndGet();
+                throw busy(e, operation);
+            } catch (RuntimeException | Error e) {
+                rollback(conn);
+                stats.failed.incrementAndGet();
+                throw e;
+            }
+
+            try {
+                commit(conn, stats);
+            } catch (SQLException e) {
+                rollback(conn);
+                stats.failed.incrementAndGet();
+                throw e;
+            }
+            record(stats, lockWait);
+            return result;
+        }
+    }
+
+    /**
+     * Starts a transaction for several operations that will be committed
+     * together with {@link #commit(Connection, Iterable, long)}
+     *
+     * @return Nanoseconds spent waiting for the lock
+     */
+    public long begin(Connection conn, Iterable<String> operations) throws SQLException {
+        long started = System.nanoTime();
+        beginWithRetry(conn, null, operations);
+        return System.nanoTime() - started;
+    }
+
+    /**
+     * Commits a transaction started with {@link #begin(Connection, Iterable)},
+     * recording the lock wait and commit time against every operation in it
+     */
+    public void commit(Connection conn, Iterable<String> operations, long lockWaitNanos) throws SQLException {
+        long started = System.nanoTime();
+        commitWithRetry(conn, null, operations);
+        long commitNanos = System.nanoTime() - started;
+        for (String operation : operations) {
+            OperationStats stats = statsFor(operation);
+            stats.commitNanos.addAndGet(commitNanos);
+            record(stats, lockWaitNanos);
+        }
+    }
+
+    /**
+     * Rolls back the current transaction, if there is one
+     */
+    public void rollback(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ROLLBACK");
+        } catch (SQLException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("no transaction is active")) {
+                System.err.println("Transaction rollback failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Counts work that failed inside a shared transaction
+     */
+    public void recordFailure(String operation) {
+        statsFor(operation).failed.incrementAndGet();
+    }
+
+    /**
+     * Counts execution time of work inside a shared transaction
+     */
+    public void recordExecution(String operation, long nanos) {
+        statsFor(operation).executionNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Runs work under a savepoint of the current transaction, rolling back
+     * to it if the work throws
+     *
+     * @param name Savepoint name, a plain identifier
+     */
+    public static <T> T inSavepoint(Connection conn, String name, DatabaseWriter.WriteTask<T> work) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SAVEPOINT " + name);
+        }
+        T result;
+        try {
+            result = work.execute(conn);
+        } catch (SQLException | RuntimeException | Error e) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ROLLBACK TO " + name);
+                stmt.execute("RELEASE " + name);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+                throw new SavepointException(rollbackFailure, e);
+            }
+            throw e;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("RELEASE " + name);
+        }
+        return result;
+    }
+
+    /**
+     * Thrown by {@link #inSavepoint} when the work failed and the savepoint
+     * couldn't be rolled back, so the whole transaction is unusable
+     */
+    public static class SavepointException extends SQLException {
+        private final Throwable workFailure;
+
+        SavepointException(SQLException cause, Throwable workFailure) {
+            super("Savepoint rollback failed: " + cause.getMessage(), cause);
+            this.workFailure = workFailure;
+        }
+
+        /**
+         * What the work itself threw
+         */
+        public Throwable getWorkFailure() {
+            return workFailure;
+        }
+    }
+
+    /**
+     * A busy or locked error that is still there after every retry
+     */
+    public static class BusyException extends SQLException {
+        BusyException(String message, SQLException cause) {
+            super(message, cause.getSQLState(), cause.getErrorCode(), cause);
+        }
+    }
+
+    /**
+     * Whether an exception (or one of its causes) is SQLITE_BUSY or
+     * SQLITE_LOCKED, including their extended codes
+     */
+    public static boolean isBusy(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                int code = ((SQLException) cause).getErrorCode() & 0xff;
+                if (code == SQLITE_BUSY || code == SQLITE_LOCKED) {
+                    return true;
+                }
+                String message = cause.getMessage();
+                if (message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // === Internals ===
+
+    private long begin(Connection conn, OperationStats stats) throws SQLException {
+        long started = System.nanoTime();
+        beginWithRetry(conn, stats, null);
+        return System.nanoTime() - started;
+    }
+
+    private void commit(Connection conn, OperationStats stats) throws SQLException {
+        long started = System.nanoTime();
+        commitWithRetry(conn, stats, null);
+        stats.commitNanos.addAndGet(System.nanoTime() - started);
+    }
+
+    private void beginWithRetry(Connection conn, OperationStats stats, Iterable<String> operations)
+            throws SQLException {
+        retryWhileBusy(conn, beginSql, stats, operations);
+    }
+
+    /**
+     * A busy COMMIT leaves the transaction open, so only the COMMIT is retried
+     */
+    private void commitWithRetry(Connection conn, OperationStats stats, Iterable<String> operations)
+            throws SQLException {
+        retryWhileBusy(conn, "COMMIT", stats, operations);
+    }
+
+    private void retryWhileBusy(Connection conn, String sql, OperationStats stats, Iterable<String> operations)
+            throws SQLException {
+        for (int attempt = 0;; attempt++) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+                return;
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= maxRetries) {
+                    throw busy(e, sql);
+                }
+                busyRetryCount.incrementAndGet();
+                if (stats != null) {
+                    stats.busyRetries.incrementAndGet();
+                }
+                if (operations != null) {
+                    for (String operation : operations) {
+                        statsFor(operation).busyRetries.incrementAndGet();
+                    }
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Replaces a busy error that exhausted its retries with one that says so
+     */
+    private SQLException busy(SQLException e, String what) {
+        if (!isBusy(e) || e instanceof BusyException) {
+            return e;
+        }
+        busyFailureCount.incrementAndGet();
+        return new BusyException("The database is busy, please try again (" + what + " gave up after "
+                + maxRetries + " retries)", e);
+    }
+
+    /**
+     * Sleeps for a random time between half and all of the exponential
+     * backoff for this attempt, so colliding writers don't retry in step
+     */
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+        long sleep = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private OperationStats statsFor(String operation) {
+        return operations.computeIfAbsent(operation != null ? operation : "unnamed", name -> new OperationStats());
+    }
+
+    private static void record(OperationStats stats, long lockWaitNanos) {
+        stats.count.incrementAndGet();
+        stats.lockWaitNanos.addAndGet(lockWaitNanos);
+        long currentMax;
+        while (lockWaitNanos > (currentMax = stats.maxLockWaitNanos.get())) {
+            if (stats.maxLockWaitNanos.compareAndSet(currentMax, lockWaitNanos)) {
+                break;
+            }
+        }
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    // === Metrics ===
+
+    /**
+     * Executor counters as a JSON object, with one entry per operation name
+     */
+    public String getStatsAsJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"mode\":\"").append(mode.name()).append("\",")
+                .append("\"maxRetries\":").append(maxRetries).append(",")
+                .append("\"busyRetries\":").append(busyRetryCount.get()).append(",")
+                .append("\"busyFailures\":").append(busyFailureCount.get()).append(",")
+                .append("\"operations\":{");
+        boolean first = true;
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(operations).entrySet()) {
+            if (!first) {
+                json.append(",");
+            }
+            first = false;
+            json.append(JSONObject.quote(entry.getKey())).append(":").append(entry.getValue().toJson());
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,650 @@
+package com.banking.util;
+
+import com.banking.dao.AccountDAO;
+import com.banking.dao.IdempotencyKeyDAO;
+import com.banking.dao.JournalDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.IdempotencyRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of transfers applied by the {@link BalanceEngine}, so a
+ * transfer can be acknowledged once it is on disk here instead of after its
+ * SQLite commit.
+ *
+ * The journal is a directory of memory-mapped segment files, each named after
+ * the sequence number of its first record. A record is
+ *
+ * <pre>
+ * int length | int crc32c | long sequence | byte type | payload
+ * </pre>
+ *
+ * where length and the CRC cover everything after the CRC. A transfer record
+ * holds the source account, one (destination, amount, description) entry per
+ * payment and the outcome to store for the request's idempotency key, if it
+ * had one. Reading stops at the first zero length or bad CRC, which is where a crash cut the
+ * journal short.
+ *
+ * When a record is durable depends on the fsync policy: RECORD forces every
+ * append, BATCH forces once for all records appended while the previous force
+ * ran (callers wait in {@link #awaitDurable}), and INTERVAL forces in the
+ * background every few milliseconds without making callers wait.
+ *
+ * The postings of each record commit together with the checkpoint in the
+ * journal_checkpoint table. On startup the records past the checkpoint are
+ * replayed into accounts and transactions; segments whose records are all
+ * checkpointed are deleted. Existing segments are read into memory rather than
+ * mapped, and a sealed segment is unmapped before it is deleted, since Windows
+ * won't delete a mapped file. A file that still can't be deleted is tried
+ * again at the next checkpoint and on the next start.
+ */
+public class TransferJournal {
+
+    /**
+     * When appended records are forced to disk
+     */
+    public enum FsyncPolicy {
+        RECORD,
+        BATCH,
+        INTERVAL
+    }
+
+    private static final int MAGIC = 0x544A524E; // "TJRN"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8; // length and CRC
+    private static final byte TYPE_TRANSFER = 1;
+    private static final String SEGMENT_PREFIX = "transfers-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    // sun.misc.Unsafe#invokeCleaner, the only way to unmap a buffer before GC
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Transfer journal: cannot unmap segments, they are released by GC instead: " + e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * A transfer read back from the journal
+     */
+    private static class JournalTransfer {
+        final long sequence;
+        final int fromAccountId;
+        final int[] toAccountIds;
+        final long[] amountsCents;
+        final String[] descriptions;
+        final IdempotencyRecord idempotencyOutcome;
+
+        JournalTransfer(long sequence, int fromAccountId, int[] toAccountIds, long[] amountsCents,
+                String[] descriptions, IdempotencyRecord idempotencyOutcome) {
+            this.sequence = sequence;
+            this.fromAccountId = fromAccountId;
+            this.toAccountIds = toAccountIds;
+            this.amountsCents = amountsCents;
+            this.descriptions = descriptions;
+            this.idempotencyOutcome = idempotencyOutcome;
+        }
+    }
+
+    /**
+     * One journal file. Sealed segments have been forced in full.
+     */
+    private static class Segment {
+        final File file;
+        MappedByteBuffer buffer; // null once unmapped, or if found on startup
+        long lastSequence;
+        volatile int forcedPosition;
+
+        Segment(File file, MappedByteBuffer buffer, long lastSequence) {
+            this.file = file;
+            this.buffer = buffer;
+            this.lastSequence = lastSequence;
+            this.forcedPosition = buffer != null ? buffer.position() : 0;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final FsyncPolicy policy;
+    private final ScheduledExecutorService flusher; // INTERVAL policy only
+
+    // Guarded by this
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final List<File> undeleted = new ArrayList<>(); // checkpointed, but the delete failed
+    private Segment active;
+    private long lastSequence;
+    private boolean closed;
+
+    private final Object flushLock = new Object();
+    private volatile long durableSequence;
+    private volatile long checkpointSequence;
+
+    // Records found when the journal was opened, until replayed
+    private List<JournalTransfer> recovered;
+
+    // Counters
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong totalAppendNanos = new AtomicLong();
+    private final AtomicLong forceCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong deletedSegmentCount = new AtomicLong();
+
+    private TransferJournal(File directory, int segmentBytes, FsyncPolicy policy, long fsyncIntervalMs) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.policy = policy;
+        if (policy == FsyncPolicy.INTERVAL) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "transfer-journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, fsyncIntervalMs, fsyncIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Opens the journal in directory and reads the records already there. New
+     * records always go to a new segment.
+     *
+     * @param segmentBytes    Size of each segment file
+     * @param fsyncIntervalMs How often INTERVAL forces
+     */
+    public static TransferJournal open(File directory, int segmentBytes, FsyncPolicy policy, long fsyncIntervalMs)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        TransferJournal journal = new TransferJournal(directory, Math.max(64 * 1024, segmentBytes), policy,
+                Math.max(1, fsyncIntervalMs));
+        journal.recover();
+        System.out.println("Transfer journal opened in " + directory + " (fsync=" + policy + ", "
+                + journal.recovered.size() + " transfer(s) found, last sequence " + journal.lastSequence + ")");
+        return journal;
+    }
+
+    /**
+     * Parses a banking.journal.fsync value
+     */
+    public static FsyncPolicy parsePolicy(String value) {
+        try {
+            return FsyncPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            System.err.println("Unknown journal fsync policy '" + value + "', using BATCH");
+            return FsyncPolicy.BATCH;
+        }
+    }
+
+    /**
+     * Applies the transfers that are in the journal but past the database's
+     * checkpoint, in one writer transaction, and advances the checkpoint.
+     * Must run before anything is appended and before balances are loaded
+     * from the database.
+     *
+     * Every one of those transfers was acknowledged to a customer, so none is
+     * skipped: if one can't be applied nothing is, the checkpoint stays where
+     * it was and the segments are kept for someone to resolve by hand.
+     *
+     * @return Number of transfers replayed
+     * @throws SQLException if a transfer can't be applied; the message names
+     *                      its sequence number
+     */
+    public int replay(DatabaseWriter writer) throws SQLException {
+        List<JournalTransfer> transfers = recovered;
+        recovered = new ArrayList<>();
+        int replayed = writer.execute("replayTransferJournal", conn -> {
+            long checkpoint = JournalDAO.getCheckpoint(conn);
+            synchronized (this) {
+                // Sequence numbers must keep growing even if every segment was deleted
+                lastSequence = Math.max(lastSequence, checkpoint);
+                durableSequence = lastSequence;
+            }
+            int applied = 0;
+            for (JournalTransfer transfer : transfers) {
+                if (transfer.sequence <= checkpoint) {
+                    continue;
+                }
+                try {
+                    applyPostings(conn, transfer);
+                } catch (SQLException e) {
+                    throw new SQLException("Transfer journal record " + transfer.sequence + " in " + directory
+                            + " can't be replayed, so startup stops with the journal left as it is: "
+                            + e.getMessage(), e);
+                }
+                applied++;
+            }
+            JournalDAO.advanceCheckpoint(conn, lastSequence);
+            return applied;
+        });
+        replayedCount.addAndGet(replayed);
+        checkpoint(lastSequence);
+        if (replayed > 0) {
+            System.out.println("Transfer journal: replayed " + replayed + " transfer(s)");
+        }
+        return replayed;
+    }
+
+    /**
+     * Appends a transfer from one account to one or more others. Durable
+     * according to the fsync policy once {@link #awaitDurable} returns.
+     *
+     * @param idempotencyOutcome Outcome stored with the postings, or null
+     * @return The record's sequence number
+     */
+    public long appendTransfer(int fromAccountId, int[] toAccountIds, long[] amountsCents, String[] descriptions,
+            IdempotencyRecord idempotencyOutcome) throws IOException {
+        long started = System.nanoTime();
+        byte[][] encoded = new byte[toAccountIds.length][];
+        int payloadBytes = 8 + 1 + 4 + 4;
+        for (int i = 0; i < toAccountIds.length; i++) {
+            encoded[i] = utf8(descriptions[i]);
+            payloadBytes += 4 + 8 + 4 + encoded[i].length;
+        }
+        byte[][] outcome = null;
+        payloadBytes += 1;
+        if (idempotencyOutcome != null) {
+            outcome = new byte[][] { utf8(idempotencyOutcome.getKey()), utf8(idempotencyOutcome.getFingerprint()),
+                    utf8(idempotencyOutcome.getMessage()) };
+            payloadBytes += 4 + 1;
+            for (byte[] field : outcome) {
+                payloadBytes += 4 + field.length;
+            }
+        }
+        long sequence;
+        synchronized (this) {
+            sequence = lastSequence + 1;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadBytes);
+            record.position(RECORD_HEADER_BYTES);
+            record.putLong(sequence).put(TYPE_TRANSFER).putInt(fromAccountId).putInt(toAccountIds.length);
+            for (int i = 0; i < toAccountIds.length; i++) {
+                record.putInt(toAccountIds[i]).putLong(amountsCents[i]).putInt(encoded[i].length).put(encoded[i]);
+            }
+            record.put((byte) (outcome != null ? 1 : 0));
+            if (outcome != null) {
+                record.putInt(idempotencyOutcome.getUserId()).put((byte) (idempotencyOutcome.isSuccess() ? 1 : 0));
+                for (byte[] field : outcome) {
+                    record.putInt(field.length).put(field);
+                }
+            }
+            write(record, sequence);
+        }
+        appendCount.incrementAndGet();
+        totalAppendNanos.addAndGet(System.nanoTime() - started);
+        return sequence;
+    }
+
+    /**
+     * Waits until the record is on disk. Only BATCH waits here: RECORD forced
+     * it while appending and INTERVAL accepts losing the last few
+     * milliseconds.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        if (policy != FsyncPolicy.BATCH || durableSequence >= sequence) {
+            return;
+        }
+        synchronized (flushLock) {
+            // Whoever held the lock before may have forced this record already
+            if (durableSequence < sequence) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Notes that every record up to sequence is in the database and deletes
+     * the segments that hold nothing newer
+     */
+    public void checkpoint(long sequence) {
+        if (sequence <= checkpointSequence) {
+            return;
+        }
+        List<Segment> deletable = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        synchronized (this) {
+            checkpointSequence = Math.max(checkpointSequence, sequence);
+            while (!sealed.isEmpty() && sealed.peekFirst().lastSequence <= checkpointSequence) {
+                deletable.add(sealed.pollFirst());
+            }
+            files.addAll(undeleted);
+            undeleted.clear();
+        }
+        // A flush may still be forcing a segment that was sealed since it began
+        synchronized (flushLock) {
+            for (Segment segment : deletable) {
+                unmap(segment);
+                files.add(segment.file);
+            }
+        }
+        for (File file : files) {
+            if (file.delete() || !file.exists()) {
+                deletedSegmentCount.incrementAndGet();
+            } else {
+                System.err.println("Transfer journal: could not delete " + file + ", will retry");
+                synchronized (this) {
+                    undeleted.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces what has been appended and stops the background flusher
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (flushLock) {
+            flushQuietly();
+            synchronized (this) {
+                closed = true;
+                for (Segment segment : sealed) {
+                    unmap(segment);
+                }
+                if (active != null) {
+                    unmap(active);
+                    active = null;
+                }
+            }
+        }
+    }
+
+    // === Internals ===
+
+    /**
+     * Fills in the length and CRC of a record and copies it into the active
+     * segment, starting a new one if it doesn't fit. Caller holds this.
+     */
+    private void write(ByteBuffer record, long sequence) throws IOException {
+        if (closed) {
+            throw new IOException("Transfer journal is closed");
+        }
+        int payloadBytes = record.capacity() - RECORD_HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), RECORD_HEADER_BYTES, payloadBytes);
+        record.putInt(0, payloadBytes).putInt(4, (int) crc.getValue());
+
+        if (active == null || active.buffer.remaining() < record.capacity()) {
+            rotate(sequence, record.capacity());
+        }
+        int position = active.buffer.position();
+        active.buffer.put(record.array());
+        active.lastSequence = sequence;
+        lastSequence = sequence;
+        if (policy == FsyncPolicy.RECORD) {
+            active.buffer.force(position, record.capacity());
+            forceCount.incrementAndGet();
+            active.forcedPosition = active.buffer.position();
+            durableSequence = sequence;
+        }
+    }
+
+    /**
+     * Seals the active segment (forcing all of it) and starts a new one whose
+     * first record is firstSequence. Caller holds this.
+     */
+    private void rotate(long firstSequence, int recordBytes) throws IOException {
+        if (active != null) {
+            active.buffer.force();
+            forceCount.incrementAndGet();
+            active.forcedPosition = active.buffer.position();
+            sealed.addLast(active);
+        }
+        File file = new File(directory, segmentName(firstSequence));
+        int size = Math.max(segmentBytes, SEGMENT_HEADER_BYTES + recordBytes);
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // stays valid after close
+        }
+        buffer.putInt(MAGIC).putInt(VERSION);
+        active = new Segment(file, buffer, firstSequence - 1);
+        active.forcedPosition = 0;
+    }
+
+    /**
+     * Forces the active segment up to what has been appended. Caller holds
+     * flushLock.
+     */
+    private void flush() throws IOException {
+        Segment segment;
+        int from;
+        int to;
+        long upTo;
+        synchronized (this) {
+            segment = active;
+            upTo = lastSequence;
+            if (segment == null) {
+                durableSequence = upTo;
+                return;
+            }
+            from = segment.forcedPosition;
+            to = segment.buffer.position();
+        }
+        // Earlier segments were forced when they were sealed
+        if (to > from) {
+            segment.buffer.force(from, to - from);
+            forceCount.incrementAndGet();
+            segment.forcedPosition = Math.max(segment.forcedPosition, to);
+        }
+        durableSequence = Math.max(durableSequence, upTo);
+    }
+
+    private void flushQuietly() {
+        synchronized (flushLock) {
+            try {
+                flush();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Transfer journal: fsync failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the existing segments in order and keeps their transfers for
+     * {@link #replay}
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Cannot list journal directory " + directory);
+        }
+        Arrays.sort(files); // names are zero-padded sequence numbers
+
+        recovered = new ArrayList<>();
+        for (File file : files) {
+            long segmentLast = readSegment(file, recovered);
+            // Kept (sealed) until a checkpoint covers it
+            sealed.addLast(new Segment(file, null, segmentLast));
+            lastSequence = Math.max(lastSequence, segmentLast);
+        }
+        durableSequence = lastSequence;
+    }
+
+    /**
+     * @return The last sequence number in the file, or 0 if it has none
+     */
+    private static long readSegment(File file, List<JournalTransfer> transfers) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.limit() < SEGMENT_HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            System.err.println("Transfer journal: ignoring " + file + " (not a journal segment)");
+            return 0;
+        }
+        long last = 0;
+        byte[] payload = new byte[0];
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break; // end of the written part, or a torn length
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            buffer.get(payload, 0, length);
+            CRC32C crc = new CRC32C();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != expectedCrc) {
+                System.err.println("Transfer journal: bad checksum in " + file + ", ignoring the rest of it");
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+            long sequence = record.getLong();
+            byte type = record.get();
+            if (type == TYPE_TRANSFER) {
+                int fromAccountId = record.getInt();
+                int count = record.getInt();
+                int[] toAccountIds = new int[count];
+                long[] amountsCents = new long[count];
+                String[] descriptions = new String[count];
+                for (int i = 0; i < count; i++) {
+                    toAccountIds[i] = record.getInt();
+                    amountsCents[i] = record.getLong();
+                    descriptions[i] = readString(record);
+                }
+                IdempotencyRecord idempotencyOutcome = null;
+                if (record.get() != 0) {
+                    idempotencyOutcome = new IdempotencyRecord();
+                    idempotencyOutcome.setUserId(record.getInt());
+                    idempotencyOutcome.setSuccess(record.get() != 0);
+                    idempotencyOutcome.setKey(readString(record));
+                    idempotencyOutcome.setFingerprint(readString(record));
+                    idempotencyOutcome.setMessage(readString(record));
+                }
+                transfers.add(new JournalTransfer(sequence, fromAccountId, toAccountIds, amountsCents,
+                        descriptions, idempotencyOutcome));
+            }
+            last = sequence;
+        }
+        return last;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Releases a segment's mapping now instead of at GC. Caller holds
+     * flushLock, so nothing is forcing it, and the segment is no longer
+     * written to.
+     */
+    private static void unmap(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        segment.buffer = null;
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Transfer journal: could not unmap " + segment.file + ": " + e);
+        }
+    }
+
+    /**
+     * Same postings as the balance engine writes: one debit of the total, a
+     * credit per destination and a transaction row per payment
+     */
+    private static void applyPostings(Connection conn, JournalTransfer transfer) throws SQLException {
+        long totalCents = 0;
+        Map<Integer, Long> credits = new HashMap<>();
+        for (int i = 0; i < transfer.toAccountIds.length; i++) {
+            totalCents += transfer.amountsCents[i];
+            credits.merge(transfer.toAccountIds[i], transfer.amountsCents[i], Long::sum);
+        }
+        if (AccountDAO.adjustBalance(conn, transfer.fromAccountId, -totalCents) == 0) {
+            throw new SQLException("Account " + transfer.fromAccountId + " no longer exists");
+        }
+        AccountDAO.adjustBalances(conn, credits);
+        if (transfer.toAccountIds.length == 1) {
+            TransactionDAO.insert(conn, transfer.fromAccountId, transfer.toAccountIds[0], "transfer",
+                    transfer.amountsCents[0], transfer.descriptions[0]);
+        } else {
+            TransactionDAO.insertTransfers(conn, transfer.fromAccountId, transfer.toAccountIds,
+                    transfer.amountsCents, transfer.descriptions);
+        }
+        if (transfer.idempotencyOutcome != null) {
+            IdempotencyKeyDAO.insert(conn, transfer.idempotencyOutcome);
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return SEGMENT_PREFIX + String.format("%020d", firstSequence) + SEGMENT_SUFFIX;
+    }
+
+    // === Metrics ===
+
+    /**
+     * Journal counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        int segments;
+        long last;
+        synchronized (this) {
+            segments = sealed.size() + (active != null ? 1 : 0);
+            last = lastSequence;
+        }
+        long appends = appendCount.get();
+        return "{" +
+                "\"fsync\":\"" + policy + "\"," +
+                "\"segments\":" + segments + "," +
+                "\"lastSequence\":" + last + "," +
+                "\"durableSequence\":" + durableSequence + "," +
+                "\"checkpoint\":" + checkpointSequence + "," +
+                "\"appends\":" + appends + "," +
+                "\"avgAppendMicros\":" + String.format("%.3f",
+                        appends == 0 ? 0.0 : totalAppendNanos.get() / 1000.0 / appends) + "," +
+                "\"forces\":" + forceCount.get() + "," +
+                "\"replayed\":" + replayedCount.get() + "," +
+                "\"deletedSegments\":" + deletedSegmentCount.get() +
+                "}";
+    }
+}
@@ -0,0 +1,654 @@
+package com.banking.util;
+
+import com.banking.dao.ScheduledTransferDAO;
+import com.banking.dao.TransactionDAO;
+import com.banking.model.IdempotencyRecord;
+import com.banking.model.ScheduledTransfer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs scheduled and standing-order transfers (the scheduled_transfers
+ * table) on a single background thread.
+ *
+ * Active transfers due within the next banking.scheduler.loadAheadMinutes
+ * are paged in by due time and kept as ids in a {@link TimerWheel}; the rest
+ * stay in the database until the window reaches them. On every tick the due
+ * ids are re-read (so cancellations are seen) and run in batches through the
+ * balance engine, or in one writer transaction per batch when the engine is
+ * disabled, with the same checks as an interactive transfer.
+ *
+ * To keep a month-end run of standing orders from crowding out interactive
+ * requests, each batch waits for its postings to be committed before the
+ * next one starts, batches are spaced by banking.scheduler.batchPauseMs, and
+ * no batch starts while the writer queue is longer than
+ * banking.scheduler.maxWriterQueue.
+ *
+ * A transfer short of funds is retried every retryDelayMinutes up to
+ * maxAttempts times; after that a one-off transfer fails and a standing
+ * order skips to its next occurrence. Other rejections fail the transfer.
+ * One that hits a database error is retried on the same delay and fails
+ * once it has used up maxAttempts; without the engine each transfer in a
+ * batch runs under its own savepoint, so the error only affects that one.
+ * Through the engine, each occurrence also stores an idempotency key in the
+ * same transaction as its postings, so an occurrence that was paid just
+ * before a restart isn't paid again.
+ */
+public class TransferScheduler {
+
+    public static final String SUCCESS_MESSAGE = "Scheduled transfer completed.";
+
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final long THROTTLE_SLEEP_MS = 10;
+
+    private enum Outcome {
+        SUCCEEDED,
+        INSUFFICIENT_FUNDS,
+        REJECTED, // will never succeed
+        ERROR // may succeed later
+    }
+
+    private final DatabaseWriter writer;
+    private final ConnectionPool pool;
+    private final BalanceEngine engine; // null: transfers run against the database
+    private final IdempotencyStore idempotencyStore;
+    private final long tickMillis;
+    private final long loadAheadMillis;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final int maxWriterQueue;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+
+    private final ConcurrentLinkedQueue<ScheduledTransfer> added = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService executor;
+    private volatile boolean stopping = false;
+
+    // Only used on the scheduler thread
+    private TimerWheel<Integer> wheel;
+    private final Set<Integer> pending = new HashSet<>(); // ids in the wheel
+    private long loadedUntil = Long.MIN_VALUE; // active transfers due up to here are in the wheel
+
+    // Counters
+    private volatile int pendingCount;
+    private volatile long lastTickMillis;
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong loadedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttledMillis = new AtomicLong();
+
+    /**
+     * @param engine           Balance engine, or null to run transfers against
+     *                         the database
+     * @param idempotencyStore Store for occurrence keys, or null
+     * @param loadAheadMillis  How far ahead transfers are loaded into memory
+     * @param maxWriterQueue   Writer queue length above which batches wait
+     * @param maxAttempts      Attempts at an occurrence short of funds or
+     *                         hitting database errors
+     */
+    public TransferScheduler(DatabaseWriter writer, ConnectionPool pool, BalanceEngine engine,
+            IdempotencyStore idempotencyStore, long tickMillis, long loadAheadMillis, int batchSize,
+            long batchPauseMillis, int maxWriterQueue, int maxAttempts, long retryDelayMillis) {
+        this.writer = writer;
+        this.pool = pool;
+        this.engine = engine;
+        this.idempotencyStore = idempotencyStore;
+        this.tickMillis = Math.max(10, tickMillis);
+        this.loadAheadMillis = Math.max(this.tickMillis, loadAheadMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMillis = Math.max(0, batchPauseMillis);
+        this.maxWriterQueue = Math.max(0, maxWriterQueue);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = Math.max(this.tickMillis, retryDelayMillis);
+    }
+
+    /**
+     * Creates a scheduler using the banking.scheduler.* settings
+     */
+    public static TransferScheduler fromConfig(DatabaseWriter writer, ConnectionPool pool, BalanceEngine engine,
+            IdempotencyStore idempotencyStore) {
+        return new TransferScheduler(writer, pool, engine, idempotencyStore,
+                ConfigUtil.getLong("banking.scheduler.tickMs", 1000),
+                ConfigUtil.getLong("banking.scheduler.loadAheadMinutes", 60) * 60_000L,
+                ConfigUtil.getInt("banking.scheduler.batchSize", 200),
+                ConfigUtil.getLong("banking.scheduler.batchPauseMs", 20),
+                ConfigUtil.getInt("banking.scheduler.maxWriterQueue", 100),
+                ConfigUtil.getInt("banking.scheduler.maxAttempts", 3),
+                ConfigUtil.getLong("banking.scheduler.retryDelayMinutes", 60) * 60_000L);
+    }
+
+    /**
+     * Starts ticking on a daemon thread
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transfer-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+        System.out.println("Transfer scheduler started (tick " + tickMillis + " ms, batches of " + batchSize + ")");
+    }
+
+    /**
+     * Stops ticking, letting a batch in progress finish so its outcomes are
+     * recorded. Call before the writer shuts down.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        stopping = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Transfer scheduler did not stop within 10 seconds");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * Tells the scheduler about a transfer that has just been committed, in
+     * case it is due before the next load
+     */
+    public void schedule(ScheduledTransfer transfer) {
+        added.add(transfer);
+    }
+
+    // === Ticks ===
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            if (wheel == null) {
+                wheel = new TimerWheel<>(tickMillis, now);
+            }
+            for (ScheduledTransfer transfer; (transfer = added.poll()) != null;) {
+                long due = toMillis(transfer.getNextRunAt());
+                if (due <= loadedUntil) {
+                    enqueue(transfer.getId(), due);
+                }
+            }
+            if (now + loadAheadMillis / 2 > loadedUntil) {
+                load(Math.min(now + loadAheadMillis, wheel.getHorizonMillis()));
+            }
+
+            List<Integer> due = wheel.advance(now);
+            pending.removeAll(due);
+            for (int start = 0; start < due.size() && !stopping; start += batchSize) {
+                if (start > 0) {
+                    pause(batchPauseMillis);
+                }
+                waitForWriter();
+                List<Integer> batch = due.subList(start, Math.min(due.size(), start + batchSize));
+                try {
+                    runBatch(batch);
+                } catch (SQLException e) {
+                    System.err.println("Scheduled transfer batch failed: " + e.getMessage());
+                    retryLater(batch);
+                }
+            }
+            tickCount.incrementAndGet();
+            lastTickMillis = System.currentTimeMillis() - now;
+        } catch (Exception e) {
+            // Never let an exception cancel the schedule
+            System.err.println("Transfer scheduler tick failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            pendingCount = wheel != null ? wheel.size() : 0;
+        }
+    }
+
+    /**
+     * Adds the active transfers due up to until to the wheel, a page at a time
+     * by (next_run_at, id). Overdue transfers are read again every time, so
+     * one that was rescheduled or inserted without {@link #schedule} isn't
+     * missed; ids already in the wheel are skipped.
+     */
+    private void load(long until) throws SQLException {
+        String untilText = format(until);
+        String afterRunAt = "";
+        int afterId = 0;
+        try (Connection conn = pool.borrow()) {
+            while (true) {
+                List<ScheduledTransfer> page = ScheduledTransferDAO.findActiveDue(conn, afterRunAt, afterId,
+                        untilText, LOAD_PAGE_SIZE);
+                for (ScheduledTransfer transfer : page) {
+                    if (enqueue(transfer.getId(), toMillis(transfer.getNextRunAt()))) {
+                        loadedCount.incrementAndGet();
+                    }
+                }
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                ScheduledTransfer last = page.get(page.size() - 1);
+                afterRunAt = last.getNextRunAt();
+                afterId = last.getId();
+            }
+        }
+        loadedUntil = toMillis(untilText);
+    }
+
+    /**
+     * @return false if the id was already in the wheel
+     */
+    private boolean enqueue(int id, long dueMillis) {
+        if (!pending.add(id)) {
+            return false;
+        }
+        if (!wheel.add(id, dueMillis)) {
+            pending.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Puts transfers whose outcome couldn't be recorded back in the wheel
+     */
+    private void retryLater(List<Integer> ids) {
+        long due = System.currentTimeMillis() + retryDelayMillis;
+        for (int id : ids) {
+            if (due <= loadedUntil) {
+                enqueue(id, due);
+            }
+        }
+        errorCount.addAndGet(ids.size());
+    }
+
+    /**
+     * Waits while the writer has more queued than maxWriterQueue, so that
+     * interactive writes don't queue behind a long run
+     */
+    private void waitForWriter() {
+        long started = System.currentTimeMillis();
+        while (writer.getQueueDepth() > maxWriterQueue && !stopping) {
+            pause(THROTTLE_SLEEP_MS);
+        }
+        throttledMillis.addAndGet(System.currentTimeMillis() - started);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // === Batches ===
+
+    private void runBatch(List<Integer> ids) throws SQLException {
+        batchCount.incrementAndGet();
+        List<ScheduledTransfer> transfers;
+        try (Connection conn = pool.borrow()) {
+            transfers = ScheduledTransferDAO.findActiveByIds(conn, ids);
+        }
+        long now = System.currentTimeMillis();
+        List<ScheduledTransfer> due = new ArrayList<>(transfers.size());
+        for (ScheduledTransfer transfer : transfers) {
+            long runAt = toMillis(transfer.getNextRunAt());
+            if (runAt <= now) {
+                due.add(transfer);
+            } else if (runAt <= loadedUntil) {
+                enqueue(transfer.getId(), runAt);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        runCount.addAndGet(due.size());
+
+        if (engine != null) {
+            runInMemory(due, now);
+        } else {
+            runInDatabase(due, now);
+        }
+        DatabaseUtil.transactionsCommitted();
+
+        for (ScheduledTransfer transfer : due) {
+            if ("active".equals(transfer.getStatus())) {
+                long runAt = toMillis(transfer.getNextRunAt());
+                if (runAt <= loadedUntil) {
+                    enqueue(transfer.getId(), runAt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a batch through the balance engine, waits for the postings and then
+     * records every outcome in one write, counting them once it commits
+     */
+    private void runInMemory(List<ScheduledTransfer> transfers, long now) throws SQLException {
+        Map<ScheduledTransfer, CompletableFuture<Void>> persisted = new LinkedHashMap<>();
+        List<AtomicLong> counters = new ArrayList<>(transfers.size());
+        for (ScheduledTransfer transfer : transfers) {
+            IdempotencyStore.Claim claim = null;
+            if (idempotencyStore != null) {
+                try {
+                    claim = idempotencyStore.claim(transfer.getUserId(), occurrenceKey(transfer),
+                            IdempotencyStore.fingerprint(transfer.getId(), transfer.getScheduledFor()));
+                } catch (SQLException e) {
+                    counters.add(record(transfer, Outcome.ERROR, "Database error: " + e.getMessage(), now));
+                    continue;
+                }
+                switch (claim.getStatus()) {
+                    case ACQUIRED:
+                        break;
+                    case REPLAY:
+                        // Paid before a restart, but the schedule wasn't updated
+                        counters.add(record(transfer, Outcome.SUCCEEDED, null, now));
+                        continue;
+                    default:
+                        counters.add(record(transfer, Outcome.ERROR, "Occurrence is already being processed.",
+                                now));
+                        continue;
+                }
+            }
+
+            IdempotencyRecord outcome = claim != null ? claim.outcome(true, SUCCESS_MESSAGE) : null;
+            BalanceEngine.TransferResult result = engine.transfer(transfer.getFromAccountId(), transfer.getUserId(),
+                    transfer.getToAccountId(), transfer.getAmountCents(), transfer.getDescription(), outcome);
+            if (result.getStatus() != BalanceEngine.TransferStatus.OK) {
+                if (claim != null) {
+                    claim.release();
+                }
+                counters.add(recordRejection(transfer, result.getStatus(), now));
+                continue;
+            }
+            if (claim != null) {
+                IdempotencyStore.Claim held = claim;
+                result.getPersisted().whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        held.completePersisted(outcome);
+                    } else {
+                        held.release();
+                    }
+                });
+            }
+            persisted.put(transfer, result.getPersisted());
+        }
+
+        for (Map.Entry<ScheduledTransfer, CompletableFuture<Void>> entry : persisted.entrySet()) {
+            try {
+                entry.getValue().join();
+                counters.add(record(entry.getKey(), Outcome.SUCCEEDED, null, now));
+            } catch (CompletionException e) {
+                // Already reversed in memory by the engine
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                counters.add(record(entry.getKey(), Outcome.ERROR, "Database error: " + cause.getMessage(), now));
+            }
+        }
+
+        writer.execute("recordScheduledTransfers", conn -> {
+            for (ScheduledTransfer transfer : transfers) {
+                ScheduledTransferDAO.updateAfterRun(conn, transfer);
+            }
+            return null;
+        });
+        // Only counted once the outcomes are saved
+        for (AtomicLong counter : counters) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Runs a batch and records its outcomes in a single writer transaction.
+     * Each transfer runs under its own savepoint: one that fails is rolled
+     * back and recorded as an error on its own, and the rest of the batch
+     * still commits. The writer may run the task more than once (a failed
+     * group commit is retried task by task), so each run works on copies and
+     * the batch only takes their state, and is counted, once the transaction
+     * has committed.
+     */
+    private void runInDatabase(List<ScheduledTransfer> transfers, long now) throws SQLException {
+        List<ScheduledTransfer> results = new ArrayList<>(transfers.size());
+        List<AtomicLong> counters = new ArrayList<>(transfers.size());
+        writer.execute("runScheduledTransfers", conn -> {
+            results.clear();
+            counters.clear();
+            for (ScheduledTransfer transfer : transfers) {
+                ScheduledTransfer attempt = copyOf(transfer);
+                ScheduledTransfer result;
+                AtomicLong counter;
+                try {
+                    counter = TransactionExecutor.inSavepoint(conn, "scheduled_transfer", c -> {
+                        AtomicLong applied = applyInDatabase(c, attempt, now);
+                        ScheduledTransferDAO.updateAfterRun(c, attempt);
+                        return applied;
+                    });
+                    result = attempt;
+                } catch (TransactionExecutor.SavepointException e) {
+                    throw e;
+                } catch (SQLException e) {
+                    result = copyOf(transfer);
+                    counter = record(result, Outcome.ERROR, "Database error: " + e.getMessage(), now);
+                    ScheduledTransferDAO.updateAfterRun(conn, result);
+                }
+                counters.add(counter);
+                results.add(result);
+            }
+            return null;
+        });
+        for (int i = 0; i < transfers.size(); i++) {
+            ScheduledTransfer transfer = transfers.get(i);
+            ScheduledTransfer result = results.get(i);
+            transfer.setScheduledFor(result.getScheduledFor());
+            transfer.setNextRunAt(result.getNextRunAt());
+            transfer.setStatus(result.getStatus());
+            transfer.setAttempts(result.getAttempts());
+            transfer.setLastError(result.getLastError());
+            counters.get(i).incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks and applies one transfer on the writer connection, in the same
+     * order as an interactive transfer
+     *
+     * @return The counter for the outcome
+     */
+    private AtomicLong applyInDatabase(Connection conn, ScheduledTransfer transfer, long now) throws SQLException {
+        BalanceEngine.TransferStatus status = TransactionDAO.transfer(conn, transfer.getFromAccountId(),
+                transfer.getUserId(), transfer.getToAccountId(), transfer.getAmountCents(),
+                transfer.getDescription());
+        if (status != BalanceEngine.TransferStatus.OK) {
+            return recordRejection(transfer, status, now);
+        }
+        return record(transfer, Outcome.SUCCEEDED, null, now);
+    }
+
+    // === Outcomes ===
+
+    private AtomicLong recordRejection(ScheduledTransfer transfer, BalanceEngine.TransferStatus status, long now) {
+        switch (status) {
+            case INSUFFICIENT_FUNDS:
+                return record(transfer, Outcome.INSUFFICIENT_FUNDS, "Insufficient funds to complete this transfer.",
+                        now);
+            case NOT_OWNER:
+                return record(transfer, Outcome.REJECTED,
+                        "Source account not found or does not belong to the current user.", now);
+            case UNKNOWN_DESTINATION:
+                return record(transfer, Outcome.REJECTED, "Destination account not found.", now);
+            case SAME_ACCOUNT:
+                return record(transfer, Outcome.REJECTED, "Cannot transfer to the same account.", now);
+            default:
+                throw new IllegalStateException("Unexpected transfer status " + status);
+        }
+    }
+
+    /**
+     * Moves a transfer to its state after an attempt; the caller stores it
+     * and bumps the returned counter once the state is saved
+     *
+     * @return The counter for what happened
+     */
+    private AtomicLong record(ScheduledTransfer transfer, Outcome outcome, String error, long now) {
+        switch (outcome) {
+            case SUCCEEDED:
+                advance(transfer, null);
+                return succeededCount;
+            case INSUFFICIENT_FUNDS:
+                transfer.setAttempts(transfer.getAttempts() + 1);
+                if (transfer.getAttempts() < maxAttempts) {
+                    transfer.setNextRunAt(format(now + retryDelayMillis));
+                    transfer.setLastError(error);
+                    return retriedCount;
+                } else if ("once".equals(transfer.getFrequency())) {
+                    transfer.setStatus("failed");
+                    transfer.setLastError(error);
+                    return failedCount;
+                }
+                advance(transfer, error + " Skipped the payment due " + transfer.getScheduledFor() + ".");
+                return skippedCount;
+            case REJECTED:
+                transfer.setStatus("failed");
+                transfer.setLastError(error);
+                return failedCount;
+            case ERROR:
+                transfer.setAttempts(transfer.getAttempts() + 1);
+                transfer.setLastError(error);
+                if (transfer.getAttempts() >= maxAttempts) {
+                    transfer.setStatus("failed");
+                    return failedCount;
+                }
+                transfer.setNextRunAt(format(now + retryDelayMillis));
+                return errorCount;
+            default:
+                throw new IllegalStateException("Unexpected outcome " + outcome);
+        }
+    }
+
+    private static ScheduledTransfer copyOf(ScheduledTransfer transfer) {
+        ScheduledTransfer copy = new ScheduledTransfer();
+        copy.setId(transfer.getId());
+        copy.setUserId(transfer.getUserId());
+        copy.setFromAccountId(transfer.getFromAccountId());
+        copy.setToAccountId(transfer.getToAccountId());
+        copy.setToAccountNumber(transfer.getToAccountNumber());
+        copy.setAmountCents(transfer.getAmountCents());
+        copy.setDescription(transfer.getDescription());
+        copy.setFrequency(transfer.getFrequency());
+        copy.setAnchorDay(transfer.getAnchorDay());
+        copy.setScheduledFor(transfer.getScheduledFor());
+        copy.setNextRunAt(transfer.getNextRunAt());
+        copy.setStatus(transfer.getStatus());
+        copy.setAttempts(transfer.getAttempts());
+        copy.setLastError(transfer.getLastError());
+        copy.setLastRunAt(transfer.getLastRunAt());
+        copy.setCreatedAt(transfer.getCreatedAt());
+        return copy;
+    }
+
+    /**
+     * Completes a one-off transfer or moves a standing order to its next
+     * occurrence. An occurrence missed while the application was down is due
+     * straight away, so each one is still paid.
+     */
+    private static void advance(ScheduledTransfer transfer, String lastError) {
+        String next = nextOccurrence(transfer);
+        transfer.setAttempts(0);
+        transfer.setLastError(lastError);
+        if (next == null) {
+            transfer.setStatus("completed");
+            return;
+        }
+        transfer.setScheduledFor(next);
+        transfer.setNextRunAt(next);
+    }
+
+    /**
+     * @return The occurrence after the transfer's current one, or null for a
+     *         one-off transfer
+     */
+    static String nextOccurrence(ScheduledTransfer transfer) {
+        LocalDateTime current = LocalDateTime.parse(transfer.getScheduledFor(), SQLITE_TIMESTAMP);
+        switch (transfer.getFrequency()) {
+            case "daily":
+                return current.plusDays(1).format(SQLITE_TIMESTAMP);
+            case "weekly":
+                return current.plusWeeks(1).format(SQLITE_TIMESTAMP);
+            case "monthly":
+                // Back to the anchor day after a shorter month
+                LocalDateTime next = current.plusMonths(1);
+                int day = Math.min(transfer.getAnchorDay(), next.toLocalDate().lengthOfMonth());
+                return next.withDayOfMonth(day).format(SQLITE_TIMESTAMP);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Idempotency key of the transfer's current occurrence
+     */
+    private static String occurrenceKey(ScheduledTransfer transfer) {
+        return "scheduled-transfer:" + transfer.getId() + ":" + transfer.getScheduledFor();
+    }
+
+    private static long toMillis(String timestamp) {
+        return LocalDateTime.parse(timestamp, SQLITE_TIMESTAMP).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static String format(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).format(SQLITE_TIMESTAMP);
+    }
+
+    // === Metrics ===
+
+    /**
+     * Scheduler counters as a JSON object
+     */
+    public String getStatsAsJson() {
+        return "{" +
+                "\"pending\":" + pendingCount + "," +
+                "\"ticks\":" + tickCount.get() + "," +
+                "\"lastTickMillis\":" + lastTickMillis + "," +
+                "\"loaded\":" + loadedCount.get() + "," +
+                "\"batches\":" + batchCount.get() + "," +
+                "\"runs\":" + runCount.get() + "," +
+                "\"succeeded\":" + succeededCount.get() + "," +
+                "\"retried\":" + retriedCount.get() + "," +
+                "\"skipped\":" + skippedCount.get() + "," +
+                "\"failed\":" + failedCount.get() + "," +
+                "\"errors\":" + errorCount.get() + "," +
+                "\"throttledMillis\":" + throttledMillis.get() +
+                "}";
+    }
+}